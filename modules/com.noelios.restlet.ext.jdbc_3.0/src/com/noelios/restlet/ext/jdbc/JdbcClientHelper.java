@@ -30,35 +30,44 @@ package com.noelios.restlet.ext.jdbc;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
 import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
 import org.apache.commons.pool.ObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.restlet.Client;
+import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Protocol;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
 import org.restlet.resource.Representation;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.restlet.resource.Variant;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.noelios.restlet.ClientHelper;
 import com.noelios.restlet.Engine;
@@ -70,7 +79,10 @@ import com.noelios.restlet.Engine;
  * URI as the resource reference and use an XML request as the entity.<br/><br/>
  * Database connections are optionally pooled using Apache Commons DBCP. In this
  * case, a different connection pool is created for each unique combination of
- * JDBC URI and connection properties.<br/><br/> Do not forget to register
+ * JDBC URI and connection properties. Pooled connections are validated when
+ * borrowed, evicted when idle for too long, and cache their prepared
+ * statements. The statistics of each pool are available via the
+ * getConnectionSources() method.<br/><br/> Do not forget to register
  * your JDBC drivers before using this client. See <a
  * href="http://java.sun.com/j2se/1.5.0/docs/api/java/sql/DriverManager.html">
  * JDBC DriverManager API</a> for details<br/><br/> Sample XML request:<br/><br/>
@@ -87,16 +99,120 @@ import com.noelios.restlet.Engine;
  * &nbsp;&nbsp;&nbsp;&nbsp;{@code <statement>SELECT msField1, myField2 FROM myTable</statement>}<br/>
  * &nbsp;&nbsp;{@code </body>}<br/> {@code </request>}<br/><br/>Several SQL
  * Statements can be specified.<br/> A RowSetRepresentation of the last
- * correctly executed SQL request is returned to the Client.</br>
+ * correctly executed SQL request is returned to the Client.</br><br/> The
+ * XML request is parsed incrementally. When several statements are specified,
+ * the statements preceding the last one are executed as JDBC batches as they
+ * are parsed, in a single transaction. The last statement is executed in the
+ * same transaction, which is committed once it has run or, when it returns a
+ * result set, once its rows have been read, so that the result set stays
+ * readable while it is returned.<br/><br/> When
+ * the "streaming" parameter is set, results of queries are instead returned as
+ * a ResultSetRepresentation, written as XML, JSON or CSV depending on the
+ * client preferences. The rows are then written as they are read from the
+ * database, without copying the result set in memory.<br/><br/> Here is the
+ * list of parameters that are supported:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>batchSize</td>
+ * <td>int</td>
+ * <td>100</td>
+ * <td>Maximum number of statements sent to the database in a single JDBC
+ * batch.</td>
+ * </tr>
+ * <tr>
+ * <td>fetchSize</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>Number of rows to fetch from the database at a time, 0 to let the
+ * driver decide.</td>
+ * </tr>
+ * <tr>
+ * <td>maxActive</td>
+ * <td>int</td>
+ * <td>8</td>
+ * <td>Maximum number of connections borrowed at the same time from a pool,
+ * negative for no limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdle</td>
+ * <td>int</td>
+ * <td>8</td>
+ * <td>Maximum number of idle connections kept in a pool, negative for no
+ * limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxWait</td>
+ * <td>long</td>
+ * <td>-1</td>
+ * <td>Maximum time in milliseconds to wait for a connection when a pool is
+ * exhausted, negative to wait indefinitely.</td>
+ * </tr>
+ * <tr>
+ * <td>minEvictableIdleTime</td>
+ * <td>long</td>
+ * <td>1800000</td>
+ * <td>Minimum time in milliseconds a connection can stay idle in a pool
+ * before being evicted.</td>
+ * </tr>
+ * <tr>
+ * <td>minIdle</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>Minimum number of idle connections kept in a pool by the evictor.</td>
+ * </tr>
+ * <tr>
+ * <td>statementCacheSize</td>
+ * <td>int</td>
+ * <td>32</td>
+ * <td>Maximum number of prepared statements cached by pooled connection, 0
+ * to disable the cache.</td>
+ * </tr>
+ * <tr>
+ * <td>streaming</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if the results of queries are streamed.</td>
+ * </tr>
+ * <tr>
+ * <td>timeBetweenEvictionRuns</td>
+ * <td>long</td>
+ * <td>60000</td>
+ * <td>Time in milliseconds between two runs of the idle connections evictor,
+ * negative to disable eviction.</td>
+ * </tr>
+ * <tr>
+ * <td>validationQuery</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>SQL query used to validate connections borrowed from a pool. If not
+ * set, only closed connections are detected.</td>
+ * </tr>
+ * </table>
  * 
  * @see com.noelios.restlet.ext.jdbc.RowSetRepresentation
+ * @see com.noelios.restlet.ext.jdbc.ResultSetRepresentation
  * 
  * @author Jerome Louvel (contact@noelios.com)
  * @author Thierry Boileau
  */
 public class JdbcClientHelper extends ClientHelper {
-    /** Map of connection factories. */
-    private List<ConnectionSource> connectionSources;
+    /** The variants of the streamed results. */
+    private static final List<Variant> STREAMING_VARIANTS = Arrays.asList(
+            new Variant(MediaType.TEXT_XML), new Variant(
+                    MediaType.APPLICATION_JSON), new Variant(
+                    ResultSetRepresentation.TEXT_CSV));
+
+    /** The factory of the request parsers. */
+    private SAXParserFactory parserFactory;
+
+    /** Map of connection factories, by URI and connection properties. */
+    private ConcurrentMap<ConnectionKey, ConnectionSource> connectionSources;
 
     /**
      * Constructor.
@@ -109,8 +225,11 @@ public class JdbcClientHelper extends ClientHelper {
 
         getProtocols().add(Protocol.JDBC);
 
-        // Set up the list of factories
-        this.connectionSources = new ArrayList<ConnectionSource>();
+        // Set up the request parser factory
+        this.parserFactory = SAXParserFactory.newInstance();
+
+        // Set up the map of factories
+        this.connectionSources = new ConcurrentHashMap<ConnectionKey, ConnectionSource>();
     }
 
     /**
@@ -141,89 +260,67 @@ public class JdbcClientHelper extends ClientHelper {
      */
 	@Override
     public void handle(Request request, Response response) {
-        Connection connection = null;
-
         if (request.getMethod().equals(Method.POST)) {
+            // Parse the JDBC URI
+            RequestHandler handler = new RequestHandler(request
+                    .getResourceRef().toString());
+
             try {
-                // Parse the JDBC URI
-                String connectionURI = request.getResourceRef().toString();
-
-                // Parse the request to extract necessary info
-                DocumentBuilder docBuilder = DocumentBuilderFactory
-                        .newInstance().newDocumentBuilder();
-                Document requestDoc = docBuilder.parse(request.getEntity()
-                        .getStream());
-
-                Element rootElt = (Element) requestDoc.getElementsByTagName(
-                        "request").item(0);
-                Element headerElt = (Element) rootElt.getElementsByTagName(
-                        "header").item(0);
-                Element connectionElt = (Element) headerElt
-                        .getElementsByTagName("connection").item(0);
-
-                // Read the connection pooling setting
-                Node usePoolingNode = connectionElt.getElementsByTagName(
-                        "usePooling").item(0);
-                boolean usePooling = usePoolingNode.getTextContent().equals(
-                        "true") ? true : false;
-
-                // Read the connection properties
-                NodeList propertyNodes = connectionElt
-                        .getElementsByTagName("property");
-                Node propertyNode = null;
-                Properties properties = null;
-                String name = null;
-                String value = null;
-                for (int i = 0; i < propertyNodes.getLength(); i++) {
-                    propertyNode = propertyNodes.item(i);
-
-                    if (properties == null)
-                        properties = new Properties();
-                    name = propertyNode.getAttributes().getNamedItem("name")
-                            .getTextContent();
-                    value = propertyNode.getTextContent();
-                    properties.setProperty(name, value);
+                // Parse the request, executing the statements on the fly
+                SAXParser parser;
+                synchronized (this.parserFactory) {
+                    parser = this.parserFactory.newSAXParser();
                 }
-
-                Node returnGeneratedKeysNode = headerElt.getElementsByTagName(
-                        "returnGeneratedKeys").item(0);
-                boolean returnGeneratedKeys = returnGeneratedKeysNode
-                        .getTextContent().equals("true") ? true : false;
-
-                // Read the SQL body and get the list of sql statements
-                Element bodyElt = (Element) rootElt
-                        .getElementsByTagName("body").item(0);
-                NodeList statementNodes = bodyElt
-                        .getElementsByTagName("statement");
-                List<String> sqlRequests = new ArrayList<String>();
-                for (int i = 0; i < statementNodes.getLength(); i++) {
-                    String sqlRequest = statementNodes.item(i).getTextContent();
-                    sqlRequests.add(sqlRequest);
+                parser.parse(request.getEntity().getStream(), handler);
+                JdbcResult result = handler.finish();
+
+                if (isStreaming() && (result != null)
+                        && (result.getUpdateCount() == -1)) {
+                    // Stream the rows in the preferred format
+                    Variant variant = request.getClientInfo()
+                            .getPreferredVariant(STREAMING_VARIANTS, null);
+                    ResultSetRepresentation output = new ResultSetRepresentation(
+                            result, (variant == null) ? MediaType.TEXT_XML
+                                    : variant.getMediaType());
+                    output.setFetchSize(getFetchSize());
+                    response.setEntity(output);
+                } else {
+                    response.setEntity(new RowSetRepresentation(result));
+
+                    // The rows are copied, end the transaction
+                    handler.commit();
                 }
-
-                // Execute the List of SQL requests
-                connection = getConnection(connectionURI, properties,
-                        usePooling);
-                JdbcResult result = handleSqlRequests(connection,
-                        returnGeneratedKeys, sqlRequests);
-                response.setEntity(new RowSetRepresentation(result));
-
             } catch (SQLException se) {
+                handler.abort();
                 getLogger().log(Level.WARNING,
                         "Error while processing the SQL request", se);
                 response.setStatus(new Status(Status.SERVER_ERROR_INTERNAL,
                         "Error while processing the SQL request"));
             } catch (ParserConfigurationException pce) {
+                handler.abort();
                 getLogger().log(Level.WARNING,
                         "Error with XML parser configuration", pce);
                 response.setStatus(new Status(Status.CLIENT_ERROR_BAD_REQUEST,
                         "Error with XML parser configuration"));
             } catch (SAXException se) {
-                getLogger().log(Level.WARNING,
-                        "Error while parsing the XML document", se);
-                response.setStatus(new Status(Status.CLIENT_ERROR_BAD_REQUEST,
-                        "Error while parsing the XML document"));
+                handler.abort();
+
+                if (se.getException() instanceof SQLException) {
+                    getLogger().log(Level.WARNING,
+                            "Error while processing the SQL request",
+                            se.getException());
+                    response.setStatus(new Status(
+                            Status.SERVER_ERROR_INTERNAL,
+                            "Error while processing the SQL request"));
+                } else {
+                    getLogger().log(Level.WARNING,
+                            "Error while parsing the XML document", se);
+                    response.setStatus(new Status(
+                            Status.CLIENT_ERROR_BAD_REQUEST,
+                            "Error while parsing the XML document"));
+                }
             } catch (IOException ioe) {
+                handler.abort();
                 getLogger().log(Level.WARNING, "Input/Output exception", ioe);
                 response.setStatus(new Status(Status.SERVER_ERROR_INTERNAL,
                         "Input/Output exception"));
@@ -234,47 +331,6 @@ public class JdbcClientHelper extends ClientHelper {
         }
     }
 
-    /**
-     * Helper
-     * 
-     * @param connection
-     * @param returnGeneratedKeys
-     * @param sqlRequests
-     * @return the result of the last executed SQL request
-     */
-    private JdbcResult handleSqlRequests(Connection connection,
-            boolean returnGeneratedKeys, List<String> sqlRequests) {
-        JdbcResult result = null;
-        try {
-            connection.setAutoCommit(true);
-            Statement statement = connection.createStatement();
-            for (String sqlRequest : sqlRequests) {
-                statement.execute(sqlRequest,
-                        returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS
-                                : Statement.NO_GENERATED_KEYS);
-                result = new JdbcResult(statement);
-            }
-
-            // Commit any changes to the database
-            if (!connection.getAutoCommit()) {
-                connection.commit();
-            }
-        } catch (SQLException se) {
-            getLogger().log(Level.WARNING,
-                    "Error while processing the SQL requests", se);
-            try {
-                if (!connection.getAutoCommit()) {
-                    connection.rollback();
-                }
-            } catch (SQLException se2) {
-                getLogger().log(Level.WARNING,
-                        "Error while rollbacking the transaction", se);
-            }
-        }
-        return result;
-
-    }
-
     /**
      * Returns a JDBC connection.
      * 
@@ -292,35 +348,25 @@ public class JdbcClientHelper extends ClientHelper {
         Connection result = null;
 
         if (usePooling) {
-            for (ConnectionSource c : connectionSources) {
-                // Check if the connection URI is identical
-                // and if the same number of properties is present
-                if ((result == null) && c.getUri().equalsIgnoreCase(uri)
-                        && (properties.size() == c.getProperties().size())) {
-                    // Check that the properties tables are equivalent
-                    boolean equal = true;
-                    for (Object key : c.getProperties().keySet()) {
-                        if (equal && properties.containsKey(key)) {
-                            equal = equal
-                                    && (properties.get(key).equals(c
-                                            .getProperties().get(key)));
-                        } else {
-                            equal = false;
-                        }
-                    }
+            ConnectionKey key = new ConnectionKey(uri, properties);
+            ConnectionSource cs = this.connectionSources.get(key);
 
-                    if (equal) {
-                        result = c.getConnection();
-                    }
+            if (cs == null) {
+                // No existing connection source found
+                cs = new ConnectionSource(uri, properties,
+                        createConnectionPool(uri, properties, getPoolConfig(),
+                                getValidationQuery(), getStatementCacheSize()));
+                ConnectionSource current = this.connectionSources
+                        .putIfAbsent(key, cs);
+
+                if (current != null) {
+                    // Another thread created the same source
+                    cs.close();
+                    cs = current;
                 }
             }
 
-            if (result == null) {
-                // No existing connection source found
-                ConnectionSource cs = new ConnectionSource(uri, properties);
-                this.connectionSources.add(cs);
-                result = cs.getConnection();
-            }
+            result = cs.getConnection();
         } else {
             result = DriverManager.getConnection(uri, properties);
         }
@@ -328,6 +374,107 @@ public class JdbcClientHelper extends ClientHelper {
         return result;
     }
 
+    /**
+     * Returns the number of rows to fetch from the database at a time, 0 to
+     * let the driver decide.
+     * 
+     * @return The number of rows to fetch from the database at a time.
+     */
+    public int getFetchSize() {
+        return Integer.parseInt(getParameters().getFirstValue("fetchSize",
+                "0"));
+    }
+
+    /**
+     * Returns the maximum number of statements sent to the database in a
+     * single JDBC batch.
+     * 
+     * @return The maximum number of statements in a JDBC batch.
+     */
+    public int getBatchSize() {
+        return Integer.parseInt(getParameters().getFirstValue("batchSize",
+                "100"));
+    }
+
+    /**
+     * Returns the connection sources of the pooled connections, giving access
+     * to the statistics of their pools.
+     * 
+     * @return The connection sources of the pooled connections.
+     */
+    public Collection<ConnectionSource> getConnectionSources() {
+        return Collections.unmodifiableCollection(this.connectionSources
+                .values());
+    }
+
+    /**
+     * Returns the configuration of the connection pools.
+     * 
+     * @return The configuration of the connection pools.
+     */
+    protected GenericObjectPool.Config getPoolConfig() {
+        GenericObjectPool.Config result = new GenericObjectPool.Config();
+        result.maxActive = Integer.parseInt(getParameters().getFirstValue(
+                "maxActive", "8"));
+        result.maxIdle = Integer.parseInt(getParameters().getFirstValue(
+                "maxIdle", "8"));
+        result.minIdle = Integer.parseInt(getParameters().getFirstValue(
+                "minIdle", "0"));
+        result.maxWait = Long.parseLong(getParameters().getFirstValue(
+                "maxWait", "-1"));
+        result.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+        result.testOnBorrow = true;
+        result.timeBetweenEvictionRunsMillis = Long.parseLong(getParameters()
+                .getFirstValue("timeBetweenEvictionRuns", "60000"));
+        result.minEvictableIdleTimeMillis = Long.parseLong(getParameters()
+                .getFirstValue("minEvictableIdleTime", "1800000"));
+        return result;
+    }
+
+    /**
+     * Returns the maximum number of prepared statements cached by pooled
+     * connection, 0 if the cache is disabled.
+     * 
+     * @return The maximum number of prepared statements cached by connection.
+     */
+    public int getStatementCacheSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "statementCacheSize", "32"));
+    }
+
+    /**
+     * Returns the SQL query used to validate the connections borrowed from a
+     * pool, or null.
+     * 
+     * @return The SQL query used to validate the pooled connections.
+     */
+    public String getValidationQuery() {
+        return getParameters().getFirstValue("validationQuery", null);
+    }
+
+    /**
+     * Indicates if the results of queries are streamed.
+     * 
+     * @return True if the results of queries are streamed.
+     */
+    public boolean isStreaming() {
+        return Boolean.parseBoolean(getParameters().getFirstValue(
+                "streaming", "false"));
+    }
+
+    /**
+     * Closes the connection pools.
+     */
+    @Override
+    public void stop() throws Exception {
+        for (ConnectionSource cs : this.connectionSources.values()) {
+            cs.close();
+        }
+        this.connectionSources.clear();
+
+        super.stop();
+    }
+
     /**
      * Escapes quotes in a SQL query.
      * 
@@ -362,20 +509,53 @@ public class JdbcClientHelper extends ClientHelper {
      */
     protected static ObjectPool createConnectionPool(String uri,
             Properties properties) {
+        return createConnectionPool(uri, properties,
+                new GenericObjectPool.Config(), null, 0);
+    }
+
+    /**
+     * Creates a connection pool for a given connection configuration.
+     * 
+     * @param uri
+     *            The connection URI.
+     * @param properties
+     *            The connection properties.
+     * @param config
+     *            The configuration of the pool.
+     * @param validationQuery
+     *            The SQL query used to validate the connections, or null.
+     * @param statementCacheSize
+     *            The maximum number of prepared statements cached by
+     *            connection, 0 to disable the cache.
+     * @return The new connection pool.
+     */
+    protected static ObjectPool createConnectionPool(String uri,
+            Properties properties, GenericObjectPool.Config config,
+            String validationQuery, int statementCacheSize) {
         // Create an ObjectPool that will serve as the actual pool of
         // connections
-        ObjectPool result = new GenericObjectPool(null);
+        ObjectPool result = new GenericObjectPool(null, config);
 
         // Create a ConnectionFactory that the pool will use to create
         // Connections
         ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(
                 uri, properties);
 
+        // Create the factory of the prepared statements pools of each
+        // connection
+        KeyedObjectPoolFactory statementPoolFactory = null;
+        if (statementCacheSize > 0) {
+            statementPoolFactory = new GenericKeyedObjectPoolFactory(null, -1,
+                    GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL, 0, 1,
+                    statementCacheSize);
+        }
+
         // Create the PoolableConnectionFactory, which wraps the "real"
         // Connections created by the ConnectionFactory with
         // the classes that implement the pooling functionality.
         PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(
-                connectionFactory, result, null, null, false, false);
+                connectionFactory, result, statementPoolFactory,
+                validationQuery, false, false);
 
         // To remove warnings
         poolableConnectionFactory.getPool();
@@ -383,16 +563,295 @@ public class JdbcClientHelper extends ClientHelper {
         return result;
     }
 
+    /**
+     * SAX handler reading a JDBC request and executing its statements as they
+     * are parsed. All the statements but the last one are executed as JDBC
+     * batches in a single transaction. The last statement is executed by the
+     * finish() method in the same transaction. If it returns a result set, the
+     * transaction is committed when the result is released.
+     */
+    private class RequestHandler extends DefaultHandler {
+        /** The statement executing the batches. */
+        private Statement batch;
+
+        /** The number of statements in the current batch. */
+        private int batchCount;
+
+        /** The maximum number of statements in a batch. */
+        private int batchSize;
+
+        /** The database connection. */
+        private Connection connection;
+
+        /** The connection URI. */
+        private String connectionUri;
+
+        /** The last SQL request parsed, not executed yet. */
+        private String lastRequest;
+
+        /** The connection properties. */
+        private Properties properties;
+
+        /** The name of the property being parsed. */
+        private String propertyName;
+
+        /** Indicates if the generated keys should be returned. */
+        private boolean returnGeneratedKeys;
+
+        /** The text content of the element being parsed. */
+        private StringBuilder text;
+
+        /** Indicates if the connection pooling should be used. */
+        private boolean usePooling;
+
+        /**
+         * Constructor.
+         * 
+         * @param connectionUri
+         *            The connection URI.
+         */
+        public RequestHandler(String connectionUri) {
+            this.batchSize = getBatchSize();
+            this.connectionUri = connectionUri;
+            this.text = new StringBuilder();
+        }
+
+        /**
+         * Rollbacks the current transaction if any and releases the
+         * connection, after an error.
+         */
+        public void abort() {
+            if (this.connection != null) {
+                try {
+                    if (!this.connection.getAutoCommit()) {
+                        this.connection.rollback();
+                    }
+                } catch (SQLException se) {
+                    getLogger().log(Level.WARNING,
+                            "Error while rollbacking the transaction", se);
+                }
+
+                try {
+                    this.connection.close();
+                } catch (SQLException se) {
+                    getLogger().log(Level.WARNING,
+                            "Error while closing the connection", se);
+                }
+
+                this.connection = null;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            this.text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            if ("usePooling".equals(qName)) {
+                this.usePooling = "true".equals(this.text.toString());
+            } else if ("property".equals(qName)) {
+                if (this.properties == null)
+                    this.properties = new Properties();
+                this.properties.setProperty(this.propertyName, this.text
+                        .toString());
+            } else if ("returnGeneratedKeys".equals(qName)) {
+                this.returnGeneratedKeys = "true".equals(this.text.toString());
+            } else if ("statement".equals(qName)) {
+                try {
+                    handleStatement(this.text.toString());
+                } catch (SQLException se) {
+                    throw new SAXException(se);
+                }
+            }
+        }
+
+        /**
+         * Commits the current transaction if any.
+         * 
+         * @throws SQLException
+         */
+        public void commit() throws SQLException {
+            if ((this.connection != null) && !this.connection.getAutoCommit()) {
+                this.connection.commit();
+                this.connection.setAutoCommit(true);
+            }
+        }
+
+        /**
+         * Executes the pending batch and the last statement in the current
+         * transaction. The transaction is committed unless the last statement
+         * returns a result set, in which case it is committed when the result
+         * is released.
+         * 
+         * @return The result of the last statement, or null.
+         * @throws SQLException
+         */
+        public JdbcResult finish() throws SQLException {
+            JdbcResult result = null;
+
+            if (this.batch != null) {
+                if (this.batchCount > 0) {
+                    this.batch.executeBatch();
+                }
+                this.batch.close();
+            }
+
+            if (this.lastRequest != null) {
+                // Prepared statements are cached by pooled connections
+                Connection connection = getConnection();
+                PreparedStatement statement = this.returnGeneratedKeys ? connection
+                        .prepareStatement(this.lastRequest,
+                                Statement.RETURN_GENERATED_KEYS)
+                        : connection.prepareStatement(this.lastRequest);
+
+                try {
+                    if (getFetchSize() > 0) {
+                        statement.setFetchSize(getFetchSize());
+                    }
+                    if (!statement.execute()) {
+                        // No result set to read, end the transaction
+                        commit();
+                    }
+                } catch (SQLException se) {
+                    statement.close();
+                    throw se;
+                }
+
+                result = new JdbcResult(statement);
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns the database connection, opening it if needed.
+         * 
+         * @return The database connection.
+         * @throws SQLException
+         */
+        private Connection getConnection() throws SQLException {
+            if (this.connection == null) {
+                this.connection = JdbcClientHelper.this.getConnection(
+                        this.connectionUri, this.properties, this.usePooling);
+                this.connection.setAutoCommit(true);
+            }
+
+            return this.connection;
+        }
+
+        /**
+         * Handles a parsed statement. The previous statement, if any, is
+         * added to the current batch.
+         * 
+         * @param sqlRequest
+         *            The parsed SQL request.
+         * @throws SQLException
+         */
+        private void handleStatement(String sqlRequest) throws SQLException {
+            if (this.lastRequest != null) {
+                if (this.batch == null) {
+                    // Start the transaction
+                    getConnection().setAutoCommit(false);
+                    this.batch = getConnection().createStatement();
+                }
+
+                this.batch.addBatch(this.lastRequest);
+                if (++this.batchCount >= this.batchSize) {
+                    this.batch.executeBatch();
+                    this.batchCount = 0;
+                }
+            }
+
+            this.lastRequest = sqlRequest;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            this.text.setLength(0);
+
+            if ("property".equals(qName)) {
+                this.propertyName = attributes.getValue("name");
+            }
+        }
+    }
+
+    /**
+     * Key of the connection sources, combining the connection URI and
+     * properties. Its hash code is computed once.
+     */
+    private static final class ConnectionKey {
+        /** The hash code. */
+        private final int hashCode;
+
+        /** The connection properties. */
+        private final Properties properties;
+
+        /** The connection URI, in lower case. */
+        private final String uri;
+
+        /**
+         * Constructor.
+         * 
+         * @param uri
+         *            The connection URI.
+         * @param properties
+         *            The connection properties or null.
+         */
+        public ConnectionKey(String uri, Properties properties) {
+            this.uri = uri.toLowerCase();
+            this.properties = (properties == null) ? new Properties()
+                    : properties;
+            this.hashCode = 31 * this.uri.hashCode()
+                    + this.properties.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            } else if (object instanceof ConnectionKey) {
+                ConnectionKey key = (ConnectionKey) object;
+                return (this.hashCode == key.hashCode)
+                        && this.uri.equals(key.uri)
+                        && this.properties.equals(key.properties);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
     /**
      * Pooling data source which remembers its connection properties and URI.
+     * It also gives access to the statistics of its pool.
      */
-    private static class ConnectionSource extends PoolingDataSource {
+    public static class ConnectionSource extends PoolingDataSource {
         /** The connection URI. */
         protected String uri;
 
         /** The connection properties. */
         protected Properties properties;
 
+        /** The pool of connections. */
+        private ObjectPool pool;
+
+        /** The number of connections borrowed. */
+        private AtomicLong borrowCount;
+
+        /** The maximum time waited for a connection, in nanoseconds. */
+        private AtomicLong maxWaitTime;
+
+        /** The total time waited for connections, in nanoseconds. */
+        private AtomicLong totalWaitTime;
+
         /**
          * Constructor.
          * 
@@ -402,18 +861,101 @@ public class JdbcClientHelper extends ClientHelper {
          *            The connection properties.
          */
         public ConnectionSource(String uri, Properties properties) {
-            super(createConnectionPool(uri, properties));
+            this(uri, properties, createConnectionPool(uri, properties));
+        }
+
+        /**
+         * Constructor.
+         * 
+         * @param uri
+         *            The connection URI.
+         * @param properties
+         *            The connection properties.
+         * @param pool
+         *            The pool of connections.
+         */
+        public ConnectionSource(String uri, Properties properties,
+                ObjectPool pool) {
+            super(pool);
             this.uri = uri;
             this.properties = properties;
+            this.pool = pool;
+            this.borrowCount = new AtomicLong();
+            this.maxWaitTime = new AtomicLong();
+            this.totalWaitTime = new AtomicLong();
         }
 
         /**
-         * Returns the connection URI.
+         * Closes the pool of connections.
+         */
+        public void close() {
+            try {
+                this.pool.close();
+            } catch (Exception e) {
+                // Nothing more can be done
+            }
+        }
+
+        /**
+         * Returns the number of connections currently borrowed from the pool.
          * 
-         * @return The connection URI.
+         * @return The number of connections currently borrowed.
          */
-        public String getUri() {
-            return uri;
+        public int getActiveCount() {
+            return this.pool.getNumActive();
+        }
+
+        /**
+         * Returns the number of connections borrowed since the creation of
+         * the pool.
+         * 
+         * @return The number of connections borrowed.
+         */
+        public long getBorrowCount() {
+            return this.borrowCount.get();
+        }
+
+        /**
+         * Borrows a connection from the pool, measuring the time waited.
+         * 
+         * @return The borrowed connection.
+         * @throws SQLException
+         */
+        @Override
+        public Connection getConnection() throws SQLException {
+            long start = System.nanoTime();
+
+            try {
+                return super.getConnection();
+            } finally {
+                long waitTime = System.nanoTime() - start;
+                this.borrowCount.incrementAndGet();
+                this.totalWaitTime.addAndGet(waitTime);
+
+                long max = this.maxWaitTime.get();
+                while ((waitTime > max)
+                        && !this.maxWaitTime.compareAndSet(max, waitTime)) {
+                    max = this.maxWaitTime.get();
+                }
+            }
+        }
+
+        /**
+         * Returns the number of idle connections in the pool.
+         * 
+         * @return The number of idle connections.
+         */
+        public int getIdleCount() {
+            return this.pool.getNumIdle();
+        }
+
+        /**
+         * Returns the maximum time waited for a connection, in milliseconds.
+         * 
+         * @return The maximum time waited for a connection.
+         */
+        public double getMaxWaitTime() {
+            return this.maxWaitTime.get() / 1000000d;
         }
 
         /**
@@ -424,5 +966,23 @@ public class JdbcClientHelper extends ClientHelper {
         public Properties getProperties() {
             return properties;
         }
+
+        /**
+         * Returns the total time waited for connections, in milliseconds.
+         * 
+         * @return The total time waited for connections.
+         */
+        public double getTotalWaitTime() {
+            return this.totalWaitTime.get() / 1000000d;
+        }
+
+        /**
+         * Returns the connection URI.
+         * 
+         * @return The connection URI.
+         */
+        public String getUri() {
+            return uri;
+        }
     }
 }
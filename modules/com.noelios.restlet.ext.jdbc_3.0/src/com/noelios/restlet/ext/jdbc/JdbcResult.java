@@ -28,6 +28,7 @@
 package com.noelios.restlet.ext.jdbc;
 
 import java.io.Serializable;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -56,6 +57,7 @@ public class JdbcResult implements Serializable {
 
     /**
      * Release the statement connection. To call when result navigation is done.
+     * Commits the pending transaction of the connection if any.
      * 
      * @throws SQLException
      */
@@ -63,7 +65,21 @@ public class JdbcResult implements Serializable {
         // One connection per jdbcResult
         // releasing the instance means releasing the connection too
         // and not only the statement.
-        statement.getConnection().close();
+        Connection connection = statement.getConnection();
+
+        try {
+            if (!connection.getAutoCommit()) {
+                // The rows have been read, end the transaction
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            try {
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        }
     }
 
     /**
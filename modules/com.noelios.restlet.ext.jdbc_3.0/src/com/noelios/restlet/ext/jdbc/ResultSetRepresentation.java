@@ -0,0 +1,428 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.ext.jdbc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.util.XmlWriter;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Streaming representation of a ResultSet instance, wrapped either in a
+ * JdbcResult instance or given directly. Unlike the RowSetRepresentation, the
+ * rows aren't copied in memory: they are read from the result set and written
+ * to the output stream one at a time, so large results are written with a
+ * constant memory usage. As a consequence, the representation is transient
+ * and can only be written once. The result set and the JdbcResult instance
+ * are released when the writing finishes.<br/><br/>The following media types
+ * are supported:<br/>
+ * <ul>
+ * <li>XML (text/xml or application/xml): {@code <resultSet>} with a
+ * {@code <metadata>} element listing the {@code <column>} names and SQL
+ * types, followed by a {@code <rows>} element containing a {@code <row>} per
+ * row with a {@code <column>} value per column. Null values are written as
+ * {@code <column null="true"/>}.</li>
+ * <li>JSON (application/json): array containing an object per row with a
+ * member per column.</li>
+ * <li>CSV (text/csv): a header line with the column names followed by a line
+ * per row, as specified by RFC 4180.</li>
+ * </ul>
+ * 
+ * @see com.noelios.restlet.ext.jdbc.RowSetRepresentation
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ResultSetRepresentation extends OutputRepresentation {
+    /** The CSV media type. */
+    public static final MediaType TEXT_CSV = new MediaType("text/csv");
+
+    /** The number of rows to fetch from the database at a time. */
+    private int fetchSize;
+
+    /** JdbcResult instance that gives access to the resultSet. */
+    private JdbcResult jdbcResult;
+
+    /** The result set to write. */
+    private ResultSet resultSet;
+
+    /**
+     * Constructor.
+     * 
+     * @param jdbcResult
+     *            The JdbcResult instance giving access to the result set.
+     * @param mediaType
+     *            The representation's media type.
+     * @throws SQLException
+     */
+    public ResultSetRepresentation(JdbcResult jdbcResult, MediaType mediaType)
+            throws SQLException {
+        this(jdbcResult.getResultSet(), mediaType);
+        this.jdbcResult = jdbcResult;
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param resultSet
+     *            The result set to write.
+     * @param mediaType
+     *            The representation's media type.
+     */
+    public ResultSetRepresentation(ResultSet resultSet, MediaType mediaType) {
+        super(mediaType);
+        setCharacterSet(CharacterSet.UTF_8);
+        setTransient(true);
+        this.fetchSize = 0;
+        this.resultSet = resultSet;
+    }
+
+    /**
+     * Returns the number of rows to fetch from the database at a time, 0 to
+     * let the driver decide.
+     * 
+     * @return The number of rows to fetch from the database at a time.
+     */
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Returns the inner JdbcResult instance or null.
+     * 
+     * @return The inner JdbcResult instance or null.
+     */
+    public JdbcResult getJdbcResult() {
+        return this.jdbcResult;
+    }
+
+    /**
+     * Returns the result set to write.
+     * 
+     * @return The result set to write.
+     */
+    public ResultSet getResultSet() {
+        return this.resultSet;
+    }
+
+    /**
+     * Releases the result set and the JdbcResult instance.
+     * 
+     * @throws SQLException
+     */
+    private void release() throws SQLException {
+        try {
+            if (this.resultSet != null) {
+                this.resultSet.close();
+            }
+        } finally {
+            if (this.jdbcResult != null) {
+                this.jdbcResult.release();
+            }
+        }
+    }
+
+    /**
+     * Sets the number of rows to fetch from the database at a time, 0 to let
+     * the driver decide.
+     * 
+     * @param fetchSize
+     *            The number of rows to fetch from the database at a time.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        IOException error = null;
+
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    outputStream, getCharacterSet().getName()));
+
+            if (this.resultSet != null) {
+                if (getFetchSize() > 0) {
+                    this.resultSet.setFetchSize(getFetchSize());
+                }
+
+                if (MediaType.APPLICATION_JSON.equals(getMediaType(), true)) {
+                    writeJson(writer);
+                } else if (TEXT_CSV.equals(getMediaType(), true)) {
+                    writeCsv(writer);
+                } else {
+                    writeXml(writer);
+                }
+            }
+
+            writer.flush();
+        } catch (SQLException se) {
+            error = new IOException("Error while reading the result set. "
+                    + se.getMessage());
+        } catch (SAXException se) {
+            error = new IOException("Error while writing the result set. "
+                    + se.getMessage());
+        } catch (IOException ioe) {
+            error = ioe;
+        } finally {
+            try {
+                release();
+            } catch (SQLException se) {
+                if (error == null) {
+                    error = new IOException(
+                            "SQL exception while releasing the result set after writing the representation. "
+                                    + se.getMessage());
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the rows as CSV.
+     * 
+     * @param writer
+     *            The writer to use.
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void writeCsv(Writer writer) throws IOException, SQLException {
+        ResultSetMetaData metaData = this.resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        for (int i = 1; i <= columnCount; i++) {
+            if (i > 1)
+                writer.write(',');
+            writeCsvValue(writer, metaData.getColumnLabel(i));
+        }
+        writer.write("\r\n");
+
+        while (this.resultSet.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1)
+                    writer.write(',');
+                writeCsvValue(writer, this.resultSet.getString(i));
+            }
+            writer.write("\r\n");
+        }
+    }
+
+    /**
+     * Writes a CSV value, quoted if necessary.
+     * 
+     * @param writer
+     *            The writer to use.
+     * @param value
+     *            The value to write, or null.
+     * @throws IOException
+     */
+    private void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value != null) {
+            boolean quoted = false;
+
+            for (int i = 0; !quoted && (i < value.length()); i++) {
+                char c = value.charAt(i);
+                quoted = (c == ',') || (c == '"') || (c == '\r')
+                        || (c == '\n');
+            }
+
+            if (quoted) {
+                writer.write('"');
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"')
+                        writer.write('"');
+                    writer.write(c);
+                }
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+    }
+
+    /**
+     * Writes the rows as JSON.
+     * 
+     * @param writer
+     *            The writer to use.
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void writeJson(Writer writer) throws IOException, SQLException {
+        ResultSetMetaData metaData = this.resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+
+        writer.write('[');
+        for (boolean first = true; this.resultSet.next(); first = false) {
+            if (!first)
+                writer.write(',');
+            writer.write('{');
+
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1)
+                    writer.write(',');
+                writeJsonString(writer, labels[i - 1]);
+                writer.write(':');
+
+                Object value = this.resultSet.getObject(i);
+                if (value == null) {
+                    writer.write("null");
+                } else if (value instanceof Boolean) {
+                    writer.write(value.toString());
+                } else if ((value instanceof Number)
+                        && !(value instanceof Double && (((Double) value)
+                                .isNaN() || ((Double) value).isInfinite()))
+                        && !(value instanceof Float && (((Float) value)
+                                .isNaN() || ((Float) value).isInfinite()))) {
+                    writer.write(value.toString());
+                } else {
+                    writeJsonString(writer, this.resultSet.getString(i));
+                }
+            }
+
+            writer.write('}');
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Writes a JSON string.
+     * 
+     * @param writer
+     *            The writer to use.
+     * @param value
+     *            The string to write.
+     * @throws IOException
+     */
+    private void writeJsonString(Writer writer, String value)
+            throws IOException {
+        writer.write('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    writer.write("\\u00");
+                    writer.write(Character.forDigit(c >> 4, 16));
+                    writer.write(Character.forDigit(c & 0xF, 16));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+
+        writer.write('"');
+    }
+
+    /**
+     * Writes the rows as XML.
+     * 
+     * @param writer
+     *            The writer to use.
+     * @throws SAXException
+     * @throws SQLException
+     */
+    private void writeXml(Writer writer) throws SAXException, SQLException {
+        XmlWriter xmlWriter = new XmlWriter(writer);
+        ResultSetMetaData metaData = this.resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        xmlWriter.startDocument();
+        xmlWriter.startElement("resultSet");
+        xmlWriter.startElement("metadata");
+        for (int i = 1; i <= columnCount; i++) {
+            AttributesImpl attributes = new AttributesImpl();
+            attributes.addAttribute("", "name", "name", "CDATA", metaData
+                    .getColumnLabel(i));
+            attributes.addAttribute("", "type", "type", "CDATA", metaData
+                    .getColumnTypeName(i));
+            xmlWriter.emptyElement("", "column", "column", attributes);
+        }
+        xmlWriter.endElement("metadata");
+
+        AttributesImpl nullAttributes = new AttributesImpl();
+        nullAttributes.addAttribute("", "null", "null", "CDATA", "true");
+
+        xmlWriter.startElement("rows");
+        while (this.resultSet.next()) {
+            xmlWriter.startElement("row");
+
+            for (int i = 1; i <= columnCount; i++) {
+                String value = this.resultSet.getString(i);
+
+                if (value == null) {
+                    xmlWriter.emptyElement("", "column", "column",
+                            nullAttributes);
+                } else {
+                    xmlWriter.dataElement("column", value);
+                }
+            }
+
+            xmlWriter.endElement("row");
+        }
+        xmlWriter.endElement("rows");
+        xmlWriter.endElement("resultSet");
+        xmlWriter.endDocument();
+    }
+
+}
@@ -30,17 +30,23 @@ package com.noelios.restlet.ext.jetty;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.logging.Level;
 
+import org.mortbay.io.nio.ChannelEndPoint;
+import org.mortbay.io.nio.NIOBuffer;
 import org.mortbay.jetty.HttpConnection;
 import org.restlet.Server;
 import org.restlet.data.Parameter;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.Representation;
 import org.restlet.util.Series;
 
 import com.noelios.restlet.http.HttpServerCall;
@@ -51,6 +57,12 @@ import com.noelios.restlet.http.HttpServerCall;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class JettyCall extends HttpServerCall {
+	/**
+	 * Minimum size of the file entities sent as mapped buffers. Mapping
+	 * smaller files costs more than copying them.
+	 */
+	private static final long MIN_MAPPED_SIZE = 256 * 1024;
+
 	/** The wrapped Jetty HTTP connection. */
 	private HttpConnection connection;
 
@@ -166,7 +178,10 @@ public class JettyCall extends HttpServerCall {
 	}
 
 	/**
-	 * Returns the response channel if it exists.
+	 * Returns the response channel if it exists. Jetty's endpoint channels are
+	 * driven by its own generator, possibly in non-blocking mode, so they are
+	 * never exposed directly. File entities are still sent without copy on NIO
+	 * connectors, see {@link #writeResponseBody(Representation)}.
 	 * 
 	 * @return The response channel if it exists.
 	 */
@@ -210,6 +225,37 @@ public class JettyCall extends HttpServerCall {
 		return getConnection().getRequest().isSecure();
 	}
 
+	/**
+	 * Returns a Jetty buffer mapping the content of a file representation.
+	 * 
+	 * @param entity
+	 *            The file representation.
+	 * @return The Jetty buffer mapping the file content.
+	 * @throws IOException
+	 */
+	private NIOBuffer mapContent(FileRepresentation entity) throws IOException {
+		FileChannel fileChannel = entity.getChannel();
+
+		try {
+			// Only map the announced size
+			long size = entity.getSize();
+
+			if (fileChannel.size() < size) {
+				throw new IOException("Unexpected end of the file content");
+			}
+
+			MappedByteBuffer mapped = fileChannel.map(
+					FileChannel.MapMode.READ_ONLY, 0, size);
+			NIOBuffer result = new NIOBuffer(0, NIOBuffer.DIRECT);
+			result.setByteBuffer(mapped);
+			result.setGetIndex(0);
+			result.setPutIndex(mapped.capacity());
+			return result;
+		} finally {
+			fileChannel.close();
+		}
+	}
+
 	@Override
 	public void sendResponse(Response response) throws IOException {
 		// Add call headers
@@ -243,4 +289,29 @@ public class JettyCall extends HttpServerCall {
 		this.connection.commitResponse(true);
 	}
 
+	/**
+	 * Writes the response body. On NIO connectors, large file entities are
+	 * handed to Jetty as memory mapped buffers that its endpoint writes to the
+	 * socket channel, instead of being copied through the response stream
+	 * buffers.
+	 * 
+	 * @param entity
+	 *            The representation to write as entity of the body.
+	 * @throws IOException
+	 */
+	@Override
+	public void writeResponseBody(Representation entity) throws IOException {
+		OutputStream responseStream = getResponseStream();
+
+		if ((entity instanceof FileRepresentation)
+				&& (getConnection().getEndPoint() instanceof ChannelEndPoint)
+				&& (responseStream instanceof HttpConnection.Output)
+				&& (entity.getSize() >= MIN_MAPPED_SIZE)) {
+			((HttpConnection.Output) responseStream)
+					.sendContent(mapContent((FileRepresentation) entity));
+		} else {
+			super.writeResponseBody(entity);
+		}
+	}
+
 }
@@ -0,0 +1,354 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package com.noelios.restlet.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.restlet.Context;
+import org.restlet.Restlet;
+import org.restlet.data.Cookie;
+import org.restlet.data.Dimension;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Preference;
+import org.restlet.data.Range;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.StringRepresentation;
+import org.restlet.service.CacheService;
+
+import com.noelios.restlet.application.CacheFilter;
+
+/**
+ * Unit tests for the response cache filter.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class CacheFilterTestCase extends TestCase {
+	/**
+	 * Restlet answering with a text depending on the accepted media types and
+	 * honoring the request conditions.
+	 */
+	private static class CountingRestlet extends Restlet {
+		/** The number of calls handled. */
+		private int calls;
+
+		/** The expiration date of the entities. */
+		private Date expirationDate;
+
+		/** Indicates if the metadata is sent with 304 responses. */
+		private boolean notModifiedMetadata = true;
+
+		/** The tag of the entities. */
+		private Tag tag;
+
+		/** The text of the entities. */
+		private String text;
+
+		@Override
+		public void handle(Request request, Response response) {
+			this.calls++;
+
+			if (Method.GET.equals(request.getMethod())
+					|| Method.HEAD.equals(request.getMethod())) {
+				MediaType mediaType = request.getClientInfo()
+						.getAcceptedMediaTypes().isEmpty() ? MediaType.TEXT_PLAIN
+						: request.getClientInfo().getAcceptedMediaTypes()
+								.get(0).getMetadata();
+				Representation entity = new StringRepresentation(this.text,
+						mediaType);
+				entity.setTag(this.tag);
+				entity.setExpirationDate(this.expirationDate);
+				response.getDimensions().add(Dimension.MEDIA_TYPE);
+				Status status = request.getConditions().getStatus(
+						request.getMethod(), entity);
+
+				if (status != null) {
+					response.setStatus(status);
+
+					if (Status.REDIRECTION_NOT_MODIFIED.equals(status)
+							&& this.notModifiedMetadata) {
+						// Send the metadata along
+						response.setEntity(entity);
+					}
+				} else {
+					response.setEntity(entity);
+				}
+			}
+		}
+	}
+
+	/** The filter tested. */
+	private CacheFilter filter;
+
+	/** The Restlet behind the filter. */
+	private CountingRestlet next;
+
+	/**
+	 * Handles a call through the filter.
+	 * 
+	 * @param method
+	 *            The request method.
+	 * @param mediaType
+	 *            The accepted media type or null.
+	 * @return The response.
+	 */
+	private Response handle(Method method, MediaType mediaType) {
+		Request request = new Request(method, "http://localhost/resource");
+
+		if (mediaType != null) {
+			request.getClientInfo().getAcceptedMediaTypes().add(
+					new Preference<MediaType>(mediaType));
+		}
+
+		Response response = new Response(request);
+		this.filter.handle(request, response);
+		return response;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.next = new CountingRestlet();
+		this.next.text = "content";
+		this.next.tag = new Tag("v1", false);
+		this.filter = new CacheFilter(new Context());
+		this.filter.setNext(this.next);
+	}
+
+	/**
+	 * Tests the requests answered without calling the next Restlet.
+	 */
+	public void testFreshHit() throws Exception {
+		this.next.expirationDate = new Date(
+				System.currentTimeMillis() + 60000L);
+		assertEquals("content", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals("content", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals(Status.SUCCESS_OK, handle(Method.HEAD, null).getStatus());
+		assertEquals(1, this.next.calls);
+		assertEquals(2, this.filter.getHitCount());
+		assertEquals(1, this.filter.getMissCount());
+		assertEquals(7, this.filter.getMemorySize());
+
+		// Conditions and ranges are applied to the cached entity
+		Request request = new Request(Method.GET, "http://localhost/resource");
+		request.getConditions().setNoneMatch(Arrays.asList(new Tag("v1", false)));
+		Response response = new Response(request);
+		this.filter.handle(request, response);
+		assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+		assertNull(response.getEntity());
+
+		request = new Request(Method.GET, "http://localhost/resource");
+		request.getRanges().add(new Range(2, 3));
+		response = new Response(request);
+		this.filter.handle(request, response);
+		assertEquals(Status.SUCCESS_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("nte", response.getEntity().getText());
+		assertEquals(1, this.next.calls);
+
+		// Unsafe methods invalidate the entries of their resource
+		handle(Method.DELETE, null);
+		assertEquals(0, this.filter.getMemoryEntryCount());
+		handle(Method.GET, null);
+		assertEquals(3, this.next.calls);
+	}
+
+	/**
+	 * Tests the revalidation of expired entries.
+	 */
+	public void testRevalidation() throws Exception {
+		assertEquals("content", handle(Method.GET, null).getEntity()
+				.getText());
+		Response response = handle(Method.GET, null);
+		assertEquals(Status.SUCCESS_OK, response.getStatus());
+		assertEquals("content", response.getEntity().getText());
+		assertEquals(2, this.next.calls);
+		assertEquals(1, this.filter.getValidationCount());
+		assertEquals(0.5, this.filter.getHitRatio(), 0.001);
+
+		// The resource changed, the new entity replaces the cached one
+		this.next.text = "changed";
+		this.next.tag = new Tag("v2", false);
+		assertEquals("changed", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals("changed", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals(4, this.next.calls);
+		assertEquals(2, this.filter.getValidationCount());
+		assertEquals(1, this.filter.getMemoryEntryCount());
+
+		// Entities without validator nor expiration date aren't cached
+		this.next.tag = null;
+		handle(Method.GET, null);
+		handle(Method.GET, null);
+		assertEquals(0, this.filter.getMemoryEntryCount());
+	}
+
+	/**
+	 * Tests the renewal of the expiration date of revalidated entries.
+	 */
+	public void testRenewal() throws Exception {
+		this.next.expirationDate = new Date(
+				System.currentTimeMillis() - 60000L);
+		handle(Method.GET, null);
+		assertEquals("content", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals(2, this.next.calls);
+		assertEquals(1, this.filter.getValidationCount());
+
+		// The 304 response renews the expired entry
+		this.next.expirationDate = new Date(
+				System.currentTimeMillis() + 60000L);
+		Response response = handle(Method.GET, null);
+		assertEquals("content", response.getEntity().getText());
+		assertEquals(this.next.expirationDate, response.getEntity()
+				.getExpirationDate());
+		assertEquals("content", handle(Method.GET, null).getEntity()
+				.getText());
+		assertEquals(3, this.next.calls);
+		assertEquals(2, this.filter.getValidationCount());
+		assertEquals(1, this.filter.getHitCount());
+	}
+
+	/**
+	 * Tests the renewal of revalidated entries without metadata sent along.
+	 */
+	public void testRenewalWithoutMetadata() throws Exception {
+		this.next.notModifiedMetadata = false;
+		this.next.expirationDate = new Date(System.currentTimeMillis() + 200L);
+		handle(Method.GET, null);
+		Thread.sleep(300L);
+
+		// The entry is fresh again for its initial lifetime
+		Response response = handle(Method.GET, null);
+		assertEquals("content", response.getEntity().getText());
+		assertTrue(response.getEntity().getExpirationDate().getTime() > System
+				.currentTimeMillis());
+		handle(Method.GET, null);
+		assertEquals(2, this.next.calls);
+		assertEquals(1, this.filter.getValidationCount());
+		assertEquals(1, this.filter.getHitCount());
+	}
+
+	/**
+	 * Tests that requests with cookies are neither answered nor cached.
+	 */
+	public void testCookies() throws Exception {
+		this.next.expirationDate = new Date(
+				System.currentTimeMillis() + 60000L);
+
+		for (int i = 0; i < 2; i++) {
+			Request request = new Request(Method.GET,
+					"http://localhost/resource");
+			request.getCookies().add(new Cookie("session", "user" + i));
+			Response response = new Response(request);
+			this.filter.handle(request, response);
+			assertEquals("content", response.getEntity().getText());
+		}
+
+		assertEquals(2, this.next.calls);
+		assertEquals(0, this.filter.getMemoryEntryCount());
+	}
+
+	/**
+	 * Tests the entries negotiated with different client preferences.
+	 */
+	public void testVary() throws Exception {
+		this.next.expirationDate = new Date(
+				System.currentTimeMillis() + 60000L);
+		assertEquals(MediaType.TEXT_HTML, handle(Method.GET,
+				MediaType.TEXT_HTML).getEntity().getMediaType());
+		assertEquals(MediaType.TEXT_XML, handle(Method.GET,
+				MediaType.TEXT_XML).getEntity().getMediaType());
+		Response response = handle(Method.GET, MediaType.TEXT_HTML);
+		assertEquals(MediaType.TEXT_HTML, response.getEntity()
+				.getMediaType());
+		assertTrue(response.getDimensions().contains(Dimension.MEDIA_TYPE));
+		assertEquals(2, this.next.calls);
+		assertEquals(2, this.filter.getMemoryEntryCount());
+	}
+
+	/**
+	 * Tests the eviction of entries to the spill directory.
+	 */
+	public void testSpill() throws Exception {
+		File directory = File.createTempFile("cache", "test");
+		directory.delete();
+		directory.mkdir();
+
+		try {
+			CacheService service = new CacheService(true);
+			service.setMaxMemorySize(10);
+			service.setSpillDirectory(directory);
+			service.setMaxDiskSize(10);
+			this.filter = new CacheFilter(new Context(), service);
+			this.filter.setNext(this.next);
+			this.next.expirationDate = new Date(
+					System.currentTimeMillis() + 60000L);
+
+			handle(Method.GET, MediaType.TEXT_HTML);
+			handle(Method.GET, MediaType.TEXT_XML);
+			assertEquals(1, this.filter.getMemoryEntryCount());
+			assertEquals(1, this.filter.getDiskEntryCount());
+			assertEquals(1, directory.list().length);
+
+			Response response = handle(Method.GET, MediaType.TEXT_HTML);
+			assertTrue(response.getEntity() instanceof FileRepresentation);
+			assertEquals("content", response.getEntity().getText());
+			assertEquals(MediaType.TEXT_HTML, response.getEntity()
+					.getMediaType());
+			assertEquals(2, this.next.calls);
+
+			// The oldest spilled entry is discarded
+			handle(Method.GET, MediaType.APPLICATION_XML);
+			assertEquals(1, this.filter.getDiskEntryCount());
+			assertEquals(7, this.filter.getDiskSize());
+			assertEquals(1, directory.list().length);
+
+			this.filter.clear();
+			assertEquals(0, directory.list().length);
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+
+			directory.delete();
+		}
+	}
+
+}
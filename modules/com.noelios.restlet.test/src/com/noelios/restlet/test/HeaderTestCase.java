@@ -27,18 +27,28 @@
 
 package com.noelios.restlet.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.restlet.data.ClientInfo;
 import org.restlet.data.Encoding;
 import org.restlet.data.MediaType;
+import org.restlet.data.Parameter;
+import org.restlet.data.Range;
 import org.restlet.util.DateUtils;
 
 import junit.framework.TestCase;
 
+import com.noelios.restlet.http.ChunkedInputStream;
+import com.noelios.restlet.http.HttpConstants;
+import com.noelios.restlet.http.HttpInputStream;
 import com.noelios.restlet.util.HeaderReader;
 import com.noelios.restlet.util.PreferenceUtils;
+import com.noelios.restlet.util.RangeUtils;
 
 /**
  * Unit tests for the header.
@@ -149,4 +159,110 @@ public class HeaderTestCase extends TestCase {
         assertNull(unmodifiableDate);
     }
 
+    /**
+     * Tests the parsing and formatting of the byte range headers.
+     */
+    public void testRanges() {
+        List<Range> ranges = RangeUtils.parse("bytes=0-499, 1000-,-200");
+        assertEquals(Arrays.asList(new Range(0, 500), new Range(1000,
+                Range.SIZE_MAX), new Range(Range.INDEX_LAST, 200)), ranges);
+        assertEquals("bytes=0-499,1000-,-200", RangeUtils.format(ranges));
+
+        // Invalid headers are ignored as a whole
+        assertTrue(RangeUtils.parse("bytes=5-2").isEmpty());
+        assertTrue(RangeUtils.parse("bytes=1-2,x").isEmpty());
+        assertTrue(RangeUtils.parse("lines=1-2").isEmpty());
+
+        assertEquals("bytes 10-19/100", RangeUtils.formatContentRange(
+                new Range(10, 10), 100));
+        assertEquals("bytes */100", RangeUtils.formatContentRange(100));
+    }
+
+    /**
+     * Tests the parsing of a message head split across several reads.
+     */
+    public void testHttpInputStream() throws IOException {
+        String message = "GET /path?q=1 HTTP/1.1\r\nHost: localhost\r\n"
+                + "X-Custom:  value: with colon\r\nEmpty:\r\n\r\nbody";
+        final ByteArrayInputStream bais = new ByteArrayInputStream(message
+                .getBytes());
+
+        // Only return one byte per read to test the buffer refills
+        HttpInputStream his = new HttpInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return bais.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return bais.read(b, off, Math.min(len, 1));
+            }
+        });
+
+        String[] startLine = his.readStartLine();
+        assertEquals("GET", startLine[0]);
+        assertEquals("/path?q=1", startLine[1]);
+        assertEquals("HTTP/1.1", startLine[2]);
+
+        Parameter header = his.readHeader();
+        assertSame(HttpConstants.HEADER_HOST, header.getName());
+        assertEquals("localhost", header.getValue());
+        header = his.readHeader();
+        assertEquals("X-Custom", header.getName());
+        assertEquals("value: with colon", header.getValue());
+        header = his.readHeader();
+        assertEquals("Empty", header.getName());
+        assertEquals("", header.getValue());
+        assertNull(his.readHeader());
+
+        byte[] body = new byte[4];
+        assertEquals(4, his.read(body, 0, 4) + his.read(body, 1, 3)
+                + his.read(body, 2, 2) + his.read(body, 3, 1));
+        assertEquals("body", new String(body));
+        assertEquals(-1, his.read());
+        his.release();
+    }
+
+    /**
+     * Tests the parsing of the chunk sizes.
+     */
+    public void testChunkSizes() throws IOException {
+        InputStream in = new ChunkedInputStream(new ByteArrayInputStream(
+                "4;ext=1\r\nbody\r\n0\r\n\r\n".getBytes()));
+        byte[] body = new byte[4];
+        assertEquals(4, in.read(body));
+        assertEquals("body", new String(body));
+        assertEquals(-1, in.read());
+
+        for (String size : new String[] { "-4", "+4", "" }) {
+            in = new ChunkedInputStream(new ByteArrayInputStream((size
+                    + "\r\nbody\r\n0\r\n\r\n").getBytes()));
+
+            try {
+                in.read();
+                fail("Invalid chunk size accepted: " + size);
+            } catch (IOException ioe) {
+                // Expected
+            }
+        }
+
+        // Chunk size lines without line feed are bounded
+        StringBuilder extensions = new StringBuilder("4");
+
+        while (extensions.length() < 10000) {
+            extensions.append(";ext=1");
+        }
+
+        in = new ChunkedInputStream(new ByteArrayInputStream(extensions
+                .toString().getBytes()));
+
+        try {
+            in.read();
+            fail("Overlong chunk size line accepted");
+        } catch (IOException ioe) {
+            // Expected
+        }
+    }
+
 }
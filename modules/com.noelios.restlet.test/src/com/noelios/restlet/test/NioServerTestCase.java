@@ -0,0 +1,120 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.restlet.Server;
+
+import com.noelios.restlet.http.HttpServerHelper;
+import com.noelios.restlet.http.NioServerHelper;
+
+/**
+ * Unit tests for the internal NIO HTTP server connector.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class NioServerTestCase extends StreamServerTestCase {
+
+    @Override
+    protected HttpServerHelper createHelper(Server server) {
+        NioServerHelper result = new NioServerHelper(server);
+        result.getParameters().add("maxThreads", "1");
+        result.getParameters().add("requestTimeoutMs", "1000");
+        return result;
+    }
+
+    /**
+     * Sends the beginning of a request and checks that the connection is
+     * closed once the request timeout expires.
+     * 
+     * @param partialRequest
+     *                The beginning of the request.
+     */
+    private void checkTimeout(String partialRequest) throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        socket.setSoTimeout(5000);
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write(partialRequest.getBytes());
+            out.flush();
+            long start = System.currentTimeMillis();
+            int next = in.read();
+            while (next != -1) {
+                next = in.read();
+            }
+            assertTrue(System.currentTimeMillis() - start >= 500);
+        } finally {
+            socket.close();
+        }
+
+        // The worker thread is available again
+        socket = new Socket("localhost", PORT);
+        socket.setSoTimeout(5000);
+        in = socket.getInputStream();
+        out = socket.getOutputStream();
+
+        try {
+            out.write(("GET /next HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Connection: close\r\n\r\n").getBytes());
+            out.flush();
+            StringBuilder sb = new StringBuilder();
+            int next = in.read();
+            while (next != -1) {
+                sb.append((char) next);
+                next = in.read();
+            }
+            assertTrue(sb.toString().endsWith("/next"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that a client sending a partial request entity doesn't hold the
+     * worker thread.
+     */
+    public void testEntityTimeout() throws IOException {
+        checkTimeout("POST /echo HTTP/1.1\r\nHost: localhost\r\n"
+                + "Content-Length: 10\r\n\r\nabc");
+    }
+
+    /**
+     * Tests that a client sending a partial request head is disconnected.
+     */
+    public void testHeadTimeout() throws IOException {
+        checkTimeout("GET /slow HTTP/1.1\r\nHost: local");
+    }
+
+}
@@ -38,11 +38,16 @@ import junit.framework.TestSuite;
 public class NoeliosTestSuite extends TestSuite {
     /** Constructor. */
     public NoeliosTestSuite() {
+        addTestSuite(CacheFilterTestCase.class);
         addTestSuite(CookiesTestCase.class);
         addTestSuite(FormTestCase.class);
         addTestSuite(HeaderTestCase.class);
+        addTestSuite(NioServerTestCase.class);
         addTestSuite(PreferencesTestCase.class);
         addTestSuite(SecurityTestCase.class);
+        addTestSuite(StreamClientTestCase.class);
+        addTestSuite(StreamServerTestCase.class);
+        addTestSuite(WarClientTestCase.class);
     }
 
     /**
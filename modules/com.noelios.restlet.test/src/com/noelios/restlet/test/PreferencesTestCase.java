@@ -33,9 +33,15 @@ import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Language;
 import org.restlet.data.MediaType;
 import org.restlet.data.Preference;
+import org.restlet.resource.Variant;
 
+import com.noelios.restlet.Engine;
+import com.noelios.restlet.util.NegotiationCache;
+import com.noelios.restlet.util.PreferenceCache;
 import com.noelios.restlet.util.PreferenceReader;
 import com.noelios.restlet.util.PreferenceUtils;
 
@@ -45,6 +51,139 @@ import com.noelios.restlet.util.PreferenceUtils;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class PreferencesTestCase extends TestCase {
+	/**
+	 * Tests the cache of parsed preferences and their copy on write.
+	 */
+	public void testCache() {
+		PreferenceCache cache = new PreferenceCache(16);
+		String header = "text/html, application/xml;q=0.9, */*;q=0.1";
+		List<Preference<MediaType>> prefs = cache.getMediaTypes(header);
+		assertEquals(3, prefs.size());
+		assertEquals(MediaType.TEXT_HTML, prefs.get(0).getMetadata());
+		assertSame(prefs, cache.getMediaTypes(new String(header)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// Header types are cached separately, including missing headers
+		assertEquals(Language.ALL, cache.getLanguages(null).get(0)
+				.getMetadata());
+		assertSame(cache.getLanguages(null), cache.getLanguages(null));
+		assertEquals(MediaType.ALL, cache.getMediaTypes(null).get(0)
+				.getMetadata());
+
+		// Modifications don't affect the shared list
+		ClientInfo client = new ClientInfo();
+		client.setAcceptedMediaTypes(prefs);
+		assertEquals(3, client.getAcceptedMediaTypes().size());
+		client.getAcceptedMediaTypes().remove(0);
+		client.getAcceptedMediaTypes().add(
+				new Preference<MediaType>(MediaType.TEXT_PLAIN));
+		assertEquals(3, prefs.size());
+		assertEquals(MediaType.TEXT_HTML, prefs.get(0).getMetadata());
+		assertEquals(MediaType.TEXT_PLAIN, client.getAcceptedMediaTypes()
+				.get(2).getMetadata());
+		client.setAcceptedMediaTypes(prefs);
+		client.getAcceptedMediaTypes().clear();
+		assertTrue(client.getAcceptedMediaTypes().isEmpty());
+		assertEquals(3, prefs.size());
+
+		// The preferences are copied before being modified
+		client.setAcceptedMediaTypes(prefs);
+		Preference<MediaType> pref = client.getAcceptedMediaTypes().get(1);
+		pref.setQuality(1F);
+		pref.getParameters().add("level", "1");
+		assertSame(pref, client.getAcceptedMediaTypes().get(1));
+		assertEquals(1F, client.getAcceptedMediaTypes().get(1).getQuality());
+		assertEquals(0.9F, cache.getMediaTypes(header).get(1).getQuality());
+		client.getAcceptedMediaTypes().remove(0);
+		assertSame(pref, client.getAcceptedMediaTypes().get(0));
+		assertEquals(1, pref.getParameters().size());
+
+		// The number of entries is bounded
+		for (int i = 0; i < 100; i++) {
+			cache.getMediaTypes("text/html;level=" + i);
+		}
+		assertTrue(cache.getSize() <= 16 + 2);
+		cache.clear();
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Tests the content negotiation and the caching of its results.
+	 */
+	public void testNegotiation() {
+		Engine engine = new Engine(false);
+		List<Variant> variants = new ArrayList<Variant>();
+		Variant htmlFr = new Variant(MediaType.TEXT_HTML);
+		htmlFr.getLanguages().add(Language.FRENCH);
+		Variant htmlEn = new Variant(MediaType.TEXT_HTML);
+		htmlEn.getLanguages().add(Language.ENGLISH);
+		Variant xmlEn = new Variant(MediaType.TEXT_XML);
+		xmlEn.getLanguages().add(Language.ENGLISH);
+		variants.add(htmlFr);
+		variants.add(htmlEn);
+		variants.add(xmlEn);
+
+		ClientInfo client = new ClientInfo();
+		PreferenceCache cache = new PreferenceCache();
+		client.setAcceptedLanguages(cache.getLanguages("en, fr;q=0.5"));
+		client.setAcceptedMediaTypes(cache
+				.getMediaTypes("text/xml, text/html;q=0.9"));
+		assertSame(xmlEn, engine.getPreferredVariant(client, variants,
+				Language.FRENCH));
+		assertEquals(2, client.getAcceptedLanguages().size());
+		assertEquals(0, engine.getNegotiationCache().getHitCount());
+
+		// Equivalent variants and preferences hit the cache
+		ClientInfo client2 = new ClientInfo();
+		client2.setAcceptedLanguages(cache.getLanguages("en, fr;q=0.5"));
+		client2.setAcceptedMediaTypes(cache
+				.getMediaTypes("text/xml, text/html;q=0.9"));
+		List<Variant> variants2 = new ArrayList<Variant>(variants);
+		assertSame(xmlEn, engine.getPreferredVariant(client2, variants2,
+				Language.FRENCH));
+		assertEquals(1, engine.getNegotiationCache().getHitCount());
+
+		// Other preferences
+		client2.getAcceptedMediaTypes().remove(0);
+		assertSame(htmlEn, engine.getPreferredVariant(client2, variants2,
+				Language.FRENCH));
+		client2.setAcceptedLanguages(cache.getLanguages("fr"));
+		assertSame(htmlFr, engine.getPreferredVariant(client2, variants2,
+				null));
+		client2.setAcceptedMediaTypes(cache.getMediaTypes("image/png"));
+		assertNull(engine.getPreferredVariant(client2, variants2, null));
+		assertEquals(1, engine.getNegotiationCache().getHitCount());
+		assertEquals(4, engine.getNegotiationCache().getMissCount());
+
+		// Media type parameters are part of the key
+		variants2.clear();
+		Variant level1 = new Variant(cache.getMediaTypes("text/html;level=1")
+				.get(0).getMetadata());
+		Variant level2 = new Variant(cache.getMediaTypes("text/html;level=2")
+				.get(0).getMetadata());
+		variants2.add(level1);
+		variants2.add(level2);
+		client2.setAcceptedMediaTypes(cache
+				.getMediaTypes("text/html;level=1;q=0.5, text/html;level=2"));
+		assertSame(level2, engine.getPreferredVariant(client2, variants2, null));
+		variants2.clear();
+		variants2.add(level2);
+		variants2.add(level1);
+		assertSame(level2, engine.getPreferredVariant(client2, variants2, null));
+		assertEquals(1, engine.getNegotiationCache().getHitCount());
+
+		// Long keys aren't cached
+		int size = engine.getNegotiationCache().getSize();
+		StringBuilder accept = new StringBuilder("text/html");
+		while (accept.length() <= 2 * NegotiationCache.MAX_KEY_LENGTH) {
+			accept.append(", text/plain;q=0.5");
+		}
+		client2.setAcceptedMediaTypes(cache.getMediaTypes(accept.toString()));
+		assertSame(level2, engine.getPreferredVariant(client2, variants2, null));
+		assertEquals(size, engine.getNegotiationCache().getSize());
+	}
+
 	/**
 	 * Tests the preferences parsing.
 	 */
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.StringRepresentation;
+
+import com.noelios.restlet.http.StreamClientHelper;
+import com.noelios.restlet.http.StreamServerHelper;
+
+/**
+ * Unit tests for the connection pool of the internal HTTP client connector.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class StreamClientTestCase extends TestCase {
+    /** The port to listen on. */
+    private static final int PORT = 9192;
+
+    /** The client helper tested. */
+    private StreamClientHelper clientHelper;
+
+    /** The server helper. */
+    private StreamServerHelper serverHelper;
+
+    /**
+     * Sends a GET request.
+     * 
+     * @param path
+     *                The target path.
+     * @return The response.
+     */
+    private Response get(String path) {
+        Request request = new Request(Method.GET, "http://localhost:" + PORT
+                + path);
+        Response response = new Response(request);
+        this.clientHelper.handle(request, response);
+        return response;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                String path = request.getResourceRef().getPath();
+
+                if (path.startsWith("/large")) {
+                    // Too large to be read before the entity is consumed
+                    StringBuilder sb = new StringBuilder(path);
+                    while (sb.length() < 64 * 1024) {
+                        sb.append('.');
+                    }
+                    path = sb.toString();
+                }
+
+                response.setEntity(new StringRepresentation(path,
+                        MediaType.TEXT_PLAIN));
+            }
+        };
+
+        // No protocol is declared to prevent the engine from creating its
+        // own helpers
+        Server server = new Server(new Context(), new ArrayList<Protocol>(),
+                PORT, restlet);
+        this.serverHelper = new StreamServerHelper(server);
+        this.serverHelper.getParameters().add("maxIdleTimeMs", "500");
+        this.serverHelper.start();
+        Thread.sleep(200);
+
+        Client client = new Client(new Context(), new ArrayList<Protocol>());
+        this.clientHelper = new StreamClientHelper(client);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.clientHelper.stop();
+        this.serverHelper.stop();
+    }
+
+    /**
+     * Tests that sequential calls to the same server reuse one connection.
+     */
+    public void testReuse() throws Exception {
+        this.clientHelper.start();
+
+        for (int i = 0; i < 3; i++) {
+            Response response = get("/call" + i);
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertEquals("/call" + i, response.getEntity().getText());
+        }
+
+        assertEquals(1, this.clientHelper.getPoolMisses());
+        assertEquals(2, this.clientHelper.getPoolHits());
+        assertEquals(1, this.clientHelper.getOpenConnectionCount());
+        assertEquals(1, this.clientHelper.getIdleConnectionCount());
+    }
+
+    /**
+     * Tests that connections closed by the server aren't reused.
+     */
+    public void testStaleConnection() throws Exception {
+        this.clientHelper.start();
+        assertEquals("/first", get("/first").getEntity().getText());
+
+        // Let the server close the idle connection
+        Thread.sleep(1000);
+        assertEquals("/second", get("/second").getEntity().getText());
+        assertEquals(2, this.clientHelper.getPoolMisses());
+        assertEquals(0, this.clientHelper.getPoolHits());
+        assertEquals(1, this.clientHelper.getOpenConnectionCount());
+    }
+
+    /**
+     * Tests that calls wait for a connection when the limits are reached.
+     */
+    public void testLimits() throws Exception {
+        this.clientHelper.getParameters().add("maxConnectionsPerHost", "1");
+        this.clientHelper.getParameters().add("maxWaitTimeMs", "200");
+        this.clientHelper.start();
+
+        // Small entities are read at once, releasing the connection
+        Response first = get("/first");
+        Response second = get("/second");
+        assertEquals(Status.SUCCESS_OK, second.getStatus());
+        assertEquals("/first", first.getEntity().getText());
+        assertEquals("/second", second.getEntity().getText());
+
+        // Larger entities use the connection until they are read
+        Response large = get("/large");
+        assertEquals(Status.CONNECTOR_ERROR_COMMUNICATION, get("/third")
+                .getStatus());
+        assertEquals(64 * 1024, large.getEntity().getText().length());
+        assertEquals("/third", get("/third").getEntity().getText());
+        assertEquals(1, this.clientHelper.getOpenConnectionCount());
+    }
+
+    /**
+     * Tests that the connection of an abandoned entity is reclaimed.
+     */
+    public void testAbandonedEntity() throws Exception {
+        this.clientHelper.getParameters().add("maxConnectionsPerHost", "1");
+        this.clientHelper.getParameters().add("maxWaitTimeMs", "5000");
+        this.clientHelper.getParameters().add("maxIdleTimeMs", "1000");
+        this.clientHelper.start();
+
+        assertEquals(Status.SUCCESS_OK, get("/large").getStatus());
+        System.gc();
+        assertEquals("/second", get("/second").getEntity().getText());
+        assertEquals(1, this.clientHelper.getOpenConnectionCount());
+    }
+
+    /**
+     * Tests that stopping the connector closes the used connections.
+     */
+    public void testStop() throws Exception {
+        this.clientHelper.start();
+        Response large = get("/large");
+        assertEquals(1, this.clientHelper.getOpenConnectionCount());
+
+        this.clientHelper.stop();
+        assertEquals(0, this.clientHelper.getOpenConnectionCount());
+        large.getEntity().getStream().close();
+        assertEquals(0, this.clientHelper.getOpenConnectionCount());
+    }
+
+    /**
+     * Tests that idle connections are evicted from the pool.
+     */
+    public void testIdleEviction() throws Exception {
+        this.clientHelper.getParameters().add("maxIdleTimeMs", "100");
+        this.clientHelper.start();
+        assertEquals("/first", get("/first").getEntity().getText());
+        assertEquals(1, this.clientHelper.getIdleConnectionCount());
+
+        Thread.sleep(1500);
+        assertEquals(0, this.clientHelper.getIdleConnectionCount());
+        assertEquals(0, this.clientHelper.getOpenConnectionCount());
+    }
+
+}
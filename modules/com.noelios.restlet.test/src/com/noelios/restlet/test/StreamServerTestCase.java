@@ -0,0 +1,445 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Parameter;
+import org.restlet.data.Protocol;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.StringRepresentation;
+import org.restlet.util.Series;
+
+import com.noelios.restlet.http.ChunkedInputStream;
+import com.noelios.restlet.http.HttpConstants;
+import com.noelios.restlet.http.HttpServerHelper;
+import com.noelios.restlet.http.HttpUtils;
+import com.noelios.restlet.http.StreamClientHelper;
+import com.noelios.restlet.http.StreamServerHelper;
+
+/**
+ * Unit tests for the internal HTTP server connector.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class StreamServerTestCase extends TestCase {
+    /** The port to listen on. */
+    protected static final int PORT = 9191;
+
+    /** The server helper tested. */
+    private HttpServerHelper helper;
+
+    /** The file served for the "/file" path. */
+    private File file;
+
+    /**
+     * Creates the server helper to test.
+     * 
+     * @param server
+     *                The server to help.
+     * @return The server helper to test.
+     */
+    protected HttpServerHelper createHelper(Server server) {
+        HttpServerHelper result = new StreamServerHelper(server);
+        result.getParameters().add("maxThreads", "1");
+        return result;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        // Create a file large enough to need several socket writes
+        this.file = File.createTempFile("restlet-", ".txt");
+        FileOutputStream fos = new FileOutputStream(this.file);
+        try {
+            for (int i = 0; i < 20000; i++) {
+                fos.write(("line " + i + "\n").getBytes());
+            }
+        } finally {
+            fos.close();
+        }
+
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                String path = request.getResourceRef().getPath();
+                String text = path;
+
+                try {
+                    if (path.endsWith("/echo")) {
+                        text = request.getEntity().getText();
+                    }
+                } catch (IOException ioe) {
+                    text = ioe.getMessage();
+                }
+
+                if (path.startsWith("/file")) {
+                    response.setEntity(new FileRepresentation(file,
+                            MediaType.TEXT_PLAIN, 0));
+                } else if (path.startsWith("/chunked")) {
+                    // Send an entity of unknown size
+                    final byte[] bytes = text.getBytes();
+                    response.setEntity(new OutputRepresentation(
+                            MediaType.TEXT_PLAIN) {
+                        @Override
+                        public void write(OutputStream outputStream)
+                                throws IOException {
+                            outputStream.write(bytes);
+                        }
+                    });
+                } else {
+                    response.setEntity(new StringRepresentation(text,
+                            MediaType.TEXT_PLAIN));
+                }
+            }
+        };
+
+        // No protocol is declared to prevent the engine from creating its
+        // own helper
+        Server server = new Server(new Context(), new ArrayList<Protocol>(),
+                PORT, restlet);
+        this.helper = createHelper(server);
+        this.helper.start();
+        Thread.sleep(200);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.helper.stop();
+        this.file.delete();
+    }
+
+    /**
+     * Tests that several requests can be sent on the same connection.
+     */
+    public void testKeepAlive() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertNull(headers.getFirstValue(HttpConstants.HEADER_CONNECTION));
+            assertEquals("/first", readBody(in, headers));
+
+            out.write(("GET /second HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Connection: close\r\n\r\n").getBytes());
+            out.flush();
+            headers = readResponseHead(in);
+            assertEquals("close", headers
+                    .getFirstValue(HttpConstants.HEADER_CONNECTION));
+            assertEquals("/second", readBody(in, headers));
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that an idle persistent connection doesn't prevent new
+     * connections from being handled.
+     */
+    public void testIdleConnection() throws IOException {
+        Socket idle = new Socket("localhost", PORT);
+        Socket socket = new Socket("localhost", PORT);
+
+        try {
+            InputStream in = new BufferedInputStream(idle.getInputStream());
+            OutputStream out = idle.getOutputStream();
+            out.write("GET /idle HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            assertEquals("/idle", readBody(in, readResponseHead(in)));
+
+            socket.setSoTimeout(5000);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+            out.write("GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            assertEquals("/next", readBody(in, readResponseHead(in)));
+        } finally {
+            socket.close();
+            idle.close();
+        }
+    }
+
+    /**
+     * Tests that HTTP/1.0 connections are closed by default.
+     */
+    public void testHttp10() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write("GET /old HTTP/1.0\r\n\r\n".getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertEquals("close", headers
+                    .getFirstValue(HttpConstants.HEADER_CONNECTION));
+            assertEquals("/old", readBody(in, headers));
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that pipelined requests are handled in sequence.
+     */
+    public void testPipelining() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write(("POST /one HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Length: 5\r\n\r\nhello"
+                    + "GET /two HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertEquals("/one", readBody(in, headers));
+            headers = readResponseHead(in);
+            assertEquals("/two", readBody(in, headers));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that entities of unknown size are sent with the chunked transfer
+     * coding without closing the connection.
+     */
+    public void testChunkedResponse() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write("GET /chunked HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertNull(headers
+                    .getFirstValue(HttpConstants.HEADER_CONTENT_LENGTH));
+            assertEquals("chunked", headers
+                    .getFirstValue(HttpConstants.HEADER_TRANSFER_ENCODING));
+            assertEquals("/chunked", readChunkedBody(in));
+
+            out.write("GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            headers = readResponseHead(in);
+            assertEquals("/next", readBody(in, headers));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that chunked request entities are decoded, ignoring the chunk
+     * extensions and trailers.
+     */
+    public void testChunkedRequest() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n"
+                    + "3;name=value\r\nhel\r\nC\r\nlo, chunked!\r\n"
+                    + "0\r\nTrailer: ignored\r\n\r\n"
+                    + "GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertEquals("hello, chunked!", readBody(in, headers));
+            headers = readResponseHead(in);
+            assertEquals("/next", readBody(in, headers));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that file entities, written directly to the socket channel when
+     * available, follow the response head and keep the connection usable.
+     */
+    public void testFileResponse() throws IOException {
+        Socket socket = new Socket("localhost", PORT);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+
+        try {
+            String expected = new FileRepresentation(this.file,
+                    MediaType.TEXT_PLAIN, 0).getText();
+
+            for (int i = 0; i < 2; i++) {
+                out.write("GET /file HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        .getBytes());
+                out.flush();
+                Series<Parameter> headers = readResponseHead(in);
+                assertEquals(Long.toString(this.file.length()), headers
+                        .getFirstValue(HttpConstants.HEADER_CONTENT_LENGTH));
+                assertEquals(expected, readBody(in, headers));
+            }
+
+            out.write("GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes());
+            out.flush();
+            Series<Parameter> headers = readResponseHead(in);
+            assertEquals("/next", readBody(in, headers));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tests that the internal client connector sends and receives chunked
+     * entities.
+     */
+    public void testChunkedClient() throws Exception {
+        Client client = new Client(new Context(), new ArrayList<Protocol>());
+        StreamClientHelper clientHelper = new StreamClientHelper(client);
+        clientHelper.getParameters().add("chunkBufferSize", "4");
+        clientHelper.start();
+
+        try {
+            final String text = "A request entity of unknown size";
+            Request request = new Request(Method.POST, "http://localhost:"
+                    + PORT + "/chunked/echo");
+            request.setEntity(new OutputRepresentation(MediaType.TEXT_PLAIN) {
+                @Override
+                public void write(OutputStream outputStream)
+                        throws IOException {
+                    outputStream.write(text.getBytes());
+                }
+            });
+            Response response = new Response(request);
+            clientHelper.handle(request, response);
+            assertTrue(response.getStatus().isSuccess());
+            assertEquals(text, response.getEntity().getText());
+        } finally {
+            clientHelper.stop();
+        }
+    }
+
+    /**
+     * Reads the response body delimited by the "Content-Length" header.
+     * 
+     * @param in
+     *                The input stream.
+     * @param headers
+     *                The response headers.
+     * @return The response body.
+     */
+    private String readBody(InputStream in, Series<Parameter> headers)
+            throws IOException {
+        int length = Integer.parseInt(headers
+                .getFirstValue(HttpConstants.HEADER_CONTENT_LENGTH));
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            read += in.read(body, read, length - read);
+        }
+        return new String(body);
+    }
+
+    /**
+     * Reads the response body sent with the chunked transfer coding.
+     * 
+     * @param in
+     *                The input stream.
+     * @return The response body.
+     */
+    private String readChunkedBody(InputStream in) throws IOException {
+        InputStream chunkedStream = new ChunkedInputStream(in);
+        StringBuilder sb = new StringBuilder();
+        int next = chunkedStream.read();
+        while (next != -1) {
+            sb.append((char) next);
+            next = chunkedStream.read();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads the response status line and headers.
+     * 
+     * @param in
+     *                The input stream.
+     * @return The response headers.
+     */
+    private Series<Parameter> readResponseHead(InputStream in)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int next = in.read();
+        while (next != '\n') {
+            sb.append((char) next);
+            next = in.read();
+        }
+        assertTrue(sb.toString().startsWith("HTTP/1."));
+        assertTrue(sb.toString().contains(" 200 "));
+        sb.delete(0, sb.length());
+
+        Series<Parameter> result = new Form();
+        Parameter header = HttpUtils.readHeader(in, sb);
+        while (header != null) {
+            result.add(header);
+            header = HttpUtils.readHeader(in, sb);
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.data.Protocol;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+
+/**
+ * Unit tests for the WAR client connector.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class WarClientTestCase extends TestCase {
+    /** The temporary Web Application archive. */
+    private File war;
+
+    /** The WAR client. */
+    private Client client;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.war = File.createTempFile("restlet", ".war");
+        writeWar("Hello");
+
+        Context context = new Context();
+        context.getParameters().add("warPath", this.war.getPath());
+        context.getParameters().add("entryCacheSize", "1024");
+        this.client = new Client(context, Protocol.WAR);
+        this.client.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.client.stop();
+        this.war.delete();
+    }
+
+    /**
+     * Writes the temporary Web Application archive.
+     * 
+     * @param content
+     *                The content of the "WEB-INF/pages/hello.txt" entry.
+     */
+    private void writeWar(String content) throws Exception {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(
+                this.war));
+        jos.putNextEntry(new JarEntry("index.html"));
+        jos.write("<html/>".getBytes());
+        jos.putNextEntry(new JarEntry("WEB-INF/pages/hello.txt"));
+        jos.write(content.getBytes());
+        jos.close();
+    }
+
+    /**
+     * Tests the access to the archive entries.
+     */
+    public void testEntries() throws Exception {
+        Response response = this.client.get("war:///index.html");
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals(7, response.getEntity().getSize());
+        assertEquals("<html/>", response.getEntity().getText());
+        Tag tag = response.getEntity().getTag();
+        assertNotNull(tag);
+        assertFalse(tag.isWeak());
+
+        // Served from the cache of small entries
+        response = this.client.get("war:///index.html");
+        assertEquals("<html/>", response.getEntity().getText());
+        assertEquals(tag, response.getEntity().getTag());
+
+        response = this.client.get("war:///missing.html");
+        assertEquals(Status.CLIENT_ERROR_NOT_FOUND, response.getStatus());
+    }
+
+    /**
+     * Tests the directory listings, including implicit directories.
+     */
+    public void testListing() throws Exception {
+        Response response = this.client.get("war:///");
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        String listing = response.getEntity().getText();
+        assertTrue(listing.contains("war:///WEB-INF"));
+        assertTrue(listing.contains("war:///index.html"));
+
+        response = this.client.get("war:///WEB-INF/pages");
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertTrue(response.getEntity().getText().contains(
+                "war:///WEB-INF/pages/hello.txt"));
+    }
+
+    /**
+     * Tests that the archive is reopened when it is modified.
+     */
+    public void testReload() throws Exception {
+        Response response = this.client.get("war:///WEB-INF/pages/hello.txt");
+        assertEquals("Hello", response.getEntity().getText());
+        Tag tag = response.getEntity().getTag();
+
+        writeWar("Hello again");
+        this.war.setLastModified(this.war.lastModified() + 2000);
+
+        response = this.client.get("war:///WEB-INF/pages/hello.txt");
+        assertEquals("Hello again", response.getEntity().getText());
+        assertFalse(tag.equals(response.getEntity().getTag()));
+    }
+}
@@ -35,6 +35,15 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,7 +71,10 @@ import org.restlet.util.Helper;
 import com.noelios.restlet.application.ApplicationHelper;
 import com.noelios.restlet.component.ComponentHelper;
 import com.noelios.restlet.local.DirectoryResource;
+import com.noelios.restlet.local.ListingCache;
 import com.noelios.restlet.util.FormUtils;
+import com.noelios.restlet.util.NegotiationCache;
+import com.noelios.restlet.util.PreferenceCache;
 
 /**
  * Restlet factory supported by the engine.
@@ -88,12 +100,36 @@ public class Engine extends org.restlet.util.Engine {
 		Engine.setInstance(new Engine());
 	}
 
+	/** Default maximum number of pooled pump threads. */
+	public static final int DEFAULT_MAX_PUMP_THREADS = 32;
+
 	/** List of available client connectors. */
 	private List<ConnectorHelper> registeredClients;
 
 	/** List of available server connectors. */
 	private List<ConnectorHelper> registeredServers;
 
+	/** The executor of the pumps, lazily created. */
+	private volatile ThreadPoolExecutor pumpExecutor;
+
+	/** The maximum number of pooled pump threads. */
+	private volatile int maxPumpThreads = DEFAULT_MAX_PUMP_THREADS;
+
+	/** The number of pumps currently running. */
+	private final AtomicInteger activePumps = new AtomicInteger();
+
+	/** The number of pumps that ran on a dedicated thread. */
+	private final AtomicLong overflowPumps = new AtomicLong();
+
+	/** The shared cache of content negotiation results. */
+	private final NegotiationCache negotiationCache = new NegotiationCache();
+
+	/** The shared cache of parsed preference headers. */
+	private final PreferenceCache preferenceCache = new PreferenceCache();
+
+	/** The caches of directory listings, for each directory handler. */
+	private final Map<Directory, ListingCache> listingCaches = new WeakHashMap<Directory, ListingCache>();
+
 	/**
 	 * Constructor that will automatically attempt to discover connectors.
 	 */
@@ -390,6 +426,142 @@ public class Engine extends org.restlet.util.Engine {
 		return result;
 	}
 
+	/**
+	 * Executes a pump on a thread of a bounded pool of daemon threads. The
+	 * pumps aren't queued as a waiting pump would block its reader, so when
+	 * all the pooled threads are busy, the pump runs on a dedicated thread.
+	 * 
+	 * @param pump
+	 *            The task writing into the pipe.
+	 */
+	@Override
+	public void executePump(final Runnable pump) {
+		Runnable task = new Runnable() {
+			public void run() {
+				activePumps.incrementAndGet();
+
+				try {
+					pump.run();
+				} finally {
+					activePumps.decrementAndGet();
+				}
+			}
+		};
+
+		try {
+			getPumpExecutor().execute(task);
+		} catch (RejectedExecutionException ree) {
+			this.overflowPumps.incrementAndGet();
+			Thread thread = new Thread(task, "Restlet-Pump-Overflow");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns the number of pumps currently running.
+	 * 
+	 * @return The number of pumps currently running.
+	 */
+	public int getActivePumpCount() {
+		return this.activePumps.get();
+	}
+
+	/**
+	 * Returns the cache of directory listings of a directory handler, creating
+	 * it if necessary. The cache is released with the directory handler.
+	 * 
+	 * @param directory
+	 *            The directory handler.
+	 * @return The cache of directory listings.
+	 */
+	public synchronized ListingCache getListingCache(Directory directory) {
+		ListingCache result = this.listingCaches.get(directory);
+
+		if (result == null) {
+			result = new ListingCache();
+			this.listingCaches.put(directory, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the maximum number of pooled pump threads.
+	 * 
+	 * @return The maximum number of pooled pump threads.
+	 */
+	public int getMaxPumpThreads() {
+		return this.maxPumpThreads;
+	}
+
+	/**
+	 * Returns the number of pumps that ran on a dedicated thread because all
+	 * the pooled threads were busy.
+	 * 
+	 * @return The number of pumps that ran on a dedicated thread.
+	 */
+	public long getOverflowPumpCount() {
+		return this.overflowPumps.get();
+	}
+
+	/**
+	 * Returns the shared cache of parsed preference headers (Accept,
+	 * Accept-Charset, Accept-Encoding and Accept-Language), with its hit and
+	 * miss counters.
+	 * 
+	 * @return The shared cache of parsed preference headers.
+	 */
+	public PreferenceCache getPreferenceCache() {
+		return this.preferenceCache;
+	}
+
+	/**
+	 * Returns the executor of the pumps, creating it if needed. Idle threads
+	 * are released after one minute.
+	 * 
+	 * @return The executor of the pumps.
+	 */
+	private ThreadPoolExecutor getPumpExecutor() {
+		ThreadPoolExecutor result = this.pumpExecutor;
+
+		if (result == null) {
+			synchronized (this) {
+				result = this.pumpExecutor;
+
+				if (result == null) {
+					result = new ThreadPoolExecutor(0, getMaxPumpThreads(),
+							60L, TimeUnit.SECONDS,
+							new SynchronousQueue<Runnable>(),
+							new ThreadFactory() {
+								private final AtomicInteger count = new AtomicInteger();
+
+								public Thread newThread(Runnable runnable) {
+									Thread thread = new Thread(runnable,
+											"Restlet-Pump-"
+													+ this.count.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+					this.pumpExecutor = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of pooled pump threads, busy or idle.
+	 * 
+	 * @return The number of pooled pump threads.
+	 */
+	public int getPumpThreadCount() {
+		ThreadPoolExecutor executor = this.pumpExecutor;
+		return (executor == null) ? 0 : executor.getPoolSize();
+	}
+
 	/**
 	 * Parses the "java.version" system property and returns the first digit of
 	 * the version number of the Java Runtime Environment (e.g. "1" for
@@ -456,213 +628,348 @@ public class Engine extends org.restlet.util.Engine {
 	}
 
 	/**
-	 * Returns the preferred variant representation for a given resource
-	 * according the the client preferences.
+	 * Returns the language preferences used for the content negotiation,
+	 * derived from the client preferences without modifying them.<br/>
+	 * <br/>
+	 * If no language preference is defined or even none matches, we want to
+	 * make sure that at least a variant can be returned. Based on experience,
+	 * it appears that browsers are often misconfigured and don't expose all
+	 * the languages actually understood by end users. Thus, a few other
+	 * preferences are added to the user's ones:
+	 * <ul>
+	 * <li>primary languages inferred from and sorted according to the user's
+	 * preferences with quality between 0.005 and 0.006</li>
+	 * <li>default language (if any) with quality 0.003</li>
+	 * <li>primary language of the default language (if available) with
+	 * quality 0.002</li>
+	 * <li>all languages with quality 0.001</li>
+	 * </ul>
 	 * 
 	 * @param client
 	 *            The client preferences.
-	 * @param variants
-	 *            The list of variants to compare.
-	 * @return The preferred variant.
-	 * @see <a
-	 *      href="http://httpd.apache.org/docs/2.2/en/content-negotiation.html#algorithm">Apache
-	 *      content negotiation algorithm</a>
+	 * @param defaultLanguage
+	 *            The default language.
+	 * @return The language preferences used for the content negotiation.
 	 */
-	@Override
-	public Variant getPreferredVariant(ClientInfo client,
-			List<Variant> variants, Language defaultLanguage) {
-		if (variants == null) {
-			return null;
+	private List<Preference<Language>> getLanguagePrefs(ClientInfo client,
+			Language defaultLanguage) {
+		List<Preference<Language>> result = new ArrayList<Preference<Language>>(
+				client.getAcceptedLanguages());
+		List<Preference<Language>> primaryLanguagePrefs = new ArrayList<Preference<Language>>();
+		// A default language preference is defined with a better weight
+		// than the "All languages" preference
+		Preference<Language> defaultLanguagePref = ((defaultLanguage == null) ? null
+				: new Preference<Language>(defaultLanguage, 0.003f));
+		Preference<Language> allLanguagesPref = new Preference<Language>(
+				Language.ALL, 0.001f);
+
+		if (result.isEmpty()) {
+			// All languages accepted.
+			result.add(new Preference<Language>(Language.ALL));
 		} else {
-			List<Language> variantLanguages = null;
-			MediaType variantMediaType = null;
-
-			boolean compatibleLanguage = false;
-			boolean compatibleMediaType = false;
-
-			Variant currentVariant = null;
-			Variant bestVariant = null;
-
-			Preference<Language> currentLanguagePref = null;
-			Preference<Language> bestLanguagePref = null;
-			Preference<MediaType> currentMediaTypePref = null;
-			Preference<MediaType> bestMediaTypePref = null;
-
-			float bestQuality = 0;
-			float bestLanguageScore = 0;
-			float bestMediaTypeScore = 0;
-
-			// If no language preference is defined or even none matches, we
-			// want to make sure that at least a variant can be returned.
-			// Based on experience, it appears that browsers are often
-			// misconfigured and don't expose all the languages actually
-			// understood by end users.
-			// Thus, a few other preferences are added to the user's ones:
-			// - primary languages inferred from and sorted according to the
-			// user's preferences with quality between 0.005 and 0.006
-			// - default language (if any) with quality 0.003
-			// - primary language of the default language (if available) with
-			// quality 0.002
-			// - all languages with quality 0.001
-			List<Preference<Language>> languagePrefs = client
-					.getAcceptedLanguages();
-			List<Preference<Language>> primaryLanguagePrefs = new ArrayList<Preference<Language>>();
-			// A default language preference is defined with a better weight
-			// than the "All languages" preference
-			Preference<Language> defaultLanguagePref = ((defaultLanguage == null) ? null
-					: new Preference<Language>(defaultLanguage, 0.003f));
-			Preference<Language> allLanguagesPref = new Preference<Language>(
-					Language.ALL, 0.001f);
-
-			if (languagePrefs.isEmpty()) {
-				// All languages accepted.
-				languagePrefs.add(new Preference<Language>(Language.ALL));
-			} else {
-				// Get the primary language preferences that are not currently
-				// accepted by the client
-				List<String> list = new ArrayList<String>();
-				for (Preference<Language> preference : languagePrefs) {
-					Language language = preference.getMetadata();
-					if (!language.getSubTags().isEmpty()) {
-						if (!list.contains(language.getPrimaryTag())) {
-							list.add(language.getPrimaryTag());
-							primaryLanguagePrefs
-									.add(new Preference<Language>(new Language(
-											language.getPrimaryTag()),
-											0.005f + (0.001f * preference
-													.getQuality())));
-						}
-					}
-				}
-				// If the default language is a "primary" language but is not
-				// present in the list of all primary languages, add it.
-				if (defaultLanguage != null
-						&& !defaultLanguage.getSubTags().isEmpty()) {
-					if (!list.contains(defaultLanguage.getPrimaryTag())) {
+			// Get the primary language preferences that are not currently
+			// accepted by the client
+			List<String> list = new ArrayList<String>();
+			for (Preference<Language> preference : result) {
+				Language language = preference.getMetadata();
+				if (!language.getSubTags().isEmpty()) {
+					if (!list.contains(language.getPrimaryTag())) {
+						list.add(language.getPrimaryTag());
 						primaryLanguagePrefs.add(new Preference<Language>(
-								new Language(defaultLanguage.getPrimaryTag()),
-								0.002f));
+								new Language(language.getPrimaryTag()),
+								0.005f + (0.001f * preference.getQuality())));
 					}
 				}
-
 			}
-
-			// Client preferences are altered
-			languagePrefs.addAll(primaryLanguagePrefs);
-			if (defaultLanguagePref != null) {
-				languagePrefs.add(defaultLanguagePref);
-				// In this case, if the client adds the "all languages"
-				// preference, the latter is removed, in order to support the
-				// default preference defined by the server
-				List<Preference<Language>> list = new ArrayList<Preference<Language>>();
-				for (Preference<Language> preference : languagePrefs) {
-					Language language = preference.getMetadata();
-					if (!language.equals(Language.ALL)) {
-						list.add(preference);
-					}
+			// If the default language is a "primary" language but is not
+			// present in the list of all primary languages, add it.
+			if (defaultLanguage != null
+					&& !defaultLanguage.getSubTags().isEmpty()) {
+				if (!list.contains(defaultLanguage.getPrimaryTag())) {
+					primaryLanguagePrefs.add(new Preference<Language>(
+							new Language(defaultLanguage.getPrimaryTag()),
+							0.002f));
 				}
-				languagePrefs = list;
 			}
-			languagePrefs.add(allLanguagesPref);
-
-			// For each available variant, we will compute the negotiation score
-			// which is dependant on the language score and on the media type
-			// score
-			for (Iterator<Variant> iter1 = variants.iterator(); iter1.hasNext();) {
-				currentVariant = iter1.next();
-				variantLanguages = currentVariant.getLanguages();
-				variantMediaType = currentVariant.getMediaType();
-
-				// All languages of the current variant are scored.
-				for (Language variantLanguage : variantLanguages) {
-					// For each language preference defined in the call
-					// Calculate the score and remember the best scoring
-					// preference
-					for (Iterator<Preference<Language>> iter2 = languagePrefs
-							.iterator(); (variantLanguage != null)
-							&& iter2.hasNext();) {
-						currentLanguagePref = iter2.next();
-						float currentScore = getScore(variantLanguage,
-								currentLanguagePref.getMetadata());
-						boolean compatiblePref = (currentScore != -1.0f);
-						// 3) Do we have a better preference?
-						// currentScore *= currentPref.getQuality();
-						if (compatiblePref
-								&& ((bestLanguagePref == null) || (currentScore > bestLanguageScore))) {
-							bestLanguagePref = currentLanguagePref;
-							bestLanguageScore = currentScore;
-						}
-					}
+		}
+
+		result.addAll(primaryLanguagePrefs);
+		if (defaultLanguagePref != null) {
+			result.add(defaultLanguagePref);
+			// In this case, if the client adds the "all languages"
+			// preference, the latter is removed, in order to support the
+			// default preference defined by the server
+			List<Preference<Language>> list = new ArrayList<Preference<Language>>();
+			for (Preference<Language> preference : result) {
+				Language language = preference.getMetadata();
+				if (!language.equals(Language.ALL)) {
+					list.add(preference);
 				}
+			}
+			result = list;
+		}
+		result.add(allLanguagesPref);
 
-				// Are the preferences compatible with the current variant
-				// language?
-				compatibleLanguage = (variantLanguages.isEmpty())
-						|| (bestLanguagePref != null);
+		return result;
+	}
 
-				// If no media type preference is defined, assume that all media
-				// types are acceptable
-				List<Preference<MediaType>> mediaTypePrefs = client
-						.getAcceptedMediaTypes();
-				if (mediaTypePrefs.size() == 0)
-					mediaTypePrefs
-							.add(new Preference<MediaType>(MediaType.ALL));
+	/**
+	 * Returns the shared cache of content negotiation results, with its hit
+	 * and miss counters.
+	 * 
+	 * @return The shared cache of content negotiation results.
+	 */
+	public NegotiationCache getNegotiationCache() {
+		return this.negotiationCache;
+	}
+
+	/**
+	 * Appends a media type and its parameters to a negotiation key. The key
+	 * doesn't rely on the string representation of the media type which might
+	 * not include the parameters used to score the variants.
+	 * 
+	 * @param sb
+	 *            The key being built.
+	 * @param mediaType
+	 *            The media type or null.
+	 */
+	private static void appendMediaType(StringBuilder sb, MediaType mediaType) {
+		if (mediaType != null) {
+			sb.append(mediaType.getName());
+
+			for (Parameter param : mediaType.getParameters()) {
+				sb.append(';').append(param.getName()).append('=').append(
+						param.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of a content negotiation, describing the client
+	 * preferences, the default language and the relevant dimensions of the
+	 * variants, including the media type parameters. Equal keys lead to the
+	 * same preferred variant index.
+	 * 
+	 * @param client
+	 *            The client preferences.
+	 * @param variants
+	 *            The list of variants to compare.
+	 * @param defaultLanguage
+	 *            The default language.
+	 * @return The negotiation key, or null if it is too long to be cached.
+	 */
+	private String getNegotiationKey(ClientInfo client,
+			List<Variant> variants, Language defaultLanguage) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(defaultLanguage).append('\u0002');
 
-				// For each media range preference defined in the call
-				// Calculate the score and remember the best scoring preference
-				for (Iterator<Preference<MediaType>> iter2 = mediaTypePrefs
-						.iterator(); compatibleLanguage && iter2.hasNext();) {
-					currentMediaTypePref = iter2.next();
-					float currentScore = getScore(variantMediaType,
-							currentMediaTypePref.getMetadata());
+		for (Preference<Language> pref : client.getAcceptedLanguages()) {
+			sb.append(pref.getMetadata()).append('\u0001').append(
+					pref.getQuality()).append('\u0001');
+		}
+		sb.append('\u0002');
+
+		for (Preference<MediaType> pref : client.getAcceptedMediaTypes()) {
+			appendMediaType(sb, pref.getMetadata());
+			sb.append('\u0001').append(pref.getQuality()).append('\u0001');
+
+			if (sb.length() > NegotiationCache.MAX_KEY_LENGTH) {
+				return null;
+			}
+		}
+		sb.append('\u0002');
+
+		for (Variant variant : variants) {
+			appendMediaType(sb, variant.getMediaType());
+			for (Language language : variant.getLanguages()) {
+				sb.append('\u0001').append(language);
+			}
+			sb.append('\u0002');
+
+			if (sb.length() > NegotiationCache.MAX_KEY_LENGTH) {
+				return null;
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the index of the preferred variant according to the client
+	 * preferences.
+	 * 
+	 * @param variants
+	 *            The list of variants to compare.
+	 * @param languagePrefs
+	 *            The language preferences to use.
+	 * @param mediaTypePrefs
+	 *            The media type preferences to use.
+	 * @return The index of the preferred variant or -1 if none is acceptable.
+	 */
+	private int getPreferredIndex(List<Variant> variants,
+			List<Preference<Language>> languagePrefs,
+			List<Preference<MediaType>> mediaTypePrefs) {
+		List<Language> variantLanguages = null;
+		MediaType variantMediaType = null;
+
+		boolean compatibleLanguage = false;
+		boolean compatibleMediaType = false;
+
+		Variant currentVariant = null;
+		int bestIndex = -1;
+
+		Preference<Language> currentLanguagePref = null;
+		Preference<Language> bestLanguagePref = null;
+		Preference<MediaType> currentMediaTypePref = null;
+		Preference<MediaType> bestMediaTypePref = null;
+
+		float bestQuality = 0;
+		float bestLanguageScore = 0;
+		float bestMediaTypeScore = 0;
+
+		// For each available variant, we will compute the negotiation score
+		// which is dependant on the language score and on the media type
+		// score
+		for (int i = 0; i < variants.size(); i++) {
+			currentVariant = variants.get(i);
+			variantLanguages = currentVariant.getLanguages();
+			variantMediaType = currentVariant.getMediaType();
+
+			// All languages of the current variant are scored.
+			for (Language variantLanguage : variantLanguages) {
+				// For each language preference defined in the call
+				// Calculate the score and remember the best scoring
+				// preference
+				for (Iterator<Preference<Language>> iter2 = languagePrefs
+						.iterator(); (variantLanguage != null)
+						&& iter2.hasNext();) {
+					currentLanguagePref = iter2.next();
+					float currentScore = getScore(variantLanguage,
+							currentLanguagePref.getMetadata());
 					boolean compatiblePref = (currentScore != -1.0f);
 					// 3) Do we have a better preference?
 					// currentScore *= currentPref.getQuality();
 					if (compatiblePref
-							&& ((bestMediaTypePref == null) || (currentScore > bestMediaTypeScore))) {
-						bestMediaTypePref = currentMediaTypePref;
-						bestMediaTypeScore = currentScore;
+							&& ((bestLanguagePref == null) || (currentScore > bestLanguageScore))) {
+						bestLanguagePref = currentLanguagePref;
+						bestLanguageScore = currentScore;
 					}
+				}
+			}
 
+			// Are the preferences compatible with the current variant
+			// language?
+			compatibleLanguage = (variantLanguages.isEmpty())
+					|| (bestLanguagePref != null);
+
+			// For each media range preference defined in the call
+			// Calculate the score and remember the best scoring preference
+			for (Iterator<Preference<MediaType>> iter2 = mediaTypePrefs
+					.iterator(); compatibleLanguage && iter2.hasNext();) {
+				currentMediaTypePref = iter2.next();
+				float currentScore = getScore(variantMediaType,
+						currentMediaTypePref.getMetadata());
+				boolean compatiblePref = (currentScore != -1.0f);
+				// 3) Do we have a better preference?
+				// currentScore *= currentPref.getQuality();
+				if (compatiblePref
+						&& ((bestMediaTypePref == null) || (currentScore > bestMediaTypeScore))) {
+					bestMediaTypePref = currentMediaTypePref;
+					bestMediaTypeScore = currentScore;
 				}
 
-				// Are the preferences compatible with the current media type?
-				compatibleMediaType = (variantMediaType == null)
-						|| (bestMediaTypePref != null);
-
-				if (compatibleLanguage && compatibleMediaType) {
-					// Do we have a compatible media type?
-					float currentQuality = 0;
-					if (bestLanguagePref != null) {
-						currentQuality += (bestLanguagePref.getQuality() * 10F);
-					} else if (!variantLanguages.isEmpty()) {
-						currentQuality += 0.1F * 10F;
-					}
+			}
 
-					if (bestMediaTypePref != null) {
-						// So, let's conclude on the current variant, its
-						// quality
-						currentQuality += bestMediaTypePref.getQuality();
-					}
+			// Are the preferences compatible with the current media type?
+			compatibleMediaType = (variantMediaType == null)
+					|| (bestMediaTypePref != null);
+
+			if (compatibleLanguage && compatibleMediaType) {
+				// Do we have a compatible media type?
+				float currentQuality = 0;
+				if (bestLanguagePref != null) {
+					currentQuality += (bestLanguagePref.getQuality() * 10F);
+				} else if (!variantLanguages.isEmpty()) {
+					currentQuality += 0.1F * 10F;
+				}
 
-					if (bestVariant == null) {
-						bestVariant = currentVariant;
-						bestQuality = currentQuality;
-					} else if (currentQuality > bestQuality) {
-						bestVariant = currentVariant;
-						bestQuality = currentQuality;
-					}
+				if (bestMediaTypePref != null) {
+					// So, let's conclude on the current variant, its
+					// quality
+					currentQuality += bestMediaTypePref.getQuality();
 				}
 
-				// Reset the preference variables
-				bestLanguagePref = null;
-				bestLanguageScore = 0;
-				bestMediaTypePref = null;
-				bestMediaTypeScore = 0;
+				if (bestIndex == -1) {
+					bestIndex = i;
+					bestQuality = currentQuality;
+				} else if (currentQuality > bestQuality) {
+					bestIndex = i;
+					bestQuality = currentQuality;
+				}
 			}
 
-			return bestVariant;
+			// Reset the preference variables
+			bestLanguagePref = null;
+			bestLanguageScore = 0;
+			bestMediaTypePref = null;
+			bestMediaTypeScore = 0;
 		}
+
+		return bestIndex;
+	}
+
+	/**
+	 * Returns the preferred variant representation for a given resource
+	 * according the the client preferences. The client preferences aren't
+	 * modified. As the result only depends on the client preferences, the
+	 * default language and the languages and media types of the variants, it
+	 * is cached for the next calls with equivalent variants and preferences,
+	 * unless they are too numerous.
+	 * 
+	 * @param client
+	 *            The client preferences.
+	 * @param variants
+	 *            The list of variants to compare.
+	 * @return The preferred variant.
+	 * @see <a
+	 *      href="http://httpd.apache.org/docs/2.2/en/content-negotiation.html#algorithm">Apache
+	 *      content negotiation algorithm</a>
+	 */
+	@Override
+	public Variant getPreferredVariant(ClientInfo client,
+			List<Variant> variants, Language defaultLanguage) {
+		Variant result = null;
+
+		if ((variants != null) && !variants.isEmpty()) {
+			String key = getNegotiationKey(client, variants, defaultLanguage);
+			Integer index = (key == null) ? null : getNegotiationCache().get(
+					key);
+
+			if (index == null) {
+				// If no media type preference is defined, assume that all
+				// media types are acceptable
+				List<Preference<MediaType>> mediaTypePrefs = client
+						.getAcceptedMediaTypes();
+				if (mediaTypePrefs.isEmpty()) {
+					mediaTypePrefs = new ArrayList<Preference<MediaType>>();
+					mediaTypePrefs
+							.add(new Preference<MediaType>(MediaType.ALL));
+				}
+
+				index = getPreferredIndex(variants, getLanguagePrefs(client,
+						defaultLanguage), mediaTypePrefs);
+
+				if (key != null) {
+					getNegotiationCache().put(key, index);
+				}
+			}
+
+			if (index >= 0) {
+				result = variants.get(index);
+			}
+		}
+
+		return result;
 	}
 
 	/**
@@ -851,4 +1158,18 @@ public class Engine extends org.restlet.util.Engine {
 		}
 	}
 
+	/**
+	 * Sets the maximum number of pooled pump threads.
+	 * 
+	 * @param maxPumpThreads
+	 *            The maximum number of pooled pump threads.
+	 */
+	public synchronized void setMaxPumpThreads(int maxPumpThreads) {
+		this.maxPumpThreads = maxPumpThreads;
+
+		if (this.pumpExecutor != null) {
+			this.pumpExecutor.setMaximumPoolSize(maxPumpThreads);
+		}
+	}
+
 }
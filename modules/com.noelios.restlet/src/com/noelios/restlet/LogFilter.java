@@ -50,6 +50,32 @@ import com.noelios.restlet.util.IdentClient;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class LogFilter extends Filter {
+	/**
+	 * Date and time of a log entry, at a precision of one second.
+	 */
+	private static final class LogTime {
+		/** The number of seconds since the epoch. */
+		private final long seconds;
+
+		/** The formatted date and time, separated by a tab. */
+		private final String value;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param seconds
+		 *            The number of seconds since the epoch.
+		 */
+		private LogTime(long seconds) {
+			long time = seconds * 1000L;
+			this.seconds = seconds;
+			this.value = String.format("%tF\t%tT", time, time);
+		}
+	}
+
+	/** The date and time of the last log entry. */
+	private volatile LogTime lastLogTime;
+
 	/** Obtain a suitable logger. */
 	private Logger logger;
 
@@ -130,14 +156,15 @@ public class LogFilter extends Filter {
 	protected String formatDefault(Request request, Response response,
 			int duration) {
 		StringBuilder sb = new StringBuilder();
-		long currentTime = System.currentTimeMillis();
-
-		// Append the date of the request
-		sb.append(String.format("%tF", currentTime));
-		sb.append('\t');
+		long currentSeconds = System.currentTimeMillis() / 1000L;
 
-		// Append the time of the request
-		sb.append(String.format("%tT", currentTime));
+		// Append the date and time of the request, formatted once per second
+		LogTime logTime = this.lastLogTime;
+		if ((logTime == null) || (logTime.seconds != currentSeconds)) {
+			logTime = new LogTime(currentSeconds);
+			this.lastLogTime = logTime;
+		}
+		sb.append(logTime.value);
 		sb.append('\t');
 
 		// Append the client IP address
@@ -239,4 +266,4 @@ public class LogFilter extends Filter {
 		return this.logTemplate.format(request, response);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
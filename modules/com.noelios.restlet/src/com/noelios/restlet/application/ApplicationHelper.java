@@ -150,6 +150,11 @@ public class ApplicationHelper extends Helper {
 			addFilter(createDecoderFilter(getApplication()));
 		}
 
+		// Addition of cache filter
+		if (getApplication().getCacheService().isEnabled()) {
+			addFilter(createCacheFilter(getApplication()));
+		}
+
 		// Attach the Application's root Restlet
 		if (getFirst() == null) {
 			setFirst(getApplication().getRoot());
@@ -187,6 +192,18 @@ public class ApplicationHelper extends Helper {
 		return new LogFilter(context, logService);
 	}
 
+	/**
+	 * Creates a new cache filter. Allows overriding.
+	 * 
+	 * @param application
+	 *            The parent application.
+	 * @return The new cache filter.
+	 */
+	protected Filter createCacheFilter(Application application) {
+		return new CacheFilter(application.getContext(), application
+				.getCacheService());
+	}
+
 	/**
 	 * Creates a new decoder filter. Allows overriding.
 	 * 
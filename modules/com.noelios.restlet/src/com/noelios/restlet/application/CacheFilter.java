@@ -0,0 +1,1147 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package com.noelios.restlet.application;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.Filter;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Conditions;
+import org.restlet.data.Dimension;
+import org.restlet.data.Metadata;
+import org.restlet.data.Method;
+import org.restlet.data.Preference;
+import org.restlet.data.Range;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.InputRepresentation;
+import org.restlet.resource.RangeRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Variant;
+import org.restlet.service.CacheService;
+
+/**
+ * Filter caching the response entities of the next Restlet. Only successful
+ * responses to GET requests are stored, when their entity has an expiration
+ * date or a validator (tag or modification date), doesn't depend on the client
+ * address or time and sets no cookie. Requests with an authentication response
+ * or with cookies are never answered from the cache, nor cached.<br/> <br/>
+ * Entries are keyed by the
+ * request method, the resource URI and the client preferences matching the
+ * negotiation dimensions of the cached response. Fresh entries are served
+ * without calling the next Restlet. Expired ones are revalidated with a
+ * conditional request, and served again if the next Restlet answers with a 304
+ * (Not Modified) status. The metadata of the entity sent with the 304 response,
+ * if any, then renews the expiration date, modification date and tag of the
+ * cached entry. Otherwise, the entry is kept fresh for its initial lifetime
+ * again. The conditions and byte ranges of the client request
+ * are then applied to the cached entity. Successful calls with other methods
+ * invalidate the entries of their resource.<br/> <br/> The memory used is
+ * bounded and the least recently used entries are evicted first, optionally
+ * spilling them to a disk directory which has its own bound.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class CacheFilter extends Filter {
+	/**
+	 * Cached response entity.
+	 */
+	private static final class Entry {
+		/** The cached content, or null if spilled to disk. */
+		private final byte[] content;
+
+		/** The negotiation dimensions of the cached response. */
+		private final Set<Dimension> dimensions;
+
+		/** The file holding the cached content, or null if held in memory. */
+		private final File file;
+
+		/** The entry key. */
+		private final String key;
+
+		/** The metadata of the cached entity. */
+		private final Variant metadata;
+
+		/** The time in ms the cached entity is fresh for after its retrieval. */
+		private final long lifetime;
+
+		/** The key of the cached resource. */
+		private final String resourceKey;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param resourceKey
+		 *            The key of the cached resource.
+		 * @param key
+		 *            The entry key.
+		 * @param dimensions
+		 *            The negotiation dimensions of the cached response.
+		 * @param metadata
+		 *            The metadata of the cached entity.
+		 * @param content
+		 *            The cached content, or null if spilled to disk.
+		 * @param file
+		 *            The file holding the cached content, or null if held in
+		 *            memory.
+		 * @param lifetime
+		 *            The time in ms the cached entity is fresh for after its
+		 *            retrieval.
+		 */
+		private Entry(String resourceKey, String key,
+				Set<Dimension> dimensions, Variant metadata, byte[] content,
+				File file, long lifetime) {
+			this.resourceKey = resourceKey;
+			this.lifetime = lifetime;
+			this.key = key;
+			this.dimensions = dimensions;
+			this.metadata = metadata;
+			this.content = content;
+			this.file = file;
+		}
+
+		/**
+		 * Creates a new representation of the cached entity.
+		 * 
+		 * @return A new representation of the cached entity.
+		 */
+		private Representation createRepresentation() {
+			Representation result;
+
+			if (this.content != null) {
+				result = new InputRepresentation(new ByteArrayInputStream(
+						this.content), this.metadata.getMediaType());
+			} else {
+				result = new FileRepresentation(this.file, this.metadata
+						.getMediaType(), 0);
+			}
+
+			copyMetadata(this.metadata, result);
+			return result;
+		}
+
+		/**
+		 * Returns the conditions revalidating the cached entity.
+		 * 
+		 * @return The conditions revalidating the cached entity.
+		 */
+		private Conditions createValidation() {
+			Conditions result = new Conditions();
+
+			if (this.metadata.getTag() != null) {
+				result.setNoneMatch(Arrays.asList(this.metadata.getTag()));
+			} else {
+				result.setModifiedSince(this.metadata.getModificationDate());
+			}
+
+			return result;
+		}
+
+		/**
+		 * Returns the size of the cached content.
+		 * 
+		 * @return The size of the cached content.
+		 */
+		private long getSize() {
+			return this.metadata.getSize();
+		}
+
+		/**
+		 * Indicates if the cached entity has not expired yet.
+		 * 
+		 * @return True if the cached entity has not expired yet.
+		 */
+		private boolean isFresh() {
+			return CacheFilter.isFresh(this.metadata);
+		}
+	}
+
+	/**
+	 * Entries cached for a resource.
+	 */
+	private static final class Variants {
+		/** The negotiation dimensions of the cached responses. */
+		private final Set<Dimension> dimensions;
+
+		/** The keys of the cached entries. */
+		private final Set<String> keys;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param dimensions
+		 *            The negotiation dimensions of the cached responses.
+		 */
+		private Variants(Set<Dimension> dimensions) {
+			this.dimensions = dimensions;
+			this.keys = new HashSet<String>();
+		}
+	}
+
+	/** Size of the buffer used to read the entities to cache. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Copies the metadata of a variant to another one.
+	 * 
+	 * @param source
+	 *            The variant to copy from.
+	 * @param target
+	 *            The variant to update.
+	 */
+	private static void copyMetadata(Variant source, Variant target) {
+		target.setMediaType(source.getMediaType());
+		target.setCharacterSet(source.getCharacterSet());
+		target.getEncodings().addAll(source.getEncodings());
+		target.getLanguages().addAll(source.getLanguages());
+		target.setIdentifier(source.getIdentifier());
+		target.setExpirationDate(source.getExpirationDate());
+		target.setModificationDate(source.getModificationDate());
+		target.setTag(source.getTag());
+		target.setSize(source.getSize());
+	}
+
+	/**
+	 * Returns the time in ms a variant is still fresh for.
+	 * 
+	 * @param variant
+	 *            The variant.
+	 * @return The time in ms the variant is still fresh for, or zero.
+	 */
+	private static long getLifetime(Variant variant) {
+		return (variant.getExpirationDate() == null) ? 0 : Math.max(0, variant
+				.getExpirationDate().getTime()
+				- System.currentTimeMillis());
+	}
+
+	/**
+	 * Indicates if a variant has not expired yet.
+	 * 
+	 * @param variant
+	 *            The variant to test.
+	 * @return True if the variant has not expired yet.
+	 */
+	private static boolean isFresh(Variant variant) {
+		return (variant.getExpirationDate() != null)
+				&& (variant.getExpirationDate().getTime() > System
+						.currentTimeMillis());
+	}
+
+	/** The entries spilled to disk, in access order. */
+	private final LinkedHashMap<String, Entry> diskEntries;
+
+	/** The number of bytes cached on disk. */
+	private long diskSize;
+
+	/** The number of requests answered without calling the next Restlet. */
+	private final AtomicLong hits;
+
+	/**
+	 * The entries cached for each resource. This index also guards the other
+	 * maps and sizes.
+	 */
+	private final Map<String, Variants> index;
+
+	/** The maximum number of bytes cached on disk. */
+	private final long maxDiskSize;
+
+	/** The maximum size of a cached entity. */
+	private final long maxEntrySize;
+
+	/** The maximum number of bytes cached in memory. */
+	private final long maxMemorySize;
+
+	/** The entries held in memory, in access order. */
+	private final LinkedHashMap<String, Entry> memoryEntries;
+
+	/** The number of bytes cached in memory. */
+	private long memorySize;
+
+	/** The number of cacheable requests not answered by the cache. */
+	private final AtomicLong misses;
+
+	/** The directory receiving the entries evicted from memory. */
+	private final File spillDirectory;
+
+	/**
+	 * The number of requests answered by the cache after a revalidation with
+	 * the next Restlet.
+	 */
+	private final AtomicLong validations;
+
+	/**
+	 * Constructor using the default cache settings.
+	 * 
+	 * @param context
+	 *            The context.
+	 */
+	public CacheFilter(Context context) {
+		this(context, new CacheService(true));
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param cacheService
+	 *            The cache service descriptor.
+	 */
+	public CacheFilter(Context context, CacheService cacheService) {
+		super(context);
+		this.maxMemorySize = cacheService.getMaxMemorySize();
+		this.maxEntrySize = cacheService.getMaxEntrySize();
+		this.spillDirectory = cacheService.getSpillDirectory();
+		this.maxDiskSize = cacheService.getMaxDiskSize();
+		this.index = new HashMap<String, Variants>();
+		this.memoryEntries = new LinkedHashMap<String, Entry>(16, 0.75F,
+				true);
+		this.diskEntries = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+		this.hits = new AtomicLong();
+		this.validations = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Removes all the cached entries.
+	 */
+	public void clear() {
+		List<File> deleted = new ArrayList<File>();
+
+		synchronized (this.index) {
+			for (Entry entry : this.diskEntries.values()) {
+				deleted.add(entry.file);
+			}
+
+			this.index.clear();
+			this.memoryEntries.clear();
+			this.memorySize = 0;
+			this.diskEntries.clear();
+			this.diskSize = 0;
+		}
+
+		delete(deleted);
+	}
+
+	/**
+	 * Deletes the files of discarded entries.
+	 * 
+	 * @param files
+	 *            The files to delete.
+	 */
+	private void delete(List<File> files) {
+		for (File file : files) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry from the memory or disk maps, keeping it indexed.
+	 * Requires the index lock.
+	 * 
+	 * @param key
+	 *            The entry key.
+	 * @param deleted
+	 *            The list of files to delete.
+	 */
+	private void detach(String key, List<File> deleted) {
+		Entry entry = this.memoryEntries.remove(key);
+
+		if (entry != null) {
+			this.memorySize -= entry.getSize();
+		} else {
+			entry = this.diskEntries.remove(key);
+
+			if (entry != null) {
+				this.diskSize -= entry.getSize();
+				deleted.add(entry.file);
+			}
+		}
+	}
+
+	/**
+	 * Answers cacheable calls from the cache or stores the response entities
+	 * of the next Restlet. Other calls are simply forwarded, invalidating the
+	 * cached entries of their resource if successful.
+	 * 
+	 * @param request
+	 *            The request to handle.
+	 * @param response
+	 *            The response to update.
+	 */
+	@Override
+	protected void doHandle(Request request, Response response) {
+		Method method = request.getMethod();
+		boolean lookup = (Method.GET.equals(method) || Method.HEAD
+				.equals(method))
+				&& (request.getResourceRef() != null)
+				&& (request.getChallengeResponse() == null)
+				&& request.getCookies().isEmpty();
+
+		if (!lookup) {
+			super.doHandle(request, response);
+
+			if ((request.getResourceRef() != null)
+					&& !Method.GET.equals(method)
+					&& !Method.HEAD.equals(method)
+					&& !Method.OPTIONS.equals(method)
+					&& !Method.TRACE.equals(method)
+					&& (response.getStatus().isSuccess() || response
+							.getStatus().isRedirection())) {
+				invalidate(getResourceKey(request));
+			}
+		} else {
+			String resourceKey = getResourceKey(request);
+			Entry entry = lookup(request, resourceKey);
+
+			if ((entry != null) && entry.isFresh()) {
+				this.hits.incrementAndGet();
+				serve(request, response, entry);
+			} else if (entry != null) {
+				// Revalidate the cached entity with the next Restlet,
+				// asking for the complete entity
+				Conditions conditions = request.getConditions();
+				List<Range> ranges = request.getRanges();
+				request.setConditions(entry.createValidation());
+				request.setRanges(new ArrayList<Range>());
+
+				try {
+					super.doHandle(request, response);
+				} finally {
+					request.setConditions(conditions);
+					request.setRanges(ranges);
+				}
+
+				if (Status.REDIRECTION_NOT_MODIFIED.equals(response
+						.getStatus())) {
+					this.validations.incrementAndGet();
+					serve(request, response, renew(entry, response.getEntity()));
+				} else {
+					this.misses.incrementAndGet();
+					remove(entry);
+
+					if (Method.GET.equals(method)) {
+						entry = store(request, response, resourceKey);
+					}
+
+					if (entry != null) {
+						serve(request, response, entry);
+					} else if (Status.SUCCESS_OK.equals(response.getStatus())) {
+						// The client conditions were not evaluated
+						Status status = conditions.getStatus(method, response
+								.getEntity());
+
+						if (status != null) {
+							response.setStatus(status);
+							response.setEntity(null);
+						}
+					}
+				}
+			} else {
+				this.misses.incrementAndGet();
+				super.doHandle(request, response);
+
+				if (Method.GET.equals(method)) {
+					store(request, response, resourceKey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries held in memory beyond the
+	 * maximum size. Requires the index lock.
+	 * 
+	 * @param spilled
+	 *            The list of entries to spill to disk.
+	 */
+	private void evictMemory(List<Entry> spilled) {
+		Iterator<Entry> iter = this.memoryEntries.values().iterator();
+
+		while ((this.memorySize > getMaxMemorySize()) && iter.hasNext()) {
+			Entry entry = iter.next();
+			iter.remove();
+			this.memorySize -= entry.getSize();
+
+			if ((getSpillDirectory() != null)
+					&& (entry.getSize() <= getMaxDiskSize())) {
+				spilled.add(entry);
+			} else {
+				unindex(entry);
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries spilled to disk beyond the
+	 * maximum size. Requires the index lock.
+	 * 
+	 * @param deleted
+	 *            The list of files to delete.
+	 */
+	private void evictDisk(List<File> deleted) {
+		Iterator<Entry> iter = this.diskEntries.values().iterator();
+
+		while ((this.diskSize > getMaxDiskSize()) && iter.hasNext()) {
+			Entry entry = iter.next();
+			iter.remove();
+			this.diskSize -= entry.getSize();
+			deleted.add(entry.file);
+			unindex(entry);
+		}
+	}
+
+	/**
+	 * Returns the number of entries spilled to disk.
+	 * 
+	 * @return The number of entries spilled to disk.
+	 */
+	public int getDiskEntryCount() {
+		synchronized (this.index) {
+			return this.diskEntries.size();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes cached on disk.
+	 * 
+	 * @return The number of bytes cached on disk.
+	 */
+	public long getDiskSize() {
+		synchronized (this.index) {
+			return this.diskSize;
+		}
+	}
+
+	/**
+	 * Returns the number of requests answered without calling the next
+	 * Restlet.
+	 * 
+	 * @return The number of requests answered without calling the next
+	 *         Restlet.
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the ratio of cacheable requests answered with a cached entity,
+	 * either fresh or revalidated.
+	 * 
+	 * @return The hit ratio, between 0 and 1.
+	 */
+	public double getHitRatio() {
+		long hitCount = getHitCount() + getValidationCount();
+		long total = hitCount + getMissCount();
+		return (total == 0) ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Returns the key of a cached entry, combining the resource key with the
+	 * client preferences matching the negotiation dimensions.
+	 * 
+	 * @param resourceKey
+	 *            The key of the cached resource.
+	 * @param dimensions
+	 *            The negotiation dimensions of the cached response.
+	 * @param client
+	 *            The client preferences.
+	 * @return The entry key.
+	 */
+	private String getKey(String resourceKey, Set<Dimension> dimensions,
+			ClientInfo client) {
+		StringBuilder sb = new StringBuilder(resourceKey);
+
+		for (Dimension dimension : dimensions) {
+			sb.append('\u0002');
+
+			if (dimension == Dimension.CHARACTER_SET) {
+				appendPreferences(sb, client.getAcceptedCharacterSets());
+			} else if (dimension == Dimension.CLIENT_AGENT) {
+				sb.append(client.getAgent());
+			} else if (dimension == Dimension.ENCODING) {
+				appendPreferences(sb, client.getAcceptedEncodings());
+			} else if (dimension == Dimension.LANGUAGE) {
+				appendPreferences(sb, client.getAcceptedLanguages());
+			} else if (dimension == Dimension.MEDIA_TYPE) {
+				appendPreferences(sb, client.getAcceptedMediaTypes());
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a list of preferences to a key.
+	 * 
+	 * @param sb
+	 *            The key builder.
+	 * @param preferences
+	 *            The preferences to append.
+	 */
+	private <T extends Metadata> void appendPreferences(StringBuilder sb,
+			List<Preference<T>> preferences) {
+		for (Preference<T> pref : preferences) {
+			sb.append(pref.getMetadata()).append('\u0001').append(
+					pref.getQuality()).append('\u0001');
+		}
+	}
+
+	/**
+	 * Returns the maximum number of bytes cached on disk.
+	 * 
+	 * @return The maximum number of bytes cached on disk.
+	 */
+	public long getMaxDiskSize() {
+		return this.maxDiskSize;
+	}
+
+	/**
+	 * Returns the maximum size of a cached entity.
+	 * 
+	 * @return The maximum size of a cached entity.
+	 */
+	public long getMaxEntrySize() {
+		return this.maxEntrySize;
+	}
+
+	/**
+	 * Returns the maximum number of bytes cached in memory.
+	 * 
+	 * @return The maximum number of bytes cached in memory.
+	 */
+	public long getMaxMemorySize() {
+		return this.maxMemorySize;
+	}
+
+	/**
+	 * Returns the number of entries held in memory.
+	 * 
+	 * @return The number of entries held in memory.
+	 */
+	public int getMemoryEntryCount() {
+		synchronized (this.index) {
+			return this.memoryEntries.size();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes cached in memory.
+	 * 
+	 * @return The number of bytes cached in memory.
+	 */
+	public long getMemorySize() {
+		synchronized (this.index) {
+			return this.memorySize;
+		}
+	}
+
+	/**
+	 * Returns the number of cacheable requests not answered by the cache.
+	 * 
+	 * @return The number of cacheable requests not answered by the cache.
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the key of the resource targeted by a request. HEAD requests
+	 * share the entries of GET requests.
+	 * 
+	 * @param request
+	 *            The request.
+	 * @return The key of the resource.
+	 */
+	private String getResourceKey(Request request) {
+		return Method.GET.getName() + '\u0002'
+				+ request.getResourceRef().getTargetRef().toString();
+	}
+
+	/**
+	 * Returns the directory receiving the entries evicted from memory.
+	 * 
+	 * @return The spill directory or null if evicted entries are discarded.
+	 */
+	public File getSpillDirectory() {
+		return this.spillDirectory;
+	}
+
+	/**
+	 * Returns the number of requests answered by the cache after a
+	 * revalidation with the next Restlet.
+	 * 
+	 * @return The number of revalidated requests.
+	 */
+	public long getValidationCount() {
+		return this.validations.get();
+	}
+
+	/**
+	 * Removes all the entries cached for a resource.
+	 * 
+	 * @param resourceKey
+	 *            The key of the resource.
+	 */
+	private void invalidate(String resourceKey) {
+		List<File> deleted = new ArrayList<File>();
+
+		synchronized (this.index) {
+			Variants variants = this.index.remove(resourceKey);
+
+			if (variants != null) {
+				for (String key : variants.keys) {
+					detach(key, deleted);
+				}
+			}
+		}
+
+		delete(deleted);
+	}
+
+	/**
+	 * Indicates if the response entity can be stored.
+	 * 
+	 * @param response
+	 *            The response to test.
+	 * @return True if the response entity can be stored.
+	 */
+	private boolean isStorable(Response response) {
+		Representation entity = response.getEntity();
+		Set<Dimension> dimensions = response.getDimensions();
+
+		return Status.SUCCESS_OK.equals(response.getStatus())
+				&& (entity != null)
+				&& entity.isAvailable()
+				&& (entity.getSize() <= getMaxEntrySize())
+				&& (isFresh(entity) || (entity.getTag() != null) || (entity
+						.getModificationDate() != null))
+				&& response.getCookieSettings().isEmpty()
+				&& !dimensions.contains(Dimension.CLIENT_ADDRESS)
+				&& !dimensions.contains(Dimension.TIME)
+				&& !dimensions.contains(Dimension.UNSPECIFIED);
+	}
+
+	/**
+	 * Looks up the entry matching a request.
+	 * 
+	 * @param request
+	 *            The request.
+	 * @param resourceKey
+	 *            The key of the targeted resource.
+	 * @return The matching entry or null.
+	 */
+	private Entry lookup(Request request, String resourceKey) {
+		Set<Dimension> dimensions = null;
+
+		synchronized (this.index) {
+			Variants variants = this.index.get(resourceKey);
+
+			if (variants != null) {
+				dimensions = variants.dimensions;
+			}
+		}
+
+		Entry result = null;
+
+		if (dimensions != null) {
+			// Build the key outside the lock, the client preferences may
+			// need to be parsed
+			String key = getKey(resourceKey, dimensions, request
+					.getClientInfo());
+
+			synchronized (this.index) {
+				result = this.memoryEntries.get(key);
+
+				if (result == null) {
+					result = this.diskEntries.get(key);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Caches a new entry held in memory.
+	 * 
+	 * @param entry
+	 *            The entry to cache.
+	 */
+	private void put(Entry entry) {
+		List<Entry> spilled = new ArrayList<Entry>();
+		List<File> deleted = new ArrayList<File>();
+
+		synchronized (this.index) {
+			Variants variants = this.index.get(entry.resourceKey);
+
+			if ((variants != null)
+					&& !variants.dimensions.equals(entry.dimensions)) {
+				// The negotiation dimensions changed, the previous keys
+				// are obsolete
+				for (String key : variants.keys) {
+					detach(key, deleted);
+				}
+
+				variants = null;
+			}
+
+			if (variants == null) {
+				variants = new Variants(entry.dimensions);
+				this.index.put(entry.resourceKey, variants);
+			}
+
+			detach(entry.key, deleted);
+			variants.keys.add(entry.key);
+			this.memoryEntries.put(entry.key, entry);
+			this.memorySize += entry.getSize();
+			evictMemory(spilled);
+		}
+
+		delete(deleted);
+		spill(spilled);
+	}
+
+	/**
+	 * Reads the content of an entity to cache. If it turns out to be larger
+	 * than the maximum entry size, the response entity is replaced with one
+	 * streaming the content already read followed by the remaining one.
+	 * 
+	 * @param response
+	 *            The response to update.
+	 * @return The content read or null if too large.
+	 * @throws IOException
+	 */
+	private byte[] read(Response response) throws IOException {
+		Representation entity = response.getEntity();
+		ByteArrayOutputStream content = new ByteArrayOutputStream(
+				(entity.getSize() != Representation.UNKNOWN_SIZE) ? (int) entity
+						.getSize()
+						: BUFFER_SIZE);
+		InputStream stream = entity.getStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		boolean complete = (stream == null);
+
+		while (!complete && (content.size() <= getMaxEntrySize())) {
+			int count = stream.read(buffer);
+
+			if (count == -1) {
+				complete = true;
+			} else {
+				content.write(buffer, 0, count);
+			}
+		}
+
+		if (complete) {
+			if (stream != null) {
+				stream.close();
+			}
+
+			return content.toByteArray();
+		}
+
+		Representation remaining = new InputRepresentation(
+				new SequenceInputStream(new ByteArrayInputStream(content
+						.toByteArray()), stream), entity.getMediaType());
+		copyMetadata(entity, remaining);
+		response.setEntity(remaining);
+		return null;
+	}
+
+	/**
+	 * Removes an entry that could not be revalidated.
+	 * 
+	 * @param entry
+	 *            The entry to remove.
+	 */
+	private void remove(Entry entry) {
+		List<File> deleted = new ArrayList<File>();
+
+		synchronized (this.index) {
+			Variants variants = this.index.get(entry.resourceKey);
+
+			if ((variants != null) && variants.keys.contains(entry.key)) {
+				detach(entry.key, deleted);
+				unindex(entry);
+			}
+		}
+
+		delete(deleted);
+	}
+
+	/**
+	 * Renews a revalidated entry with the metadata sent with the 304 response.
+	 * Without an expiration date, the entry is fresh again for its initial
+	 * lifetime. The renewed entry replaces the previous one if it is still
+	 * cached.
+	 * 
+	 * @param entry
+	 *            The revalidated entry.
+	 * @param validated
+	 *            The entity sent with the 304 response or null.
+	 * @return The renewed entry.
+	 */
+	private Entry renew(Entry entry, Variant validated) {
+		Variant metadata = new Variant();
+		copyMetadata(entry.metadata, metadata);
+		long lifetime = entry.lifetime;
+
+		if ((validated != null) && (validated.getExpirationDate() != null)) {
+			metadata.setExpirationDate(validated.getExpirationDate());
+			lifetime = getLifetime(validated);
+		} else if (lifetime > 0) {
+			metadata.setExpirationDate(new Date(System.currentTimeMillis()
+					+ lifetime));
+		} else if (validated == null) {
+			// Nothing to renew
+			return entry;
+		}
+
+		if (validated != null) {
+			if (validated.getModificationDate() != null) {
+				metadata.setModificationDate(validated.getModificationDate());
+			}
+
+			if (validated.getTag() != null) {
+				metadata.setTag(validated.getTag());
+			}
+		}
+
+		Entry result = new Entry(entry.resourceKey, entry.key,
+				entry.dimensions, metadata, entry.content, entry.file,
+				lifetime);
+
+		synchronized (this.index) {
+			// The content is unchanged, only replace the entry
+			if (this.memoryEntries.get(entry.key) == entry) {
+				this.memoryEntries.put(entry.key, result);
+			} else if (this.diskEntries.get(entry.key) == entry) {
+				this.diskEntries.put(entry.key, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Answers a request with a cached entry, applying the request conditions
+	 * and byte ranges.
+	 * 
+	 * @param request
+	 *            The request to answer.
+	 * @param response
+	 *            The response to update.
+	 * @param entry
+	 *            The cached entry.
+	 */
+	private void serve(Request request, Response response, Entry entry) {
+		response.getDimensions().clear();
+		response.getDimensions().addAll(entry.dimensions);
+		Status status = request.getConditions().getStatus(
+				request.getMethod(), entry.metadata);
+
+		if (status != null) {
+			response.setStatus(status);
+			response.setEntity(null);
+		} else {
+			Representation entity = entry.createRepresentation();
+			response.setStatus(Status.SUCCESS_OK);
+			response.setEntity(entity);
+
+			if (Method.GET.equals(request.getMethod())
+					&& !request.getRanges().isEmpty()
+					&& Status.SUCCESS_PARTIAL_CONTENT.equals(request
+							.getConditions().getRangeStatus(entity))) {
+				RangeRepresentation partial = new RangeRepresentation(entity,
+						request.getRanges());
+
+				if (partial.getRanges().isEmpty()) {
+					// The empty entity still gives the complete length
+					response
+							.setStatus(Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE);
+				} else {
+					response.setStatus(Status.SUCCESS_PARTIAL_CONTENT);
+				}
+
+				response.setEntity(partial);
+			}
+		}
+	}
+
+	/**
+	 * Writes entries evicted from memory to the spill directory.
+	 * 
+	 * @param entries
+	 *            The entries to spill.
+	 */
+	private void spill(List<Entry> entries) {
+		List<File> deleted = new ArrayList<File>();
+
+		for (Entry entry : entries) {
+			Entry spilled = null;
+
+			try {
+				File file = File.createTempFile("entry", ".cache",
+						getSpillDirectory());
+				spilled = new Entry(entry.resourceKey, entry.key,
+						entry.dimensions, entry.metadata, null, file,
+						entry.lifetime);
+				OutputStream out = new FileOutputStream(file);
+
+				try {
+					out.write(entry.content);
+				} finally {
+					out.close();
+				}
+			} catch (IOException ioe) {
+				getLogger().log(Level.WARNING,
+						"Unable to spill a cached entity to disk", ioe);
+
+				if (spilled != null) {
+					deleted.add(spilled.file);
+					spilled = null;
+				}
+			}
+
+			synchronized (this.index) {
+				Variants variants = this.index.get(entry.resourceKey);
+				boolean indexed = (variants != null)
+						&& variants.keys.contains(entry.key)
+						&& !this.memoryEntries.containsKey(entry.key)
+						&& !this.diskEntries.containsKey(entry.key);
+
+				if (indexed && (spilled != null)) {
+					this.diskEntries.put(spilled.key, spilled);
+					this.diskSize += spilled.getSize();
+					evictDisk(deleted);
+				} else {
+					if (indexed) {
+						unindex(entry);
+					}
+
+					if (spilled != null) {
+						deleted.add(spilled.file);
+					}
+				}
+			}
+		}
+
+		delete(deleted);
+	}
+
+	/**
+	 * Stores the response entity if possible, replacing it with a new
+	 * representation of the cached entity.
+	 * 
+	 * @param request
+	 *            The handled request.
+	 * @param response
+	 *            The response to store.
+	 * @param resourceKey
+	 *            The key of the targeted resource.
+	 * @return The new entry or null.
+	 */
+	private Entry store(Request request, Response response, String resourceKey) {
+		Entry result = null;
+
+		if (isStorable(response)) {
+			Representation entity = response.getEntity();
+
+			try {
+				byte[] content = read(response);
+
+				if (content != null) {
+					Set<Dimension> dimensions = EnumSet
+							.noneOf(Dimension.class);
+					dimensions.addAll(response.getDimensions());
+					Variant metadata = new Variant();
+					copyMetadata(entity, metadata);
+					metadata.setSize(content.length);
+					result = new Entry(resourceKey, getKey(resourceKey,
+							dimensions, request.getClientInfo()), dimensions,
+							metadata, content, null, getLifetime(entity));
+					put(result);
+					response.setEntity(result.createRepresentation());
+				}
+			} catch (IOException ioe) {
+				getLogger().log(Level.WARNING,
+						"Unable to read the response entity to cache", ioe);
+				response.setStatus(Status.SERVER_ERROR_INTERNAL, ioe
+						.getMessage());
+				response.setEntity(null);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Removes an entry from the index of its resource. Requires the index
+	 * lock.
+	 * 
+	 * @param entry
+	 *            The entry to unindex.
+	 */
+	private void unindex(Entry entry) {
+		Variants variants = this.index.get(entry.resourceKey);
+
+		if (variants != null) {
+			variants.keys.remove(entry.key);
+
+			if (variants.keys.isEmpty()) {
+				this.index.remove(entry.resourceKey);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream decoding the HTTP chunked transfer coding. Chunk extensions
+ * and trailers are ignored. Closing this stream skips the remaining chunks but
+ * doesn't close the wrapped stream which can still be used to read the next
+ * message on a persistent connection.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ChunkedInputStream extends InputStream {
+    /** The maximum length of a chunk size or trailer line. */
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    /** The wrapped input stream. */
+    private final InputStream inputStream;
+
+    /** The number of bytes remaining in the current chunk. */
+    private long chunkRemaining;
+
+    /** Indicates if the last chunk was read. */
+    private boolean endReached;
+
+    /** Indicates if the first chunk size was read. */
+    private boolean started;
+
+    /**
+     * Constructor.
+     * 
+     * @param inputStream
+     *                The wrapped input stream.
+     */
+    public ChunkedInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.chunkRemaining = 0;
+        this.endReached = false;
+        this.started = false;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.endReached ? 0 : (int) Math.min(this.chunkRemaining,
+                this.inputStream.available());
+    }
+
+    /**
+     * Skips the remaining chunks and trailers. The wrapped stream isn't
+     * closed.
+     */
+    @Override
+    public void close() throws IOException {
+        byte[] buffer = new byte[2048];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // Skip the remaining bytes
+        }
+    }
+
+    /**
+     * Ensures that a chunk with remaining bytes is available, unless the end
+     * was reached.
+     * 
+     * @return False if the last chunk was read.
+     * @throws IOException
+     */
+    private boolean nextChunk() throws IOException {
+        if (!this.endReached && (this.chunkRemaining == 0)) {
+            if (this.started) {
+                // Read the line end following the previous chunk data
+                readLine();
+            }
+
+            this.started = true;
+            String line = readLine();
+            int extension = line.indexOf(';');
+            if (extension != -1) {
+                line = line.substring(0, extension);
+            }
+
+            try {
+                String size = line.trim();
+
+                if ((size.length() == 0)
+                        || (Character.digit(size.charAt(0), 16) == -1)) {
+                    // Long.parseLong accepts a sign, HTTP doesn't
+                    throw new NumberFormatException(size);
+                }
+
+                this.chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+
+            if (this.chunkRemaining == 0) {
+                // Skip the trailers until the empty line
+                while (readLine().length() > 0) {
+                    // Ignore the trailer
+                }
+
+                this.endReached = true;
+            }
+        }
+
+        return !this.endReached;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = -1;
+
+        if (nextChunk()) {
+            result = this.inputStream.read();
+
+            if (result == -1) {
+                throw new IOException(
+                        "Unable to read the chunked entity. End of stream reached too early.");
+            }
+
+            this.chunkRemaining--;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = -1;
+
+        if (len == 0) {
+            result = 0;
+        } else if (nextChunk()) {
+            result = this.inputStream.read(b, off, (int) Math.min(len,
+                    this.chunkRemaining));
+
+            if (result == -1) {
+                throw new IOException(
+                        "Unable to read the chunked entity. End of stream reached too early.");
+            }
+
+            this.chunkRemaining -= result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a line ending with a line feed, ignoring the carriage return. Lines
+     * longer than {@link #MAX_LINE_LENGTH} are rejected.
+     * 
+     * @return The line read.
+     * @throws IOException
+     */
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int next = this.inputStream.read();
+
+        while ((next != -1) && !HttpUtils.isLineFeed(next)) {
+            if (!HttpUtils.isCarriageReturn(next)) {
+                if (sb.length() >= MAX_LINE_LENGTH) {
+                    throw new IOException(
+                            "Unable to read the chunked entity. Line too long.");
+                }
+
+                sb.append((char) next);
+            }
+
+            next = this.inputStream.read();
+        }
+
+        if (next == -1) {
+            throw new IOException(
+                    "Unable to read the chunked entity. End of stream reached too early.");
+        }
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream encoding the written bytes with the HTTP chunked transfer
+ * coding. The bytes are buffered and sent as chunks of the buffer size.
+ * Closing this stream writes the last chunk but doesn't close the wrapped
+ * stream which can still be used to write the next message on a persistent
+ * connection.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ChunkedOutputStream extends OutputStream {
+    /** The default chunk buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** The hexadecimal digits. */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    /** The wrapped output stream. */
+    private final OutputStream outputStream;
+
+    /** The chunk buffer. */
+    private final byte[] buffer;
+
+    /** The number of bytes in the buffer. */
+    private int count;
+
+    /** Indicates if the stream was closed. */
+    private boolean closed;
+
+    /**
+     * Constructor using the default chunk buffer size.
+     * 
+     * @param outputStream
+     *                The wrapped output stream.
+     */
+    public ChunkedOutputStream(OutputStream outputStream) {
+        this(outputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param outputStream
+     *                The wrapped output stream.
+     * @param bufferSize
+     *                The chunk buffer size.
+     */
+    public ChunkedOutputStream(OutputStream outputStream, int bufferSize) {
+        this.outputStream = outputStream;
+        this.buffer = new byte[bufferSize];
+        this.count = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Writes the remaining bytes and the last chunk, then flushes the wrapped
+     * stream without closing it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.closed) {
+            writeChunk(this.buffer, 0, this.count);
+            this.count = 0;
+            this.outputStream.write('0');
+            writeLineEnd();
+            writeLineEnd();
+            this.outputStream.flush();
+            this.closed = true;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes as a chunk and flushes the wrapped stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!this.closed) {
+            writeChunk(this.buffer, 0, this.count);
+            this.count = 0;
+            this.outputStream.flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("Unable to write to a closed chunked stream");
+        } else if (len >= this.buffer.length - this.count) {
+            // Send the buffered bytes and the new ones as a single chunk
+            if (this.count > 0) {
+                writeChunkSize(this.count + len);
+                this.outputStream.write(this.buffer, 0, this.count);
+                this.outputStream.write(b, off, len);
+                writeLineEnd();
+                this.count = 0;
+            } else {
+                writeChunk(b, off, len);
+            }
+        } else {
+            System.arraycopy(b, off, this.buffer, this.count, len);
+            this.count += len;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.closed) {
+            throw new IOException("Unable to write to a closed chunked stream");
+        }
+
+        this.buffer[this.count++] = (byte) b;
+
+        if (this.count == this.buffer.length) {
+            writeChunk(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Writes a chunk. Empty chunks are ignored as they would end the entity.
+     * 
+     * @param b
+     *                The bytes to write.
+     * @param off
+     *                The offset of the first byte.
+     * @param len
+     *                The number of bytes.
+     * @throws IOException
+     */
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        if (len > 0) {
+            writeChunkSize(len);
+            this.outputStream.write(b, off, len);
+            writeLineEnd();
+        }
+    }
+
+    /**
+     * Writes the chunk size line.
+     * 
+     * @param size
+     *                The chunk size.
+     * @throws IOException
+     */
+    private void writeChunkSize(int size) throws IOException {
+        byte[] digits = new byte[8];
+        int index = digits.length;
+
+        do {
+            digits[--index] = HEX_DIGITS[size & 0xf];
+            size >>>= 4;
+        } while (size != 0);
+
+        this.outputStream.write(digits, index, digits.length - index);
+        writeLineEnd();
+    }
+
+    /**
+     * Writes a carriage return and a line feed.
+     * 
+     * @throws IOException
+     */
+    private void writeLineEnd() throws IOException {
+        this.outputStream.write(13); // CR
+        this.outputStream.write(10); // LF
+    }
+
+}
@@ -52,6 +52,7 @@ import com.noelios.restlet.util.CookieReader;
 import com.noelios.restlet.util.CookieUtils;
 import com.noelios.restlet.util.HeaderReader;
 import com.noelios.restlet.util.PreferenceUtils;
+import com.noelios.restlet.util.RangeUtils;
 import com.noelios.restlet.util.SecurityUtils;
 
 /**
@@ -205,6 +206,21 @@ public class HttpClientConverter extends HttpConverter {
                         iusDate);
             }
 
+            if (condition.getRangeTag() != null) {
+                requestHeaders.add(HttpConstants.HEADER_IF_RANGE, condition
+                        .getRangeTag().format());
+            } else if (condition.getRangeDate() != null) {
+                requestHeaders.add(HttpConstants.HEADER_IF_RANGE, DateUtils
+                        .format(condition.getRangeDate(),
+                                DateUtils.FORMAT_RFC_1123.get(0)));
+            }
+
+            // Add the byte ranges
+            if (!request.getRanges().isEmpty()) {
+                requestHeaders.add(HttpConstants.HEADER_RANGE, RangeUtils
+                        .format(request.getRanges()));
+            }
+
             // Add the cookies
             if (request.getCookies().size() > 0) {
                 String cookies = CookieUtils.format(request.getCookies());
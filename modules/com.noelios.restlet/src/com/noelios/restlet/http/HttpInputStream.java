@@ -0,0 +1,506 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.data.Parameter;
+
+/**
+ * Buffered input stream able to parse HTTP message heads. The start line and
+ * the headers are parsed by scanning the internal buffer for delimiters
+ * instead of reading the wrapped stream byte by byte. The bytes following the
+ * head stay in the buffer and are returned by the usual read methods, so the
+ * same instance must be used to read the entity and the next messages of a
+ * persistent connection. The default buffers are pooled and must be returned
+ * by calling {@link #release()} once the connection is closed.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class HttpInputStream extends InputStream {
+    /** The default buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** The maximum size of a single head line. */
+    public static final int MAX_LINE_SIZE = 64 * 1024;
+
+    /** The maximum number of buffers kept in the pool. */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /** The pool of default buffers. */
+    private static final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<byte[]>();
+
+    /** The number of buffers in the pool. */
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    /** Common header names that are reused instead of created. */
+    private static final String[] COMMON_HEADERS = {
+            HttpConstants.HEADER_ACCEPT, HttpConstants.HEADER_ACCEPT_CHARSET,
+            HttpConstants.HEADER_ACCEPT_ENCODING,
+            HttpConstants.HEADER_ACCEPT_LANGUAGE,
+            HttpConstants.HEADER_ACCEPT_RANGES, HttpConstants.HEADER_AGE,
+            HttpConstants.HEADER_ALLOW, HttpConstants.HEADER_AUTHORIZATION,
+            HttpConstants.HEADER_CACHE_CONTROL,
+            HttpConstants.HEADER_CONNECTION,
+            HttpConstants.HEADER_CONTENT_ENCODING,
+            HttpConstants.HEADER_CONTENT_LANGUAGE,
+            HttpConstants.HEADER_CONTENT_LENGTH,
+            HttpConstants.HEADER_CONTENT_LOCATION,
+            HttpConstants.HEADER_CONTENT_TYPE, HttpConstants.HEADER_COOKIE,
+            HttpConstants.HEADER_DATE, HttpConstants.HEADER_ETAG,
+            HttpConstants.HEADER_EXPECT, HttpConstants.HEADER_EXPIRES,
+            HttpConstants.HEADER_HOST, HttpConstants.HEADER_IF_MATCH,
+            HttpConstants.HEADER_IF_MODIFIED_SINCE,
+            HttpConstants.HEADER_IF_NONE_MATCH,
+            HttpConstants.HEADER_IF_RANGE,
+            HttpConstants.HEADER_IF_UNMODIFIED_SINCE,
+            HttpConstants.HEADER_LAST_MODIFIED,
+            HttpConstants.HEADER_LOCATION, HttpConstants.HEADER_PRAGMA,
+            HttpConstants.HEADER_RANGE, HttpConstants.HEADER_REFERRER,
+            HttpConstants.HEADER_SERVER, HttpConstants.HEADER_SET_COOKIE,
+            HttpConstants.HEADER_TRANSFER_ENCODING,
+            HttpConstants.HEADER_USER_AGENT, HttpConstants.HEADER_VARY,
+            HttpConstants.HEADER_VIA, HttpConstants.HEADER_WWW_AUTHENTICATE,
+            HttpConstants.HEADER_X_FORWARDED_FOR, "Keep-Alive" };
+
+    /** Common tokens of the start lines that are reused instead of created. */
+    private static final String[] COMMON_TOKENS = { "GET", "POST", "PUT",
+            "DELETE", "HEAD", "OPTIONS", "HTTP/1.1", "HTTP/1.0", "200", "OK" };
+
+    /**
+     * Indicates if the given bytes are equal to the characters of a string.
+     * 
+     * @param bytes
+     *                The byte array.
+     * @param offset
+     *                The offset of the first byte.
+     * @param length
+     *                The number of bytes.
+     * @param value
+     *                The string to compare to.
+     * @return True if the given bytes are equal to the characters of the
+     *         string.
+     */
+    private static boolean matches(byte[] bytes, int offset, int length,
+            String value) {
+        if (value.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** The wrapped input stream. */
+    private final InputStream source;
+
+    /** The buffer. */
+    private byte[] buffer;
+
+    /** Indicates if the buffer comes from the pool. */
+    private boolean pooled;
+
+    /** The index of the next byte to read. */
+    private int position;
+
+    /** The index after the last valid byte. */
+    private int limit;
+
+    /** The characters buffer used to create strings. */
+    private char[] chars;
+
+    /**
+     * Constructor using a pooled buffer.
+     * 
+     * @param source
+     *                The wrapped input stream.
+     */
+    public HttpInputStream(InputStream source) {
+        this.source = source;
+        this.buffer = bufferPool.poll();
+
+        if (this.buffer == null) {
+            this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+
+        this.pooled = true;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Constructor using a given buffer, already containing some bytes to read.
+     * 
+     * @param source
+     *                The wrapped input stream.
+     * @param buffer
+     *                The buffer to use.
+     * @param offset
+     *                The index of the first byte to read.
+     * @param length
+     *                The number of bytes available in the buffer.
+     */
+    public HttpInputStream(InputStream source, byte[] buffer, int offset,
+            int length) {
+        this.source = source;
+        this.buffer = buffer;
+        this.pooled = false;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (this.limit - this.position) + this.source.available();
+    }
+
+    /**
+     * Closes the wrapped stream and releases the buffer.
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+        this.source.close();
+    }
+
+    /**
+     * Reads more bytes from the wrapped stream and appends them to the buffer,
+     * compacting or growing it if needed.
+     * 
+     * @return False if the end of the stream was reached.
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (this.position == this.limit) {
+            this.position = 0;
+            this.limit = 0;
+        } else if ((this.position > 0) && (this.limit == this.buffer.length)) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0,
+                    this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+        }
+
+        if (this.limit == this.buffer.length) {
+            if (this.buffer.length >= MAX_LINE_SIZE) {
+                throw new IOException(
+                        "Unable to parse the HTTP head. Line too long.");
+            }
+
+            byte[] larger = new byte[Math.min(this.buffer.length * 2,
+                    MAX_LINE_SIZE)];
+            System.arraycopy(this.buffer, 0, larger, 0, this.limit);
+            release();
+            this.buffer = larger;
+        }
+
+        int read = this.source.read(this.buffer, this.limit,
+                this.buffer.length - this.limit);
+
+        if (read > 0) {
+            this.limit += read;
+        }
+
+        return (read != -1);
+    }
+
+    /**
+     * Returns the index of the first byte equal to the given value.
+     * 
+     * @param value
+     *                The value to look for.
+     * @param start
+     *                The index to start from.
+     * @param end
+     *                The index to stop at.
+     * @return The index found or -1.
+     */
+    private int indexOf(int value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (this.buffer[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the next byte without consuming it, blocking if needed.
+     * 
+     * @return The next byte or -1 if the end of the stream was reached.
+     * @throws IOException
+     */
+    public int peek() throws IOException {
+        while (this.position == this.limit) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+
+        return this.buffer[this.position] & 0xff;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = peek();
+
+        if (result != -1) {
+            this.position++;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result;
+
+        if (len == 0) {
+            result = 0;
+        } else if (this.position < this.limit) {
+            result = Math.min(len, this.limit - this.position);
+            System.arraycopy(this.buffer, this.position, b, off, result);
+            this.position += result;
+        } else if (len >= this.buffer.length) {
+            // Large reads bypass the buffer
+            result = this.source.read(b, off, len);
+        } else if (peek() == -1) {
+            result = -1;
+        } else {
+            result = read(b, off, len);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the next header line. Returns null if the empty line ending the
+     * headers was read.
+     * 
+     * @return The header read or null.
+     * @throws IOException
+     */
+    public Parameter readHeader() throws IOException {
+        Parameter result = null;
+        int lineEnd = readLine();
+        int start = this.position;
+
+        if (lineEnd > start) {
+            int colon = indexOf(':', start, lineEnd);
+
+            if (colon == -1) {
+                throw new IOException(
+                        "Unable to parse the header name. Colon character missing.");
+            }
+
+            // Skip any separator space between colon and header value
+            int valueStart = colon + 1;
+            while ((valueStart < lineEnd)
+                    && HttpUtils.isSpace(this.buffer[valueStart])) {
+                valueStart++;
+            }
+
+            result = new Parameter(toString(start, colon, COMMON_HEADERS),
+                    toString(valueStart, lineEnd, null));
+        }
+
+        this.position = lineEnd + 2;
+        return result;
+    }
+
+    /**
+     * Ensures that a complete line is buffered and returns the index of its
+     * ending carriage return.
+     * 
+     * @return The index of the carriage return ending the current line.
+     * @throws IOException
+     */
+    private int readLine() throws IOException {
+        int index = this.position;
+
+        for (;;) {
+            while (index < this.limit - 1) {
+                if (HttpUtils.isCarriageReturn(this.buffer[index])) {
+                    if (HttpUtils.isLineFeed(this.buffer[index + 1])) {
+                        return index;
+                    } else {
+                        throw new IOException(
+                                "Unable to parse the HTTP head. The carriage return must be followed by a line feed.");
+                    }
+                }
+
+                index++;
+            }
+
+            int offset = index - this.position;
+            if (!fill()) {
+                throw new IOException(
+                        "Unable to parse the HTTP head. End of stream reached too early.");
+            }
+            index = this.position + offset;
+        }
+    }
+
+    /**
+     * Reads the start line of a message and returns its three parts. For a
+     * request, the parts are the method, the request URI and the protocol
+     * version. For a response, the parts are the protocol version, the status
+     * code and the reason phrase. The third part can be empty.
+     * 
+     * @return The three parts of the start line.
+     * @throws IOException
+     */
+    public String[] readStartLine() throws IOException {
+        int lineEnd = readLine();
+        int start = this.position;
+        int firstSpace = indexOf(' ', start, lineEnd);
+        int secondSpace = (firstSpace == -1) ? -1 : indexOf(' ',
+                firstSpace + 1, lineEnd);
+
+        if (firstSpace == -1) {
+            throw new IOException(
+                    "Unable to parse the HTTP start line. Space character missing.");
+        }
+
+        String[] result = new String[3];
+        result[0] = toString(start, firstSpace, COMMON_TOKENS);
+
+        if (secondSpace == -1) {
+            result[1] = toString(firstSpace + 1, lineEnd, COMMON_TOKENS);
+            result[2] = "";
+        } else {
+            result[1] = toString(firstSpace + 1, secondSpace, COMMON_TOKENS);
+            result[2] = toString(secondSpace + 1, lineEnd, COMMON_TOKENS);
+        }
+
+        this.position = lineEnd + 2;
+        return result;
+    }
+
+    /**
+     * Returns the buffer to the pool if it comes from there. The stream can't
+     * be used afterwards.
+     */
+    public void release() {
+        if (this.pooled && (this.buffer.length == DEFAULT_BUFFER_SIZE)) {
+            if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+                bufferPool.offer(this.buffer);
+            } else {
+                pooledBuffers.decrementAndGet();
+            }
+        }
+
+        this.pooled = false;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result;
+
+        if (n <= 0) {
+            result = 0;
+        } else if (this.position < this.limit) {
+            result = Math.min(n, this.limit - this.position);
+            this.position += (int) result;
+        } else {
+            result = this.source.skip(n);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a string from the given bytes, decoded as ISO-8859-1 characters.
+     * If a candidate string is equal, it is returned instead.
+     * 
+     * @param start
+     *                The index of the first byte.
+     * @param end
+     *                The index after the last byte.
+     * @param candidates
+     *                The candidate strings or null.
+     * @return The string.
+     */
+    private String toString(int start, int end, String[] candidates) {
+        int length = end - start;
+
+        if (candidates != null) {
+            for (String candidate : candidates) {
+                if (matches(this.buffer, start, length, candidate)) {
+                    return candidate;
+                }
+            }
+        }
+
+        if ((this.chars == null) || (this.chars.length < length)) {
+            this.chars = new char[Math.max(length, 256)];
+        }
+
+        for (int i = 0; i < length; i++) {
+            this.chars[i] = (char) (this.buffer[start + i] & 0xff);
+        }
+
+        return new String(this.chars, 0, length);
+    }
+
+    /**
+     * Transfers the buffered bytes that were not read yet into a target byte
+     * buffer. This is useful to keep the bytes read ahead when the connection
+     * waits for its next request.
+     * 
+     * @param target
+     *                The target byte buffer.
+     * @throws IOException
+     */
+    public void transferBuffered(ByteBuffer target) throws IOException {
+        int length = this.limit - this.position;
+
+        if (length > target.remaining()) {
+            throw new IOException(
+                    "Unable to keep the pipelined bytes. Buffer too small.");
+        }
+
+        target.put(this.buffer, this.position, length);
+        this.position = this.limit;
+    }
+
+}
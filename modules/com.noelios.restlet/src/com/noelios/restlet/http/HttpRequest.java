@@ -39,15 +39,19 @@ import org.restlet.data.Conditions;
 import org.restlet.data.Cookie;
 import org.restlet.data.Method;
 import org.restlet.data.Parameter;
+import org.restlet.data.Range;
 import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.data.Tag;
 import org.restlet.resource.Representation;
 import org.restlet.util.Series;
 
+import com.noelios.restlet.Engine;
 import com.noelios.restlet.util.CookieReader;
 import com.noelios.restlet.util.HeaderReader;
+import com.noelios.restlet.util.PreferenceCache;
 import com.noelios.restlet.util.PreferenceUtils;
+import com.noelios.restlet.util.RangeUtils;
 import com.noelios.restlet.util.SecurityUtils;
 
 /**
@@ -74,6 +78,9 @@ public class HttpRequest extends Request {
     /** Indicates if the request entity was added. */
     private boolean entityAdded;
 
+    /** Indicates if the ranges were parsed and added. */
+    private boolean rangesAdded;
+
     /** Indicates if the referrer was parsed and added. */
     private boolean referrerAdded;
 
@@ -94,6 +101,7 @@ public class HttpRequest extends Request {
         this.conditionAdded = false;
         this.cookiesAdded = false;
         this.entityAdded = false;
+        this.rangesAdded = false;
         this.referrerAdded = false;
         this.securityAdded = false;
         this.httpCall = httpCall;
@@ -160,24 +168,46 @@ public class HttpRequest extends Request {
 
             // Parse the Accept* headers. If an error occurs during the parsing
             // of each header, the error is traced and we keep on with the other
-            // headers.
+            // headers. The parsed preferences are shared with other calls via
+            // the engine's cache, the client info copies them on modification.
+            PreferenceCache cache = getPreferenceCache();
             try {
-                PreferenceUtils.parseCharacterSets(acceptCharset, result);
+                if (cache != null) {
+                    result.setAcceptedCharacterSets(cache
+                            .getCharacterSets(acceptCharset));
+                } else {
+                    PreferenceUtils.parseCharacterSets(acceptCharset, result);
+                }
             } catch (Exception e) {
                 this.context.getLogger().log(Level.INFO, e.getMessage());
             }
             try {
-                PreferenceUtils.parseEncodings(acceptEncoding, result);
+                if (cache != null) {
+                    result.setAcceptedEncodings(cache
+                            .getEncodings(acceptEncoding));
+                } else {
+                    PreferenceUtils.parseEncodings(acceptEncoding, result);
+                }
             } catch (Exception e) {
                 this.context.getLogger().log(Level.INFO, e.getMessage());
             }
             try {
-                PreferenceUtils.parseLanguages(acceptLanguage, result);
+                if (cache != null) {
+                    result.setAcceptedLanguages(cache
+                            .getLanguages(acceptLanguage));
+                } else {
+                    PreferenceUtils.parseLanguages(acceptLanguage, result);
+                }
             } catch (Exception e) {
                 this.context.getLogger().log(Level.INFO, e.getMessage());
             }
             try {
-                PreferenceUtils.parseMediaTypes(acceptMediaType, result);
+                if (cache != null) {
+                    result.setAcceptedMediaTypes(cache
+                            .getMediaTypes(acceptMediaType));
+                } else {
+                    PreferenceUtils.parseMediaTypes(acceptMediaType, result);
+                }
             } catch (Exception e) {
                 this.context.getLogger().log(Level.INFO, e.getMessage());
             }
@@ -231,6 +261,8 @@ public class HttpRequest extends Request {
                     HttpConstants.HEADER_IF_MATCH);
             String ifNoneMatchHeader = getHttpCall().getRequestHeaders()
                     .getValues(HttpConstants.HEADER_IF_NONE_MATCH);
+            String ifRangeHeader = getHttpCall().getRequestHeaders()
+                    .getFirstValue(HttpConstants.HEADER_IF_RANGE, true);
             Date ifModifiedSince = null;
             Date ifUnmodifiedSince = null;
 
@@ -315,6 +347,30 @@ public class HttpRequest extends Request {
                 }
             }
 
+            // Set the If-Range tag or date
+            if (ifRangeHeader != null) {
+                ifRangeHeader = ifRangeHeader.trim();
+
+                if (ifRangeHeader.startsWith("\"")
+                        || ifRangeHeader.startsWith("W/")) {
+                    try {
+                        result.setRangeTag(Tag.parse(ifRangeHeader));
+                    } catch (Exception e) {
+                        this.context.getLogger().log(
+                                Level.INFO,
+                                "Unable to process the if-range header: "
+                                        + ifRangeHeader);
+                    }
+                } else {
+                    Date ifRange = getHttpCall().parseDate(ifRangeHeader,
+                            false);
+
+                    if ((ifRange != null) && (ifRange.getTime() != -1)) {
+                        result.setRangeDate(ifRange);
+                    }
+                }
+            }
+
             this.conditionAdded = true;
         }
 
@@ -381,6 +437,40 @@ public class HttpRequest extends Request {
         return super.getEntity();
     }
 
+    /**
+     * Returns the engine's cache of parsed preference headers.
+     * 
+     * @return The engine's cache or null if the engine doesn't provide one.
+     */
+    private PreferenceCache getPreferenceCache() {
+        org.restlet.util.Engine engine = Engine.getInstance();
+        return (engine instanceof Engine) ? ((Engine) engine)
+                .getPreferenceCache() : null;
+    }
+
+    /**
+     * Returns the byte ranges of the entity requested.
+     * 
+     * @return The byte ranges of the entity requested.
+     */
+    @Override
+    public List<Range> getRanges() {
+        List<Range> result = super.getRanges();
+
+        if (!this.rangesAdded) {
+            String rangeValue = getHttpCall().getRequestHeaders()
+                    .getFirstValue(HttpConstants.HEADER_RANGE, true);
+
+            if (rangeValue != null) {
+                result.addAll(RangeUtils.parse(rangeValue));
+            }
+
+            this.rangesAdded = true;
+        }
+
+        return result;
+    }
+
     /**
      * Returns the referrer reference if available.
      * 
@@ -426,9 +516,21 @@ public class HttpRequest extends Request {
         this.securityAdded = true;
     }
 
+    @Override
+    public void setConditions(Conditions conditions) {
+        super.setConditions(conditions);
+        this.conditionAdded = true;
+    }
+
     @Override
     public void setEntity(Representation entity) {
         super.setEntity(entity);
         this.entityAdded = true;
     }
+
+    @Override
+    public void setRanges(List<Range> ranges) {
+        super.setRanges(ranges);
+        this.rangesAdded = true;
+    }
 }
@@ -52,6 +52,9 @@ public abstract class HttpServerCall extends HttpCall {
     /** Indicates if the "host" header was already parsed. */
     private boolean hostParsed;
 
+    /** Indicates if the connection should be kept alive after the call. */
+    private boolean keepAlive;
+
     /**
      * Constructor.
      * 
@@ -77,6 +80,7 @@ public abstract class HttpServerCall extends HttpCall {
         setServerAddress(serverAddress);
         setServerPort(serverPort);
         this.hostParsed = false;
+        this.keepAlive = false;
     }
 
     /**
@@ -195,6 +199,47 @@ public abstract class HttpServerCall extends HttpCall {
         return super.getHostPort();
     }
 
+    /**
+     * Indicates if the connection should be kept alive after the call.
+     * 
+     * @return True if the connection should be kept alive after the call.
+     */
+    public boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    /**
+     * Indicates if the client asked for a persistent connection. HTTP/1.1
+     * connections are persistent unless a "close" connection token is
+     * received, HTTP/1.0 connections are only persistent when a "keep-alive"
+     * connection token is received.
+     * 
+     * @return True if the client asked for a persistent connection.
+     */
+    public boolean isRequestPersistent() {
+        boolean http11 = "HTTP/1.1".equalsIgnoreCase(getVersion());
+        boolean result = http11;
+        String connection = getRequestHeaders().getValues(
+                HttpConstants.HEADER_CONNECTION);
+
+        if (connection != null) {
+            HeaderReader hr = new HeaderReader(connection);
+            String value = hr.readValue();
+            while (value != null) {
+                if (value.equalsIgnoreCase("close")) {
+                    result = false;
+                } else if (!http11
+                        && value.equalsIgnoreCase("keep-alive")) {
+                    result = true;
+                }
+
+                value = hr.readValue();
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Parses the "host" header to set the server host and port properties.
      */
@@ -221,11 +266,32 @@ public abstract class HttpServerCall extends HttpCall {
     }
 
     /**
-     * Reads the HTTP request head (request line and headers).
+     * Reads the HTTP request head (request line and headers). If the stream
+     * is an {@link HttpInputStream}, the head is parsed from its buffer,
+     * otherwise it is read byte by byte.
      * 
+     * @param headStream
+     *                The stream to read from.
      * @throws IOException
      */
     protected void readRequestHead(InputStream headStream) throws IOException {
+        if (headStream instanceof HttpInputStream) {
+            HttpInputStream his = (HttpInputStream) headStream;
+            String[] requestLine = his.readStartLine();
+            setMethod(requestLine[0]);
+            setRequestUri(requestLine[1]);
+            setVersion(requestLine[2]);
+
+            // Parse the headers
+            Parameter header = his.readHeader();
+            while (header != null) {
+                getRequestHeaders().add(header);
+                header = his.readHeader();
+            }
+
+            return;
+        }
+
         StringBuilder sb = new StringBuilder();
 
         // Parse the request method
@@ -288,6 +354,17 @@ public abstract class HttpServerCall extends HttpCall {
         }
     }
 
+    /**
+     * Indicates if the connection should be kept alive after the call.
+     * 
+     * @param keepAlive
+     *                True if the connection should be kept alive after the
+     *                call.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
     /**
      * Sends the response back to the client. Commits the status, headers and
      * optional entity and send them over the network. The default
@@ -383,9 +460,14 @@ public abstract class HttpServerCall extends HttpCall {
         headStream.write(13); // CR
         headStream.write(10); // LF
 
-        // We don't support persistent connections yet
-        getResponseHeaders()
-                .set(HttpConstants.HEADER_CONNECTION, "close", true);
+        // Indicate if the connection will be persisted
+        if (!isKeepAlive()) {
+            getResponseHeaders().set(HttpConstants.HEADER_CONNECTION, "close",
+                    true);
+        } else if (!"HTTP/1.1".equalsIgnoreCase(getVersion())) {
+            getResponseHeaders().set(HttpConstants.HEADER_CONNECTION,
+                    "keep-alive", true);
+        }
 
         // Write the response headers
         for (Parameter header : getResponseHeaders()) {
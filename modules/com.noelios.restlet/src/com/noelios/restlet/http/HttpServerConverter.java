@@ -27,7 +27,6 @@
 
 package com.noelios.restlet.http;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -39,11 +38,13 @@ import org.restlet.data.Encoding;
 import org.restlet.data.Method;
 import org.restlet.data.Parameter;
 import org.restlet.data.Status;
+import org.restlet.resource.RangeRepresentation;
 import org.restlet.resource.Representation;
 import org.restlet.util.DateUtils;
 import org.restlet.util.Series;
 
 import com.noelios.restlet.util.CookieUtils;
+import com.noelios.restlet.util.RangeUtils;
 import com.noelios.restlet.util.SecurityUtils;
 
 /**
@@ -99,6 +100,7 @@ public class HttpServerConverter extends HttpConverter {
             response.getHttpCall().sendResponse(response);
         } catch (Exception e) {
             getLogger().log(Level.INFO, "Exception intercepted", e);
+            response.getHttpCall().setKeepAlive(false);
             response.getHttpCall().setStatusCode(
                     Status.SERVER_ERROR_INTERNAL.getCode());
             response.getHttpCall().setReasonPhrase(
@@ -139,8 +141,8 @@ public class HttpServerConverter extends HttpConverter {
             }
 
             // Add the date
-            responseHeaders.add(HttpConstants.HEADER_DATE, DateUtils.format(
-                    new Date(), DateUtils.FORMAT_RFC_1123.get(0)));
+            responseHeaders.add(HttpConstants.HEADER_DATE, DateUtils
+                    .formatCurrentDate());
 
             // Add the cookie settings
             List<CookieSetting> cookies = response.getCookieSettings();
@@ -246,6 +248,24 @@ public class HttpServerConverter extends HttpConverter {
                             Long.toString(response.getEntity().getSize()));
                 }
 
+                if ((entity instanceof RangeRepresentation)
+                        && !((RangeRepresentation) entity).isMultipart()) {
+                    // The parts of multipart entities have their own header
+                    RangeRepresentation partial = (RangeRepresentation) entity;
+
+                    if (partial.getRanges().isEmpty()) {
+                        // No range was satisfiable, give the complete length
+                        responseHeaders.add(HttpConstants.HEADER_CONTENT_RANGE,
+                                RangeUtils.formatContentRange(partial
+                                        .getTotalSize()));
+                    } else {
+                        responseHeaders.add(HttpConstants.HEADER_CONTENT_RANGE,
+                                RangeUtils.formatContentRange(partial
+                                        .getRanges().get(0), partial
+                                        .getTotalSize()));
+                    }
+                }
+
                 if (response.getEntity().getIdentifier() != null) {
                     responseHeaders.add(HttpConstants.HEADER_CONTENT_LOCATION,
                             response.getEntity().getIdentifier().toString());
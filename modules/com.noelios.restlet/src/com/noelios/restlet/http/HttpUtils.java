@@ -34,6 +34,9 @@ import java.io.OutputStream;
 import org.restlet.data.CharacterSet;
 import org.restlet.data.Parameter;
 import org.restlet.data.Reference;
+import org.restlet.util.Series;
+
+import com.noelios.restlet.util.HeaderReader;
 
 /**
  * HTTP-style header manipulation utilities.
@@ -226,6 +229,30 @@ public class HttpUtils {
         return (character >= '0') && (character <= '9');
     }
 
+    /**
+     * Indicates if the chunked transfer coding is applied to a message entity.
+     * 
+     * @param headers
+     *                The message headers.
+     * @return True if the chunked transfer coding is applied.
+     */
+    public static boolean isChunkedEncoding(Series<Parameter> headers) {
+        boolean result = false;
+        String encoding = headers
+                .getValues(HttpConstants.HEADER_TRANSFER_ENCODING);
+
+        if (encoding != null) {
+            HeaderReader hr = new HeaderReader(encoding);
+            String value = hr.readValue();
+            while (!result && (value != null)) {
+                result = value.equalsIgnoreCase("chunked");
+                value = hr.readValue();
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Indicates if the given character is a control character.
      * 
@@ -382,6 +409,10 @@ public class HttpUtils {
      */
     public static Parameter readHeader(InputStream is, StringBuilder sb)
             throws IOException {
+        if (is instanceof HttpInputStream) {
+            return ((HttpInputStream) is).readHeader();
+        }
+
         Parameter result = null;
 
         // Detect the end of headers
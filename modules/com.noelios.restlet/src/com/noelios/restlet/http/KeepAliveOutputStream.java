@@ -0,0 +1,67 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that only flushes the wrapped stream when closed. This allows
+ * the same socket stream to be reused for several responses sent on a
+ * persistent connection.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class KeepAliveOutputStream extends FilterOutputStream {
+
+    /**
+     * Constructor.
+     * 
+     * @param outputStream
+     *                The wrapped output stream.
+     */
+    public KeepAliveOutputStream(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    /**
+     * Flushes the wrapped stream but doesn't close it.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.out.write(b, off, len);
+    }
+
+}
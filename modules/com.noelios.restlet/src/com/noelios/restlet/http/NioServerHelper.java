@@ -0,0 +1,813 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import org.restlet.Server;
+import org.restlet.data.Protocol;
+
+/**
+ * HTTP server helper based on NIO non-blocking sockets. A single selector
+ * thread accepts the connections and reads the request heads. Only complete
+ * requests are handed to the worker threads, so idle persistent connections
+ * don't hold any thread. Here is the list of parameters that are supported:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>maxThreads</td>
+ * <td>int</td>
+ * <td>10</td>
+ * <td>Maximum number of worker threads handling complete requests.</td>
+ * </tr>
+ * <tr>
+ * <td>headBufferSize</td>
+ * <td>int</td>
+ * <td>8*1024</td>
+ * <td>Size of the buffer receiving the request heads. Requests with larger
+ * heads are rejected by closing the connection. Idle connections don't hold a
+ * buffer, up to maxThreads released buffers are kept for reuse.</td>
+ * </tr>
+ * <tr>
+ * <td>persistingConnections</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if connections should be kept alive after a call, as
+ * requested by HTTP/1.1 clients or by HTTP/1.0 clients sending a "keep-alive"
+ * connection token.</td>
+ * </tr>
+ * <tr>
+ * <td>maxRequestsPerConnection</td>
+ * <td>int</td>
+ * <td>100</td>
+ * <td>Maximum number of requests handled on a persistent connection before
+ * closing it. Zero or a negative value means no limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>15000</td>
+ * <td>Time in ms that a persistent connection can wait for the next request
+ * before being closed. Zero means no timeout.</td>
+ * </tr>
+ * <tr>
+ * <td>requestTimeoutMs</td>
+ * <td>int</td>
+ * <td>60000</td>
+ * <td>Time in ms allowed to receive a complete request, head and entity,
+ * before closing the connection. This prevents slow clients from holding the
+ * worker threads. Zero means no timeout.</td>
+ * </tr>
+ * <tr>
+ * <td>chunkBufferSize</td>
+ * <td>int</td>
+ * <td>8*1024</td>
+ * <td>Size of the buffer used to send response entities of unknown length
+ * with the chunked transfer coding on persistent HTTP/1.1 connections.</td>
+ * </tr>
+ * </table>
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class NioServerHelper extends HttpServerHelper {
+    /**
+     * Connection handled by the selector while reading a request head, and by
+     * a worker thread while handling the complete request.
+     */
+    private class Connection implements Runnable {
+        /** The socket channel. */
+        private final SocketChannel channel;
+
+        /** The buffer receiving the request heads, or null while idle. */
+        private ByteBuffer buffer;
+
+        /** The position up to which the buffer was scanned for a head end. */
+        private int scanned;
+
+        /** The number of requests already handled. */
+        private int requests;
+
+        /** The time of the last activity on the connection. */
+        private long lastActivity;
+
+        /** The time the current request started to be received, or zero. */
+        private long requestStart;
+
+        /**
+         * Constructor.
+         * 
+         * @param channel
+         *            The socket channel.
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.buffer = null;
+            this.scanned = 0;
+            this.requests = 0;
+            this.lastActivity = System.currentTimeMillis();
+            this.requestStart = 0;
+        }
+
+        /**
+         * Closes the connection.
+         */
+        void close() {
+            try {
+                this.channel.close();
+            } catch (IOException ioe) {
+                getLogger().log(Level.FINE, "Unable to close the connection",
+                        ioe);
+            }
+
+            releaseBuffer();
+        }
+
+        /**
+         * Indicates if the buffer, in write mode, contains a complete request
+         * head. Only the bytes received since the last call are scanned.
+         * 
+         * @return True if the buffer contains a complete request head.
+         */
+        boolean isHeadComplete() {
+            if (this.buffer == null) {
+                return false;
+            }
+
+            byte[] bytes = this.buffer.array();
+            int end = this.buffer.position();
+
+            for (int i = Math.max(3, this.scanned); i < end; i++) {
+                if ((bytes[i] == 10) && (bytes[i - 1] == 13)
+                        && (bytes[i - 2] == 10) && (bytes[i - 3] == 13)) {
+                    this.scanned = i;
+                    return true;
+                }
+            }
+
+            this.scanned = end;
+            return false;
+        }
+
+        /**
+         * Indicates if the buffer is full without containing a complete
+         * request head.
+         * 
+         * @return True if the buffer is full.
+         */
+        boolean isHeadTooLarge() {
+            return (this.buffer != null) && !this.buffer.hasRemaining();
+        }
+
+        /**
+         * Reads available bytes from the channel, in non-blocking mode.
+         * 
+         * @return The number of bytes read or -1 if the end was reached.
+         * @throws IOException
+         */
+        int read() throws IOException {
+            this.lastActivity = System.currentTimeMillis();
+
+            if (this.buffer == null) {
+                this.buffer = acquireHeadBuffer();
+            }
+
+            boolean started = (this.buffer.position() > 0);
+            int result = this.channel.read(this.buffer);
+
+            if (!started && (this.buffer.position() > 0)) {
+                this.requestStart = this.lastActivity;
+            } else if (!started) {
+                releaseBuffer();
+            }
+
+            return result;
+        }
+
+        /**
+         * Releases the buffer if it holds no pipelined bytes.
+         */
+        void releaseBuffer() {
+            ByteBuffer released = this.buffer;
+
+            if ((released != null) && (released.position() == 0)) {
+                this.buffer = null;
+                this.scanned = 0;
+                releaseHeadBuffer(released);
+            }
+        }
+
+        /**
+         * Handles the complete requests available, in blocking mode.
+         */
+        public void run() {
+            boolean keepAlive = true;
+
+            try {
+                int maxRequests = getMaxRequestsPerConnection();
+                int requestTimeout = getRequestTimeoutMs();
+                RequestInputStream channelStream = new RequestInputStream(
+                        this.channel);
+                OutputStream responseStream = new KeepAliveOutputStream(
+                        new BufferedOutputStream(Channels
+                                .newOutputStream(this.channel)));
+
+                while (keepAlive && isHeadComplete()) {
+                    this.requests++;
+                    channelStream
+                            .setDeadline((requestTimeout > 0) ? (this.requestStart + requestTimeout)
+                                    : 0);
+                    this.buffer.flip();
+                    HttpInputStream requestStream = new HttpInputStream(
+                            channelStream, this.buffer.array(), this.buffer
+                                    .position(), this.buffer.remaining());
+                    StreamServerCall call = new StreamServerCall(getServer(),
+                            requestStream, responseStream,
+                            isPersistingConnections()
+                                    && ((maxRequests <= 0) || (this.requests < maxRequests)));
+                    call.setChunkBufferSize(getChunkBufferSize());
+                    call.setResponseChannel(this.channel);
+                    handle(call);
+                    responseStream.flush();
+                    keepAlive = call.isKeepAlive();
+
+                    if (keepAlive) {
+                        call.complete();
+                    }
+
+                    // Keep any pipelined bytes for the next request
+                    this.buffer.clear();
+                    this.scanned = 0;
+                    requestStream.transferBuffered(this.buffer);
+                    this.requestStart = (this.buffer.position() > 0) ? System
+                            .currentTimeMillis() : 0;
+                }
+
+                if (keepAlive) {
+                    // Wait for the next request in the selector
+                    releaseBuffer();
+                    this.channel.configureBlocking(false);
+                    this.lastActivity = System.currentTimeMillis();
+                    register(this);
+                } else {
+                    close();
+                }
+            } catch (SocketTimeoutException ste) {
+                getLogger().fine(
+                        "Request not received in time. Closing the connection.");
+                close();
+            } catch (IOException ioe) {
+                getLogger().log(Level.WARNING,
+                        "Unexpected error while handling a call", ioe);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Stream reading the rest of a request in blocking mode, closing the
+     * connection if the request isn't received before a deadline.
+     */
+    private static class RequestInputStream extends FilterInputStream {
+        /** The socket channel. */
+        private final SocketChannel channel;
+
+        /** The time before which the request must be received, or zero. */
+        private long deadline;
+
+        /**
+         * Constructor.
+         * 
+         * @param channel
+         *            The socket channel, in blocking mode.
+         * @throws IOException
+         */
+        RequestInputStream(SocketChannel channel) throws IOException {
+            super(channel.socket().getInputStream());
+            this.channel = channel;
+            this.deadline = 0;
+        }
+
+        /**
+         * Sets the socket timeout to the time left before the deadline.
+         * 
+         * @throws IOException
+         */
+        private void await() throws IOException {
+            if (this.deadline > 0) {
+                long remaining = this.deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    timeout();
+                }
+
+                this.channel.socket().setSoTimeout(
+                        (int) Math.min(remaining, Integer.MAX_VALUE));
+            } else {
+                this.channel.socket().setSoTimeout(0);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            await();
+
+            try {
+                return super.read();
+            } catch (SocketTimeoutException ste) {
+                return timeout();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            await();
+
+            try {
+                return super.read(b, off, len);
+            } catch (SocketTimeoutException ste) {
+                return timeout();
+            }
+        }
+
+        /**
+         * Sets the time before which the request must be received.
+         * 
+         * @param deadline
+         *            The deadline or zero for no deadline.
+         */
+        void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            await();
+
+            try {
+                return super.skip(n);
+            } catch (SocketTimeoutException ste) {
+                return timeout();
+            }
+        }
+
+        /**
+         * Closes the connection, so that the response can't be sent even if
+         * the failure is ignored by the application, then fails.
+         * 
+         * @return Never returns normally.
+         * @throws IOException
+         */
+        private int timeout() throws IOException {
+            this.channel.close();
+            throw new SocketTimeoutException(
+                    "The request wasn't received in time");
+        }
+    }
+
+    /** The server socket channel. */
+    private ServerSocketChannel serverChannel;
+
+    /** The selector. */
+    private volatile Selector selector;
+
+    /** The thread running the selector. */
+    private Thread selectorThread;
+
+    /** The connections waiting to be registered with the selector. */
+    private final Queue<Connection> registrations;
+
+    /** The worker service handling the complete requests. */
+    private ExecutorService workerService;
+
+    /** The head buffers released by the idle connections. */
+    private BlockingQueue<ByteBuffer> headBuffers;
+
+    /**
+     * Constructor.
+     * 
+     * @param server
+     *            The server to help.
+     */
+    public NioServerHelper(Server server) {
+        super(server);
+        getProtocols().add(Protocol.HTTP);
+        this.registrations = new ConcurrentLinkedQueue<Connection>();
+    }
+
+    /**
+     * Accepts a new connection.
+     * 
+     * @param selector
+     *            The selector.
+     * @throws IOException
+     */
+    private void accept(Selector selector) throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ,
+                    new Connection(channel));
+        }
+    }
+
+    /**
+     * Returns a buffer receiving a request head, reusing a released one if
+     * available.
+     * 
+     * @return An empty buffer receiving a request head.
+     */
+    private ByteBuffer acquireHeadBuffer() {
+        BlockingQueue<ByteBuffer> pool = this.headBuffers;
+        ByteBuffer result = (pool == null) ? null : pool.poll();
+
+        if (result == null) {
+            result = ByteBuffer.allocate(getHeadBufferSize());
+        }
+
+        return result;
+    }
+
+    /**
+     * Closes the connections idle for longer than the maximum idle time, and
+     * the ones receiving a request head for longer than the request timeout.
+     * 
+     * @param selector
+     *            The selector.
+     */
+    private void closeIdleConnections(Selector selector) {
+        int maxIdleTime = getMaxIdleTimeMs();
+        int requestTimeout = getRequestTimeoutMs();
+        long now = System.currentTimeMillis();
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                Connection connection = (Connection) key.attachment();
+
+                if (((maxIdleTime > 0) && (connection.lastActivity < now
+                        - maxIdleTime))
+                        || ((requestTimeout > 0)
+                                && (connection.requestStart > 0) && (connection.requestStart < now
+                                - requestTimeout))) {
+                    key.cancel();
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the buffer receiving the request heads.
+     * 
+     * @return The size of the buffer receiving the request heads.
+     */
+    public int getHeadBufferSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "headBufferSize", Integer.toString(8 * 1024)));
+    }
+
+    /**
+     * Returns the size of the buffer used to send response chunks.
+     * 
+     * @return The size of the buffer used to send response chunks.
+     */
+    public int getChunkBufferSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "chunkBufferSize", Integer.toString(8 * 1024)));
+    }
+
+    /**
+     * Returns the time in ms that a persistent connection can wait for the
+     * next request before being closed.
+     * 
+     * @return The time in ms that a persistent connection can wait for the
+     *         next request.
+     */
+    public int getMaxIdleTimeMs() {
+        return Integer.parseInt(getParameters().getFirstValue("maxIdleTimeMs",
+                "15000"));
+    }
+
+    /**
+     * Returns the maximum number of requests handled on a persistent
+     * connection before closing it.
+     * 
+     * @return The maximum number of requests handled on a persistent
+     *         connection.
+     */
+    public int getMaxRequestsPerConnection() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "maxRequestsPerConnection", "100"));
+    }
+
+    /**
+     * Returns the maximum number of worker threads.
+     * 
+     * @return The maximum number of worker threads.
+     */
+    public int getMaxThreads() {
+        return Integer.parseInt(getParameters().getFirstValue("maxThreads",
+                "10"));
+    }
+
+    /**
+     * Returns the time in ms allowed to receive a complete request.
+     * 
+     * @return The time in ms allowed to receive a complete request.
+     */
+    public int getRequestTimeoutMs() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "requestTimeoutMs", "60000"));
+    }
+
+    /**
+     * Indicates if connections should be kept alive after a call.
+     * 
+     * @return True if connections should be kept alive after a call.
+     */
+    public boolean isPersistingConnections() {
+        return Boolean.parseBoolean(getParameters().getFirstValue(
+                "persistingConnections", "true"));
+    }
+
+    /**
+     * Reads the available bytes of a connection. Returns true if a complete
+     * request head was received.
+     * 
+     * @param key
+     *            The selection key of the connection.
+     * @return True if a complete request head was received.
+     */
+    private boolean read(SelectionKey key) {
+        boolean result = false;
+        Connection connection = (Connection) key.attachment();
+
+        try {
+            if (connection.read() == -1) {
+                key.cancel();
+                connection.close();
+            } else if (connection.isHeadComplete()) {
+                result = true;
+            } else if (connection.isHeadTooLarge()) {
+                getLogger().warning(
+                        "Request head too large. Closing the connection.");
+                key.cancel();
+                connection.close();
+            }
+        } catch (IOException ioe) {
+            getLogger().log(Level.FINE, "Unable to read from the connection",
+                    ioe);
+            key.cancel();
+            connection.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Keeps a released head buffer for reuse, unless enough are kept already.
+     * 
+     * @param buffer
+     *            The released buffer.
+     */
+    private void releaseHeadBuffer(ByteBuffer buffer) {
+        BlockingQueue<ByteBuffer> pool = this.headBuffers;
+
+        if (pool != null) {
+            buffer.clear();
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * Registers a connection waiting for its next request with the selector.
+     * 
+     * @param connection
+     *            The connection to register.
+     */
+    private void register(Connection connection) {
+        Selector selector = this.selector;
+
+        if (selector != null) {
+            this.registrations.add(connection);
+            selector.wakeup();
+        } else {
+            connection.close();
+        }
+    }
+
+    /**
+     * Runs the selection loop until the connector is stopped, then closes the
+     * idle connections and the selector.
+     * 
+     * @param selector
+     *            The selector.
+     */
+    private void select(Selector selector) {
+        List<SelectionKey> completed = new ArrayList<SelectionKey>();
+        long lastSweep = System.currentTimeMillis();
+
+        try {
+            while (this.selector == selector) {
+                if (selector.selectedKeys().isEmpty()) {
+                    selector.select(1000);
+                } else {
+                    // Keys selected during the last deregistration
+                    selector.selectNow();
+                }
+
+                // Register the connections released by the workers
+                Connection connection = this.registrations.poll();
+                while (connection != null) {
+                    try {
+                        connection.channel.register(selector,
+                                SelectionKey.OP_READ, connection);
+                    } catch (IOException ioe) {
+                        connection.close();
+                    }
+
+                    connection = this.registrations.poll();
+                }
+
+                for (Iterator<SelectionKey> iter = selector.selectedKeys()
+                        .iterator(); iter.hasNext();) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        accept(selector);
+                    } else if (key.isReadable() && read(key)) {
+                        completed.add(key);
+                    }
+                }
+
+                if (!completed.isEmpty()) {
+                    // Deregister the channels before switching them to the
+                    // blocking mode
+                    for (SelectionKey key : completed) {
+                        key.cancel();
+                    }
+                    selector.selectNow();
+
+                    for (SelectionKey key : completed) {
+                        connection = (Connection) key.attachment();
+
+                        try {
+                            connection.channel.configureBlocking(true);
+                            this.workerService.execute(connection);
+                        } catch (Exception e) {
+                            getLogger().log(Level.WARNING,
+                                    "Unable to handle the connection", e);
+                            connection.close();
+                        }
+                    }
+
+                    completed.clear();
+                }
+
+                if (System.currentTimeMillis() - lastSweep >= 1000) {
+                    closeIdleConnections(selector);
+                    lastSweep = System.currentTimeMillis();
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+
+            Connection connection = this.registrations.poll();
+            while (connection != null) {
+                connection.close();
+                connection = this.registrations.poll();
+            }
+
+            selector.close();
+        } catch (ClosedSelectorException cse) {
+            // The selector was closed
+        } catch (IOException ioe) {
+            getLogger().log(Level.WARNING,
+                    "Unexpected error in the selector thread", ioe);
+        }
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        super.start();
+        getLogger().info("Starting the internal NIO HTTP server");
+        this.workerService = Executors.newFixedThreadPool(getMaxThreads());
+        this.headBuffers = new ArrayBlockingQueue<ByteBuffer>(getMaxThreads());
+        final Selector selector = Selector.open();
+        this.selector = selector;
+        this.serverChannel = ServerSocketChannel.open();
+
+        if (getServer().getAddress() == null) {
+            this.serverChannel.socket().bind(
+                    new InetSocketAddress(getServer().getPort()));
+        } else {
+            this.serverChannel.socket().bind(
+                    new InetSocketAddress(getServer().getAddress(),
+                            getServer().getPort()));
+        }
+
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.selectorThread = new Thread("Restlet-NioSelector") {
+            @Override
+            public void run() {
+                select(selector);
+            }
+        };
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+        getLogger().info("Stopping the internal NIO HTTP server");
+
+        Selector selector = this.selector;
+        if (selector != null) {
+            // The selector thread will close the connections and exit
+            this.selector = null;
+            selector.wakeup();
+        }
+
+        if (this.serverChannel != null) {
+            this.serverChannel.close();
+            this.serverChannel = null;
+        }
+
+        if (this.selectorThread != null) {
+            // The listening socket is only released once the selector is
+            // closed
+            this.selectorThread.join(1000);
+            this.selectorThread = null;
+        }
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
+
+        this.headBuffers = null;
+    }
+
+}
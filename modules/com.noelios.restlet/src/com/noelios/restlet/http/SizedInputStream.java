@@ -0,0 +1,144 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream limited to a given number of bytes read from a wrapped stream.
+ * Closing this stream doesn't close the wrapped stream which can still be used
+ * to read the next message on a persistent connection.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class SizedInputStream extends InputStream {
+    /** The wrapped input stream. */
+    private final InputStream inputStream;
+
+    /** The number of bytes that remain available. */
+    private long available;
+
+    /**
+     * Constructor.
+     * 
+     * @param inputStream
+     *                The wrapped input stream.
+     * @param size
+     *                The maximum number of bytes that can be read.
+     */
+    public SizedInputStream(InputStream inputStream, long size) {
+        this.inputStream = inputStream;
+        this.available = size;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(this.available, this.inputStream.available());
+    }
+
+    /**
+     * Closes the stream by skipping any remaining byte. The wrapped stream
+     * isn't closed.
+     */
+    @Override
+    public void close() throws IOException {
+        skip(this.available);
+    }
+
+    /**
+     * Returns the number of bytes that remain to be read.
+     * 
+     * @return The number of bytes that remain to be read.
+     */
+    public long getRemaining() {
+        return this.available;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = -1;
+
+        if (this.available > 0) {
+            result = this.inputStream.read();
+
+            if (result == -1) {
+                throw new IOException(
+                        "Unable to read the entity. End of stream reached too early.");
+            } else {
+                this.available--;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = -1;
+
+        if (this.available > 0) {
+            result = this.inputStream.read(b, off, (int) Math.min(len,
+                    this.available));
+
+            if (result == -1) {
+                throw new IOException(
+                        "Unable to read the entity. End of stream reached too early.");
+            } else {
+                this.available -= result;
+            }
+        } else if (len == 0) {
+            result = 0;
+        }
+
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = 0;
+        byte[] buffer = null;
+        int read;
+
+        while ((result < n) && (this.available > 0)) {
+            if (buffer == null) {
+                buffer = new byte[(int) Math.min(2048, n)];
+            }
+
+            read = read(buffer, 0, (int) Math.min(buffer.length, n - result));
+            if (read <= 0) {
+                break;
+            }
+            result += read;
+        }
+
+        return result;
+    }
+
+}
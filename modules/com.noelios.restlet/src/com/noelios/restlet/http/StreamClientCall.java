@@ -27,6 +27,9 @@
 
 package com.noelios.restlet.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -36,9 +39,13 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.logging.Level;
 
+import org.restlet.data.Method;
 import org.restlet.data.Parameter;
 import org.restlet.data.Request;
 import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+
+import com.noelios.restlet.util.HeaderReader;
 
 /**
  * HTTP client call based on streams.
@@ -46,6 +53,91 @@ import org.restlet.data.Status;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class StreamClientCall extends HttpClientCall {
+    /**
+     * Response entity stream releasing the connection once the entity is
+     * fully read or when closed.
+     */
+    private class ResponseEntityStream extends FilterInputStream {
+        /** The connection to release. */
+        private final StreamClientHelper.Connection entityConnection;
+
+        /** Indicates if the connection can be reused after the entity. */
+        private boolean reusable;
+
+        /** Indicates if the connection was released. */
+        private boolean released;
+
+        /**
+         * Constructor.
+         * 
+         * @param entityConnection
+         *                The connection to release.
+         * @param entityStream
+         *                The delimited entity stream.
+         * @param reusable
+         *                Indicates if the connection can be reused after the
+         *                entity.
+         */
+        public ResponseEntityStream(
+                StreamClientHelper.Connection entityConnection,
+                InputStream entityStream, boolean reusable) {
+            super(entityStream);
+            this.entityConnection = entityConnection;
+            this.reusable = reusable;
+            this.released = false;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!this.released) {
+                if (this.reusable) {
+                    try {
+                        // Skip the rest of the entity
+                        super.close();
+                    } catch (IOException ioe) {
+                        this.reusable = false;
+                    }
+                }
+
+                release();
+            }
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int result = this.released ? -1 : super.read();
+
+            if (result == -1) {
+                release();
+            }
+
+            return result;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+                throws IOException {
+            int result = this.released ? -1 : super.read(b, off, len);
+
+            if (result == -1) {
+                release();
+            }
+
+            return result;
+        }
+
+        /**
+         * Releases the connection, once.
+         */
+        private void release() {
+            if (!this.released) {
+                this.released = true;
+                getHelper().releaseConnection(this.entityConnection,
+                        this.reusable);
+            }
+        }
+    }
+
     /** The request to send. */
     private Request request;
 
@@ -55,6 +147,15 @@ public class StreamClientCall extends HttpClientCall {
     /** The response input stream. */
     private InputStream responseStream;
 
+    /** The size of the buffer used to send request chunks. */
+    private final int chunkBufferSize;
+
+    /** The connection to the server. */
+    private StreamClientHelper.Connection connection;
+
+    /** Indicates if a byte of the response was received. */
+    private boolean responseStarted;
+
     /**
      * Constructor.
      * 
@@ -66,6 +167,8 @@ public class StreamClientCall extends HttpClientCall {
     public StreamClientCall(StreamClientHelper helper, Request request) {
         super(helper, request.getMethod().toString(), request.getResourceRef()
                 .getIdentifier());
+        this.request = request;
+        this.chunkBufferSize = helper.getChunkBufferSize();
 
         // Set the HTTP version
         setVersion("HTTP/1.1");
@@ -88,6 +191,97 @@ public class StreamClientCall extends HttpClientCall {
         return new Socket(hostDomain, hostPort);
     }
 
+    /**
+     * Returns the stream reading the response entity, delimited according to
+     * the response headers. The connection is released once the entity is
+     * read, closed or garbage collected. Small entities of known length are
+     * read immediately so that the connection is released even if the entity
+     * is ignored.
+     * 
+     * @return The stream reading the response entity.
+     * @throws IOException
+     */
+    private InputStream createResponseEntityStream() throws IOException {
+        InputStream headStream = this.connection.getInputStream();
+        InputStream delimitedStream;
+        boolean delimited = true;
+        String contentLength = getResponseHeaders().getFirstValue(
+                HttpConstants.HEADER_CONTENT_LENGTH, true);
+
+        if (getMethod().equals(Method.HEAD.getName())
+                || (getStatusCode() == HttpConstants.STATUS_SUCCESS_NO_CONTENT)
+                || (getStatusCode() == HttpConstants.STATUS_REDIRECTION_NOT_MODIFIED)
+                || (getStatusCode() / 100 == 1)) {
+            delimitedStream = new SizedInputStream(headStream, 0);
+        } else if (HttpUtils.isChunkedEncoding(getResponseHeaders())) {
+            delimitedStream = new ChunkedInputStream(headStream);
+        } else if (contentLength != null) {
+            try {
+                delimitedStream = new SizedInputStream(headStream, Long
+                        .parseLong(contentLength.trim()));
+            } catch (NumberFormatException nfe) {
+                delimitedStream = headStream;
+                delimited = false;
+            }
+        } else {
+            // The entity is delimited by the closing of the connection
+            delimitedStream = headStream;
+            delimited = false;
+        }
+
+        ResponseEntityStream entityStream = new ResponseEntityStream(
+                this.connection, delimitedStream, delimited
+                        && isResponsePersistent());
+        InputStream result = entityStream;
+        long remaining = (delimitedStream instanceof SizedInputStream) ? ((SizedInputStream) delimitedStream)
+                .getRemaining()
+                : -1;
+
+        if (remaining == 0) {
+            // Nothing to read, the connection can be released now
+            entityStream.release();
+        } else if ((remaining > 0)
+                && (remaining <= getHelper().getMaxBufferedEntitySize())) {
+            // Read the entity now and release the connection
+            byte[] entity = new byte[(int) remaining];
+            new DataInputStream(entityStream).readFully(entity);
+            entityStream.release();
+            result = new ByteArrayInputStream(entity);
+        } else {
+            getHelper().attachEntity(this.connection, entityStream);
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if a request can be sent again after a failure on a pooled
+     * connection. Only idempotent requests whose entity can be written again
+     * are retried, and only if no response byte was received, as the server
+     * might have already processed them otherwise.
+     * 
+     * @param request
+     *                The request that failed.
+     * @return True if the request can be sent again.
+     */
+    private boolean isRetryable(Request request) {
+        Method method = request.getMethod();
+        boolean idempotent = Method.GET.equals(method)
+                || Method.HEAD.equals(method) || Method.OPTIONS.equals(method)
+                || Method.PUT.equals(method) || Method.DELETE.equals(method)
+                || Method.TRACE.equals(method);
+
+        return (this.connection != null) && this.connection.isReused()
+                && !this.responseStarted && idempotent
+                && ((request.getEntity() == null) || !request.getEntity()
+                        .isTransient());
+    }
+
+    @Override
+    public StreamClientHelper getHelper() {
+        return (StreamClientHelper) super.getHelper();
+    }
+
     /**
      * Returns the request to send.
      * 
@@ -117,12 +311,60 @@ public class StreamClientCall extends HttpClientCall {
         return this.responseStream;
     }
 
+    /**
+     * Indicates if the server agreed to keep the connection alive. HTTP/1.1
+     * connections are persistent unless a "close" connection token is
+     * received, HTTP/1.0 connections are only persistent when a "keep-alive"
+     * connection token is received.
+     * 
+     * @return True if the server agreed to keep the connection alive.
+     */
+    protected boolean isResponsePersistent() {
+        boolean http11 = "HTTP/1.1".equalsIgnoreCase(getVersion());
+        boolean result = http11 && getHelper().isPersistingConnections();
+        String connection = getResponseHeaders().getValues(
+                HttpConstants.HEADER_CONNECTION);
+
+        if (connection != null) {
+            HeaderReader hr = new HeaderReader(connection);
+            String value = hr.readValue();
+            while (value != null) {
+                if (value.equalsIgnoreCase("close")) {
+                    result = false;
+                } else if (!http11 && value.equalsIgnoreCase("keep-alive")) {
+                    result = getHelper().isPersistingConnections();
+                }
+
+                value = hr.readValue();
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Parses the HTTP response.
      * 
      * @throws IOException
      */
     protected void parseResponse() throws IOException {
+        if (getResponseStream() instanceof HttpInputStream) {
+            HttpInputStream his = (HttpInputStream) getResponseStream();
+            String[] statusLine = his.readStartLine();
+            setVersion(statusLine[0]);
+            setStatusCode(Integer.parseInt(statusLine[1]));
+            setReasonPhrase(statusLine[2]);
+
+            // Parse the headers
+            Parameter header = his.readHeader();
+            while (header != null) {
+                getResponseHeaders().add(header);
+                header = his.readHeader();
+            }
+
+            return;
+        }
+
         StringBuilder sb = new StringBuilder();
 
         // Parse the HTTP version
@@ -187,6 +429,90 @@ public class StreamClientCall extends HttpClientCall {
         }
     }
 
+    /**
+     * Sends the request head and entity on a connection acquired from the
+     * pool, then parses the response head. On failure, the connection is
+     * closed.
+     * 
+     * @param request
+     *                The request to send.
+     * @param hostDomain
+     *                The target host domain name.
+     * @param hostPort
+     *                The target host port.
+     * @param chunked
+     *                Indicates if the request entity is sent with the chunked
+     *                transfer coding.
+     * @return The response status.
+     * @throws IOException
+     */
+    private Status exchange(Request request, String hostDomain, int hostPort,
+            boolean chunked) throws IOException {
+        // Forget the connection of a previous attempt
+        this.connection = null;
+        this.responseStarted = false;
+        this.connection = getHelper().acquireConnection(this, hostDomain,
+                hostPort);
+        getResponseHeaders().clear();
+
+        try {
+            OutputStream socketStream = this.connection.getOutputStream();
+            this.responseStream = this.connection.getInputStream();
+
+            // Write the request line
+            socketStream.write(getMethod().getBytes());
+            socketStream.write(' ');
+            socketStream.write(getRequestUri().getBytes());
+            socketStream.write(' ');
+            socketStream.write(getVersion().getBytes());
+            socketStream.write(13); // CR
+            socketStream.write(10); // LF
+
+            // Write the request headers
+            for (Parameter header : getRequestHeaders()) {
+                HttpUtils.writeHeader(header, socketStream);
+            }
+
+            // Write the end of the headers section
+            socketStream.write(13); // CR
+            socketStream.write(10); // LF
+
+            // Write the request body, the socket must stay open for the
+            // response
+            if (chunked) {
+                this.requestStream = new ChunkedOutputStream(socketStream,
+                        this.chunkBufferSize);
+            } else {
+                this.requestStream = new KeepAliveOutputStream(socketStream);
+            }
+
+            Status result = super.sendRequest(request);
+            if (result.isConnectorError()) {
+                throw new IOException(result.getDescription());
+            }
+
+            socketStream.flush();
+
+            // Wait for the response
+            if (this.connection.getInputStream().peek() == -1) {
+                throw new IOException(
+                        "The server closed the connection without responding");
+            }
+
+            // Parse the response
+            this.responseStarted = true;
+            parseResponse();
+            this.responseStream = createResponseEntityStream();
+            return new Status(getStatusCode(), null, getReasonPhrase(), null);
+        } catch (IOException ioe) {
+            getHelper().releaseConnection(this.connection, false);
+            throw ioe;
+        } catch (RuntimeException re) {
+            getHelper().releaseConnection(this.connection, false);
+            throw re;
+        }
+    }
+
     @Override
     public Status sendRequest(Request request) {
         Status result = null;
@@ -200,45 +526,48 @@ public class StreamClientCall extends HttpClientCall {
                         .getDefaultPort();
             }
 
-            // Create the client socket
-            Socket socket = createSocket(hostDomain, hostPort);
-            this.requestStream = socket.getOutputStream();
-            this.responseStream = socket.getInputStream();
+            if (!getHelper().isPersistingConnections()) {
+                getRequestHeaders().set(HttpConstants.HEADER_CONNECTION,
+                        "close", true);
+            }
 
-            // Write the request line
-            getRequestStream().write(getMethod().getBytes());
-            getRequestStream().write(' ');
-            getRequestStream().write(getRequestUri().getBytes());
-            getRequestStream().write(' ');
-            getRequestStream().write(getVersion().getBytes());
-            getRequestStream().write(13); // CR
-            getRequestStream().write(10); // LF
-
-            // We don't support persistent connections yet
-            getRequestHeaders().set(HttpConstants.HEADER_CONNECTION, "close",
-                    true);
-
-            // We don't support persistent connections yet
             String host = hostDomain;
             if (request.getResourceRef().getHostPort() != -1) {
                 host += ":" + request.getResourceRef().getHostPort();
             }
             getRequestHeaders().set(HttpConstants.HEADER_HOST, host, true);
 
-            // Write the request headers
-            for (Parameter header : getRequestHeaders()) {
-                HttpUtils.writeHeader(header, getRequestStream());
-            }
+            // Delimit the request entity, with chunks if its size is unknown
+            boolean chunked = false;
+            if (request.isEntityAvailable()) {
+                long size = request.getEntity().getSize();
 
-            // Write the end of the headers section
-            getRequestStream().write(13); // CR
-            getRequestStream().write(10); // LF
-
-            // Write the request body
-            result = super.sendRequest(request);
+                if (size == Representation.UNKNOWN_SIZE) {
+                    getRequestHeaders().set(
+                            HttpConstants.HEADER_TRANSFER_ENCODING, "chunked",
+                            true);
+                    chunked = true;
+                } else {
+                    getRequestHeaders().set(
+                            HttpConstants.HEADER_CONTENT_LENGTH,
+                            Long.toString(size), true);
+                }
+            }
 
-            // Parse the response
-            parseResponse();
+            try {
+                result = exchange(request, hostDomain, hostPort, chunked);
+            } catch (IOException ioe) {
+                if (isRetryable(request)) {
+                    // The server probably closed the pooled connection in the
+                    // meantime, try once again with another connection
+                    getHelper().getLogger().log(Level.FINE,
+                            "Unable to reuse a pooled connection, retrying",
+                            ioe);
+                    result = exchange(request, hostDomain, hostPort, chunked);
+                } else {
+                    throw ioe;
+                }
+            }
         } catch (IOException ioe) {
             getHelper()
                     .getLogger()
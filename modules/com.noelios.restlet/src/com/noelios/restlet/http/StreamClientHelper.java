@@ -25,18 +25,276 @@
  * Restlet is a registered trademark of Noelios Technologies.
  */
 
+
 package com.noelios.restlet.http;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
 import org.restlet.Client;
 import org.restlet.data.Protocol;
 import org.restlet.data.Request;
 
 /**
- * HTTP client helper based on BIO sockets.
+ * HTTP client helper based on BIO sockets. Persistent connections are kept in
+ * a pool of idle connections, keyed by host and port, and reused by the next
+ * calls to the same server. Here is the list of parameters that are supported:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>chunkBufferSize</td>
+ * <td>int</td>
+ * <td>8*1024</td>
+ * <td>Size of the buffer used to send request entities of unknown length with
+ * the chunked transfer coding.</td>
+ * </tr>
+ * <tr>
+ * <td>maxBufferedEntitySize</td>
+ * <td>int</td>
+ * <td>8*1024</td>
+ * <td>Maximum size of the response entities of known length that are read as
+ * soon as the response is received, releasing the connection even if the
+ * entity is never consumed.</td>
+ * </tr>
+ * <tr>
+ * <td>persistingConnections</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if connections should be kept alive and reused after a call.</td>
+ * </tr>
+ * <tr>
+ * <td>maxConnectionsPerHost</td>
+ * <td>int</td>
+ * <td>10</td>
+ * <td>Maximum number of open connections to the same host and port. Zero or a
+ * negative value means no limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxTotalConnections</td>
+ * <td>int</td>
+ * <td>20</td>
+ * <td>Maximum number of open connections for all hosts. Zero or a negative
+ * value means no limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxWaitTimeMs</td>
+ * <td>int</td>
+ * <td>10000</td>
+ * <td>Time in ms that a call can wait for a connection when the limits are
+ * reached, before failing.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>10000</td>
+ * <td>Time in ms that an idle connection is kept in the pool before being
+ * closed.</td>
+ * </tr>
+ * <tr>
+ * <td>checkingStaleConnections</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if idle connections should be checked before being reused, in
+ * order to detect the ones closed by the server.</td>
+ * </tr>
+ * </table>
  * 
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class StreamClientHelper extends HttpClientHelper {
+    /**
+     * Connection to a server, used by one call at a time.
+     */
+    static class Connection {
+        /** The host and port key. */
+        private final String key;
+
+        /** The reference to the entity stream using the connection or null. */
+        private EntityReference entityReference;
+
+        /** The connected socket. */
+        private final Socket socket;
+
+        /** The input stream. */
+        private final HttpInputStream inputStream;
+
+        /** The output stream. */
+        private final OutputStream outputStream;
+
+        /** The time of the last use. */
+        private volatile long lastUse;
+
+        /** Indicates if the connection was taken from the pool. */
+        private volatile boolean reused;
+
+        /**
+         * Constructor.
+         * 
+         * @param key
+         *                The host and port key.
+         * @param socket
+         *                The connected socket.
+         * @throws IOException
+         */
+        Connection(String key, Socket socket) throws IOException {
+            this.key = key;
+            this.socket = socket;
+            this.inputStream = new HttpInputStream(socket.getInputStream());
+            this.outputStream = new BufferedOutputStream(socket
+                    .getOutputStream());
+            this.lastUse = System.currentTimeMillis();
+            this.reused = false;
+        }
+
+        /**
+         * Closes the socket and releases the buffer.
+         */
+        void close() {
+            try {
+                this.inputStream.close();
+            } catch (IOException ioe) {
+                // Ignore, the socket is closed below
+            }
+
+            try {
+                this.socket.close();
+            } catch (IOException ioe) {
+                // Ignore, nothing else can be done
+            }
+        }
+
+        /**
+         * Returns the input stream.
+         * 
+         * @return The input stream.
+         */
+        HttpInputStream getInputStream() {
+            return this.inputStream;
+        }
+
+        /**
+         * Returns the output stream.
+         * 
+         * @return The output stream.
+         */
+        OutputStream getOutputStream() {
+            return this.outputStream;
+        }
+
+        /**
+         * Indicates if the server closed the connection or sent unexpected
+         * data while it was idle.
+         * 
+         * @return True if the connection can't be reused.
+         */
+        boolean isStale() {
+            boolean result = this.socket.isClosed()
+                    || this.socket.isInputShutdown()
+                    || this.socket.isOutputShutdown();
+
+            if (!result) {
+                try {
+                    this.socket.setSoTimeout(1);
+
+                    try {
+                        // Either the end of the stream or an unexpected byte
+                        this.inputStream.peek();
+                        result = true;
+                    } catch (SocketTimeoutException ste) {
+                        // Nothing to read, the connection is alive
+                        result = false;
+                    } finally {
+                        this.socket.setSoTimeout(0);
+                    }
+                } catch (IOException ioe) {
+                    result = true;
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Indicates if the connection was taken from the pool.
+         * 
+         * @return True if the connection was taken from the pool.
+         */
+        boolean isReused() {
+            return this.reused;
+        }
+    }
+
+    /**
+     * Weak reference to a response entity stream, used to reclaim the
+     * connection if the entity is abandoned without being read or closed.
+     */
+    private static class EntityReference extends WeakReference<InputStream> {
+        /** The connection used by the entity. */
+        private final Connection connection;
+
+        /**
+         * Constructor.
+         * 
+         * @param entityStream
+         *                The entity stream.
+         * @param connection
+         *                The connection used by the entity.
+         * @param queue
+         *                The queue of abandoned entities.
+         */
+        private EntityReference(InputStream entityStream,
+                Connection connection, ReferenceQueue<InputStream> queue) {
+            super(entityStream, queue);
+            this.connection = connection;
+        }
+    }
+
+    /** The idle connections, most recently used first, keyed by host. */
+    private final Map<String, LinkedList<Connection>> idleConnections;
+
+    /** The connections used by a call or by a response entity. */
+    private final Set<Connection> usedConnections;
+
+    /** The queue of the response entities garbage collected before release. */
+    private final ReferenceQueue<InputStream> abandonedEntities;
+
+    /** The number of open connections, idle or used, keyed by host. */
+    private final Map<String, Integer> hostConnections;
+
+    /** The total number of open connections. */
+    private int totalConnections;
+
+    /** The number of calls that reused a pooled connection. */
+    private final AtomicLong poolHits;
+
+    /** The number of calls that had to open a new connection. */
+    private final AtomicLong poolMisses;
+
+    /** The timer evicting the idle connections. */
+    private Timer evictionTimer;
 
     /**
      * Constructor.
@@ -47,6 +305,120 @@ public class StreamClientHelper extends HttpClientHelper {
     public StreamClientHelper(Client client) {
         super(client);
         getProtocols().add(Protocol.HTTP);
+        this.idleConnections = new HashMap<String, LinkedList<Connection>>();
+        this.usedConnections = new HashSet<Connection>();
+        this.abandonedEntities = new ReferenceQueue<InputStream>();
+        this.hostConnections = new HashMap<String, Integer>();
+        this.totalConnections = 0;
+        this.poolHits = new AtomicLong();
+        this.poolMisses = new AtomicLong();
+        this.evictionTimer = null;
+    }
+
+    /**
+     * Acquires a connection to a server, reusing an idle one if possible.
+     * When the limits are reached, waits until a connection is released.
+     * 
+     * @param call
+     *                The call creating the socket if needed.
+     * @param hostDomain
+     *                The target host domain name.
+     * @param hostPort
+     *                The target host port.
+     * @return The connection acquired.
+     * @throws IOException
+     */
+    Connection acquireConnection(StreamClientCall call, String hostDomain,
+            int hostPort) throws IOException {
+        String key = hostDomain + ':' + hostPort;
+        long deadline = System.currentTimeMillis() + getMaxWaitTimeMs();
+        boolean checkStale = isCheckingStaleConnections();
+        Connection result = null;
+        boolean reserved = false;
+
+        while ((result == null) && !reserved) {
+            Connection candidate = null;
+            reclaimAbandonedConnections();
+
+            synchronized (this.idleConnections) {
+                LinkedList<Connection> idle = this.idleConnections.get(key);
+
+                if ((idle != null) && !idle.isEmpty()) {
+                    candidate = idle.removeFirst();
+                } else if (hasCapacity(key)) {
+                    // Reserve a slot for a new connection
+                    this.hostConnections.put(key, getConnectionCount(key) + 1);
+                    this.totalConnections++;
+                    reserved = true;
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        throw new IOException(
+                                "Unable to acquire a connection to " + key
+                                        + ", the connection limits were reached");
+                    }
+
+                    try {
+                        this.idleConnections.wait(remaining);
+                    } catch (InterruptedException ie) {
+                        throw new IOException(
+                                "Interrupted while waiting for a connection to "
+                                        + key);
+                    }
+                }
+            }
+
+            if (candidate != null) {
+                if (checkStale && candidate.isStale()) {
+                    discardConnection(candidate);
+                } else {
+                    candidate.reused = true;
+                    result = candidate;
+                    this.poolHits.incrementAndGet();
+                }
+            }
+        }
+
+        if (result == null) {
+            this.poolMisses.incrementAndGet();
+
+            try {
+                result = new Connection(key, call.createSocket(hostDomain,
+                        hostPort));
+            } catch (IOException ioe) {
+                releaseSlot(key);
+                throw ioe;
+            } catch (RuntimeException re) {
+                releaseSlot(key);
+                throw re;
+            }
+        }
+
+        synchronized (this.idleConnections) {
+            this.usedConnections.add(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Attaches a connection to the response entity stream reading it. If the
+     * stream is garbage collected before being read or closed, the
+     * connection is closed and its slot freed.
+     * 
+     * @param connection
+     *                The connection used by the entity.
+     * @param entityStream
+     *                The response entity stream.
+     */
+    void attachEntity(Connection connection, InputStream entityStream) {
+        synchronized (this.idleConnections) {
+            if (this.usedConnections.contains(connection)) {
+                connection.entityReference = new EntityReference(
+                        entityStream, connection, this.abandonedEntities);
+            }
+        }
     }
 
     @Override
@@ -54,15 +426,359 @@ public class StreamClientHelper extends HttpClientHelper {
         return new StreamClientCall(this, request);
     }
 
+    /**
+     * Closes a connection and frees its slot.
+     * 
+     * @param connection
+     *                The connection to close.
+     */
+    private void discardConnection(Connection connection) {
+        connection.close();
+        releaseSlot(connection.key);
+    }
+
+    /**
+     * Closes the idle connections unused for longer than the maximum idle
+     * time.
+     */
+    private void evictIdleConnections() {
+        reclaimAbandonedConnections();
+        long oldest = System.currentTimeMillis() - getMaxIdleTimeMs();
+
+        synchronized (this.idleConnections) {
+            for (Iterator<LinkedList<Connection>> iter = this.idleConnections
+                    .values().iterator(); iter.hasNext();) {
+                LinkedList<Connection> idle = iter.next();
+
+                // The least recently used connections are at the end
+                while (!idle.isEmpty() && (idle.getLast().lastUse < oldest)) {
+                    discardConnection(idle.removeLast());
+                }
+
+                if (idle.isEmpty()) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the least recently used idle connection, for any host.
+     * 
+     * @return True if a connection was closed.
+     */
+    private boolean evictOldestConnection() {
+        LinkedList<Connection> oldestList = null;
+
+        for (LinkedList<Connection> idle : this.idleConnections.values()) {
+            if (!idle.isEmpty()
+                    && ((oldestList == null) || (idle.getLast().lastUse < oldestList
+                            .getLast().lastUse))) {
+                oldestList = idle;
+            }
+        }
+
+        if (oldestList != null) {
+            discardConnection(oldestList.removeLast());
+        }
+
+        return oldestList != null;
+    }
+
+    /**
+     * Returns the size of the buffer used to send request chunks.
+     * 
+     * @return The size of the buffer used to send request chunks.
+     */
+    public int getChunkBufferSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "chunkBufferSize", Integer.toString(8 * 1024)));
+    }
+
+    /**
+     * Returns the maximum size of the response entities read as soon as the
+     * response is received.
+     * 
+     * @return The maximum size of the response entities read as soon as the
+     *         response is received.
+     */
+    public int getMaxBufferedEntitySize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "maxBufferedEntitySize", Integer.toString(8 * 1024)));
+    }
+
+    /**
+     * Returns the number of open connections to a host. Must be called while
+     * holding the pool lock.
+     * 
+     * @param key
+     *                The host and port key.
+     * @return The number of open connections to a host.
+     */
+    private int getConnectionCount(String key) {
+        Integer result = this.hostConnections.get(key);
+        return (result == null) ? 0 : result.intValue();
+    }
+
+    /**
+     * Returns the number of idle connections in the pool.
+     * 
+     * @return The number of idle connections in the pool.
+     */
+    public int getIdleConnectionCount() {
+        int result = 0;
+
+        synchronized (this.idleConnections) {
+            for (LinkedList<Connection> idle : this.idleConnections.values()) {
+                result += idle.size();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the maximum number of open connections to the same host and
+     * port.
+     * 
+     * @return The maximum number of open connections to the same host and
+     *         port.
+     */
+    public int getMaxConnectionsPerHost() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "maxConnectionsPerHost", "10"));
+    }
+
+    /**
+     * Returns the time in ms that an idle connection is kept in the pool.
+     * 
+     * @return The time in ms that an idle connection is kept in the pool.
+     */
+    public int getMaxIdleTimeMs() {
+        return Integer.parseInt(getParameters().getFirstValue("maxIdleTimeMs",
+                "10000"));
+    }
+
+    /**
+     * Returns the maximum number of open connections for all hosts.
+     * 
+     * @return The maximum number of open connections for all hosts.
+     */
+    public int getMaxTotalConnections() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "maxTotalConnections", "20"));
+    }
+
+    /**
+     * Returns the time in ms that a call can wait for a connection when the
+     * limits are reached.
+     * 
+     * @return The time in ms that a call can wait for a connection.
+     */
+    public int getMaxWaitTimeMs() {
+        return Integer.parseInt(getParameters().getFirstValue("maxWaitTimeMs",
+                "10000"));
+    }
+
+    /**
+     * Returns the number of open connections, idle or used.
+     * 
+     * @return The number of open connections.
+     */
+    public int getOpenConnectionCount() {
+        synchronized (this.idleConnections) {
+            return this.totalConnections;
+        }
+    }
+
+    /**
+     * Returns the number of calls that reused a pooled connection.
+     * 
+     * @return The number of calls that reused a pooled connection.
+     */
+    public long getPoolHits() {
+        return this.poolHits.get();
+    }
+
+    /**
+     * Returns the number of calls that had to open a new connection.
+     * 
+     * @return The number of calls that had to open a new connection.
+     */
+    public long getPoolMisses() {
+        return this.poolMisses.get();
+    }
+
+    /**
+     * Indicates if a new connection can be opened to a host, closing the
+     * oldest idle connection to another host if needed. Must be called while
+     * holding the pool lock.
+     * 
+     * @param key
+     *                The host and port key.
+     * @return True if a new connection can be opened.
+     */
+    private boolean hasCapacity(String key) {
+        int maxPerHost = getMaxConnectionsPerHost();
+        int maxTotal = getMaxTotalConnections();
+        boolean result = (maxPerHost <= 0)
+                || (getConnectionCount(key) < maxPerHost);
+
+        if (result && (maxTotal > 0) && (this.totalConnections >= maxTotal)) {
+            result = evictOldestConnection();
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if idle connections should be checked before being reused.
+     * 
+     * @return True if idle connections should be checked before being reused.
+     */
+    public boolean isCheckingStaleConnections() {
+        return Boolean.parseBoolean(getParameters().getFirstValue(
+                "checkingStaleConnections", "true"));
+    }
+
+    /**
+     * Indicates if connections should be kept alive and reused after a call.
+     * 
+     * @return True if connections should be kept alive and reused.
+     */
+    public boolean isPersistingConnections() {
+        return Boolean.parseBoolean(getParameters().getFirstValue(
+                "persistingConnections", "true"));
+    }
+
+    /**
+     * Closes the connections whose response entity was garbage collected
+     * before being read or closed.
+     */
+    private void reclaimAbandonedConnections() {
+        Reference<? extends InputStream> reference = this.abandonedEntities
+                .poll();
+
+        while (reference != null) {
+            Connection connection = ((EntityReference) reference).connection;
+
+            synchronized (this.idleConnections) {
+                if (connection.entityReference == reference) {
+                    getLogger().fine(
+                            "Closing a connection whose response entity was "
+                                    + "abandoned");
+                    releaseConnection(connection, false);
+                }
+            }
+
+            reference = this.abandonedEntities.poll();
+        }
+    }
+
+    /**
+     * Releases a connection after a call, either by returning it to the pool
+     * or by closing it. Connections closed by the stop() method are ignored.
+     * 
+     * @param connection
+     *                The connection to release.
+     * @param reusable
+     *                Indicates if the connection can be reused.
+     */
+    void releaseConnection(Connection connection, boolean reusable) {
+        synchronized (this.idleConnections) {
+            if (this.usedConnections.remove(connection)) {
+                if (connection.entityReference != null) {
+                    connection.entityReference.clear();
+                    connection.entityReference = null;
+                }
+
+                if (reusable && (this.evictionTimer != null)
+                        && isPersistingConnections()) {
+                    connection.lastUse = System.currentTimeMillis();
+                    LinkedList<Connection> idle = this.idleConnections
+                            .get(connection.key);
+
+                    if (idle == null) {
+                        idle = new LinkedList<Connection>();
+                        this.idleConnections.put(connection.key, idle);
+                    }
+
+                    idle.addFirst(connection);
+                    this.idleConnections.notifyAll();
+                } else {
+                    discardConnection(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of a closed connection and wakes up the waiting calls.
+     * 
+     * @param key
+     *                The host and port key.
+     */
+    private void releaseSlot(String key) {
+        synchronized (this.idleConnections) {
+            int count = getConnectionCount(key) - 1;
+
+            if (count > 0) {
+                this.hostConnections.put(key, count);
+            } else {
+                this.hostConnections.remove(key);
+            }
+
+            this.totalConnections--;
+            this.idleConnections.notifyAll();
+        }
+    }
+
     @Override
     public void start() throws Exception {
         super.start();
         getLogger().info("Starting the HTTP client");
+
+        synchronized (this.idleConnections) {
+            long period = Math.max(1000, getMaxIdleTimeMs() / 2);
+            this.evictionTimer = new Timer("Restlet-ConnectionEvictor", true);
+            this.evictionTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        evictIdleConnections();
+                    } catch (RuntimeException re) {
+                        getLogger().log(Level.WARNING,
+                                "Unable to evict the idle connections", re);
+                    }
+                }
+            }, period, period);
+        }
     }
 
     @Override
     public void stop() throws Exception {
         super.stop();
         getLogger().info("Stopping the HTTP client");
+
+        synchronized (this.idleConnections) {
+            if (this.evictionTimer != null) {
+                this.evictionTimer.cancel();
+                this.evictionTimer = null;
+            }
+
+            for (LinkedList<Connection> idle : this.idleConnections.values()) {
+                for (Connection connection : idle) {
+                    discardConnection(connection);
+                }
+            }
+
+            this.idleConnections.clear();
+
+            // Close the connections still used by calls or entities
+            for (Connection connection : new ArrayList<Connection>(
+                    this.usedConnections)) {
+                releaseConnection(connection, false);
+            }
+        }
     }
 }
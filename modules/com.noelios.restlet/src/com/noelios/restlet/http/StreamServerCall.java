@@ -35,7 +35,11 @@ import java.nio.channels.WritableByteChannel;
 import java.util.logging.Level;
 
 import org.restlet.Server;
+import org.restlet.data.Method;
 import org.restlet.data.Response;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.RangeRepresentation;
+import org.restlet.resource.Representation;
 
 /**
  * HTTP server call based on streams.
@@ -43,12 +47,30 @@ import org.restlet.data.Response;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class StreamServerCall extends HttpServerCall {
+    /**
+     * Minimum size of the file entities written on the response channel.
+     * Smaller ones are buffered with the response head and sent together.
+     */
+    private static final long MIN_CHANNEL_SIZE = 8192;
+
     /** The request input stream. */
     private InputStream requestStream;
 
+    /** The request entity stream. */
+    private InputStream requestEntityStream;
+
     /** The response output stream. */
     private OutputStream responseStream;
 
+    /** The underlying response channel, written directly by file entities. */
+    private WritableByteChannel responseChannel;
+
+    /** Indicates if the response entity is sent with the chunked encoding. */
+    private boolean responseChunked;
+
+    /** The size of the buffer used to send response chunks. */
+    private int chunkBufferSize;
+
     /**
      * Constructor.
      * 
@@ -61,18 +83,63 @@ public class StreamServerCall extends HttpServerCall {
      */
     public StreamServerCall(Server server, InputStream requestStream,
             OutputStream responseStream) {
+        this(server, requestStream, responseStream, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param server
+     *            The server connector.
+     * @param requestStream
+     *            The request input stream.
+     * @param responseStream
+     *            The response output stream.
+     * @param persistenceAllowed
+     *            Indicates if the connection can be kept alive after this
+     *            call, if the client asks for it.
+     */
+    public StreamServerCall(Server server, InputStream requestStream,
+            OutputStream responseStream, boolean persistenceAllowed) {
         super(server);
         this.requestStream = requestStream;
+        this.requestEntityStream = null;
         this.responseStream = responseStream;
+        this.responseChannel = null;
+        this.responseChunked = false;
+        this.chunkBufferSize = ChunkedOutputStream.DEFAULT_BUFFER_SIZE;
 
         try {
-            readRequestHead(getRequestStream());
+            readRequestHead(this.requestStream);
+            setKeepAlive(persistenceAllowed && isRequestPersistent());
         } catch (IOException ioe) {
             getLogger().log(Level.WARNING, "Unable to parse the HTTP request",
                     ioe);
         }
     }
 
+    /**
+     * Completes the call by consuming any unread byte of the request entity,
+     * so that the next request can be read from the same connection.
+     * 
+     * @throws IOException
+     */
+    public void complete() throws IOException {
+        if ((getRequestStream() instanceof SizedInputStream)
+                || (getRequestStream() instanceof ChunkedInputStream)) {
+            getRequestStream().close();
+        }
+    }
+
+    /**
+     * Returns the size of the buffer used to send response chunks.
+     * 
+     * @return The size of the buffer used to send response chunks.
+     */
+    public int getChunkBufferSize() {
+        return this.chunkBufferSize;
+    }
+
     @Override
     public ReadableByteChannel getRequestChannel() {
         return null;
@@ -80,12 +147,46 @@ public class StreamServerCall extends HttpServerCall {
 
     @Override
     public InputStream getRequestStream() {
-        return this.requestStream;
+        if (this.requestEntityStream == null) {
+            String contentLength = getRequestHeaders().getFirstValue(
+                    HttpConstants.HEADER_CONTENT_LENGTH, true);
+
+            if (HttpUtils.isChunkedEncoding(getRequestHeaders())) {
+                // The chunked encoding takes precedence over the length
+                this.requestEntityStream = new ChunkedInputStream(
+                        this.requestStream);
+            } else if (contentLength != null) {
+                long size;
+                try {
+                    size = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException nfe) {
+                    size = 0;
+                    setKeepAlive(false);
+                }
+
+                this.requestEntityStream = new SizedInputStream(
+                        this.requestStream, size);
+            } else if (isKeepAlive()) {
+                // Without framing information, there is no request entity
+                this.requestEntityStream = new SizedInputStream(
+                        this.requestStream, 0);
+            } else {
+                this.requestEntityStream = this.requestStream;
+            }
+        }
+
+        return this.requestEntityStream;
     }
 
+    /**
+     * Returns the channel underlying the response stream, if it was set and
+     * if the response entity isn't sent with the chunked transfer coding.
+     * 
+     * @return The response channel or null.
+     */
     @Override
     public WritableByteChannel getResponseChannel() {
-        return null;
+        return isResponseChunked() ? null : this.responseChannel;
     }
 
     @Override
@@ -93,8 +194,116 @@ public class StreamServerCall extends HttpServerCall {
         return this.responseStream;
     }
 
+    /**
+     * Indicates if the response entity is sent with the chunked transfer
+     * coding.
+     * 
+     * @return True if the response entity is sent with the chunked transfer
+     *         coding.
+     */
+    public boolean isResponseChunked() {
+        return this.responseChunked;
+    }
+
+    /**
+     * Indicates if an entity is read from a file, completely or by byte
+     * ranges, and can be transferred directly to the response channel.
+     * 
+     * @param entity
+     *            The response entity.
+     * @return True if the entity is read from a file.
+     */
+    private boolean isFileEntity(Representation entity) {
+        return (entity instanceof FileRepresentation)
+                || ((entity instanceof RangeRepresentation) && (((RangeRepresentation) entity)
+                        .getWrappedRepresentation() instanceof FileRepresentation));
+    }
+
+    /**
+     * Indicates if the length of the response body will be known by the client
+     * without relying on the closing of the connection.
+     * 
+     * @param response
+     *            The response to send.
+     * @return True if the response body is properly delimited.
+     */
+    protected boolean isResponseDelimited(Response response)
+            throws IOException {
+        boolean result = Method.HEAD.equals(response.getRequest().getMethod())
+                || (getStatusCode() == HttpConstants.STATUS_SUCCESS_NO_CONTENT)
+                || (getStatusCode() == HttpConstants.STATUS_SUCCESS_RESET_CONTENT)
+                || (getStatusCode() == HttpConstants.STATUS_REDIRECTION_NOT_MODIFIED)
+                || (getStatusCode() / 100 == 1);
+
+        if (!result) {
+            if (response.getEntity() == null) {
+                // Explicitly announce the empty body
+                getResponseHeaders().set(HttpConstants.HEADER_CONTENT_LENGTH,
+                        "0", true);
+                result = true;
+            } else if (getResponseHeaders().getFirstValue(
+                    HttpConstants.HEADER_CONTENT_LENGTH, true) != null) {
+                result = true;
+            } else if ("HTTP/1.1".equalsIgnoreCase(getVersion())) {
+                // Delimit the entity of unknown length with chunks
+                getResponseHeaders().set(
+                        HttpConstants.HEADER_TRANSFER_ENCODING, "chunked",
+                        true);
+                this.responseChunked = true;
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the channel underlying the response stream. When set, file entities
+     * are transferred directly from the file channel to this channel, without
+     * being copied through the response stream buffers. The channel must be in
+     * blocking mode while the call is handled.
+     * 
+     * @param responseChannel
+     *            The channel underlying the response stream.
+     */
+    public void setResponseChannel(WritableByteChannel responseChannel) {
+        this.responseChannel = responseChannel;
+    }
+
+    /**
+     * Sets the size of the buffer used to send response chunks.
+     * 
+     * @param chunkBufferSize
+     *            The size of the buffer used to send response chunks.
+     */
+    public void setChunkBufferSize(int chunkBufferSize) {
+        this.chunkBufferSize = chunkBufferSize;
+    }
+
+    @Override
+    public void writeResponseBody(Representation entity) throws IOException {
+        if (isResponseChunked()) {
+            ChunkedOutputStream chunkedStream = new ChunkedOutputStream(
+                    getResponseStream(), getChunkBufferSize());
+            entity.write(chunkedStream);
+            chunkedStream.close();
+        } else if ((getResponseChannel() != null) && isFileEntity(entity)
+                && (entity.getSize() >= MIN_CHANNEL_SIZE)) {
+            // Send the buffered head, then let the file channel transfer the
+            // body straight to the socket
+            getResponseStream().flush();
+            entity.write(getResponseChannel());
+        } else if (getResponseStream() != null) {
+            entity.write(getResponseStream());
+        }
+    }
+
     @Override
     public void writeResponseHead(Response response) throws IOException {
+        if (isKeepAlive() && !isResponseDelimited(response)) {
+            setKeepAlive(false);
+        }
+
         writeResponseHead(getResponseStream());
     }
 
@@ -27,20 +27,72 @@
 
 package com.noelios.restlet.http;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.restlet.Server;
 import org.restlet.data.Protocol;
 
 /**
- * HTTP server helper based on BIO sockets.
+ * HTTP server helper based on BIO sockets. Here is the list of parameters that
+ * are supported: <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>persistingConnections</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if connections should be kept alive after a call, as
+ * requested by HTTP/1.1 clients or by HTTP/1.0 clients sending a "keep-alive"
+ * connection token.</td>
+ * </tr>
+ * <tr>
+ * <td>maxRequestsPerConnection</td>
+ * <td>int</td>
+ * <td>100</td>
+ * <td>Maximum number of requests handled on a persistent connection before
+ * closing it. Zero or a negative value means no limit.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>15000</td>
+ * <td>Time in ms that a persistent connection can wait for the next request
+ * before being closed. Zero means no timeout.</td>
+ * </tr>
+ * <tr>
+ * <td>maxThreads</td>
+ * <td>int</td>
+ * <td>10</td>
+ * <td>Maximum number of threads handling the connections. When they are all
+ * busy, the persistent connections waiting for their next request are closed
+ * to free their thread.</td>
+ * </tr>
+ * <tr>
+ * <td>chunkBufferSize</td>
+ * <td>int</td>
+ * <td>8*1024</td>
+ * <td>Size of the buffer used to send response entities of unknown length
+ * with the chunked transfer coding on persistent HTTP/1.1 connections.</td>
+ * </tr>
+ * </table>
  * 
  * @author Jerome Louvel (contact@noelios.com)
  */
@@ -53,23 +105,123 @@ public class StreamServerHelper extends HttpServerHelper {
 
 		private final Socket socket;
 
+		/** Indicates if the connection was closed to free its thread. */
+		private volatile boolean reclaimed;
+
 		Connection(StreamServerHelper helper, Socket socket) {
 			this.helper = helper;
 			this.socket = socket;
 		}
 
-		public void run() {
+		/**
+		 * Closes the idle connection so that its thread can handle another
+		 * one.
+		 */
+		void reclaim() {
+			this.reclaimed = true;
+
 			try {
-				this.helper.handle(new StreamServerCall(
-						this.helper.getServer(), this.socket.getInputStream(),
-						this.socket.getOutputStream()));
-				this.socket.getOutputStream().close();
 				this.socket.close();
 			} catch (IOException ioe) {
-				getLogger().log(Level.WARNING,
-						"Unexpected error while handle a call", ioe);
+				getLogger().log(Level.FINE, "Unable to close the socket", ioe);
+			}
+		}
+
+		public void run() {
+			HttpInputStream requestStream = null;
+
+			try {
+				this.socket.setTcpNoDelay(true);
+
+				if (this.helper.isPersistingConnections()) {
+					this.socket.setSoTimeout(this.helper.getMaxIdleTimeMs());
+				}
+
+				requestStream = new HttpInputStream(this.socket
+						.getInputStream());
+				OutputStream responseStream = new KeepAliveOutputStream(
+						new BufferedOutputStream(this.socket.getOutputStream()));
+				int maxRequests = this.helper.getMaxRequestsPerConnection();
+				int requests = 0;
+				boolean keepAlive = true;
+
+				while (keepAlive
+						&& isRequestAvailable(requestStream, requests == 0)) {
+					requests++;
+					StreamServerCall call = new StreamServerCall(this.helper
+							.getServer(), requestStream, responseStream,
+							this.helper.isPersistingConnections()
+									&& ((maxRequests <= 0) || (requests < maxRequests)));
+					call.setChunkBufferSize(this.helper.getChunkBufferSize());
+					call.setResponseChannel(this.socket.getChannel());
+					this.helper.handle(call);
+					responseStream.flush();
+					keepAlive = call.isKeepAlive();
+
+					if (keepAlive) {
+						call.complete();
+					}
+				}
+			} catch (SocketTimeoutException ste) {
+				getLogger().log(Level.FINE,
+						"Closing an idle persistent connection", ste);
+			} catch (IOException ioe) {
+				if (this.reclaimed) {
+					getLogger().log(Level.FINE,
+							"Closing an idle persistent connection", ioe);
+				} else {
+					getLogger().log(Level.WARNING,
+							"Unexpected error while handle a call", ioe);
+				}
+			} finally {
+				if (requestStream != null) {
+					requestStream.release();
+				}
+
+				try {
+					this.socket.close();
+				} catch (IOException ioe) {
+					getLogger().log(Level.FINE,
+							"Unable to close the socket", ioe);
+				}
 			}
 		}
+
+		/**
+		 * Waits for the beginning of the next request on the connection. After
+		 * the first request, the connection is idle while waiting and may be
+		 * closed by the helper when all the threads are busy.
+		 * 
+		 * @param requestStream
+		 *            The buffered request stream.
+		 * @param first
+		 *            Indicates if the first request of the connection is
+		 *            expected.
+		 * @return True if a request is available, false if the client closed
+		 *         the connection or if it was closed to free the thread.
+		 * @throws IOException
+		 */
+		private boolean isRequestAvailable(HttpInputStream requestStream,
+				boolean first) throws IOException {
+			if (first) {
+				return (requestStream.peek() != -1);
+			} else if (this.helper.isSaturated()) {
+				// Don't hold the thread while connections are waiting for one
+				return false;
+			}
+
+			this.helper.idleConnections.put(this, Boolean.TRUE);
+			boolean available = false;
+
+			try {
+				available = (requestStream.peek() != -1);
+			} finally {
+				// The connection is being reclaimed if it is no longer idle
+				available &= (this.helper.idleConnections.remove(this) != null);
+			}
+
+			return available;
+		}
 	}
 
 	/**
@@ -78,27 +230,24 @@ public class StreamServerHelper extends HttpServerHelper {
 	class Listener extends Thread {
 		private StreamServerHelper helper;
 
-		Listener(StreamServerHelper helper) {
+		private final ServerSocket serverSocket;
+
+		Listener(StreamServerHelper helper, ServerSocket serverSocket) {
 			this.helper = helper;
+			this.serverSocket = serverSocket;
 		}
 
 		@Override
 		public void run() {
 			try {
-				if (socketAddress == null) {
-					socketAddress = createSocketAddress();
-				}
-
-				executorService = Executors.newFixedThreadPool(10);
-				serverSocket = createSocket();
-
-				if (socketAddress != null) {
-					serverSocket.bind(socketAddress);
-				}
-
 				for (;;) {
-					executorService.execute(new Connection(helper, serverSocket
-							.accept()));
+					executorService.execute(new Connection(helper,
+							this.serverSocket.accept()));
+
+					if (this.helper.isSaturated()) {
+						this.helper.reclaimIdleConnections(executorService
+								.getQueue().size());
+					}
 				}
 			} catch (IOException ioe) {
 				try {
@@ -118,7 +267,13 @@ public class StreamServerHelper extends HttpServerHelper {
 	private SocketAddress socketAddress;
 
 	/** The executor service (thread pool). */
-	private ExecutorService executorService;
+	private ThreadPoolExecutor executorService;
+
+	/** The persistent connections waiting for their next request. */
+	private final Map<Connection, Boolean> idleConnections;
+
+	/** The listener thread. */
+	private Listener listener;
 
 	/**
 	 * Constructor.
@@ -129,16 +284,19 @@ public class StreamServerHelper extends HttpServerHelper {
 	public StreamServerHelper(Server server) {
 		super(server);
 		getProtocols().add(Protocol.HTTP);
+		this.idleConnections = new ConcurrentHashMap<Connection, Boolean>();
 	}
 
 	/**
-	 * Creates a server socket to listen on.
+	 * Creates a server socket to listen on. The socket is obtained from a
+	 * server socket channel so that the accepted sockets expose the channel
+	 * used to transfer file entities without copying them.
 	 * 
 	 * @return The created server socket.
 	 * @throws IOException
 	 */
 	public ServerSocket createSocket() throws IOException {
-		ServerSocket serverSocket = new ServerSocket();
+		ServerSocket serverSocket = ServerSocketChannel.open().socket();
 		return serverSocket;
 	}
 
@@ -157,24 +315,130 @@ public class StreamServerHelper extends HttpServerHelper {
 		}
 	}
 
+	/**
+	 * Returns the size of the buffer used to send response chunks.
+	 * 
+	 * @return The size of the buffer used to send response chunks.
+	 */
+	public int getChunkBufferSize() {
+		return Integer.parseInt(getParameters().getFirstValue(
+			"chunkBufferSize", Integer.toString(8 * 1024)));
+	}
+
+	/**
+	 * Returns the time in ms that a persistent connection can wait for the
+	 * next request before being closed.
+	 * 
+	 * @return The time in ms that a persistent connection can wait for the
+	 *         next request.
+	 */
+	public int getMaxIdleTimeMs() {
+		return Integer.parseInt(getParameters().getFirstValue(
+				"maxIdleTimeMs", "15000"));
+	}
+
+	/**
+	 * Returns the maximum number of threads handling the connections.
+	 * 
+	 * @return The maximum number of threads handling the connections.
+	 */
+	public int getMaxThreads() {
+		return Integer.parseInt(getParameters().getFirstValue("maxThreads",
+				"10"));
+	}
+
+	/**
+	 * Returns the maximum number of requests handled on a persistent
+	 * connection before closing it.
+	 * 
+	 * @return The maximum number of requests handled on a persistent
+	 *         connection.
+	 */
+	public int getMaxRequestsPerConnection() {
+		return Integer.parseInt(getParameters().getFirstValue(
+				"maxRequestsPerConnection", "100"));
+	}
+
+	/**
+	 * Indicates if accepted connections are waiting for a thread.
+	 * 
+	 * @return True if accepted connections are waiting for a thread.
+	 */
+	private boolean isSaturated() {
+		ThreadPoolExecutor executorService = this.executorService;
+		return (executorService != null)
+				&& !executorService.getQueue().isEmpty();
+	}
+
+	/**
+	 * Indicates if connections should be kept alive after a call.
+	 * 
+	 * @return True if connections should be kept alive after a call.
+	 */
+	public boolean isPersistingConnections() {
+		return Boolean.parseBoolean(getParameters().getFirstValue(
+				"persistingConnections", "true"));
+	}
+
+	/**
+	 * Closes idle persistent connections to free their thread.
+	 * 
+	 * @param count
+	 *            The maximum number of connections to close.
+	 */
+	private void reclaimIdleConnections(int count) {
+		for (Connection connection : this.idleConnections.keySet()) {
+			if (count <= 0) {
+				break;
+			} else if (this.idleConnections.remove(connection) != null) {
+				connection.reclaim();
+				count--;
+			}
+		}
+	}
+
 	@Override
 	public void start() throws Exception {
 		super.start();
 		getLogger().info("Starting the internal HTTP server");
-		new Listener(this).start();
+
+		// Bind before returning so that the server is ready to accept calls
+		if (this.socketAddress == null) {
+			this.socketAddress = createSocketAddress();
+		}
+
+		this.executorService = new ThreadPoolExecutor(getMaxThreads(),
+				getMaxThreads(), 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		this.serverSocket = createSocket();
+
+		if (this.socketAddress != null) {
+			this.serverSocket.bind(this.socketAddress);
+		}
+
+		this.listener = new Listener(this, this.serverSocket);
+		this.listener.start();
 	}
 
 	@Override
 	public void stop() throws Exception {
 		super.stop();
 		getLogger().info("Stopping the internal HTTP server");
-		if (this.serverSocket.isBound()) {
+		if ((this.serverSocket != null) && this.serverSocket.isBound()) {
 			this.serverSocket.close();
 			this.serverSocket = null;
 		}
 
+		Listener listener = this.listener;
+		if ((listener != null) && (listener != Thread.currentThread())) {
+			// The port is only released once the pending accept returns
+			listener.join(1000);
+			this.listener = null;
+		}
+
 		if (this.executorService != null) {
 			this.executorService.shutdown();
+			reclaimIdleConnections(Integer.MAX_VALUE);
 		}
 	}
 }
@@ -29,7 +29,10 @@ package com.noelios.restlet.local;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.Date;
 import java.util.logging.Level;
 
 import org.restlet.Client;
@@ -40,6 +43,7 @@ import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.InputRepresentation;
 import org.restlet.resource.Representation;
 import org.restlet.service.MetadataService;
@@ -135,11 +139,20 @@ public class ClapClientHelper extends LocalClientHelper {
 
             if (url != null) {
                 try {
-                    Representation output = new InputRepresentation(url
-                            .openStream(), metadataService
-                            .getDefaultMediaType());
+                    URLConnection connection = url.openConnection();
+                    Representation output = new InputRepresentation(
+                            connection.getInputStream(), metadataService
+                                    .getDefaultMediaType(), connection
+                                    .getContentLength());
                     output.setIdentifier(request.getResourceRef());
 
+                    // Update the validators based on the resource origin
+                    if (connection.getLastModified() > 0) {
+                        output.setModificationDate(new Date(connection
+                                .getLastModified()));
+                    }
+                    output.setTag(getTag(url, connection));
+
                     // Update the metadata based on file extensions
                     String name = path.substring(path.lastIndexOf('/') + 1);
                     updateMetadata(metadataService, name, output);
@@ -163,4 +176,33 @@ public class ClapClientHelper extends LocalClientHelper {
         }
     }
 
+    /**
+     * Returns the tag of a class loader resource. Resources in a file or in an
+     * archive entry are tagged like the ones of the FILE and WAR connectors,
+     * other ones rely on the size and modification date of their connection.
+     * 
+     * @param url
+     *            The resource URL.
+     * @param connection
+     *            The open connection to the resource.
+     * @return The tag or null.
+     * @throws IOException
+     */
+    private Tag getTag(URL url, URLConnection connection) throws IOException {
+        Tag result = null;
+        File file = url.getProtocol().equals("file") ? new File(url
+                .getFile()) : null;
+
+        if ((file != null) && file.isFile()) {
+            result = getTag(file);
+        } else if (connection instanceof JarURLConnection) {
+            result = getTag(((JarURLConnection) connection).getJarEntry());
+        } else {
+            result = createTag(connection.getContentLength(), connection
+                    .getLastModified(), -1);
+        }
+
+        return result;
+    }
+
 }
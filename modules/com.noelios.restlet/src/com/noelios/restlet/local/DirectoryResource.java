@@ -28,6 +28,7 @@
 package com.noelios.restlet.local;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -45,10 +46,14 @@ import org.restlet.data.ReferenceList;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
+import org.restlet.resource.StringRepresentation;
 import org.restlet.resource.Variant;
 
+import com.noelios.restlet.Engine;
+
 /**
  * Resource supported by a set of context representations (from file system,
  * class loaders and webapp context). A content negotiation mechanism (similar
@@ -63,6 +68,27 @@ import org.restlet.resource.Variant;
  */
 public class DirectoryResource extends Resource {
 
+    /**
+     * Directory listing whose references were already parsed.
+     */
+    private static final class ListingRepresentation extends
+            StringRepresentation {
+        /** The parsed references. */
+        private final ReferenceList references;
+
+        /**
+         * Constructor.
+         * 
+         * @param listing
+         *            The cached listing.
+         */
+        private ListingRepresentation(ListingCache.Listing listing) {
+            super(listing.getText(), MediaType.TEXT_URI_LIST);
+            setTag(listing.getTag());
+            this.references = listing.getReferences();
+        }
+    }
+
     /**
      * Returns the set of extensions contained in a given directory entry name.
      * 
@@ -91,6 +117,9 @@ public class DirectoryResource extends Resource {
     /** The parent directory handler. */
     private Directory directory;
 
+    /** The cache of the directory listings or null. */
+    private ListingCache listingCache;
+
     /** If the resource is a directory, this contains its content. */
     private ReferenceList directoryContent;
 
@@ -141,6 +170,9 @@ public class DirectoryResource extends Resource {
 
         // Update the member variables
         this.directory = directory;
+        org.restlet.util.Engine engine = Engine.getInstance();
+        this.listingCache = (engine instanceof Engine) ? ((Engine) engine)
+                .getListingCache(directory) : null;
         this.relativePart = request.getResourceRef().getRemainingPart();
 
         if (this.relativePart.startsWith("/")) {
@@ -158,7 +190,8 @@ public class DirectoryResource extends Resource {
         }
 
         // Try to detect the presence of a directory
-        Response contextResponse = getDispatcher().get(this.targetUri);
+        Response contextResponse = dispatch(new Request(Method.GET,
+                this.targetUri));
         if (contextResponse.getEntity() != null) {
             // As a convention, underlying client connectors return the
             // directory listing with the media-type "MediaType.TEXT_URI_LIST"
@@ -167,8 +200,7 @@ public class DirectoryResource extends Resource {
                     .getMediaType())) {
                 this.targetDirectory = true;
                 this.targetFile = false;
-                this.directoryContent = new ReferenceList(contextResponse
-                        .getEntity());
+                this.directoryContent = getReferences(contextResponse);
                 if (!request.getResourceRef().getIdentifier().endsWith("/")) {
                     // All requests will be automatically redirected
                     this.directoryRedirection = true;
@@ -255,12 +287,12 @@ public class DirectoryResource extends Resource {
                 this.baseName = targetUri.substring(lastSlashIndex + 1);
             }
 
-            contextResponse = getDispatcher().get(this.directoryUri);
+            contextResponse = dispatch(new Request(Method.GET,
+                    this.directoryUri));
             if ((contextResponse.getEntity() != null)
                     && MediaType.TEXT_URI_LIST.equals(contextResponse
                             .getEntity().getMediaType())) {
-                this.directoryContent = new ReferenceList(contextResponse
-                        .getEntity());
+                this.directoryContent = getReferences(contextResponse);
             }
         }
 
@@ -357,6 +389,72 @@ public class DirectoryResource extends Resource {
         }
     }
 
+    /**
+     * Dispatches a request to the context's client connectors. Directory
+     * listings are cached with their tag, so that an unchanged listing is
+     * confirmed by the connector instead of being listed and parsed again.
+     * The cached references are shared and must not be modified.
+     * 
+     * @param request
+     *            The request to dispatch.
+     * @return The response received.
+     * @throws IOException
+     */
+    private Response dispatch(Request request) throws IOException {
+        String key = null;
+        ListingCache.Listing listing = null;
+
+        if (this.listingCache != null) {
+            key = request.getResourceRef().toString() + '\u0002'
+                    + request.getClientInfo().getAcceptedMediaTypes();
+            listing = this.listingCache.get(key);
+
+            if (listing != null) {
+                List<Tag> noneMatch = new ArrayList<Tag>();
+                noneMatch.add(listing.getTag());
+                request.getConditions().setNoneMatch(noneMatch);
+            }
+        }
+
+        Response result = getDispatcher().handle(request);
+
+        if (key != null) {
+            Representation entity = result.getEntity();
+
+            if ((listing != null)
+                    && Status.REDIRECTION_NOT_MODIFIED.equals(result
+                            .getStatus())) {
+                // The cached listing is still current
+                entity = new ListingRepresentation(listing);
+                entity.setIdentifier(request.getResourceRef());
+                result.setEntity(entity);
+                result.setStatus(Status.SUCCESS_OK);
+            } else if (result.getStatus().isSuccess() && (entity != null)
+                    && (entity.getTag() != null)
+                    && MediaType.TEXT_URI_LIST.equals(entity.getMediaType())) {
+                // Parse and cache the new listing
+                String text = entity.getText();
+                ReferenceList references = new ReferenceList(
+                        new StringRepresentation(text,
+                                MediaType.TEXT_URI_LIST));
+                references.setIdentifier(entity.getIdentifier());
+                listing = new ListingCache.Listing(entity.getTag(), text,
+                        references);
+                this.listingCache.put(key, listing);
+
+                entity = new ListingRepresentation(listing);
+                entity.setIdentifier(result.getEntity().getIdentifier());
+                entity.setModificationDate(result.getEntity()
+                        .getModificationDate());
+                result.setEntity(entity);
+            } else if (listing != null) {
+                this.listingCache.remove(key);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the local base name of the file. For example, "foo.en" and
      * "foo.en-GB.html" return "foo".
@@ -460,6 +558,21 @@ public class DirectoryResource extends Resource {
         return identifiersComparator;
     }
 
+    /**
+     * Returns the references of a directory listing, reusing the references
+     * of a cached listing.
+     * 
+     * @param response
+     *            The response containing the listing.
+     * @return The references of the listing.
+     * @throws IOException
+     */
+    private ReferenceList getReferences(Response response) throws IOException {
+        Representation entity = response.getEntity();
+        return (entity instanceof ListingRepresentation) ? ((ListingRepresentation) entity).references
+                : new ReferenceList(entity);
+    }
+
     /**
      * Returns the context's target URI (file, clap URI).
      * 
@@ -575,14 +688,13 @@ public class DirectoryResource extends Resource {
             // Ask for the list of all variants of this resource
             contextCall.getClientInfo().getAcceptedMediaTypes().add(
                     new Preference<MediaType>(MediaType.TEXT_URI_LIST));
-            Response contextResponse = getDispatcher().handle(contextCall);
+            Response contextResponse = dispatch(contextCall);
             if (contextResponse.getEntity() != null) {
                 // Test if the given response is the list of all variants for
                 // this resource
                 if (MediaType.TEXT_URI_LIST.equals(contextResponse.getEntity()
                         .getMediaType())) {
-                    ReferenceList listVariants = new ReferenceList(
-                            contextResponse.getEntity());
+                    ReferenceList listVariants = getReferences(contextResponse);
                     Set<String> extensions = null;
                     String entryUri;
                     String fullEntryName;
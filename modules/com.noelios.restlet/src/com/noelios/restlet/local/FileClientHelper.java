@@ -36,8 +36,11 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -55,19 +58,125 @@ import org.restlet.data.ReferenceList;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.FileRepresentation;
 import org.restlet.resource.Representation;
 import org.restlet.resource.Variant;
 import org.restlet.service.MetadataService;
 import org.restlet.util.ByteUtils;
 
+import com.noelios.restlet.util.LruMap;
+
 /**
- * Connector to the file resources accessible
+ * Connector to the file resources accessible. Here is the list of additional
+ * parameters that are supported:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>directoryCacheSize</td>
+ * <td>int</td>
+ * <td>256</td>
+ * <td>Maximum number of directory indexes cached in order to look up variants
+ * and list directories without scanning them again.</td>
+ * </tr>
+ * </table>
  * 
  * @author Jerome Louvel (contact@noelios.com)
  * @author Thierry Boileau
  */
 public class FileClientHelper extends LocalClientHelper {
+    /**
+     * Snapshot of the content of a directory, with its files grouped by base
+     * name.
+     */
+    private static final class DirectoryIndex {
+        /** The files of the directory. */
+        private final File[] files;
+
+        /** The modification time of the directory when it was listed. */
+        private final long lastModified;
+
+        /** The metadata service used to split the file names. */
+        private final MetadataService metadataService;
+
+        /**
+         * Indicates if the directory was listed long enough after its last
+         * modification for the modification time to detect later changes.
+         */
+        private final boolean stable;
+
+        /** The extensions of each file, grouped by base name. */
+        private final Map<String, Map<File, Set<String>>> variants;
+
+        /**
+         * Constructor.
+         * 
+         * @param files
+         *            The files of the directory.
+         * @param lastModified
+         *            The modification time of the directory.
+         * @param metadataService
+         *            The metadata service used to split the file names.
+         * @param variants
+         *            The extensions of each file, grouped by base name.
+         */
+        private DirectoryIndex(File[] files, long lastModified,
+                MetadataService metadataService,
+                Map<String, Map<File, Set<String>>> variants) {
+            this.files = files;
+            this.lastModified = lastModified;
+            this.metadataService = metadataService;
+            this.stable = (lastModified > 0)
+                    && (System.currentTimeMillis() - lastModified > MODIFICATION_RESOLUTION);
+            this.variants = variants;
+        }
+
+        /**
+         * Returns the files sharing a base name with their extensions.
+         * 
+         * @param baseName
+         *            The base name.
+         * @return The files sharing the base name with their extensions.
+         */
+        private Map<File, Set<String>> getVariants(String baseName) {
+            Map<File, Set<String>> result = this.variants.get(baseName);
+            return (result == null) ? new LinkedHashMap<File, Set<String>>()
+                    : result;
+        }
+
+        /**
+         * Indicates if the index still reflects the directory.
+         * 
+         * @param lastModified
+         *            The current modification time of the directory.
+         * @param metadataService
+         *            The metadata service of the current request.
+         * @return True if the index still reflects the directory.
+         */
+        private boolean isValid(long lastModified,
+                MetadataService metadataService) {
+            return this.stable && (this.lastModified == lastModified)
+                    && (this.metadataService == metadataService);
+        }
+    }
+
+    /** Default maximum number of cached directory indexes. */
+    public static final int DEFAULT_DIRECTORY_CACHE_SIZE = 256;
+
+    /**
+     * Coarsest resolution of the file system modification times, in
+     * milliseconds.
+     */
+    private static final long MODIFICATION_RESOLUTION = 2000L;
+
+    /** The cached directory indexes, created on first use. */
+    private volatile LruMap<String, DirectoryIndex> directoryIndexes;
+
     /**
      * Constructor.
      * 
@@ -77,6 +186,125 @@ public class FileClientHelper extends LocalClientHelper {
     public FileClientHelper(Client client) {
         super(client);
         getProtocols().add(Protocol.FILE);
+        this.directoryIndexes = null;
+    }
+
+    /**
+     * Returns the maximum number of cached directory indexes.
+     * 
+     * @return The maximum number of cached directory indexes.
+     */
+    public int getDirectoryCacheSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "directoryCacheSize", Integer
+                        .toString(DEFAULT_DIRECTORY_CACHE_SIZE)));
+    }
+
+    /**
+     * Returns the index of a directory, listing the directory again only if
+     * it was modified since it was last indexed.
+     * 
+     * @param directory
+     *            The directory to index.
+     * @param metadataService
+     *            The metadata service used to split the file names.
+     * @return The directory index or null if the directory can't be listed.
+     */
+    private DirectoryIndex getDirectoryIndex(File directory,
+            MetadataService metadataService) {
+        LruMap<String, DirectoryIndex> indexes = getDirectoryIndexes();
+        String key = directory.getAbsolutePath();
+
+        // Read the modification time before listing, so that concurrent
+        // changes are detected on the next lookup
+        long lastModified = directory.lastModified();
+        DirectoryIndex result;
+
+        synchronized (indexes) {
+            result = indexes.get(key);
+        }
+
+        if ((result == null) || !result.isValid(lastModified, metadataService)) {
+            File[] files = directory.listFiles();
+
+            if (files == null) {
+                result = null;
+            } else {
+                Map<String, Map<File, Set<String>>> variants = new LinkedHashMap<String, Map<File, Set<String>>>();
+
+                for (File entry : files) {
+                    String baseName = getBaseName(entry, metadataService);
+                    Map<File, Set<String>> entries = variants.get(baseName);
+
+                    if (entries == null) {
+                        entries = new LinkedHashMap<File, Set<String>>();
+                        variants.put(baseName, entries);
+                    }
+
+                    entries.put(entry, getExtensions(entry, metadataService));
+                }
+
+                result = new DirectoryIndex(files, lastModified,
+                        metadataService, variants);
+            }
+
+            synchronized (indexes) {
+                if ((result != null) && result.stable) {
+                    indexes.put(key, result);
+                } else {
+                    indexes.remove(key);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the cached directory indexes, creating them if necessary.
+     * 
+     * @return The cached directory indexes.
+     */
+    private LruMap<String, DirectoryIndex> getDirectoryIndexes() {
+        LruMap<String, DirectoryIndex> result = this.directoryIndexes;
+
+        if (result == null) {
+            synchronized (this) {
+                result = this.directoryIndexes;
+
+                if (result == null) {
+                    result = new LruMap<String, DirectoryIndex>(Math.max(1,
+                            getDirectoryCacheSize()));
+                    this.directoryIndexes = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the validators of a listing of an indexed directory.
+     * 
+     * @param index
+     *            The directory index.
+     * @return The validators of the listing or null if the directory was
+     *         modified too recently to be validated.
+     */
+    private Variant getListingVariant(DirectoryIndex index) {
+        Variant result = null;
+
+        if (index.stable) {
+            Tag tag = createTag(index.files.length, index.lastModified, -1);
+
+            if (tag != null) {
+                result = new Variant(MediaType.TEXT_URI_LIST);
+                result.setTag(tag);
+                result.setModificationDate(new Date(index.lastModified));
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -126,6 +354,8 @@ public class FileClientHelper extends LocalClientHelper {
         if (request.getMethod().equals(Method.GET)
                 || request.getMethod().equals(Method.HEAD)) {
             Representation output = null;
+            Variant listing = null;
+            Status status = null;
 
             // Get variants for a resource
             boolean found = false;
@@ -141,27 +371,33 @@ public class FileClientHelper extends LocalClientHelper {
                 // known extensions (beginning from the left)
                 String baseName = getBaseName(file, metadataService);
                 // 2- looking for resources with the same base name
-                if (file.getParentFile() != null) {
-                    File[] files = file.getParentFile().listFiles();
-                    if (files != null) {
-                        ReferenceList rl = new ReferenceList(files.length);
+                DirectoryIndex index = (file.getParentFile() == null) ? null
+                        : getDirectoryIndex(file.getParentFile(),
+                                metadataService);
+                if (index != null) {
+                    listing = getListingVariant(index);
+                    status = (listing == null) ? null : request
+                            .getConditions().getStatus(request.getMethod(),
+                                    listing);
+
+                    if (status == null) {
+                        Map<File, Set<String>> variants = index
+                                .getVariants(baseName);
+                        ReferenceList rl = new ReferenceList(variants.size());
 
                         String encodedParentDirectoryURI = path.substring(0,
                                 path.lastIndexOf("/"));
                         String encodedFileName = path.substring(path
                                 .lastIndexOf("/") + 1);
 
-                        for (File entry : files) {
-                            if (baseName.equals(getBaseName(entry,
-                                    metadataService))) {
-                                rl
-                                        .add(LocalReference
-                                                .createFileReference(encodedParentDirectoryURI
-                                                        + "/"
-                                                        + getReencodedVariantFileName(
-                                                                encodedFileName,
-                                                                entry.getName())));
-                            }
+                        for (File entry : variants.keySet()) {
+                            rl
+                                    .add(LocalReference
+                                            .createFileReference(encodedParentDirectoryURI
+                                                    + "/"
+                                                    + getReencodedVariantFileName(
+                                                            encodedFileName,
+                                                            entry.getName())));
                         }
                         output = rl.getTextRepresentation();
                     }
@@ -170,26 +406,40 @@ public class FileClientHelper extends LocalClientHelper {
                 if (file.exists()) {
                     if (file.isDirectory()) {
                         // Return the directory listing
-                        File[] files = file.listFiles();
-                        ReferenceList rl = new ReferenceList(files.length);
-                        rl.setIdentifier(request.getResourceRef());
-                        String directoryUri = request.getResourceRef()
-                                .toString();
-
-                        // Ensures that the directory URI ends with a slash
-                        if (!directoryUri.endsWith("/")) {
-                            directoryUri += "/";
+                        DirectoryIndex index = getDirectoryIndex(file,
+                                metadataService);
+
+                        if (index != null) {
+                            listing = getListingVariant(index);
+                            status = (listing == null) ? null : request
+                                    .getConditions().getStatus(
+                                            request.getMethod(), listing);
                         }
 
-                        for (File entry : files) {
-                            rl.add(directoryUri + entry.getName());
-                        }
+                        if ((index != null) && (status == null)) {
+                            ReferenceList rl = new ReferenceList(
+                                    index.files.length);
+                            rl.setIdentifier(request.getResourceRef());
+                            String directoryUri = request.getResourceRef()
+                                    .toString();
+
+                            // Ensures that the directory URI ends with a
+                            // slash
+                            if (!directoryUri.endsWith("/")) {
+                                directoryUri += "/";
+                            }
 
-                        output = rl.getTextRepresentation();
+                            for (File entry : index.files) {
+                                rl.add(directoryUri + entry.getName());
+                            }
+
+                            output = rl.getTextRepresentation();
+                        }
                     } else {
                         // Return the file content
                         output = new FileRepresentation(file, metadataService
                                 .getDefaultMediaType(), getTimeToLive());
+                        output.setTag(getTag(file));
                         updateMetadata(metadataService, file.getName(), output);
                     }
                 } else {
@@ -201,22 +451,18 @@ public class FileClientHelper extends LocalClientHelper {
                     Set<String> extensions = getExtensions(file,
                             metadataService);
                     // 2- loooking for resources with the same base name
-                    File[] files = file.getParentFile().listFiles();
+                    DirectoryIndex index = (file.getParentFile() == null) ? null
+                            : getDirectoryIndex(file.getParentFile(),
+                                    metadataService);
                     File uniqueVariant = null;
 
-                    if (files != null) {
-                        for (File entry : files) {
-                            if (baseName.equals(getBaseName(entry,
-                                    metadataService))) {
-                                Set<String> entryExtensions = getExtensions(
-                                        entry, metadataService);
-                                if (entryExtensions.containsAll(extensions)
-                                        && extensions
-                                                .containsAll(entryExtensions)) {
-                                    // The right representation has been found.
-                                    uniqueVariant = entry;
-                                    break;
-                                }
+                    if (index != null) {
+                        for (Map.Entry<File, Set<String>> entry : index
+                                .getVariants(baseName).entrySet()) {
+                            if (entry.getValue().equals(extensions)) {
+                                // The right representation has been found.
+                                uniqueVariant = entry.getKey();
+                                break;
                             }
                         }
                     }
@@ -225,14 +471,23 @@ public class FileClientHelper extends LocalClientHelper {
                         output = new FileRepresentation(uniqueVariant,
                                 metadataService.getDefaultMediaType(),
                                 getTimeToLive());
+                        output.setTag(getTag(uniqueVariant));
                         updateMetadata(metadataService, file.getName(), output);
                     }
                 }
             }
 
-            if (output == null) {
+            if (status != null) {
+                // The client already has the current listing
+                response.setStatus(status);
+            } else if (output == null) {
                 response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
             } else {
+                if (listing != null) {
+                    output.setTag(listing.getTag());
+                    output.setModificationDate(listing.getModificationDate());
+                }
+
                 output.setIdentifier(request.getResourceRef());
                 response.setEntity(output);
                 response.setStatus(Status.SUCCESS_OK);
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package com.noelios.restlet.local;
+
+
+import org.restlet.data.ReferenceList;
+import org.restlet.data.Tag;
+
+import com.noelios.restlet.util.LruMap;
+
+/**
+ * Bounded cache of the directory listings returned by the local connectors to
+ * a directory resource. Each listing is kept with its tag, allowing the
+ * connector to confirm that it is still valid without listing the directory
+ * again. The cached references are shared and must not be modified. The least
+ * recently used listings are evicted first.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ListingCache {
+	/**
+	 * Cached listing with its validator.
+	 */
+	public static final class Listing {
+		/** The parsed references. */
+		private final ReferenceList references;
+
+		/** The tag of the listing. */
+		private final Tag tag;
+
+		/** The text of the listing. */
+		private final String text;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param tag
+		 *            The tag of the listing.
+		 * @param text
+		 *            The text of the listing.
+		 * @param references
+		 *            The parsed references.
+		 */
+		public Listing(Tag tag, String text, ReferenceList references) {
+			this.tag = tag;
+			this.text = text;
+			this.references = references;
+		}
+
+		/**
+		 * Returns the parsed references.
+		 * 
+		 * @return The parsed references.
+		 */
+		public ReferenceList getReferences() {
+			return this.references;
+		}
+
+		/**
+		 * Returns the tag of the listing.
+		 * 
+		 * @return The tag of the listing.
+		 */
+		public Tag getTag() {
+			return this.tag;
+		}
+
+		/**
+		 * Returns the text of the listing.
+		 * 
+		 * @return The text of the listing.
+		 */
+		public String getText() {
+			return this.text;
+		}
+	}
+
+	/** Default maximum number of cached listings. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** The cached listings. */
+	private final LruMap<String, Listing> map;
+
+	/** The maximum number of cached listings. */
+	private final int maxEntries;
+
+	/**
+	 * Constructor using the default maximum number of entries.
+	 */
+	public ListingCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached listings.
+	 */
+	public ListingCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.map = new LruMap<String, Listing>(Math.max(1, maxEntries));
+	}
+
+	/**
+	 * Removes all the cached listings.
+	 */
+	public void clear() {
+		synchronized (this.map) {
+			this.map.clear();
+		}
+	}
+
+	/**
+	 * Returns a cached listing.
+	 * 
+	 * @param key
+	 *            The key describing the listing request.
+	 * @return The cached listing or null.
+	 */
+	public Listing get(String key) {
+		synchronized (this.map) {
+			return this.map.get(key);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of cached listings.
+	 * 
+	 * @return The maximum number of cached listings.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the number of cached listings.
+	 * 
+	 * @return The number of cached listings.
+	 */
+	public int getSize() {
+		synchronized (this.map) {
+			return this.map.size();
+		}
+	}
+
+	/**
+	 * Removes a cached listing.
+	 * 
+	 * @param key
+	 *            The key describing the listing request.
+	 */
+	public void remove(String key) {
+		synchronized (this.map) {
+			this.map.remove(key);
+		}
+	}
+
+	/**
+	 * Caches a listing.
+	 * 
+	 * @param key
+	 *            The key describing the listing request.
+	 * @param listing
+	 *            The listing to cache.
+	 */
+	public void put(String key, Listing listing) {
+		synchronized (this.map) {
+			this.map.put(key, listing);
+		}
+	}
+
+}
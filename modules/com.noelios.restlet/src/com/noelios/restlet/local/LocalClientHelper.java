@@ -27,6 +27,11 @@
 
 package com.noelios.restlet.local;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+
 import org.restlet.Application;
 import org.restlet.Client;
 import org.restlet.data.CharacterSet;
@@ -35,10 +40,12 @@ import org.restlet.data.Language;
 import org.restlet.data.MediaType;
 import org.restlet.data.Metadata;
 import org.restlet.data.Request;
+import org.restlet.data.Tag;
 import org.restlet.resource.Variant;
 import org.restlet.service.MetadataService;
 
 import com.noelios.restlet.ClientHelper;
+import com.noelios.restlet.util.DigestCache;
 
 /**
  * Connector to the local resources accessible via file system, class loaders
@@ -56,6 +63,21 @@ import com.noelios.restlet.ClientHelper;
  * <td>600</td>
  * <td>Time to live for a file representation before it expires (in seconds).</td>
  * </tr>
+ * <tr>
+ * <td>tagMode</td>
+ * <td>String</td>
+ * <td>strong</td>
+ * <td>Generation of the representation tags: "none", "weak" or "strong" tags
+ * derived from the size, the modification date and the archive entry CRC, or
+ * "content" for strong tags derived from a digest of the file contents.</td>
+ * </tr>
+ * <tr>
+ * <td>digestCacheSize</td>
+ * <td>int</td>
+ * <td>1024</td>
+ * <td>Maximum number of file digests cached when the "content" tag mode is
+ * used.</td>
+ * </tr>
  * </table>
  * 
  * @see org.restlet.data.LocalReference
@@ -63,6 +85,21 @@ import com.noelios.restlet.ClientHelper;
  * @author Thierry Boileau
  */
 public class LocalClientHelper extends ClientHelper {
+    /** Tag mode disabling the generation of tags. */
+    public static final String TAG_MODE_NONE = "none";
+
+    /** Tag mode generating weak tags from the entry metadata. */
+    public static final String TAG_MODE_WEAK = "weak";
+
+    /** Tag mode generating strong tags from the entry metadata. */
+    public static final String TAG_MODE_STRONG = "strong";
+
+    /** Tag mode generating strong tags from the file contents. */
+    public static final String TAG_MODE_CONTENT = "content";
+
+    /** The cache of file digests, created on first use. */
+    private volatile DigestCache digestCache;
+
     /**
      * Constructor. Note that the common list of metadata associations based on
      * extensions is added, see the addCommonExtensions() method.
@@ -72,6 +109,77 @@ public class LocalClientHelper extends ClientHelper {
      */
     public LocalClientHelper(Client client) {
         super(client);
+        this.digestCache = null;
+    }
+
+    /**
+     * Creates a tag derived from the metadata of an entry, according to the
+     * tag mode.
+     * 
+     * @param size
+     *            The entry size or -1 if unknown.
+     * @param modificationTime
+     *            The entry modification time or -1 if unknown.
+     * @param crc
+     *            The CRC-32 of the entry content or -1 if unknown.
+     * @return The new tag or null if tags are disabled or the metadata are
+     *         unknown.
+     */
+    public Tag createTag(long size, long modificationTime, long crc) {
+        Tag result = null;
+        String mode = getTagMode();
+
+        if (!TAG_MODE_NONE.equals(mode)
+                && ((modificationTime > 0) || (crc != -1))) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(Long.toHexString(Math.max(size, 0)));
+
+            if (modificationTime > 0) {
+                sb.append('-').append(Long.toHexString(modificationTime));
+            }
+
+            if (crc != -1) {
+                sb.append('-').append(Long.toHexString(crc));
+            }
+
+            result = new Tag(sb.toString(), TAG_MODE_WEAK.equals(mode));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the cache of file digests used by the "content" tag mode.
+     * 
+     * @return The cache of file digests.
+     */
+    public DigestCache getDigestCache() {
+        DigestCache result = this.digestCache;
+
+        if (result == null) {
+            synchronized (this) {
+                result = this.digestCache;
+
+                if (result == null) {
+                    result = new DigestCache(getDigestCacheSize());
+                    this.digestCache = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the maximum number of file digests cached when the "content" tag
+     * mode is used.
+     * 
+     * @return The maximum number of cached file digests.
+     */
+    public int getDigestCacheSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "digestCacheSize", Integer
+                        .toString(DigestCache.DEFAULT_MAX_ENTRIES)));
     }
 
     /**
@@ -164,6 +272,65 @@ public class LocalClientHelper extends ClientHelper {
         }
     }
 
+    /**
+     * Returns the tag of a file, according to the tag mode.
+     * 
+     * @param file
+     *            The file.
+     * @return The tag or null if tags are disabled.
+     */
+    public Tag getTag(File file) {
+        Tag result = null;
+
+        if (TAG_MODE_CONTENT.equals(getTagMode())) {
+            try {
+                result = new Tag(getDigestCache().getDigest(file), false);
+            } catch (IOException ioe) {
+                getLogger().log(Level.WARNING,
+                        "Unable to compute the digest of a file", ioe);
+            }
+        }
+
+        if (result == null) {
+            result = createTag(file.length(), file.lastModified(), -1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the tag of an archive entry, according to the tag mode. As the
+     * CRC-32 of the entry content is already known, the "content" mode doesn't
+     * require reading the entry.
+     * 
+     * @param entry
+     *            The archive entry.
+     * @return The tag or null if tags are disabled.
+     */
+    public Tag getTag(ZipEntry entry) {
+        Tag result = null;
+
+        if (TAG_MODE_CONTENT.equals(getTagMode()) && (entry.getCrc() != -1)) {
+            result = new Tag(Long.toHexString(Math.max(entry.getSize(), 0))
+                    + '-' + Long.toHexString(entry.getCrc()), false);
+        } else {
+            result = createTag(entry.getSize(), entry.getTime(), entry
+                    .getCrc());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the generation mode of the representation tags: "none", "weak",
+     * "strong" or "content".
+     * 
+     * @return The tag mode.
+     */
+    public String getTagMode() {
+        return getParameters().getFirstValue("tagMode", TAG_MODE_STRONG);
+    }
+
     /**
      * Returns the time to live for a file representation before it expires (in
      * seconds).
@@ -27,11 +27,20 @@
 
 package com.noelios.restlet.local;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
@@ -55,11 +64,105 @@ import org.restlet.resource.Representation;
  * <td>${user.home}/restlet.war</td>
  * <td>Path to the Web Application WAR file or directory.</td>
  * </tr>
- * </table>
+ * <tr>
+ * <td>entryCacheSize</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>Maximum number of bytes of small archive entries kept in memory, 0 to
+ * disable this cache.</td>
+ * </tr>
+ * <tr>
+ * <td>maxCachedEntrySize</td>
+ * <td>int</td>
+ * <td>16384</td>
+ * <td>Maximum size in bytes of an archive entry kept in memory.</td>
+ * </tr>
+ * </table><br/> <br/> When the Web Application is an archive file, it is
+ * kept open with an index of its directories, and reopened only when its
+ * modification date changes.
  * 
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class WarClientHelper extends FileClientHelper {
+    /**
+     * Open Web Application archive with the index of its directories and its
+     * cache of small entries.
+     */
+    private static final class WarIndex {
+        /** The cached content of small entries, by name. */
+        private final Map<String, byte[]> cachedEntries;
+
+        /** The number of cached bytes. */
+        private final AtomicLong cachedSize;
+
+        /** The sorted names of the children, by directory name. */
+        private final Map<String, List<String>> directories;
+
+        /** The open archive. */
+        private final JarFile jarFile;
+
+        /** The modification date of the archive file when opened. */
+        private final long lastModified;
+
+        /**
+         * Constructor. Opens the archive and indexes its directories.
+         * 
+         * @param file
+         *                The archive file.
+         * @throws IOException
+         */
+        private WarIndex(File file) throws IOException {
+            this.lastModified = file.lastModified();
+            this.jarFile = new JarFile(file);
+            this.cachedEntries = new ConcurrentHashMap<String, byte[]>();
+            this.cachedSize = new AtomicLong();
+            this.directories = new HashMap<String, List<String>>();
+            this.directories.put("", new ArrayList<String>());
+
+            for (Enumeration<JarEntry> entries = this.jarFile.entries(); entries
+                    .hasMoreElements();) {
+                String name = entries.nextElement().getName();
+
+                // Register the entry and its parent directories, even if they
+                // don't have their own entry in the archive
+                int end = name.endsWith("/") ? name.length() - 1 : name
+                        .length();
+                while (end > 0) {
+                    int start = name.lastIndexOf('/', end - 1) + 1;
+                    String parent = name.substring(0, start);
+                    List<String> children = this.directories.get(parent);
+
+                    if (children == null) {
+                        children = new ArrayList<String>();
+                        this.directories.put(parent, children);
+                    }
+
+                    String child = name.substring(start, end);
+                    if (children.contains(child)) {
+                        break;
+                    }
+                    children.add(child);
+                    end = start - 1;
+                }
+            }
+
+            for (List<String> children : this.directories.values()) {
+                Collections.sort(children);
+            }
+        }
+
+        /**
+         * Closes the archive.
+         */
+        private void close() {
+            try {
+                this.jarFile.close();
+            } catch (IOException e) {
+                // Nothing more can be done
+            }
+        }
+    }
+
     /**
      * Restrict the access to the META-INF and WEB-INF directories. False by
      * default.
@@ -75,8 +178,11 @@ public class WarClientHelper extends FileClientHelper {
      */
     private boolean webAppArchive;
 
-    /** Cache of all the WAR file entries to improve directory listing time. */
-    private List<String> warEntries;
+    /** The open archive and its index, if the Web Application is archived. */
+    private volatile WarIndex warIndex;
+
+    /** The previous archive, closed when the archive is reopened again. */
+    private WarIndex retiredWarIndex;
 
     /**
      * Constructor. Note that the common list of metadata associations based on
@@ -92,7 +198,62 @@ public class WarClientHelper extends FileClientHelper {
         this.restrict = false;
         this.warPath = null;
         this.webAppArchive = false;
-        this.warEntries = null;
+        this.warIndex = null;
+        this.retiredWarIndex = null;
+    }
+
+    /**
+     * Returns the maximum number of bytes of small archive entries kept in
+     * memory, 0 if this cache is disabled.
+     * 
+     * @return The maximum number of cached bytes.
+     */
+    public int getEntryCacheSize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "entryCacheSize", "0"));
+    }
+
+    /**
+     * Returns the maximum size in bytes of an archive entry kept in memory.
+     * 
+     * @return The maximum size of a cached entry.
+     */
+    public int getMaxCachedEntrySize() {
+        return Integer.parseInt(getParameters().getFirstValue(
+                "maxCachedEntrySize", "16384"));
+    }
+
+    /**
+     * Returns the open archive and its index, opening it again if the archive
+     * file was modified since.
+     * 
+     * @return The open archive and its index.
+     * @throws IOException
+     */
+    private WarIndex getWarIndex() throws IOException {
+        WarIndex result = this.warIndex;
+        File file = new File(getWarPath());
+
+        if ((result == null) || (result.lastModified != file.lastModified())) {
+            synchronized (this) {
+                result = this.warIndex;
+
+                if ((result == null)
+                        || (result.lastModified != file.lastModified())) {
+                    // Responses may still read from the replaced archive,
+                    // so it is only closed on the next replacement
+                    if (this.retiredWarIndex != null) {
+                        this.retiredWarIndex.close();
+                    }
+
+                    this.retiredWarIndex = result;
+                    result = new WarIndex(file);
+                    this.warIndex = result;
+                }
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -134,42 +295,58 @@ public class WarClientHelper extends FileClientHelper {
 
         if (this.webAppArchive) {
             try {
+                WarIndex index = getWarIndex();
                 String path = request.getResourceRef().getPath();
-                JarFile war = new JarFile(getWarPath());
-                // As the path may be percent-encoded, it has to be percent-decoded.
-                // Prepare a jar URI, removing the leading slash
+
+                // As the path may be percent-encoded, it has to be
+                // percent-decoded. Prepare a jar URI, removing the leading
+                // slash
                 if ((path != null) && path.startsWith("/"))
                     path = path.substring(1);
-                JarEntry entry = war.getJarEntry(Reference.decode(path));
-
-                if (entry.isDirectory()) {
-                    if (warEntries == null) {
-                        // Cache of all the WAR file entries to improve
-                        // directory listing time.
-                        warEntries = new ArrayList<String>();
-                        for (Enumeration<JarEntry> entries = war.entries(); entries
-                                .hasMoreElements();) {
-                            warEntries.add(entries.nextElement().getName());
-                        }
+                String name = (path == null) ? "" : Reference.decode(path);
+                JarEntry entry = name.endsWith("/") ? null : index.jarFile
+                        .getJarEntry(name);
+
+                if ((entry == null) || entry.isDirectory()) {
+                    String directoryName = name;
+                    if ((directoryName.length() > 0)
+                            && !directoryName.endsWith("/")) {
+                        directoryName += "/";
                     }
+                    List<String> children = index.directories
+                            .get(directoryName);
 
-                    // Return the directory listing
-                    ReferenceList rl = new ReferenceList();
-                    rl.setIdentifier(request.getResourceRef());
+                    if (children == null) {
+                        response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+                    } else {
+                        // Return the directory listing
+                        ReferenceList rl = new ReferenceList(children.size());
+                        rl.setIdentifier(request.getResourceRef());
+                        String directoryUri = request.getResourceRef()
+                                .toString();
 
-                    for (String warEntry : warEntries) {
-                        if (warEntry.startsWith(path)) {
-                            rl.add(new Reference(warEntry));
+                        // Ensures that the directory URI ends with a slash
+                        if (!directoryUri.endsWith("/")) {
+                            directoryUri += "/";
                         }
-                    }
 
-                    response.setEntity(rl.getTextRepresentation());
-                    response.setStatus(Status.SUCCESS_OK);
+                        for (String child : children) {
+                            rl.add(directoryUri + Reference.encode(child));
+                        }
+
+                        response.setEntity(rl.getTextRepresentation());
+                        response.setStatus(Status.SUCCESS_OK);
+                    }
                 } else {
                     // Return the file content
-                    Representation output = new InputRepresentation(war
-                            .getInputStream(entry), null);
-                    updateMetadata(getMetadataService(request), path, output);
+                    Representation output = new InputRepresentation(
+                            getInputStream(index, entry), null, entry
+                                    .getSize());
+                    if (entry.getTime() != -1) {
+                        output.setModificationDate(new Date(entry.getTime()));
+                    }
+                    output.setTag(getTag(entry));
+                    updateMetadata(getMetadataService(request), name, output);
                     output.setIdentifier(request.getResourceRef());
                     response.setEntity(output);
                     response.setStatus(Status.SUCCESS_OK);
@@ -201,6 +378,51 @@ public class WarClientHelper extends FileClientHelper {
         }
     }
 
+    /**
+     * Returns a stream reading the content of an archive entry, from the
+     * cache of small entries if possible.
+     * 
+     * @param index
+     *                The open archive.
+     * @param entry
+     *                The archive entry.
+     * @return The stream of the entry content.
+     * @throws IOException
+     */
+    private InputStream getInputStream(WarIndex index, JarEntry entry)
+            throws IOException {
+        byte[] content = index.cachedEntries.get(entry.getName());
+
+        int cacheSize = getEntryCacheSize();
+
+        if ((content == null) && (entry.getSize() >= 0)
+                && (entry.getSize() <= getMaxCachedEntrySize())
+                && (index.cachedSize.get() + entry.getSize() <= cacheSize)) {
+            InputStream in = index.jarFile.getInputStream(entry);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        (int) entry.getSize());
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                content = out.toByteArray();
+            } finally {
+                in.close();
+            }
+
+            if (index.cachedSize.addAndGet(content.length) <= cacheSize) {
+                index.cachedEntries.put(entry.getName(), content);
+            } else {
+                index.cachedSize.addAndGet(-content.length);
+            }
+        }
+
+        return (content == null) ? index.jarFile.getInputStream(entry)
+                : new ByteArrayInputStream(content);
+    }
+
     /**
      * Returns the Web Application archive file or directory path.
      * 
@@ -235,6 +457,38 @@ public class WarClientHelper extends FileClientHelper {
         return this.warPath;
     }
 
+    /**
+     * Opens the Web Application archive and indexes its directories, if the
+     * Web Application is archived.
+     */
+    @Override
+    public void start() throws Exception {
+        super.start();
+        getWarPath();
+
+        if (this.webAppArchive) {
+            getWarIndex();
+        }
+    }
+
+    /**
+     * Closes the Web Application archive.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        if (this.warIndex != null) {
+            this.warIndex.close();
+            this.warIndex = null;
+        }
+
+        if (this.retiredWarIndex != null) {
+            this.retiredWarIndex.close();
+            this.retiredWarIndex = null;
+        }
+
+        super.stop();
+    }
+
     /**
      * Indicates if the access to the META-INF and WEB-INF directories is
      * restricted. False by default.
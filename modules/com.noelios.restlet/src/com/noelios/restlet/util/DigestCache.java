@@ -0,0 +1,242 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package com.noelios.restlet.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of file content digests. Each digest is keyed by the file path
+ * and remains valid as long as the size and the modification date of the file
+ * are unchanged. The least recently used digests are evicted first.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class DigestCache {
+	/**
+	 * Digest of a file content, with the file state it was computed for.
+	 */
+	private static final class Digest {
+		/** The modification time of the file. */
+		private final long modificationTime;
+
+		/** The size of the file. */
+		private final long size;
+
+		/** The hexadecimal digest value. */
+		private final String value;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param size
+		 *            The size of the file.
+		 * @param modificationTime
+		 *            The modification time of the file.
+		 * @param value
+		 *            The hexadecimal digest value.
+		 */
+		private Digest(long size, long modificationTime, String value) {
+			this.size = size;
+			this.modificationTime = modificationTime;
+			this.value = value;
+		}
+	}
+
+	/** The digest algorithm. */
+	public static final String ALGORITHM = "MD5";
+
+	/** Default maximum number of cached digests. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** Size of the buffer used to read the files. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Hexadecimal digits. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Computes the hexadecimal digest of a stream content.
+	 * 
+	 * @param stream
+	 *            The stream to read, closed when done.
+	 * @return The hexadecimal digest.
+	 * @throws IOException
+	 */
+	public static String digest(InputStream stream) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			for (int count = stream.read(buffer); count != -1; count = stream
+					.read(buffer)) {
+				digest.update(buffer, 0, count);
+			}
+
+			byte[] bytes = digest.digest();
+			char[] result = new char[bytes.length * 2];
+
+			for (int i = 0; i < bytes.length; i++) {
+				result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+				result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+			}
+
+			return new String(result);
+		} catch (NoSuchAlgorithmException nsae) {
+			IOException ioe = new IOException("Unable to compute a digest");
+			ioe.initCause(nsae);
+			throw ioe;
+		} finally {
+			stream.close();
+		}
+	}
+
+	/** The number of lookups answered by the cache. */
+	private final AtomicLong hits;
+
+	/** The cached digests. */
+	private final LruMap<String, Digest> map;
+
+	/** The maximum number of cached digests. */
+	private final int maxEntries;
+
+	/** The number of lookups not answered by the cache. */
+	private final AtomicLong misses;
+
+	/**
+	 * Constructor using the default maximum number of entries.
+	 */
+	public DigestCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached digests.
+	 */
+	public DigestCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.map = new LruMap<String, Digest>(Math.max(1, maxEntries));
+	}
+
+	/**
+	 * Removes all the cached digests.
+	 */
+	public void clear() {
+		synchronized (this.map) {
+			this.map.clear();
+		}
+	}
+
+	/**
+	 * Returns the hexadecimal digest of a file content, reading the file only
+	 * if its size or modification date changed since the digest was cached.
+	 * 
+	 * @param file
+	 *            The file to digest.
+	 * @return The hexadecimal digest.
+	 * @throws IOException
+	 */
+	public String getDigest(File file) throws IOException {
+		String key = file.getPath();
+		long size = file.length();
+		long modificationTime = file.lastModified();
+		Digest digest;
+
+		synchronized (this.map) {
+			digest = this.map.get(key);
+		}
+
+		if ((digest != null) && (digest.size == size)
+				&& (digest.modificationTime == modificationTime)) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+			digest = new Digest(size, modificationTime, digest(new FileInputStream(
+					file)));
+
+			// Only cache the digest if the file didn't change while read
+			if ((file.length() == size)
+					&& (file.lastModified() == modificationTime)) {
+				synchronized (this.map) {
+					this.map.put(key, digest);
+				}
+			}
+		}
+
+		return digest.value;
+	}
+
+	/**
+	 * Returns the number of lookups answered by the cache.
+	 * 
+	 * @return The number of lookups answered by the cache.
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the maximum number of cached digests.
+	 * 
+	 * @return The maximum number of cached digests.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the number of lookups not answered by the cache.
+	 * 
+	 * @return The number of lookups not answered by the cache.
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the number of cached digests.
+	 * 
+	 * @return The number of cached digests.
+	 */
+	public int getSize() {
+		synchronized (this.map) {
+			return this.map.size();
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map bounded to a maximum number of entries, evicting the least recently
+ * accessed entries first. Like its parent class, it isn't synchronized.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	/** The maximum number of entries. */
+	private final int maxEntries;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of entries.
+	 */
+	public LruMap(int maxEntries) {
+		super(16, 0.75F, true);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the maximum number of entries.
+	 * 
+	 * @return The maximum number of entries.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > this.maxEntries;
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of content negotiation results. Each key describes a set of
+ * variants and the client preferences, and each value is the index of the
+ * preferred variant in the set, or -1 if none is acceptable. The least recently
+ * used results are evicted first. The cache is split in several independently
+ * locked parts to limit the contention.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class NegotiationCache {
+	/** Default maximum number of cached results. */
+	public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	/** Maximum length of a cached key, longer ones are never cached. */
+	public static final int MAX_KEY_LENGTH = 4096;
+
+	/** Number of independently locked parts. */
+	private static final int PARTS = 16;
+
+	/** The number of lookups answered by the cache. */
+	private final AtomicLong hits;
+
+	/** The cache parts, indexed by key hash. */
+	private final LruMap<String, Integer>[] maps;
+
+	/** The maximum number of cached results. */
+	private final int maxEntries;
+
+	/** The number of lookups not answered by the cache. */
+	private final AtomicLong misses;
+
+	/**
+	 * Constructor using the default maximum number of entries.
+	 */
+	public NegotiationCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached results.
+	 */
+	@SuppressWarnings("unchecked")
+	public NegotiationCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.maps = (LruMap<String, Integer>[]) new LruMap<?, ?>[PARTS];
+
+		int partEntries = Math.max(1, (maxEntries + PARTS - 1) / PARTS);
+		for (int i = 0; i < this.maps.length; i++) {
+			this.maps[i] = new LruMap<String, Integer>(partEntries);
+		}
+	}
+
+	/**
+	 * Removes all the cached results.
+	 */
+	public void clear() {
+		for (LruMap<String, Integer> map : this.maps) {
+			synchronized (map) {
+				map.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the cached index of the preferred variant.
+	 * 
+	 * @param key
+	 *            The key describing the variants and the client preferences.
+	 * @return The index of the preferred variant, -1 if none is acceptable or
+	 *         null if the result isn't cached.
+	 */
+	public Integer get(String key) {
+		Integer result = null;
+
+		if (key.length() <= MAX_KEY_LENGTH) {
+			LruMap<String, Integer> map = getMap(key);
+
+			synchronized (map) {
+				result = map.get(key);
+			}
+		}
+
+		if (result != null) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of lookups answered by the cache.
+	 * 
+	 * @return The number of lookups answered by the cache.
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the cache part of a key.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The cache part.
+	 */
+	private LruMap<String, Integer> getMap(String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return this.maps[hash & (PARTS - 1)];
+	}
+
+	/**
+	 * Returns the maximum number of cached results.
+	 * 
+	 * @return The maximum number of cached results.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the number of lookups not answered by the cache.
+	 * 
+	 * @return The number of lookups not answered by the cache.
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 * 
+	 * @return The number of cached results.
+	 */
+	public int getSize() {
+		int result = 0;
+
+		for (LruMap<String, Integer> map : this.maps) {
+			synchronized (map) {
+				result += map.size();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Caches the index of the preferred variant.
+	 * 
+	 * @param key
+	 *            The key describing the variants and the client preferences.
+	 * @param index
+	 *            The index of the preferred variant or -1 if none is
+	 *            acceptable.
+	 */
+	public void put(String key, int index) {
+		if (key.length() <= MAX_KEY_LENGTH) {
+			LruMap<String, Integer> map = getMap(key);
+
+			synchronized (map) {
+				map.put(key, index);
+			}
+		}
+	}
+
+}
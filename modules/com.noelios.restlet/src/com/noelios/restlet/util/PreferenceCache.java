@@ -0,0 +1,303 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Encoding;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+
+/**
+ * Bounded cache of parsed preference headers (Accept, Accept-Charset,
+ * Accept-Encoding and Accept-Language), keyed by the raw header value. The
+ * returned lists are unmodifiable and shared between calls, see
+ * {@link ClientInfo#setAcceptedMediaTypes(List)} for example, which copies
+ * the preferences before returning them. Each header type
+ * has its own least recently used entries evicted first. The cache is split
+ * in several independently locked parts to limit the contention.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class PreferenceCache {
+	/** Default maximum number of cached values per header type. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** Maximum length of a cached header value, longer ones are just parsed. */
+	public static final int MAX_VALUE_LENGTH = 1024;
+
+	/** Number of independently locked parts per header type. */
+	private static final int PARTS = 8;
+
+	/** The number of lookups answered by the cache. */
+	private final AtomicLong hits;
+
+	/** The cache parts, indexed by header type then by value hash. */
+	private final LruMap<String, List<?>>[] maps;
+
+	/** The maximum number of cached values per header type. */
+	private final int maxEntries;
+
+	/** The number of lookups requiring a parsing. */
+	private final AtomicLong misses;
+
+	/**
+	 * Constructor using the default maximum number of entries.
+	 */
+	public PreferenceCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached values per header type.
+	 */
+	@SuppressWarnings("unchecked")
+	public PreferenceCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.maps = (LruMap<String, List<?>>[]) new LruMap<?, ?>[PARTS
+				* PreferenceReader.TYPE_MEDIA_TYPE];
+
+		int partEntries = Math.max(1, (maxEntries + PARTS - 1) / PARTS);
+		for (int i = 0; i < this.maps.length; i++) {
+			this.maps[i] = new LruMap<String, List<?>>(partEntries);
+		}
+	}
+
+	/**
+	 * Removes all the cached values.
+	 */
+	public void clear() {
+		for (LruMap<String, List<?>> map : this.maps) {
+			synchronized (map) {
+				map.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the parsed preferences of a header, from the cache if possible.
+	 * 
+	 * @param type
+	 *            The header type, see the PreferenceReader.TYPE_*
+	 *            constants.
+	 * @param value
+	 *            The header value, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 * @throws IllegalArgumentException
+	 *             If the header value can't be parsed.
+	 */
+	private List<?> get(int type, String value) {
+		boolean cacheable = (value == null)
+				|| (value.length() <= MAX_VALUE_LENGTH);
+		LruMap<String, List<?>> map = null;
+		List<?> result = null;
+
+		if (cacheable) {
+			int hash = (value == null) ? 0 : value.hashCode();
+			hash ^= (hash >>> 16);
+			map = this.maps[(type - 1) * PARTS + (hash & (PARTS - 1))];
+
+			synchronized (map) {
+				result = map.get(value);
+			}
+		}
+
+		if (result != null) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+			result = parse(type, value);
+
+			if (cacheable) {
+				synchronized (map) {
+					map.put(value, result);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the parsed character set preferences.
+	 * 
+	 * @param acceptCharsetHeader
+	 *            The header to parse, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 * @throws IllegalArgumentException
+	 *             If the header value can't be parsed.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Preference<CharacterSet>> getCharacterSets(
+			String acceptCharsetHeader) {
+		return (List<Preference<CharacterSet>>) get(
+				PreferenceReader.TYPE_CHARACTER_SET, acceptCharsetHeader);
+	}
+
+	/**
+	 * Returns the parsed encoding preferences.
+	 * 
+	 * @param acceptEncodingHeader
+	 *            The header to parse, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 * @throws IllegalArgumentException
+	 *             If the header value can't be parsed.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Preference<Encoding>> getEncodings(String acceptEncodingHeader) {
+		return (List<Preference<Encoding>>) get(
+				PreferenceReader.TYPE_ENCODING, acceptEncodingHeader);
+	}
+
+	/**
+	 * Returns the number of lookups answered by the cache.
+	 * 
+	 * @return The number of lookups answered by the cache.
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the parsed language preferences.
+	 * 
+	 * @param acceptLanguageHeader
+	 *            The header to parse, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 * @throws IllegalArgumentException
+	 *             If the header value can't be parsed.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Preference<Language>> getLanguages(String acceptLanguageHeader) {
+		return (List<Preference<Language>>) get(
+				PreferenceReader.TYPE_LANGUAGE, acceptLanguageHeader);
+	}
+
+	/**
+	 * Returns the maximum number of cached values per header type.
+	 * 
+	 * @return The maximum number of cached values per header type.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the parsed media type preferences.
+	 * 
+	 * @param acceptMediaTypeHeader
+	 *            The header to parse, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 * @throws IllegalArgumentException
+	 *             If the header value can't be parsed.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Preference<MediaType>> getMediaTypes(
+			String acceptMediaTypeHeader) {
+		return (List<Preference<MediaType>>) get(
+				PreferenceReader.TYPE_MEDIA_TYPE, acceptMediaTypeHeader);
+	}
+
+	/**
+	 * Returns the number of lookups requiring a parsing.
+	 * 
+	 * @return The number of lookups requiring a parsing.
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 * 
+	 * @return The number of cached values.
+	 */
+	public int getSize() {
+		int result = 0;
+
+		for (LruMap<String, List<?>> map : this.maps) {
+			synchronized (map) {
+				result += map.size();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses a header value into an unmodifiable list of preferences.
+	 * 
+	 * @param type
+	 *            The header type, see the PreferenceReader.TYPE_*
+	 *            constants.
+	 * @param value
+	 *            The header value, possibly null.
+	 * @return The unmodifiable list of preferences.
+	 */
+	private List<?> parse(int type, String value) {
+		ClientInfo client = new ClientInfo();
+		List<?> result = null;
+
+		switch (type) {
+		case PreferenceReader.TYPE_CHARACTER_SET:
+			PreferenceUtils.parseCharacterSets(value, client);
+			result = Collections.unmodifiableList(client
+					.getAcceptedCharacterSets());
+			break;
+		case PreferenceReader.TYPE_ENCODING:
+			PreferenceUtils.parseEncodings(value, client);
+			result = Collections.unmodifiableList(client
+					.getAcceptedEncodings());
+			break;
+		case PreferenceReader.TYPE_LANGUAGE:
+			PreferenceUtils.parseLanguages(value, client);
+			result = Collections.unmodifiableList(client
+					.getAcceptedLanguages());
+			break;
+		default:
+			PreferenceUtils.parseMediaTypes(value, client);
+			result = Collections.unmodifiableList(client
+					.getAcceptedMediaTypes());
+			break;
+		}
+
+		return result;
+	}
+
+}
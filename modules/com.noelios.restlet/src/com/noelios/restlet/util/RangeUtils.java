@@ -0,0 +1,164 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package com.noelios.restlet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.data.Range;
+
+/**
+ * Byte range manipulation utilities.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class RangeUtils {
+    /** The only range unit supported. */
+    private static final String BYTES_UNIT = "bytes";
+
+    /**
+     * Formats a list of ranges as a "Range" header value.
+     * 
+     * @param ranges
+     *            The list of ranges to format.
+     * @return The "Range" header value.
+     */
+    public static String format(List<Range> ranges) {
+        StringBuilder sb = new StringBuilder(BYTES_UNIT).append('=');
+
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+
+            if (i > 0) {
+                sb.append(',');
+            }
+
+            if (range.getIndex() == Range.INDEX_LAST) {
+                sb.append('-').append(range.getSize());
+            } else {
+                sb.append(range.getIndex()).append('-');
+
+                if (range.getSize() != Range.SIZE_MAX) {
+                    sb.append(range.getIndex() + range.getSize() - 1);
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Formats the "Content-Range" header value of a response whose ranges
+     * can't be satisfied, giving only the complete length.
+     * 
+     * @param totalSize
+     *            The size of the complete content.
+     * @return The "Content-Range" header value.
+     */
+    public static String formatContentRange(long totalSize) {
+        return BYTES_UNIT + " */" + totalSize;
+    }
+
+    /**
+     * Formats a resolved range as a "Content-Range" header value.
+     * 
+     * @param range
+     *            The range resolved against the size of the content.
+     * @param totalSize
+     *            The size of the complete content.
+     * @return The "Content-Range" header value.
+     */
+    public static String formatContentRange(Range range, long totalSize) {
+        return BYTES_UNIT + " " + range.getIndex() + "-"
+                + (range.getIndex() + range.getSize() - 1) + "/" + totalSize;
+    }
+
+    /**
+     * Parses a "Range" header value. Headers with another unit than "bytes"
+     * or with a syntactically invalid range are ignored as a whole, as
+     * required by the HTTP specification.
+     * 
+     * @param value
+     *            The "Range" header value.
+     * @return The list of ranges, empty if the header is ignored.
+     */
+    public static List<Range> parse(String value) {
+        List<Range> result = new ArrayList<Range>();
+        int equals = (value == null) ? -1 : value.indexOf('=');
+
+        if ((equals != -1)
+                && BYTES_UNIT.equalsIgnoreCase(value.substring(0, equals)
+                        .trim())) {
+            try {
+                for (String spec : value.substring(equals + 1).split(",")) {
+                    spec = spec.trim();
+                    int dash = spec.indexOf('-');
+
+                    if (spec.length() == 0) {
+                        // Empty list elements are allowed
+                        continue;
+                    } else if (dash == -1) {
+                        throw new IllegalArgumentException(spec);
+                    } else if (dash == 0) {
+                        // Suffix range covering the last bytes
+                        long size = Long.parseLong(spec.substring(1).trim());
+
+                        if (size < 0) {
+                            throw new IllegalArgumentException(spec);
+                        }
+
+                        result.add(new Range(Range.INDEX_LAST, size));
+                    } else {
+                        long first = Long.parseLong(spec.substring(0, dash)
+                                .trim());
+                        String lastValue = spec.substring(dash + 1).trim();
+
+                        if (lastValue.length() == 0) {
+                            result.add(new Range(first, Range.SIZE_MAX));
+                        } else {
+                            long last = Long.parseLong(lastValue);
+
+                            if ((first < 0) || (last < first)) {
+                                throw new IllegalArgumentException(spec);
+                            }
+
+                            result.add(new Range(first, last - first + 1));
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException iae) {
+                // Including NumberFormatException
+                result.clear();
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -38,23 +38,78 @@ import java.util.TreeMap;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
+import org.restlet.Context;
 import org.restlet.data.MediaType;
+import org.restlet.data.Parameter;
 import org.restlet.resource.OutputRepresentation;
 
 /**
  * Velocity template representation. Useful for dynamic string-based
- * representations.
+ * representations.<br/> <br/> Initializing a Velocity engine and loading its
+ * templates is costly, so the representations of an application should share
+ * the engine returned by {@link #getSharedEngine(Context)}. It is initialized
+ * once per context, with its resource cache turned on. The templates are
+ * loaded once, then checked for modification every two seconds. Its
+ * properties can be set with context parameters prefixed by "velocity.", for
+ * example "velocity.file.resource.loader.path".
  * 
  * @see <a href="http://velocity.apache.org/">Velocity home page</a>
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class TemplateRepresentation extends OutputRepresentation {
+    /** Name of the context attribute holding the shared Velocity engine. */
+    public static final String ENGINE_ATTRIBUTE = "org.restlet.ext.velocity.engine";
+
+    /** Lock guarding the creation of the shared Velocity engines. */
+    private static final Object SHARED_ENGINE_LOCK = new Object();
+
+    /**
+     * Returns the Velocity engine shared by the representations using a given
+     * context. It is created and initialized on the first call.
+     * 
+     * @param context
+     *            The context, usually the application's context.
+     * @return The shared and initialized Velocity engine.
+     * @throws Exception
+     */
+    public static VelocityEngine getSharedEngine(Context context)
+            throws Exception {
+        synchronized (SHARED_ENGINE_LOCK) {
+            VelocityEngine result = (VelocityEngine) context.getAttributes()
+                    .get(ENGINE_ATTRIBUTE);
+
+            if (result == null) {
+                result = new VelocityEngine();
+
+                // Cache the templates, checking for modifications
+                result.setProperty("file.resource.loader.cache", "true");
+                result.setProperty(
+                        "file.resource.loader.modificationCheckInterval", "2");
+
+                for (Parameter parameter : context.getParameters()) {
+                    if (parameter.getName().startsWith("velocity.")) {
+                        result.setProperty(parameter.getName().substring(9),
+                                parameter.getValue());
+                    }
+                }
+
+                result.init();
+                context.getAttributes().put(ENGINE_ATTRIBUTE, result);
+            }
+
+            return result;
+        }
+    }
+
     /** The template's name. */
     private String templateName;
 
     /** The Velocity engine. */
     private VelocityEngine engine;
 
+    /** Indicates if the Velocity engine is owned by this representation. */
+    private boolean ownEngine;
+
     /** The template's data model. */
     private Map<String, Object> dataModel;
 
@@ -84,18 +139,46 @@ public class TemplateRepresentation extends OutputRepresentation {
      */
     public TemplateRepresentation(String templateName,
             Map<String, Object> dataModel, MediaType mediaType) {
+        this(templateName, dataModel, mediaType, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param templateName
+     *            The Velocity template's name. The full path is resolved by
+     *            the configuration.
+     * @param dataModel
+     *            The Velocity template's data model.
+     * @param mediaType
+     *            The representation's media type.
+     * @param engine
+     *            The initialized Velocity engine to use, usually shared, or
+     *            null to use a new engine owned by this representation.
+     */
+    public TemplateRepresentation(String templateName,
+            Map<String, Object> dataModel, MediaType mediaType,
+            VelocityEngine engine) {
         super(mediaType);
-        this.engine = new VelocityEngine();
+        this.engine = engine;
+        this.ownEngine = false;
         this.dataModel = dataModel;
         this.templateName = templateName;
     }
 
     /**
-     * Returns the Velocity engine.
+     * Returns the Velocity engine. If no engine was given to the constructor,
+     * a new engine is created for this representation, initialized before
+     * writing.
      * 
      * @return The Velocity engine.
      */
     public VelocityEngine getEngine() {
+        if (this.engine == null) {
+            this.engine = new VelocityEngine();
+            this.ownEngine = true;
+        }
+
         return this.engine;
     }
 
@@ -131,14 +214,17 @@ public class TemplateRepresentation extends OutputRepresentation {
         Writer tmplWriter = null;
 
         try {
-            // Initialize the engine
-            getEngine().init();
+            // Initialize the engine, unless it was given initialized
+            VelocityEngine velocityEngine = getEngine();
+            if (this.ownEngine) {
+                velocityEngine.init();
+            }
 
             // Create the context
             VelocityContext context = new VelocityContext(getDataModel());
 
             // Load the template
-            Template template = engine.getTemplate(templateName);
+            Template template = velocityEngine.getTemplate(templateName);
             if (getCharacterSet() != null) {
                 tmplWriter = new BufferedWriter(new OutputStreamWriter(
                         outputStream, getCharacterSet().getName()));
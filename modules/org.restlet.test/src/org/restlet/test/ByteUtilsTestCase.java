@@ -0,0 +1,149 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.restlet.data.MediaType;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.util.ByteUtils;
+
+import com.noelios.restlet.Engine;
+
+/**
+ * Test {@link org.restlet.util.ByteUtils}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ByteUtilsTestCase extends RestletTestCase {
+    /**
+     * Returns a representation writing the given bytes in small and large
+     * blocks.
+     * 
+     * @param content
+     *                The content to write.
+     * @return The representation.
+     */
+    private OutputRepresentation getRepresentation(final byte[] content) {
+        return new OutputRepresentation(MediaType.APPLICATION_OCTET_STREAM) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                int index = 0;
+                while (index < content.length) {
+                    if (index % 3 == 0) {
+                        outputStream.write(content[index++]);
+                    } else {
+                        int length = Math.min(content.length - index,
+                                index % 50000);
+                        outputStream.write(content, index, length);
+                        index += length;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Tests that all the byte values go through the pipe, in bulk reads.
+     */
+    public void testGetStream() throws Exception {
+        byte[] content = new byte[200000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        InputStream in = ByteUtils.getStream(getRepresentation(content));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteUtils.write(in, out);
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+    }
+
+    /**
+     * Tests that the pipe can be read byte per byte.
+     */
+    public void testGetStreamSingleBytes() throws Exception {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (255 - i);
+        }
+
+        InputStream in = ByteUtils.getStream(getRepresentation(content));
+        for (int i = 0; i < content.length; i++) {
+            assertEquals(content[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    /**
+     * Tests that the writer tasks run on the daemon threads of the engine.
+     */
+    public void testGetStreamPumps() throws Exception {
+        Engine engine = (Engine) Engine.getInstance();
+        long overflows = engine.getOverflowPumpCount();
+        final List<Thread> writers = new ArrayList<Thread>();
+
+        for (int i = 0; i < 5; i++) {
+            InputStream in = ByteUtils.getStream(new OutputRepresentation(
+                    MediaType.TEXT_PLAIN) {
+                @Override
+                public void write(OutputStream outputStream)
+                        throws IOException {
+                    writers.add(Thread.currentThread());
+                    outputStream.write("pumped".getBytes());
+                }
+            });
+            assertEquals("pumped", ByteUtils.toString(in));
+        }
+
+        assertEquals(5, writers.size());
+        for (Thread writer : writers) {
+            assertTrue(writer.isDaemon());
+            assertTrue(writer.getName().startsWith("Restlet-Pump-"));
+        }
+        assertEquals(overflows, engine.getOverflowPumpCount());
+        assertTrue(engine.getPumpThreadCount() <= engine.getMaxPumpThreads());
+    }
+
+    /**
+     * Tests that an empty representation produces an empty stream.
+     */
+    public void testGetStreamEmpty() throws Exception {
+        InputStream in = ByteUtils.getStream(getRepresentation(new byte[0]));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.restlet.util.DateUtils;
+
+/**
+ * Test {@link org.restlet.util.DateUtils}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class DateUtilsTestCase extends RestletTestCase {
+
+    private static SimpleDateFormat createFormat(String pattern) {
+        SimpleDateFormat result = new SimpleDateFormat(pattern, Locale.US);
+        result.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return result;
+    }
+
+    public void testFormat() {
+        String pattern = DateUtils.FORMAT_RFC_1123.get(0);
+        SimpleDateFormat format = createFormat(pattern);
+        Random random = new Random(1);
+
+        for (int i = 0; i < 10000; i++) {
+            // Dates from 1500 to 2500
+            Date date = new Date(-14831769600000L
+                    + (long) (random.nextDouble() * 31556952000000L));
+            assertEquals(format.format(date), DateUtils.format(date, pattern));
+        }
+
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateUtils.format(
+                new Date(0), pattern));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", DateUtils.format(
+                new Date(784111777000L), pattern));
+    }
+
+    public void testFormatCurrentDate() throws Exception {
+        String pattern = DateUtils.FORMAT_RFC_1123.get(0);
+        String current = DateUtils.formatCurrentDate();
+        Date parsed = DateUtils.parse(current, DateUtils.FORMAT_RFC_1123);
+        assertTrue(Math.abs(System.currentTimeMillis() - parsed.getTime()) < 2000);
+        assertEquals(current, DateUtils.format(parsed, pattern));
+    }
+
+    public void testParse() throws Exception {
+        SimpleDateFormat rfc1123 = createFormat(DateUtils.FORMAT_RFC_1123
+                .get(0));
+        SimpleDateFormat rfc1036 = createFormat(DateUtils.FORMAT_RFC_1036
+                .get(0));
+        SimpleDateFormat ascTime = createFormat(DateUtils.FORMAT_ASC_TIME
+                .get(0));
+        Random random = new Random(2);
+
+        for (int i = 0; i < 10000; i++) {
+            // Dates from 1900 to 2100, at a precision of one second
+            Date date = new Date(((-2208988800000L + (long) (random
+                    .nextDouble() * 6311390400000L)) / 1000) * 1000);
+            assertEquals(date, DateUtils.parse(rfc1123.format(date),
+                    DateUtils.FORMAT_RFC_1123));
+            assertEquals(date, DateUtils.parse(ascTime.format(date),
+                    DateUtils.FORMAT_ASC_TIME));
+
+            String formatted = rfc1036.format(date);
+            assertEquals(rfc1036.parse(formatted), DateUtils.parse(formatted,
+                    DateUtils.FORMAT_RFC_1036));
+        }
+
+        // Common variants
+        Date expected = new Date(784111777000L);
+        assertEquals(expected, DateUtils.parse(
+                "Sun, 06 Nov 1994 08:49:37 GMT; length=1234",
+                DateUtils.FORMAT_RFC_1123));
+        assertEquals(expected, DateUtils.parse("Sun, 06 Nov 1994 08:49:37 UTC",
+                DateUtils.FORMAT_RFC_1123));
+        assertEquals(new Date(784111777000L - 3600000L), DateUtils.parse(
+                "Sun, 06 Nov 1994 08:49:37 GMT+01:00",
+                DateUtils.FORMAT_RFC_1123));
+        assertEquals(expected, DateUtils.parse("Sun Nov  6 08:49:37 1994",
+                DateUtils.FORMAT_ASC_TIME));
+        assertEquals(expected, DateUtils.parse(
+                "Sunday, 06-Nov-1994 08:49:37 GMT", DateUtils.FORMAT_RFC_1036));
+        assertEquals(expected, DateUtils.parse(
+                "Sunday, 06-Nov-94 08:49:37 GMT", DateUtils.FORMAT_RFC_1036));
+        assertNull(DateUtils.parse("Sunday, 06-Nov-94 08:49:37 GMT",
+                DateUtils.FORMAT_RFC_1123));
+        assertNull(DateUtils.parse("invalid", DateUtils.FORMAT_RFC_1123));
+    }
+
+    public void testUnmodifiable() {
+        Date date = new Date(1000L);
+        Date immutable = DateUtils.unmodifiable(date);
+        date.setTime(2000L);
+        assertEquals(1000L, immutable.getTime());
+        assertSame(immutable, DateUtils.unmodifiable(immutable));
+        assertNull(DateUtils.unmodifiable(null));
+    }
+
+}
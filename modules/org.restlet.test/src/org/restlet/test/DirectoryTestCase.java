@@ -29,6 +29,7 @@ package org.restlet.test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -44,6 +45,7 @@ import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.Representation;
 import org.restlet.resource.StringRepresentation;
 
@@ -165,6 +167,19 @@ public class DirectoryTestCase extends TestCase {
                 Method.GET, null, "2b");
         assertTrue(response.getStatus().equals(Status.CLIENT_ERROR_NOT_FOUND));
 
+        // Test 2c : revalidate a file with its tag
+        response = handle(application, webSiteURL, testFileUrl, Method.GET,
+                null, "2c-1");
+        Tag tag = response.getEntity().getTag();
+        assertNotNull(tag);
+        Request request = new Request(Method.GET, testFileUrl);
+        request.getResourceRef().setBaseRef(webSiteURL);
+        request.getConditions().setNoneMatch(Arrays.asList(tag));
+        response = new Response(request);
+        application.handle(request, response);
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+        assertNull(response.getEntity());
+
         // Test 3a : try to put a new representation, but the directory is read
         // only
         directory.setModifiable(false);
@@ -29,14 +29,21 @@ package org.restlet.test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.restlet.Client;
+import org.restlet.Context;
 import org.restlet.data.LocalReference;
+import org.restlet.data.Method;
 import org.restlet.data.Protocol;
+import org.restlet.data.ReferenceList;
+import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.StringRepresentation;
 
 /**
@@ -66,4 +73,86 @@ public class FileClientTestCase extends TestCase {
         assertTrue(response.getStatus().equals(Status.SUCCESS_NO_CONTENT));
     }
 
+    public void testListings() throws Exception {
+        File dir = File.createTempFile("Restlet", "");
+        dir.delete();
+        dir.mkdir();
+        File first = new File(dir, "first.txt");
+        File second = new File(dir, "second.txt");
+        LocalReference dr = LocalReference.createFileReference(dir);
+
+        try {
+            Client fc = new Client(Protocol.FILE);
+            fc.put(LocalReference.createFileReference(first).toString(),
+                    new StringRepresentation("first"));
+            dir.setLastModified(1000000000000L);
+
+            // Listings of unchanged directories are tagged
+            Response response = fc.get(dr.toString());
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            Tag tag = response.getEntity().getTag();
+            assertNotNull(tag);
+            assertEquals(1, new ReferenceList(response.getEntity()).size());
+
+            // The tag confirms the listing
+            Request request = new Request(Method.GET, dr.toString());
+            List<Tag> noneMatch = new ArrayList<Tag>();
+            noneMatch.add(tag);
+            request.getConditions().setNoneMatch(noneMatch);
+            response = fc.handle(request);
+            assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+
+            // A new file changes the listing
+            fc.put(LocalReference.createFileReference(second).toString(),
+                    new StringRepresentation("second"));
+            dir.setLastModified(1000000001000L);
+            request = new Request(Method.GET, dr.toString());
+            request.getConditions().setNoneMatch(noneMatch);
+            response = fc.handle(request);
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertFalse(tag.equals(response.getEntity().getTag()));
+            assertEquals(2, new ReferenceList(response.getEntity()).size());
+        } finally {
+            first.delete();
+            second.delete();
+            dir.delete();
+        }
+    }
+
+    public void testTags() throws Exception {
+        File file = File.createTempFile("Restlet", ".txt");
+        LocalReference fr = LocalReference.createFileReference(file);
+
+        try {
+            // Strong tags derived from the size and modification date
+            Client fc = new Client(Protocol.FILE);
+            fc.put(fr.toString(), new StringRepresentation("content"));
+            file.setLastModified(1000000000000L);
+            Tag tag = fc.get(fr.toString()).getEntity().getTag();
+            assertNotNull(tag);
+            assertFalse(tag.isWeak());
+            assertEquals(tag, fc.get(fr.toString()).getEntity().getTag());
+
+            fc.put(fr.toString(), new StringRepresentation("changed"));
+            file.setLastModified(1000000001000L);
+            assertFalse(tag.equals(fc.get(fr.toString()).getEntity()
+                    .getTag()));
+
+            // Strong tags derived from the content digest
+            Context context = new Context();
+            context.getParameters().add("tagMode", "content");
+            fc = new Client(context, Protocol.FILE);
+            tag = fc.get(fr.toString()).getEntity().getTag();
+            assertEquals(new Tag("8977dfac2f8e04cb96e66882235f5aba", false), tag);
+            file.setLastModified(1000000002000L);
+            assertEquals(tag, fc.get(fr.toString()).getEntity().getTag());
+
+            // Tags can be disabled
+            context.getParameters().set("tagMode", "none", false);
+            assertNull(fc.get(fr.toString()).getEntity().getTag());
+        } finally {
+            file.delete();
+        }
+    }
+
 }
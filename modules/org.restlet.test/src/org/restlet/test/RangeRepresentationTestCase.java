@@ -0,0 +1,187 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Range;
+import org.restlet.resource.FileRepresentation;
+import org.restlet.resource.RangeRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.StringRepresentation;
+
+/**
+ * Test {@link org.restlet.resource.RangeRepresentation}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class RangeRepresentationTestCase extends RestletTestCase {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.file = File.createTempFile("restlet-range", ".txt");
+        FileOutputStream fos = new FileOutputStream(this.file);
+        fos.write(CONTENT.getBytes());
+        fos.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.file.delete();
+        super.tearDown();
+    }
+
+    public void testResolve() {
+        assertEquals(new Range(2, 3), new Range(2, 3).resolve(20));
+        assertEquals(new Range(15, 5), new Range(15, 10).resolve(20));
+        assertEquals(new Range(5, 15), new Range(5, Range.SIZE_MAX)
+                .resolve(20));
+        assertEquals(new Range(17, 3), new Range(Range.INDEX_LAST, 3)
+                .resolve(20));
+        assertEquals(new Range(0, 20), new Range(Range.INDEX_LAST, 30)
+                .resolve(20));
+        assertNull(new Range(20, 1).resolve(20));
+        assertNull(new Range(Range.INDEX_LAST, 0).resolve(20));
+    }
+
+    public void testSingleRange() throws Exception {
+        for (Representation entity : new Representation[] {
+                new FileRepresentation(this.file, MediaType.TEXT_PLAIN, 0),
+                new StringRepresentation(CONTENT) }) {
+            RangeRepresentation partial = new RangeRepresentation(entity,
+                    Arrays.asList(new Range(Range.INDEX_LAST, 5)));
+            assertFalse(partial.isMultipart());
+            assertEquals(MediaType.TEXT_PLAIN, partial.getMediaType());
+            assertEquals(5, partial.getSize());
+            assertEquals(20, partial.getTotalSize());
+            assertEquals("fghij", write(partial, false));
+
+            if (entity instanceof FileRepresentation) {
+                assertEquals("fghij", write(partial, true));
+            }
+        }
+    }
+
+    public void testMultipleRanges() throws Exception {
+        for (Representation entity : new Representation[] {
+                new FileRepresentation(this.file, MediaType.TEXT_PLAIN, 0),
+                new StringRepresentation(CONTENT) }) {
+            // Unsorted, overlapping and unsatisfiable ranges
+            RangeRepresentation partial = new RangeRepresentation(entity,
+                    Arrays.asList(new Range(10, 2), new Range(0, 2),
+                            new Range(1, 3), new Range(25, 2)));
+            assertEquals(Arrays.asList(new Range(0, 4), new Range(10, 2)),
+                    partial.getRanges());
+            assertTrue(partial.isMultipart());
+            assertEquals("multipart/byteranges", partial.getMediaType()
+                    .getName());
+            String boundary = partial.getMediaType().getParameters()
+                    .getFirstValue("boundary");
+
+            String expected = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+                    + "Content-Range: bytes 0-3/20\r\n\r\n0123" + "\r\n--"
+                    + boundary + "\r\n"
+                    + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+                    + "Content-Range: bytes 10-11/20\r\n\r\nab" + "\r\n--"
+                    + boundary + "--\r\n";
+            if (entity.getCharacterSet() == null) {
+                expected = expected.replace("; charset=ISO-8859-1", "");
+            }
+
+            assertEquals(expected, write(partial, false));
+
+            if (entity instanceof FileRepresentation) {
+                assertEquals(expected, write(partial, true));
+            }
+            assertEquals(expected.length(), partial.getSize());
+        }
+    }
+
+    public void testTruncatedFile() throws Exception {
+        RangeRepresentation partial = new RangeRepresentation(
+                new FileRepresentation(this.file, MediaType.TEXT_PLAIN, 0),
+                Arrays.asList(new Range(10, 10)));
+        // The announced size of the complete file
+        FileRepresentation whole = new FileRepresentation(this.file,
+                MediaType.TEXT_PLAIN, 0);
+        whole.setSize(whole.getSize());
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        raf.setLength(12);
+        raf.close();
+
+        for (boolean channel : new boolean[] { false, true }) {
+            try {
+                write(partial, channel);
+                fail("The truncated content should be detected");
+            } catch (IOException ioe) {
+                // Expected
+            }
+        }
+
+        try {
+            write(whole, true);
+            fail("The truncated content should be detected");
+        } catch (IOException ioe) {
+            // Expected
+        }
+    }
+
+    /**
+     * Writes a representation to a stream or to a channel. Only file
+     * representations can be written to channels that aren't selectable.
+     */
+    private String write(Representation representation, boolean channel)
+            throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        if (channel) {
+            WritableByteChannel wbc = Channels.newChannel(baos);
+            representation.write(wbc);
+        } else {
+            representation.write(baos);
+        }
+
+        return baos.toString("US-ASCII");
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Range;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.RangeRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Resource;
+import org.restlet.resource.StringRepresentation;
+import org.restlet.resource.Variant;
+
+/**
+ * Test {@link org.restlet.resource.Resource}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class ResourceTestCase extends RestletTestCase {
+
+    /**
+     * Resource exposing a tagged variant and counting the representations
+     * built.
+     */
+    private static class TaggedResource extends Resource {
+        private int built;
+
+        public TaggedResource(Request request, Response response) {
+            super(null, request, response);
+            Variant variant = new Variant(MediaType.TEXT_PLAIN);
+            variant.setTag(new Tag("v1"));
+            variant.setModificationDate(new Date(1000000000000L));
+            getVariants().add(variant);
+        }
+
+        @Override
+        public Representation getRepresentation(Variant variant) {
+            this.built++;
+            Representation result = new StringRepresentation("content",
+                    MediaType.TEXT_PLAIN);
+            result.setTag(variant.getTag());
+            result.setModificationDate(variant.getModificationDate());
+            return result;
+        }
+    }
+
+    private Response handleGet(Request request, boolean negotiate) {
+        Response response = new Response(request);
+        TaggedResource resource = new TaggedResource(request, response);
+        resource.setNegotiateContent(negotiate);
+        resource.handleGet();
+        assertEquals(response.getStatus().isSuccess() ? 1 : 0,
+                resource.built);
+        return response;
+    }
+
+    public void testConditionalGet() {
+        for (boolean negotiate : new boolean[] { true, false }) {
+            // Matching tag, no representation built
+            Request request = new Request(Method.GET, "http://localhost/");
+            request.getConditions().setNoneMatch(
+                    Arrays.asList(new Tag("v1")));
+            Response response = handleGet(request, negotiate);
+            assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+            assertNull(response.getEntity());
+
+            // Not modified since the given date
+            request = new Request(Method.GET, "http://localhost/");
+            request.getConditions().setModifiedSince(
+                    new Date(1000000001000L));
+            response = handleGet(request, negotiate);
+            assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+
+            // Failed precondition
+            request = new Request(Method.GET, "http://localhost/");
+            request.getConditions().setMatch(Arrays.asList(new Tag("v2")));
+            response = handleGet(request, negotiate);
+            assertEquals(Status.CLIENT_ERROR_PRECONDITION_FAILED, response
+                    .getStatus());
+
+            // Other tag, the representation is built
+            request = new Request(Method.GET, "http://localhost/");
+            request.getConditions().setNoneMatch(
+                    Arrays.asList(new Tag("v2")));
+            response = handleGet(request, negotiate);
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertNotNull(response.getEntity());
+        }
+    }
+
+    public void testRangeGet() throws Exception {
+        // Single range
+        Request request = new Request(Method.GET, "http://localhost/");
+        request.getRanges().add(new Range(1, 3));
+        Response response = handleGet(request, true);
+        assertEquals(Status.SUCCESS_PARTIAL_CONTENT, response.getStatus());
+        assertTrue(response.getEntity() instanceof RangeRepresentation);
+        assertEquals(3, response.getEntity().getSize());
+        assertEquals("ont", response.getEntity().getText());
+
+        // The "if-range" date still matches
+        request = new Request(Method.GET, "http://localhost/");
+        request.getRanges().add(new Range(Range.INDEX_LAST, 4));
+        request.getConditions().setRangeDate(new Date(1000000000000L));
+        response = handleGet(request, true);
+        assertEquals(Status.SUCCESS_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("tent", response.getEntity().getText());
+
+        // The representation changed, it is sent completely
+        request = new Request(Method.GET, "http://localhost/");
+        request.getRanges().add(new Range(1, 3));
+        request.getConditions().setRangeDate(new Date(999999999000L));
+        response = handleGet(request, true);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("content", response.getEntity().getText());
+
+        // Weak tags can't be compared with the strong comparison function
+        request = new Request(Method.GET, "http://localhost/");
+        request.getRanges().add(new Range(1, 3));
+        request.getConditions().setRangeTag(new Tag("v1"));
+        response = handleGet(request, true);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+
+        // No range can be satisfied by the representation built
+        request = new Request(Method.GET, "http://localhost/");
+        request.getRanges().add(new Range(7, Range.SIZE_MAX));
+        response = new Response(request);
+        new TaggedResource(request, response).handleGet();
+        assertEquals(Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE,
+                response.getStatus());
+        RangeRepresentation unsatisfied = (RangeRepresentation) response
+                .getEntity();
+        assertTrue(unsatisfied.getRanges().isEmpty());
+        assertEquals(0, unsatisfied.getSize());
+        assertEquals(7, unsatisfied.getTotalSize());
+    }
+
+}
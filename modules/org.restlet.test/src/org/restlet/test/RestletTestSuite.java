@@ -38,19 +38,25 @@ import junit.framework.TestSuite;
 public class RestletTestSuite extends TestSuite {
     /** Constructor. */
     public RestletTestSuite() {
+        addTestSuite(ByteUtilsTestCase.class);
         addTestSuite(CallTestCase.class);
         addTestSuite(CookieTestCase.class);
+        addTestSuite(DateUtilsTestCase.class);
         addTestSuite(DirectoryTestCase.class);
         addTestSuite(FileReferenceTestCase.class);
         addTestSuite(FilterTestCase.class);
         addTestSuite(FreeMarkerTestCase.class);
         addTestSuite(MediaTypeTestCase.class);
+        addTestSuite(RangeRepresentationTestCase.class);
         addTestSuite(RedirectTestCase.class);
         addTestSuite(ReferenceTestCase.class);
+        addTestSuite(ResourceTestCase.class);
         addTestSuite(RestartTestCase.class);
         addTestSuite(RouteListTestCase.class);
+        addTestSuite(TemplateTestCase.class);
         addTestSuite(TransformerTestCase.class);
         addTestSuite(VelocityTestCase.class);
+        addTestSuite(XmlRepresentationTestCase.class);
         addTestSuite(HTTPBasicTest.class);
     }
 
@@ -29,10 +29,15 @@ package org.restlet.test;
 
 import junit.framework.TestCase;
 
+import org.restlet.Restlet;
 import org.restlet.Route;
+import org.restlet.Router;
+import org.restlet.data.Method;
+import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.util.RouteList;
+import org.restlet.util.Template;
 
 /**
  * Test case for RouteList class.
@@ -41,6 +46,74 @@ import org.restlet.util.RouteList;
  */
 public class RouteListTestCase extends TestCase {
 
+    public void testIndexed() {
+        Router router = new Router();
+        Restlet target = new Restlet();
+        router.attach("/users/{user}", target);
+        router.attach("/users/{user}/orders", target);
+        Route rootRoute = router.attach("{path}", target);
+        router.attach("/users/admin", target);
+        router.attach("/user", target);
+        router.attach("/orders/{order}", target);
+        router.getRoutes().add(new MockScoringRoute(0));
+
+        RouteList list = router.getRoutes();
+        String[] paths = { "/users/joe", "/users/joe/orders", "/users/admin",
+                "/user", "/orders/12", "/other", "", "/users" };
+        Route[] firstRoutes = new Route[paths.length];
+        Route[] bestRoutes = new Route[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            firstRoutes[i] = list.getFirst(createRequest(paths[i]), null, 0.5F);
+            bestRoutes[i] = list.getBest(createRequest(paths[i]), null, 0.5F);
+        }
+
+        list.setIndexed(true);
+        for (int i = 0; i < paths.length; i++) {
+            assertSame(paths[i], firstRoutes[i], list.getFirst(
+                    createRequest(paths[i]), null, 0.5F));
+            assertSame(paths[i], bestRoutes[i], list.getBest(
+                    createRequest(paths[i]), null, 0.5F));
+        }
+
+        // The index follows the modifications of the list
+        list.remove(rootRoute);
+        assertNull(list.getFirst(createRequest("/other"), null, 0.5F));
+        Route other = router.attach("/other", target);
+        assertSame(other, list.getFirst(createRequest("/other"), null, 0.5F));
+
+        // Template modifications require the index to be rebuilt
+        other.getTemplate().setPattern("/another");
+        list.setIndexed(true);
+        assertNull(list.getFirst(createRequest("/other"), null, 0.5F));
+        assertSame(other, list.getBest(createRequest("/another"), null, 0.5F));
+        other.setTemplate(new Template(null, "/third"));
+        list.setIndexed(true);
+        assertNull(list.getFirst(createRequest("/another"), null, 0.5F));
+        assertSame(other, list.getFirst(createRequest("/third"), null, 0.5F));
+    }
+
+    public void testIndexedZeroScore() {
+        Router router = new Router();
+        Restlet target = new Restlet();
+        Route first = router.attach("/users/{user}", target);
+        router.attach("/orders/{order}", target);
+        RouteList list = router.getRoutes();
+
+        // Routes scoring zero match when the required score isn't positive
+        assertSame(first, list.getFirst(createRequest("/other"), null, 0F));
+        list.setIndexed(true);
+        assertSame(first, list.getFirst(createRequest("/other"), null, 0F));
+        assertNull(list.getFirst(createRequest("/other"), null, 0.5F));
+        assertNull(list.getBest(createRequest("/other"), null, 0F));
+    }
+
+    private static Request createRequest(String path) {
+        Request request = new Request(Method.GET, "http://localhost" + path);
+        request.getResourceRef().setBaseRef(
+                new Reference("http://localhost"));
+        return request;
+    }
+
     public void testGetLast() {
         RouteList list = new RouteList();
 
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.restlet.util.Template;
+import org.restlet.util.Variable;
+
+/**
+ * Test {@link org.restlet.util.Template}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class TemplateTestCase extends RestletTestCase {
+    /** The logger to use. */
+    private static final Logger LOGGER = Logger
+            .getLogger(TemplateTestCase.class.getCanonicalName());
+
+    /**
+     * Returns a template with segment variables matching the start of strings.
+     * 
+     * @param pattern
+     *                The URI pattern.
+     * @return The template.
+     */
+    private Template getTemplate(String pattern) {
+        return new Template(LOGGER, pattern, Template.MODE_STARTS_WITH,
+                Variable.TYPE_URI_SEGMENT, "", true, false);
+    }
+
+    /**
+     * Tests the matching and parsing of variables.
+     */
+    public void testParse() throws Exception {
+        Template template = getTemplate("/users/{user}/orders/{order}");
+        String path = "/users/john/orders/123/items";
+        assertEquals(22, template.match(path));
+
+        Map<String, Object> variables = new HashMap<String, Object>();
+        assertEquals(22, template.parse(path, variables));
+        assertEquals("john", variables.get("user"));
+        assertEquals("123", variables.get("order"));
+
+        assertEquals(-1, template.match("/users"));
+        assertEquals(-1, template.parse("/users", variables));
+        assertEquals(-1, template.match(null));
+    }
+
+    /**
+     * Tests that a variable used twice must have the same value.
+     */
+    public void testRepeatedVariable() throws Exception {
+        Template template = getTemplate("/{name}/{name}");
+        assertEquals(8, template.match("/abc/abc"));
+        assertEquals(-1, template.match("/abc/abd"));
+    }
+
+    /**
+     * Tests that the pattern is compiled again when the pattern or the
+     * variables are modified after a match.
+     */
+    public void testModifications() throws Exception {
+        Template template = getTemplate("/users/{id}");
+        assertEquals(9, template.match("/users/ab"));
+
+        template.getVariables().put("id", new Variable(Variable.TYPE_DIGIT));
+        assertEquals(-1, template.match("/users/ab"));
+        assertEquals(9, template.match("/users/12"));
+
+        template.setPattern("/accounts/{id}");
+        assertEquals(-1, template.match("/users/12"));
+
+        Map<String, Object> variables = new HashMap<String, Object>();
+        assertEquals(12, template.parse("/accounts/42", variables));
+        assertEquals("42", variables.get("id"));
+
+        template.setMatchingMode(Template.MODE_EQUALS);
+        assertEquals(-1, template.match("/accounts/42/x"));
+    }
+
+    /**
+     * Tests that concurrent threads parse their own strings.
+     */
+    public void testConcurrentParse() throws Exception {
+        final Template template = getTemplate("/items/{id}");
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            final String prefix = "t" + t + "-";
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Map<String, Object> variables = new HashMap<String, Object>();
+
+                    for (int i = 0; i < 2000; i++) {
+                        String id = prefix + i;
+                        if ((template.match("/items/" + id) == -1)
+                                || (template.parse("/items/" + id, variables) == -1)
+                                || !id.equals(variables.get("id"))) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed[0]);
+    }
+
+}
@@ -27,11 +27,16 @@
 
 package org.restlet.test;
 
+import java.util.Date;
+
+import javax.xml.transform.Templates;
+
 import junit.framework.TestCase;
 
 import org.restlet.Transformer;
 import org.restlet.resource.Representation;
 import org.restlet.resource.StringRepresentation;
+import org.restlet.resource.TransformRepresentation;
 
 public class TransformerTestCase extends TestCase {
     public static void main(String[] args) {
@@ -67,4 +72,32 @@ public class TransformerTestCase extends TestCase {
                 result);
     }
 
+    public void testTemplatesCache() throws Exception {
+        Representation xslt = new StringRepresentation(
+                "<?xml version=\"1.0\"?>"
+                        + "<xsl:transform xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"1.0\">"
+                        + "<xsl:template match =\"/\">ok</xsl:template>"
+                        + "</xsl:transform>");
+        Representation source = new StringRepresentation("<a/>");
+        Transformer transformer = new Transformer(Transformer.MODE_REQUEST,
+                xslt);
+
+        // The transform sheet is only compiled once
+        TransformRepresentation first = (TransformRepresentation) transformer
+                .transform(source);
+        TransformRepresentation second = (TransformRepresentation) transformer
+                .transform(source);
+        Templates templates = first.getTemplates();
+        assertSame(templates, second.getTemplates());
+        assertNotSame(first.getTransformer(), second.getTransformer());
+        assertTrue(second.getText().endsWith("ok"));
+
+        // Until it is modified
+        xslt.setModificationDate(new Date());
+        TransformRepresentation third = (TransformRepresentation) transformer
+                .transform(source);
+        assertNotSame(templates, third.getTemplates());
+        assertTrue(third.getText().endsWith("ok"));
+    }
+
 }
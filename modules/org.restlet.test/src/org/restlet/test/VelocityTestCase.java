@@ -34,6 +34,8 @@ import java.util.TreeMap;
 
 import junit.framework.TestCase;
 
+import org.apache.velocity.app.VelocityEngine;
+import org.restlet.Context;
 import org.restlet.data.MediaType;
 import org.restlet.ext.velocity.TemplateRepresentation;
 
@@ -74,4 +76,38 @@ public class VelocityTestCase extends TestCase {
         testDir.delete();
     }
 
+    public void testSharedEngine() throws Exception {
+        // Create a temporary directory for the tests
+        File testDir = new File(System.getProperty("java.io.tmpdir"),
+                "VelocityTestCase");
+        testDir.mkdir();
+
+        // Create a temporary template file
+        File testFile = File.createTempFile("test", ".vm", testDir);
+        FileWriter fw = new FileWriter(testFile);
+        fw.write("Value=$value");
+        fw.close();
+
+        Context context = new Context();
+        context.getParameters().add("velocity.file.resource.loader.path",
+                testDir.getAbsolutePath());
+        VelocityEngine engine = TemplateRepresentation
+                .getSharedEngine(context);
+        assertSame(engine, TemplateRepresentation.getSharedEngine(context));
+
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> map = new TreeMap<String, Object>();
+            map.put("value", "myValue" + i);
+
+            TemplateRepresentation tr = new TemplateRepresentation(testFile
+                    .getName(), map, MediaType.TEXT_PLAIN, engine);
+            assertSame(engine, tr.getEngine());
+            assertEquals("Value=myValue" + i, tr.getText());
+        }
+
+        // Clean-up
+        testFile.delete();
+        testDir.delete();
+    }
+
 }
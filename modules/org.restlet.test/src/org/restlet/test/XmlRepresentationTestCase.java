@@ -0,0 +1,111 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.test;
+
+import java.io.ByteArrayOutputStream;
+
+import org.restlet.data.MediaType;
+import org.restlet.resource.DomRepresentation;
+import org.restlet.resource.SaxRepresentation;
+import org.restlet.resource.StringRepresentation;
+
+/**
+ * Test {@link org.restlet.resource.XmlRepresentation}.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class XmlRepresentationTestCase extends RestletTestCase {
+
+    private static final String XML = "<a:root xmlns:a=\"urn:a\" xmlns:b=\"urn:b\">"
+            + "<a:item>one</a:item><b:item>two</b:item></a:root>";
+
+    private DomRepresentation getDom() {
+        DomRepresentation result = new DomRepresentation(
+                new StringRepresentation(XML, MediaType.TEXT_XML));
+        result.setNamespaceAware(true);
+        return result;
+    }
+
+    public void testDomEvaluate() throws Exception {
+        DomRepresentation dom = getDom();
+        dom.putNamespace("x", "urn:a");
+        assertEquals("one", dom.getText("/x:root/x:item"));
+        assertEquals(1.0, dom.getNumber("count(/x:root/x:item)"));
+
+        // The same expression is compiled again for another namespace
+        dom.putNamespace("x", "urn:b");
+        assertEquals("", dom.getText("/x:root/x:item"));
+        assertEquals("two", dom.getText("/*/x:item"));
+
+        // The cached expression doesn't keep the mappings of another
+        // representation
+        DomRepresentation other = getDom();
+        other.putNamespace("x", "urn:a");
+        assertEquals("one", other.getText("/*/x:item"));
+        assertNull(getDom().getText("/*/x:item"));
+    }
+
+    public void testDomOverriddenNamespaces() throws Exception {
+        DomRepresentation dom = getDom();
+        dom.putNamespace("x", "urn:a");
+        assertEquals("one", dom.getText("/*/x:item"));
+
+        // Overridden namespace methods resolve the prefixes
+        DomRepresentation overriding = new DomRepresentation(
+                new StringRepresentation(XML, MediaType.TEXT_XML)) {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return "x".equals(prefix) ? "urn:b" : super
+                        .getNamespaceURI(prefix);
+            }
+        };
+        overriding.setNamespaceAware(true);
+        assertEquals("two", overriding.getText("/*/x:item"));
+    }
+
+    public void testDomWrite() throws Exception {
+        DomRepresentation dom = getDom();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        dom.write(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        dom.write(second);
+        assertTrue(first.toString("UTF-8").contains("<b:item>two</b:item>"));
+        assertEquals(first.toString("UTF-8"), second.toString("UTF-8"));
+    }
+
+    public void testSaxEvaluate() throws Exception {
+        SaxRepresentation sax = new SaxRepresentation(new StringRepresentation(
+                XML, MediaType.TEXT_XML));
+        sax.setNamespaceAware(true);
+        sax.putNamespace("y", "urn:b");
+        assertEquals("two", sax.getText("/*/y:item"));
+        assertEquals(Boolean.TRUE, sax.getBoolean("count(//y:item) = 1"));
+    }
+
+}
@@ -29,6 +29,7 @@ package org.restlet;
 
 import org.restlet.data.Request;
 import org.restlet.data.Response;
+import org.restlet.service.CacheService;
 import org.restlet.service.ConnectorService;
 import org.restlet.service.ConverterService;
 import org.restlet.service.DecoderService;
@@ -48,6 +49,7 @@ import org.restlet.util.Helper;
  * Applications also have many useful Services associated. They are available as
  * properties that can be eventually overriden:
  * <ul>
+ * <li>"cacheService" to cache the response entities.</li>
  * <li>"connectorService" to manage client and server connectors.</li>
  * <li>"converterService" to convert message entities into higher-level
  * objects.</li>
@@ -87,6 +89,9 @@ public abstract class Application extends Restlet {
 	/** The root Restlet. */
 	private Restlet root;
 
+	/** The cache service. */
+	private CacheService cacheService;
+
 	/** The connector service. */
 	private ConnectorService connectorService;
 
@@ -146,6 +151,7 @@ public abstract class Application extends Restlet {
 		this.author = null;
 		this.owner = null;
 		this.root = null;
+		this.cacheService = null;
 		this.connectorService = null;
 		this.decoderService = null;
 		this.metadataService = null;
@@ -172,6 +178,17 @@ public abstract class Application extends Restlet {
 		return this.author;
 	}
 
+	/**
+	 * Returns the cache service. This service is disabled by default.
+	 * 
+	 * @return The cache service.
+	 */
+	public CacheService getCacheService() {
+		if (this.cacheService == null)
+			this.cacheService = new CacheService(false);
+		return this.cacheService;
+	}
+
 	/**
 	 * Returns the connector service.
 	 * 
@@ -361,6 +378,16 @@ public abstract class Application extends Restlet {
 		}
 	}
 
+	/**
+	 * Sets the cache service.
+	 * 
+	 * @param cacheService
+	 *            The cache service.
+	 */
+	public void setCacheService(CacheService cacheService) {
+		this.cacheService = cacheService;
+	}
+
 	/**
 	 * Sets the connector service.
 	 * 
@@ -188,6 +188,8 @@ public class Route extends Filter {
         // 1 - Parse the template variables and adjust the base reference
         if (getTemplate() != null) {
             String remainingPart = request.getResourceRef().getRemainingPart();
+
+            // The template reuses the match computed while scoring this route
             int matchedLength = getTemplate().parse(remainingPart, request);
 
             if (getLogger().isLoggable(Level.FINER)) {
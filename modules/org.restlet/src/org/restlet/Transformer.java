@@ -42,7 +42,8 @@ import org.restlet.resource.TransformRepresentation;
 /**
  * Filter that can transform XML representations by applying an XSLT transform
  * sheet. It uses the {@link org.restlet.resource.TransformRepresentation} to
- * actually transform the XML entities.
+ * actually transform the XML entities. The transform sheet is only compiled
+ * once, then again each time its modification date changes.
  * 
  * @author Jerome Louvel (contact@noelios.com) <a
  *         href="http://www.noelios.com/">Noelios Technologies</a>
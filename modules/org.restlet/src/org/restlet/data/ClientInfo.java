@@ -27,7 +27,9 @@
 
 package org.restlet.data;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.restlet.resource.Resource;
@@ -40,6 +42,95 @@ import org.restlet.util.Engine;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public final class ClientInfo {
+    /**
+     * List of preferences sharing an unmodified list until its first
+     * modification, which works on a private copy. Each shared preference is
+     * copied when it is first returned, so that it can be modified too. The
+     * shared list and its preferences are never modified.
+     * 
+     * @author Jerome Louvel (contact@noelios.com)
+     */
+    private static final class CopyOnWriteList<T extends Metadata> extends
+            AbstractList<Preference<T>> {
+        /** The private list, holding the copies already returned. */
+        private List<Preference<T>> delegate;
+
+        /** The shared list or null once fully copied. */
+        private List<Preference<T>> shared;
+
+        /**
+         * Constructor.
+         * 
+         * @param shared
+         *            The shared list.
+         */
+        private CopyOnWriteList(List<Preference<T>> shared) {
+            this.delegate = new ArrayList<Preference<T>>(Collections
+                    .<Preference<T>> nCopies(shared.size(), null));
+            this.shared = shared;
+        }
+
+        @Override
+        public void add(int index, Preference<T> element) {
+            getModifiableList().add(index, element);
+            this.modCount++;
+        }
+
+        @Override
+        public void clear() {
+            this.delegate.clear();
+            this.shared = null;
+            this.modCount++;
+        }
+
+        @Override
+        public Preference<T> get(int index) {
+            Preference<T> result = this.delegate.get(index);
+
+            if ((result == null) && (this.shared != null)) {
+                result = new Preference<T>(this.shared.get(index));
+                this.delegate.set(index, result);
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns the modifiable list, copying the shared preferences if
+         * necessary.
+         * 
+         * @return The modifiable list.
+         */
+        private List<Preference<T>> getModifiableList() {
+            if (this.shared != null) {
+                for (int i = 0; i < this.delegate.size(); i++) {
+                    get(i);
+                }
+
+                this.shared = null;
+            }
+
+            return this.delegate;
+        }
+
+        @Override
+        public Preference<T> remove(int index) {
+            Preference<T> result = getModifiableList().remove(index);
+            this.modCount++;
+            return result;
+        }
+
+        @Override
+        public Preference<T> set(int index, Preference<T> element) {
+            return getModifiableList().set(index, element);
+        }
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+    }
+
     /** The IP addresses. */
     private List<String> addresses;
 
@@ -204,6 +295,59 @@ public final class ClientInfo {
         return getPreferredVariant(resource.getVariants(), defaultLanguage);
     }
 
+    /**
+     * Sets the character set preferences. The given list is never modified, it
+     * is copied on the first modification of the character set preferences,
+     * so it can be shared between calls. The preferences themselves are
+     * copied when they are first returned.
+     * 
+     * @param prefs
+     *            The character set preferences.
+     */
+    public void setAcceptedCharacterSets(List<Preference<CharacterSet>> prefs) {
+        this.characterSetPrefs = new CopyOnWriteList<CharacterSet>(
+                prefs);
+    }
+
+    /**
+     * Sets the encoding preferences. The given list is never modified, it is
+     * copied on the first modification of the encoding preferences, so it can
+     * be shared between calls. The preferences themselves are copied when
+     * they are first returned.
+     * 
+     * @param prefs
+     *            The encoding preferences.
+     */
+    public void setAcceptedEncodings(List<Preference<Encoding>> prefs) {
+        this.encodingPrefs = new CopyOnWriteList<Encoding>(prefs);
+    }
+
+    /**
+     * Sets the language preferences. The given list is never modified, it is
+     * copied on the first modification of the language preferences, so it can
+     * be shared between calls. The preferences themselves are copied when
+     * they are first returned.
+     * 
+     * @param prefs
+     *            The language preferences.
+     */
+    public void setAcceptedLanguages(List<Preference<Language>> prefs) {
+        this.languagePrefs = new CopyOnWriteList<Language>(prefs);
+    }
+
+    /**
+     * Sets the media type preferences. The given list is never modified, it is
+     * copied on the first modification of the media type preferences, so it
+     * can be shared between calls. The preferences themselves are copied when
+     * they are first returned.
+     * 
+     * @param prefs
+     *            The media type preferences.
+     */
+    public void setAcceptedMediaTypes(List<Preference<MediaType>> prefs) {
+        this.mediaTypePrefs = new CopyOnWriteList<MediaType>(prefs);
+    }
+
     /**
      * Sets the client's IP address.
      * 
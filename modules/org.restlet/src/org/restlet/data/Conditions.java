@@ -45,6 +45,8 @@ import org.restlet.util.DateUtils;
  * @see <a
  *      href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.26">If-None-Match</a>
  * @see <a
+ *      href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.27">If-Range</a>
+ * @see <a
  *      href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.28">If-Unmodified-Since</a>
  * 
  * @author Jerome Louvel (contact@noelios.com)
@@ -62,6 +64,12 @@ public final class Conditions {
     /** The "if-none-match" condition */
     private List<Tag> noneMatch;
 
+    /** The "if-range" condition as a date. */
+    private Date rangeDate;
+
+    /** The "if-range" condition as an entity tag. */
+    private Tag rangeTag;
+
     /**
      * Constructor.
      */
@@ -95,6 +103,54 @@ public final class Conditions {
         return this.noneMatch;
     }
 
+    /**
+     * Returns the "if-range" condition as a date.
+     * 
+     * @return The "if-range" condition as a date.
+     */
+    public Date getRangeDate() {
+        return this.rangeDate;
+    }
+
+    /**
+     * Returns the status of a range request for a given variant. The byte
+     * ranges requested only apply if the "if-range" condition is absent or if
+     * the variant still has the given entity tag or date of modification.
+     * Otherwise the whole variant must be sent.
+     * 
+     * @param variant
+     *                The representation whose entity tag or date of
+     *                modification will be tested.
+     * @return {@link Status#SUCCESS_PARTIAL_CONTENT} if the byte ranges apply,
+     *         {@link Status#SUCCESS_OK} otherwise.
+     */
+    public Status getRangeStatus(Variant variant) {
+        boolean applies = true;
+
+        if (getRangeTag() != null) {
+            // The strong comparison function must be used
+            applies = (variant != null) && (variant.getTag() != null)
+                    && !getRangeTag().isWeak()
+                    && getRangeTag().equals(variant.getTag(), true);
+        } else if (getRangeDate() != null) {
+            Date modificationDate = (variant == null) ? null : variant
+                    .getModificationDate();
+            applies = (modificationDate != null)
+                    && !DateUtils.after(getRangeDate(), modificationDate);
+        }
+
+        return applies ? Status.SUCCESS_PARTIAL_CONTENT : Status.SUCCESS_OK;
+    }
+
+    /**
+     * Returns the "if-range" condition as an entity tag.
+     * 
+     * @return The "if-range" condition as an entity tag.
+     */
+    public Tag getRangeTag() {
+        return this.rangeTag;
+    }
+
     /**
      * Returns the conditional status of a variant using a given method.
      * 
@@ -276,6 +332,26 @@ public final class Conditions {
         this.noneMatch = tags;
     }
 
+    /**
+     * Sets the "if-range" condition as a date.
+     * 
+     * @param date
+     *                The "if-range" condition as a date.
+     */
+    public void setRangeDate(Date date) {
+        this.rangeDate = DateUtils.unmodifiable(date);
+    }
+
+    /**
+     * Sets the "if-range" condition as an entity tag.
+     * 
+     * @param tag
+     *                The "if-range" condition as an entity tag.
+     */
+    public void setRangeTag(Tag tag) {
+        this.rangeTag = tag;
+    }
+
     /**
      * Sets the "if-unmodified-since" condition.
      * 
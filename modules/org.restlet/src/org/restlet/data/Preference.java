@@ -89,6 +89,24 @@ public final class Preference<T extends Metadata> {
         this.parameters = parameters;
     }
 
+    /**
+     * Copy constructor. The parameters are copied too.
+     * 
+     * @param preference
+     *            The preference to copy.
+     */
+    Preference(Preference<T> preference) {
+        this(preference.metadata, preference.quality, null);
+
+        if (preference.parameters != null) {
+            this.parameters = new Form();
+
+            for (Parameter parameter : preference.parameters) {
+                this.parameters.add(parameter.getName(), parameter.getValue());
+            }
+        }
+    }
+
     /**
      * Returns the metadata associated with this preference.
      * 
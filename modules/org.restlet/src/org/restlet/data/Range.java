@@ -0,0 +1,174 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.data;
+
+/**
+ * Byte range of a representation's content. The range starts at a given index
+ * and covers a given number of bytes. The index can also designate the end of
+ * the content, in which case the range covers the last bytes of the content.
+ * This is equivalent to the byte-range-spec of the HTTP "Range" header.
+ * 
+ * @see <a
+ *      href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.35">Range</a>
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public final class Range {
+    /** Index of the first byte of the content. */
+    public static final long INDEX_FIRST = 0;
+
+    /** Index designating the end of the content, for suffix ranges. */
+    public static final long INDEX_LAST = -1;
+
+    /** Size covering all the bytes up to the end of the content. */
+    public static final long SIZE_MAX = -1;
+
+    /** The index of the first byte of the range or INDEX_LAST. */
+    private long index;
+
+    /** The number of bytes covered by the range or SIZE_MAX. */
+    private long size;
+
+    /**
+     * Constructor covering the whole content.
+     */
+    public Range() {
+        this(INDEX_FIRST, SIZE_MAX);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param index
+     *                The index of the first byte of the range or INDEX_LAST
+     *                to cover the last bytes of the content.
+     * @param size
+     *                The number of bytes covered by the range or SIZE_MAX to
+     *                cover all the bytes up to the end of the content.
+     */
+    public Range(long index, long size) {
+        this.index = index;
+        this.size = size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object object) {
+        boolean result = (object instanceof Range);
+
+        if (result && (object != this)) {
+            Range range = (Range) object;
+            result = (range.getIndex() == getIndex())
+                    && (range.getSize() == getSize());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index of the first byte of the range or INDEX_LAST if the
+     * range covers the last bytes of the content.
+     * 
+     * @return The index of the first byte of the range or INDEX_LAST.
+     */
+    public long getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the number of bytes covered by the range or SIZE_MAX if the
+     * range covers all the bytes up to the end of the content.
+     * 
+     * @return The number of bytes covered by the range or SIZE_MAX.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return (int) (31 * this.index + this.size);
+    }
+
+    /**
+     * Resolves this range against a content of known size. The resolved range
+     * has a positive index and size, and doesn't extend beyond the end of the
+     * content.
+     * 
+     * @param contentSize
+     *                The size of the content.
+     * @return The resolved range or null if the range can't be satisfied by
+     *         the content.
+     */
+    public Range resolve(long contentSize) {
+        Range result = null;
+        long first;
+        long last;
+
+        if (getIndex() == INDEX_LAST) {
+            // Suffix range covering the last bytes of the content
+            first = (getSize() == SIZE_MAX) ? 0 : Math.max(0, contentSize
+                    - getSize());
+            last = contentSize - 1;
+        } else {
+            first = getIndex();
+            last = (getSize() == SIZE_MAX) ? contentSize - 1 : Math.min(
+                    contentSize - 1, first + getSize() - 1);
+        }
+
+        if ((first >= 0) && (first <= last)) {
+            result = new Range(first, last - first + 1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the index of the first byte of the range or INDEX_LAST to cover the
+     * last bytes of the content.
+     * 
+     * @param index
+     *                The index of the first byte of the range or INDEX_LAST.
+     */
+    public void setIndex(long index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the number of bytes covered by the range or SIZE_MAX to cover all
+     * the bytes up to the end of the content.
+     * 
+     * @param size
+     *                The number of bytes covered by the range or SIZE_MAX.
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+}
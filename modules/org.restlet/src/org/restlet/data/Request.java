@@ -27,6 +27,7 @@
 
 package org.restlet.data;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.restlet.resource.Representation;
@@ -64,6 +65,9 @@ public class Request extends Message {
     /** The method. */
     private Method method;
 
+    /** The byte ranges of the entity requested. */
+    private List<Range> ranges;
+
     /** The referrer reference. */
     private Reference referrerRef;
 
@@ -236,6 +240,18 @@ public class Request extends Message {
         return this.resourceRef;
     }
 
+    /**
+     * Returns the byte ranges of the entity requested. An empty list means
+     * that the whole entity is requested.
+     * 
+     * @return The byte ranges of the entity requested.
+     */
+    public List<Range> getRanges() {
+        if (this.ranges == null)
+            this.ranges = new ArrayList<Range>();
+        return this.ranges;
+    }
+
     /**
      * Returns the application root reference.
      * 
@@ -283,6 +299,16 @@ public class Request extends Message {
         this.challengeResponse = response;
     }
 
+    /**
+     * Sets the conditions applying to this call.
+     * 
+     * @param conditions
+     *            The conditions applying to this call.
+     */
+    public void setConditions(Conditions conditions) {
+        this.conditions = conditions;
+    }
+
     /**
      * Indicates if the call came over a confidential channel such as an
      * SSL-secured connection.
@@ -324,6 +350,16 @@ public class Request extends Message {
         this.method = method;
     }
 
+    /**
+     * Sets the byte ranges of the entity requested.
+     * 
+     * @param ranges
+     *            The byte ranges of the entity requested.
+     */
+    public void setRanges(List<Range> ranges) {
+        this.ranges = ranges;
+    }
+
     /**
      * Sets the referrer reference if available.
      * 
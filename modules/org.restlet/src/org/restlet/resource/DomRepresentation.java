@@ -32,18 +32,13 @@ import java.io.OutputStream;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
 
 import org.restlet.data.MediaType;
 import org.w3c.dom.Document;
@@ -70,7 +65,13 @@ public class DomRepresentation extends XmlRepresentation {
      */
     public DomRepresentation(MediaType mediaType) throws IOException {
         super(mediaType);
-        this.dom = getDocumentBuilder().newDocument();
+        DocumentBuilder builder = XmlFactories
+                .acquireDocumentBuilder(isNamespaceAware());
+        try {
+            this.dom = builder.newDocument();
+        } finally {
+            XmlFactories.release(builder, isNamespaceAware());
+        }
     }
 
     /**
@@ -101,9 +102,8 @@ public class DomRepresentation extends XmlRepresentation {
     @Override
     public Object evaluate(String expression, QName returnType)
             throws Exception {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        xpath.setNamespaceContext(this);
-        return xpath.evaluate(expression, getDocument(), returnType);
+        return getXPathExpression(expression).evaluate(getDocument(),
+                returnType);
     }
 
     /**
@@ -113,35 +113,21 @@ public class DomRepresentation extends XmlRepresentation {
      */
     public Document getDocument() throws IOException {
         if ((this.dom == null) && (this.xmlRepresentation != null)) {
+            DocumentBuilder builder = XmlFactories
+                    .acquireDocumentBuilder(isNamespaceAware());
             try {
-                this.dom = getDocumentBuilder().parse(
-                        xmlRepresentation.getStream());
+                this.dom = builder.parse(xmlRepresentation.getStream());
             } catch (SAXException se) {
                 throw new IOException("Couldn't read the XML representation. "
                         + se.getMessage());
+            } finally {
+                XmlFactories.release(builder, isNamespaceAware());
             }
         }
 
         return this.dom;
     }
 
-    /**
-     * Returns a document builder properly configured.
-     * 
-     * @return A document builder properly configured.
-     */
-    private DocumentBuilder getDocumentBuilder() throws IOException {
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(isNamespaceAware());
-            dbf.setValidating(false);
-            return dbf.newDocumentBuilder();
-        } catch (ParserConfigurationException pce) {
-            throw new IOException("Couldn't create the empty document: "
-                    + pce.getMessage());
-        }
-    }
-
     /**
      * Sets the wrapped DOM document.
      * 
@@ -162,19 +148,24 @@ public class DomRepresentation extends XmlRepresentation {
     public void write(OutputStream outputStream) throws IOException {
         try {
             if (getDocument() != null) {
-                Transformer transformer = TransformerFactory.newInstance()
-                        .newTransformer();
-                transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-
-                if (getDocument().getDoctype() != null) {
-                    transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM,
-                            getDocument().getDoctype().getSystemId());
-                    transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC,
-                            getDocument().getDoctype().getPublicId());
+                Transformer transformer = XmlFactories.acquireTransformer();
+                try {
+                    transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+
+                    if (getDocument().getDoctype() != null) {
+                        transformer.setOutputProperty(
+                                OutputKeys.DOCTYPE_SYSTEM, getDocument()
+                                        .getDoctype().getSystemId());
+                        transformer.setOutputProperty(
+                                OutputKeys.DOCTYPE_PUBLIC, getDocument()
+                                        .getDoctype().getPublicId());
+                    }
+
+                    transformer.transform(new DOMSource(getDocument()),
+                            new StreamResult(outputStream));
+                } finally {
+                    XmlFactories.release(transformer);
                 }
-
-                transformer.transform(new DOMSource(getDocument()),
-                        new StreamResult(outputStream));
             }
         } catch (TransformerConfigurationException tce) {
             throw new IOException("Couldn't write the XML representation: "
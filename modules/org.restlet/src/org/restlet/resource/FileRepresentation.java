@@ -167,7 +167,8 @@ public class FileRepresentation extends Representation {
 
 	/**
 	 * Writes the representation to a byte channel. Optimizes using the file
-	 * channel transferTo method.
+	 * channel transferTo method. Only the number of bytes returned by
+	 * getSize() is written.
 	 * 
 	 * @param writableChannel
 	 *            A writable byte channel.
@@ -175,14 +176,25 @@ public class FileRepresentation extends Representation {
 	@Override
 	public void write(WritableByteChannel writableChannel) throws IOException {
 		FileChannel fc = getChannel();
-		long position = 0;
-		long count = fc.size();
-		long written = 0;
-
-		while (count > 0) {
-			written = fc.transferTo(position, count, writableChannel);
-			position += written;
-			count -= written;
+
+		try {
+			long position = 0;
+			long count = getSize();
+			long written = 0;
+
+			while (count > 0) {
+				written = fc.transferTo(position, count, writableChannel);
+
+				if (written == 0) {
+					// The file was truncated, don't loop forever
+					throw new IOException("Unexpected end of the file content");
+				}
+
+				position += written;
+				count -= written;
+			}
+		} finally {
+			fc.close();
 		}
 	}
 
@@ -0,0 +1,504 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Parameter;
+import org.restlet.data.Range;
+import org.restlet.util.ByteUtils;
+import org.restlet.util.WrapperRepresentation;
+
+/**
+ * Representation limited to some byte ranges of a wrapped representation whose
+ * size is known. A single range is written as is, while several ranges are
+ * written as the parts of a "multipart/byteranges" entity. The ranges are
+ * resolved against the size of the wrapped representation, then sorted and
+ * coalesced when they overlap or are adjacent. When no range can be satisfied,
+ * the representation is empty and only gives the complete length of the
+ * content.<br/> The content of file
+ * representations is read with positioned file channel operations, so the
+ * bytes outside of the ranges are never read. The content of other
+ * representations is read sequentially, skipping the bytes outside of the
+ * ranges.
+ * 
+ * @see <a
+ *      href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec19.html#sec19.2">Internet
+ *      Media Type multipart/byteranges</a>
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class RangeRepresentation extends WrapperRepresentation {
+	/** The "multipart/byteranges" media type name. */
+	private static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
+	/** Size of the buffer used to copy the ranges. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Generator of multipart boundaries. */
+	private static final Random BOUNDARIES = new Random();
+
+	/** The resolved, sorted and coalesced ranges. */
+	private final List<Range> ranges;
+
+	/** The size of the wrapped representation. */
+	private final long totalSize;
+
+	/** The multipart boundary. */
+	private final String boundary;
+
+	/** The multipart media type or null for a single range. */
+	private final MediaType multipartType;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param wrappedRepresentation
+	 *            The wrapped representation.
+	 * @param ranges
+	 *            The byte ranges requested.
+	 */
+	public RangeRepresentation(Representation wrappedRepresentation,
+			List<Range> ranges) {
+		super(wrappedRepresentation);
+		this.totalSize = wrappedRepresentation.getSize();
+		this.ranges = Collections.unmodifiableList(resolve(ranges,
+				this.totalSize));
+		this.boundary = Long.toHexString(BOUNDARIES.nextLong());
+
+		if (this.ranges.size() > 1) {
+			Form parameters = new Form();
+			parameters.add("boundary", this.boundary);
+			this.multipartType = new MediaType(MULTIPART_BYTERANGES,
+					parameters);
+		} else {
+			this.multipartType = null;
+		}
+	}
+
+	/**
+	 * Resolves the requested ranges against the size of the content. The
+	 * ranges that can't be satisfied are ignored, the others are sorted and
+	 * coalesced when they overlap or are adjacent.
+	 * 
+	 * @param ranges
+	 *            The ranges requested.
+	 * @param totalSize
+	 *            The size of the content.
+	 * @return The resolved ranges.
+	 */
+	private static List<Range> resolve(List<Range> ranges, long totalSize) {
+		List<Range> result = new ArrayList<Range>();
+
+		if (totalSize != UNKNOWN_SIZE) {
+			List<Range> resolved = new ArrayList<Range>();
+			for (Range range : ranges) {
+				Range absolute = range.resolve(totalSize);
+
+				if (absolute != null) {
+					resolved.add(absolute);
+				}
+			}
+
+			Collections.sort(resolved, new Comparator<Range>() {
+				public int compare(Range range1, Range range2) {
+					return (range1.getIndex() < range2.getIndex()) ? -1
+							: ((range1.getIndex() == range2.getIndex()) ? 0
+									: 1);
+				}
+			});
+
+			Range current = null;
+			for (Range range : resolved) {
+				if ((current != null)
+						&& (range.getIndex() <= current.getIndex()
+								+ current.getSize())) {
+					// Extend the current range
+					long end = Math.max(current.getIndex() + current.getSize(),
+							range.getIndex() + range.getSize());
+					current.setSize(end - current.getIndex());
+				} else {
+					current = range;
+					result.add(current);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the character set of the wrapped representation, or null for a
+	 * multipart entity.
+	 * 
+	 * @return The character set or null.
+	 */
+	@Override
+	public CharacterSet getCharacterSet() {
+		return isMultipart() ? null : super.getCharacterSet();
+	}
+
+	/**
+	 * Returns a channel with the content of the ranges. Internally, it uses a
+	 * writer thread and a pipe.
+	 * 
+	 * @return A channel with the content of the ranges.
+	 */
+	@Override
+	public ReadableByteChannel getChannel() throws IOException {
+		return ByteUtils.getChannel(this);
+	}
+
+	/**
+	 * Returns the "Content-Range" value of a range.
+	 * 
+	 * @param range
+	 *            The resolved range.
+	 * @return The "Content-Range" value.
+	 */
+	private String getContentRange(Range range) {
+		return "bytes " + range.getIndex() + "-"
+				+ (range.getIndex() + range.getSize() - 1) + "/"
+				+ this.totalSize;
+	}
+
+	/**
+	 * Returns the media type of the wrapped representation, or the
+	 * "multipart/byteranges" media type with its boundary parameter when
+	 * several ranges are written.
+	 * 
+	 * @return The media type.
+	 */
+	@Override
+	public MediaType getMediaType() {
+		return isMultipart() ? this.multipartType : super.getMediaType();
+	}
+
+	/**
+	 * Returns the delimiter and headers preceding a multipart part.
+	 * 
+	 * @param range
+	 *            The range of the part.
+	 * @return The part head.
+	 */
+	private byte[] getPartHead(Range range) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\r\n--").append(this.boundary).append("\r\n");
+
+		MediaType mediaType = super.getMediaType();
+		if (mediaType != null) {
+			sb.append("Content-Type: ").append(mediaType.getName());
+
+			if (super.getCharacterSet() != null) {
+				sb.append("; charset=").append(super.getCharacterSet().getName());
+			}
+
+			for (Parameter parameter : mediaType.getParameters()) {
+				sb.append("; ").append(parameter.getName()).append("=")
+						.append(parameter.getValue());
+			}
+
+			sb.append("\r\n");
+		}
+
+		sb.append("Content-Range: ").append(getContentRange(range)).append(
+				"\r\n\r\n");
+		return getAsciiBytes(sb.toString());
+	}
+
+	/**
+	 * Returns the final delimiter of a multipart entity.
+	 * 
+	 * @return The final delimiter.
+	 */
+	private byte[] getPartsEnd() {
+		return getAsciiBytes("\r\n--" + this.boundary + "--\r\n");
+	}
+
+	/**
+	 * Returns the ASCII bytes of a string.
+	 * 
+	 * @param value
+	 *            The string.
+	 * @return The ASCII bytes.
+	 */
+	private static byte[] getAsciiBytes(String value) {
+		try {
+			return value.getBytes("US-ASCII");
+		} catch (IOException ioe) {
+			return value.getBytes();
+		}
+	}
+
+	/**
+	 * Returns the resolved, sorted and coalesced ranges that are written.
+	 * 
+	 * @return The ranges written.
+	 */
+	public List<Range> getRanges() {
+		return this.ranges;
+	}
+
+	/**
+	 * Returns the size of the written content, including the multipart
+	 * delimiters and headers.
+	 * 
+	 * @return The size of the written content.
+	 */
+	@Override
+	public long getSize() {
+		long result = 0;
+
+		if (isMultipart()) {
+			for (Range range : getRanges()) {
+				result += getPartHead(range).length + range.getSize();
+			}
+
+			result += getPartsEnd().length;
+		} else if (!getRanges().isEmpty()) {
+			result = getRanges().get(0).getSize();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns a stream with the content of the ranges. Internally, it uses a
+	 * writer thread and a pipe stream.
+	 * 
+	 * @return A stream with the content of the ranges.
+	 */
+	@Override
+	public InputStream getStream() throws IOException {
+		return ByteUtils.getStream(this);
+	}
+
+	/**
+	 * Converts the content of the ranges to a string value.
+	 * 
+	 * @return The content of the ranges as a string value.
+	 */
+	@Override
+	public String getText() throws IOException {
+		return ByteUtils.toString(getStream(), getCharacterSet());
+	}
+
+	/**
+	 * Returns the size of the wrapped representation, which is the complete
+	 * length of the content.
+	 * 
+	 * @return The size of the wrapped representation.
+	 */
+	public long getTotalSize() {
+		return this.totalSize;
+	}
+
+	/**
+	 * Indicates if the ranges are written as a "multipart/byteranges" entity.
+	 * 
+	 * @return True if several ranges are written.
+	 */
+	public boolean isMultipart() {
+		return this.ranges.size() > 1;
+	}
+
+	/**
+	 * Writes the content of the ranges to a byte stream.
+	 * 
+	 * @param outputStream
+	 *            The output stream.
+	 */
+	@Override
+	public void write(OutputStream outputStream) throws IOException {
+		if (getWrappedRepresentation() instanceof FileRepresentation) {
+			FileChannel fileChannel = ((FileRepresentation) getWrappedRepresentation())
+					.getChannel();
+
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+				for (Range range : getRanges()) {
+					if (isMultipart()) {
+						outputStream.write(getPartHead(range));
+					}
+
+					// Positioned reads leave the channel position untouched
+					long position = range.getIndex();
+					long end = range.getIndex() + range.getSize();
+					while (position < end) {
+						buffer.clear();
+						buffer.limit((int) Math.min(BUFFER_SIZE, end
+								- position));
+						int read = fileChannel.read(buffer, position);
+
+						if (read < 0) {
+							throw new IOException(
+									"Unexpected end of the file content");
+						}
+
+						outputStream.write(buffer.array(), 0, read);
+						position += read;
+					}
+				}
+			} finally {
+				fileChannel.close();
+			}
+		} else {
+			InputStream inputStream = getWrappedRepresentation().getStream();
+
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long position = 0;
+
+				for (Range range : getRanges()) {
+					if (isMultipart()) {
+						outputStream.write(getPartHead(range));
+					}
+
+					// Skip the bytes preceding the range
+					while (position < range.getIndex()) {
+						long skipped = inputStream.skip(range.getIndex()
+								- position);
+
+						if (skipped <= 0) {
+							if (inputStream.read() == -1) {
+								throw new IOException(
+										"Unexpected end of the content");
+							}
+
+							skipped = 1;
+						}
+
+						position += skipped;
+					}
+
+					long end = range.getIndex() + range.getSize();
+					while (position < end) {
+						int read = inputStream.read(buffer, 0, (int) Math.min(
+								BUFFER_SIZE, end - position));
+
+						if (read < 0) {
+							throw new IOException(
+									"Unexpected end of the content");
+						}
+
+						outputStream.write(buffer, 0, read);
+						position += read;
+					}
+				}
+			} finally {
+				inputStream.close();
+			}
+		}
+
+		if (isMultipart()) {
+			outputStream.write(getPartsEnd());
+		}
+	}
+
+	/**
+	 * Writes the content of the ranges to a byte channel. The content of file
+	 * representations is transferred with the file channel transferTo method.
+	 * 
+	 * @param writableChannel
+	 *            A writable byte channel.
+	 */
+	@Override
+	public void write(WritableByteChannel writableChannel) throws IOException {
+		if (getWrappedRepresentation() instanceof FileRepresentation) {
+			FileChannel fileChannel = ((FileRepresentation) getWrappedRepresentation())
+					.getChannel();
+
+			try {
+				for (Range range : getRanges()) {
+					if (isMultipart()) {
+						write(ByteBuffer.wrap(getPartHead(range)),
+								writableChannel);
+					}
+
+					long position = range.getIndex();
+					long count = range.getSize();
+					while (count > 0) {
+						long written = fileChannel.transferTo(position, count,
+								writableChannel);
+
+						if ((written == 0) && (position >= fileChannel.size())) {
+							// The file was truncated, don't loop forever
+							throw new IOException(
+									"Unexpected end of the file content");
+						}
+
+						position += written;
+						count -= written;
+					}
+				}
+			} finally {
+				fileChannel.close();
+			}
+
+			if (isMultipart()) {
+				write(ByteBuffer.wrap(getPartsEnd()), writableChannel);
+			}
+		} else {
+			OutputStream outputStream = ByteUtils.getStream(writableChannel);
+			write(outputStream);
+			outputStream.flush();
+		}
+	}
+
+	/**
+	 * Writes a buffer completely to a channel in blocking mode.
+	 * 
+	 * @param buffer
+	 *            The buffer to write.
+	 * @param writableChannel
+	 *            The writable channel.
+	 * @throws IOException
+	 */
+	private static void write(ByteBuffer buffer,
+			WritableByteChannel writableChannel) throws IOException {
+		while (buffer.hasRemaining()) {
+			writableChannel.write(buffer);
+		}
+	}
+
+}
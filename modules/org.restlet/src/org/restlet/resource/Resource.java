@@ -195,6 +195,38 @@ public class Resource {
 		getResponse().setStatus(Status.SERVER_ERROR_INTERNAL);
 	}
 
+	/**
+	 * Checks the request conditions against the validators of a variant,
+	 * before its representation is built. Sets the response status if the
+	 * conditions aren't met.
+	 * 
+	 * @param variant
+	 *            The variant that would be returned.
+	 * @return True if the response status was set, false if the
+	 *         representation must be built.
+	 * @see #getValidators(Variant)
+	 */
+	private boolean checkConditions(Variant variant) {
+		boolean result = false;
+
+		if (getRequest().getConditions().hasSome()) {
+			Variant validators = getValidators(variant);
+
+			if (validators != null) {
+				Status status = getRequest().getConditions().getStatus(
+						getRequest().getMethod(), validators);
+
+				if (status != null) {
+					getResponse().setStatus(status);
+					getResponse().setEntity(null);
+					result = true;
+				}
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * Generates a reference based on a template URI. Note that you can leverage
 	 * all the variables defined in the Template class as they will be resolved
@@ -314,6 +346,36 @@ public class Resource {
 		return this.response;
 	}
 
+	/**
+	 * Returns the validators of a variant, that is its entity tag and its date
+	 * of modification, without building its full representation. They are
+	 * used by the handleGet() method to answer conditional requests, with a
+	 * "304 Not modified" status for example, before calling
+	 * {@link #getRepresentation(Variant)}.<br/><br/>
+	 * 
+	 * The returned variant must have the same tag and modification date as the
+	 * full representation would have. The default implementation returns the
+	 * variant itself if it has a tag or a modification date, and null
+	 * otherwise, in which case the conditions are checked against the full
+	 * representation. Override this method when the validators are cheap to
+	 * compute, for example from a file date or a database version column.
+	 * 
+	 * @param variant
+	 *            The variant whose validators must be returned.
+	 * @return The variant validators or null if they aren't available.
+	 */
+	public Variant getValidators(Variant variant) {
+		Variant result = null;
+
+		if ((variant != null)
+				&& ((variant.getTag() != null) || (variant
+						.getModificationDate() != null))) {
+			result = variant;
+		}
+
+		return result;
+	}
+
 	/**
 	 * Returns the modifiable list of variants. A variant can be a purely
 	 * descriptive representation, with no actual content that can be served. It
@@ -387,12 +449,18 @@ public class Resource {
 	 * handled call and can be turned off using the "negotiateContent" property.
 	 * If it is disabled and multiple variants are available for the target
 	 * resource, then a 300 (Multiple Choices) status will be returned with the
-	 * list of variants URI if available.
+	 * list of variants URI if available. When byte ranges are requested and
+	 * the size of the entity is known, a 206 (Partial Content) status is
+	 * returned with a {@link RangeRepresentation} of the entity, unless the
+	 * "if-range" condition fails.
 	 */
 	public void handleGet() {
 		// The variant that may need to meet the request conditions
 		Variant selectedVariant = null;
 
+		// Indicates if the conditions were met using the variant validators
+		boolean conditionsChecked = false;
+
 		List<Variant> variants = getVariants();
 		if ((variants == null) || (variants.isEmpty())) {
 			// Resource not found
@@ -420,15 +488,20 @@ public class Resource {
 				}
 
 				getResponse().setEntity(refs.getTextRepresentation());
-			} else {
+			} else if (!checkConditions(preferredVariant)) {
 				getResponse().setEntity(getRepresentation(preferredVariant));
-				selectedVariant = preferredVariant;
+			} else {
+				conditionsChecked = true;
 			}
 			selectedVariant = getResponse().getEntity();
 		} else {
 			if (variants.size() == 1) {
-				getResponse().setEntity(getRepresentation(variants.get(0)));
-				selectedVariant = getResponse().getEntity();
+				if (!checkConditions(variants.get(0))) {
+					getResponse().setEntity(getRepresentation(variants.get(0)));
+					selectedVariant = getResponse().getEntity();
+				} else {
+					conditionsChecked = true;
+				}
 			} else {
 				ReferenceList variantRefs = new ReferenceList();
 
@@ -457,7 +530,7 @@ public class Resource {
 		// The given representation (even if null) must meet the request
 		// conditions
 		// (if any).
-		if (getRequest().getConditions().hasSome()) {
+		if (!conditionsChecked && getRequest().getConditions().hasSome()) {
 			Status status = getRequest().getConditions().getStatus(
 					getRequest().getMethod(), selectedVariant);
 			if (status != null) {
@@ -465,6 +538,31 @@ public class Resource {
 				getResponse().setEntity(null);
 			}
 		}
+
+		// Only send the byte ranges requested, if any
+		if (Method.GET.equals(getRequest().getMethod())
+				&& Status.SUCCESS_OK.equals(getResponse().getStatus())
+				&& (getResponse().getEntity() != null)
+				&& !getRequest().getRanges().isEmpty()) {
+			Representation entity = getResponse().getEntity();
+
+			if ((entity.getSize() != Representation.UNKNOWN_SIZE)
+					&& Status.SUCCESS_PARTIAL_CONTENT.equals(getRequest()
+							.getConditions().getRangeStatus(entity))) {
+				RangeRepresentation partial = new RangeRepresentation(entity,
+						getRequest().getRanges());
+
+				if (partial.getRanges().isEmpty()) {
+					// The empty entity still gives the complete length
+					getResponse().setStatus(
+							Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE);
+				} else {
+					getResponse().setStatus(Status.SUCCESS_PARTIAL_CONTENT);
+				}
+
+				getResponse().setEntity(partial);
+			}
+		}
 	}
 
 	/**
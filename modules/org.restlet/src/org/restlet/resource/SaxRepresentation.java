@@ -32,19 +32,15 @@ import java.io.OutputStream;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
 
 import org.restlet.data.MediaType;
 import org.restlet.util.XmlWriter;
@@ -126,8 +122,12 @@ public class SaxRepresentation extends XmlRepresentation {
                 }
 
                 Result result = new SAXResult(contentHandler);
-                TransformerFactory.newInstance().newTransformer().transform(
-                        source, result);
+                Transformer transformer = XmlFactories.acquireTransformer();
+                try {
+                    transformer.transform(source, result);
+                } finally {
+                    XmlFactories.release(transformer);
+                }
             } catch (TransformerConfigurationException tce) {
                 throw new IOException(
                         "Couldn't parse the source representation: "
@@ -171,37 +171,25 @@ public class SaxRepresentation extends XmlRepresentation {
         // Do nothing by default.
     }
 
-    /**
-     * Returns a document builder properly configured.
-     * 
-     * @return A document builder properly configured.
-     */
-    private DocumentBuilder getDocumentBuilder() throws IOException {
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(isNamespaceAware());
-            dbf.setValidating(false);
-            return dbf.newDocumentBuilder();
-        } catch (ParserConfigurationException pce) {
-            throw new IOException("Couldn't create the empty document: "
-                    + pce.getMessage());
-        }
-    }
-
     @Override
     public Object evaluate(String expression, QName returnType)
             throws Exception {
         Object result = null;
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        xpath.setNamespaceContext(this);
 
         if (this.xmlDocument == null) {
-            this.xmlDocument = getDocumentBuilder().parse(
-                    this.xmlRepresentation.getStream());
+            DocumentBuilder builder = XmlFactories
+                    .acquireDocumentBuilder(isNamespaceAware());
+            try {
+                this.xmlDocument = builder.parse(this.xmlRepresentation
+                        .getStream());
+            } finally {
+                XmlFactories.release(builder, isNamespaceAware());
+            }
         }
 
         if (this.xmlDocument != null) {
-            result = xpath.evaluate(expression, this.xmlDocument, returnType);
+            result = getXPathExpression(expression).evaluate(
+                    this.xmlDocument, returnType);
         } else {
             throw new Exception(
                     "Unable to obtain a DOM document for the SAX representation. "
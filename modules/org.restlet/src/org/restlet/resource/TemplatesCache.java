@@ -0,0 +1,196 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.resource;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.xml.transform.Templates;
+
+import org.restlet.Context;
+
+/**
+ * Cache of compiled XSLT transform sheets shared by the transform
+ * representations. Compiled templates are thread-safe and cheaply create new
+ * transformers, so a transform sheet only needs to be parsed and compiled
+ * again when it is modified.<br/> <br/> Transform sheets with an identifier
+ * and a modification date are cached by identifier, other transform sheets are
+ * cached by instance, as long as they are referenced by the application. The
+ * contexts used to resolve the imported transform sheets are weakly referenced
+ * so that the cache doesn't retain the stopped applications.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+final class TemplatesCache {
+    /**
+     * Compiled transform sheet with the state it was compiled from.
+     */
+    private static final class CachedTemplates {
+        /**
+         * The context used to resolve the imported transform sheets, or null.
+         */
+        private final WeakReference<Context> contextRef;
+
+        /** The modification date of the transform sheet. */
+        private final Date modificationDate;
+
+        /** The compiled transform sheet. */
+        private final Templates templates;
+
+        /**
+         * Constructor.
+         * 
+         * @param context
+         *                The context used to resolve the imported sheets.
+         * @param modificationDate
+         *                The modification date of the transform sheet.
+         * @param templates
+         *                The compiled transform sheet.
+         */
+        private CachedTemplates(Context context, Date modificationDate,
+                Templates templates) {
+            this.contextRef = (context == null) ? null
+                    : new WeakReference<Context>(context);
+            this.modificationDate = modificationDate;
+            this.templates = templates;
+        }
+
+        /**
+         * Indicates if the entry can be used for a transform sheet.
+         * 
+         * @param context
+         *                The context used to resolve the imported sheets.
+         * @param modificationDate
+         *                The modification date of the transform sheet.
+         * @return True if the entry can be used.
+         */
+        private boolean matches(Context context, Date modificationDate) {
+            return ((this.contextRef == null) ? context == null
+                    : (context != null) && (this.contextRef.get() == context))
+                    && ((this.modificationDate == null) ? modificationDate == null
+                            : this.modificationDate.equals(modificationDate));
+        }
+    }
+
+    /** The maximum number of transform sheets cached by identifier. */
+    private static final int MAX_IDENTIFIED_ENTRIES = 64;
+
+    /** The transform sheets cached by identifier. */
+    private static final Map<String, CachedTemplates> IDENTIFIED_ENTRIES = new LinkedHashMap<String, CachedTemplates>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<String, CachedTemplates> eldest) {
+            return size() > MAX_IDENTIFIED_ENTRIES;
+        }
+    };
+
+    /** The transform sheets cached by instance. */
+    private static final Map<Representation, CachedTemplates> INSTANCE_ENTRIES = new WeakHashMap<Representation, CachedTemplates>();
+
+    /**
+     * Returns the compiled version of a transform sheet if available.
+     * 
+     * @param transformSheet
+     *                The transform sheet.
+     * @param context
+     *                The context used to resolve the imported sheets.
+     * @return The compiled transform sheet or null.
+     */
+    public static Templates get(Representation transformSheet, Context context) {
+        CachedTemplates entry;
+        String identifier = getIdentifier(transformSheet);
+
+        if (identifier != null) {
+            synchronized (IDENTIFIED_ENTRIES) {
+                entry = IDENTIFIED_ENTRIES.get(identifier);
+            }
+        } else {
+            synchronized (INSTANCE_ENTRIES) {
+                entry = INSTANCE_ENTRIES.get(transformSheet);
+            }
+        }
+
+        return ((entry != null) && entry.matches(context, transformSheet
+                .getModificationDate())) ? entry.templates : null;
+    }
+
+    /**
+     * Returns the identifier used as a cache key for a transform sheet, or null
+     * if the transform sheet should be cached by instance.
+     * 
+     * @param transformSheet
+     *                The transform sheet.
+     * @return The identifier of the transform sheet or null.
+     */
+    private static String getIdentifier(Representation transformSheet) {
+        return ((transformSheet.getIdentifier() != null) && (transformSheet
+                .getModificationDate() != null)) ? transformSheet
+                .getIdentifier().getTargetRef().toString() : null;
+    }
+
+    /**
+     * Caches the compiled version of a transform sheet.
+     * 
+     * @param transformSheet
+     *                The transform sheet.
+     * @param context
+     *                The context used to resolve the imported sheets.
+     * @param templates
+     *                The compiled transform sheet.
+     */
+    public static void put(Representation transformSheet, Context context,
+            Templates templates) {
+        CachedTemplates entry = new CachedTemplates(context, transformSheet
+                .getModificationDate(), templates);
+        String identifier = getIdentifier(transformSheet);
+
+        if (identifier != null) {
+            synchronized (IDENTIFIED_ENTRIES) {
+                IDENTIFIED_ENTRIES.put(identifier, entry);
+            }
+        } else {
+            synchronized (INSTANCE_ENTRIES) {
+                INSTANCE_ENTRIES.put(transformSheet, entry);
+            }
+        }
+    }
+
+    /**
+     * Private constructor to ensure that the class acts as a true utility
+     * class i.e. it isn't instantiable and extensible.
+     */
+    private TemplatesCache() {
+    }
+}
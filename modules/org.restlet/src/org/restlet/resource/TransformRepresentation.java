@@ -2,9 +2,11 @@ package org.restlet.resource;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.ref.WeakReference;
 import java.util.logging.Level;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -27,12 +29,18 @@ import org.restlet.data.Response;
  * This representation should be viewed as a wrapper representation that applies
  * a transform sheet on a source representation when it is read or written out.
  * Therefore, it isn't intended to be reused on different sources. For this use
- * case, you should instead use the {@link org.restlet.Transformer} filter.
+ * case, you should instead use the {@link org.restlet.Transformer} filter.<br/>
+ * <br/> The compiled transform sheets are cached and shared by all the
+ * transform representations, until the modification date of the transform
+ * sheet changes.
  * 
  * @author Jerome Louvel (contact@noelios.com) <a
  *         href="http://www.noelios.com/">Noelios Technologies</a>
  */
 public class TransformRepresentation extends OutputRepresentation {
+    /** The parent context. */
+    private Context context;
+
     /** The source representation to transform. */
     private Representation source;
 
@@ -58,6 +66,7 @@ public class TransformRepresentation extends OutputRepresentation {
     public TransformRepresentation(Context context, Representation source,
             Representation transformSheet) {
         super(null);
+        this.context = context;
         this.source = source;
         this.transformSheet = transformSheet;
         this.uriResolver = (context == null) ? null : new ContextResolver(
@@ -74,12 +83,16 @@ public class TransformRepresentation extends OutputRepresentation {
     }
 
     /**
-     * Returns the transformer to be used and reused.
+     * Returns the compiled XSLT transform sheet. It is shared with the other
+     * transform representations using the same transform sheet.
      * 
-     * @return The transformer to be used and reused.
+     * @return The compiled XSLT transform sheet.
      */
-    public Transformer getTransformer() throws IOException {
-        if (this.transformer == null) {
+    public Templates getTemplates() throws IOException {
+        Templates result = TemplatesCache.get(getTransformSheet(),
+                this.context);
+
+        if (result == null) {
             try {
                 // Prepare the XSLT transformer documents
                 StreamSource transformSource = new StreamSource(
@@ -90,18 +103,19 @@ public class TransformRepresentation extends OutputRepresentation {
                             .getIdentifier().getTargetRef().toString());
                 }
 
-                // Create the transformer factory
-                TransformerFactory transformerFactory = TransformerFactory
-                        .newInstance();
+                // Get the transformer factory of the current thread
+                TransformerFactory transformerFactory = XmlFactories
+                        .getTransformerFactory();
 
-                // Set the URI resolver
-                if (getURIResolver() != null) {
-                    transformerFactory.setURIResolver(getURIResolver());
+                // Compile the transform sheet, using the URI resolver
+                transformerFactory.setURIResolver(getURIResolver());
+                try {
+                    result = transformerFactory.newTemplates(transformSource);
+                } finally {
+                    transformerFactory.setURIResolver(null);
                 }
 
-                // Create a new transformer
-                this.transformer = transformerFactory
-                        .newTransformer(transformSource);
+                TemplatesCache.put(getTransformSheet(), this.context, result);
             } catch (TransformerConfigurationException tce) {
                 throw new IOException("Transformer configuration exception. "
                         + tce.getMessage());
@@ -112,6 +126,30 @@ public class TransformRepresentation extends OutputRepresentation {
             }
         }
 
+        return result;
+    }
+
+    /**
+     * Returns the transformer to be used and reused.
+     * 
+     * @return The transformer to be used and reused.
+     */
+    public Transformer getTransformer() throws IOException {
+        if (this.transformer == null) {
+            try {
+                // Create a new transformer from the compiled transform sheet
+                this.transformer = getTemplates().newTransformer();
+
+                // Set the URI resolver for the document() function
+                if (getURIResolver() != null) {
+                    this.transformer.setURIResolver(getURIResolver());
+                }
+            } catch (TransformerConfigurationException tce) {
+                throw new IOException("Transformer configuration exception. "
+                        + tce.getMessage());
+            }
+        }
+
         return this.transformer;
     }
 
@@ -164,13 +202,15 @@ public class TransformRepresentation extends OutputRepresentation {
     }
 
     /**
-     * URI resolver based on a Restlet Context instance.
+     * URI resolver based on a Restlet Context instance. The context is weakly
+     * referenced as the resolver is kept by the cached compiled transform
+     * sheets.
      * 
      * @author Jerome Louvel (contact@noelios.com)
      */
     private final static class ContextResolver implements URIResolver {
         /** The Restlet context. */
-        private Context context;
+        private final WeakReference<Context> contextRef;
 
         /**
          * Constructor.
@@ -179,7 +219,7 @@ public class TransformRepresentation extends OutputRepresentation {
          *                The Restlet context.
          */
         public ContextResolver(Context context) {
-            this.context = context;
+            this.contextRef = new WeakReference<Context>(context);
         }
 
         /**
@@ -191,8 +231,9 @@ public class TransformRepresentation extends OutputRepresentation {
         public Source resolve(String href, String base)
                 throws TransformerException {
             Source result = null;
+            Context context = this.contextRef.get();
 
-            if (this.context != null) {
+            if (context != null) {
                 Reference targetRef = null;
 
                 if ((base != null) && !base.equals("")) {
@@ -205,7 +246,7 @@ public class TransformRepresentation extends OutputRepresentation {
                 }
 
                 final String targetUri = targetRef.getTargetRef().toString();
-                Response response = this.context.getDispatcher().get(targetUri);
+                Response response = context.getDispatcher().get(targetUri);
                 if (response.getStatus().isSuccess()
                         && response.isEntityAvailable()) {
                     try {
@@ -214,7 +255,7 @@ public class TransformRepresentation extends OutputRepresentation {
                         result.setSystemId(targetUri);
 
                     } catch (IOException e) {
-                        this.context.getLogger().log(Level.WARNING,
+                        context.getLogger().log(Level.WARNING,
                                 "I/O error while getting the response stream",
                                 e);
                     }
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.resource;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * Per-thread pool of the XML factories, parsers, transformers and compiled
+ * XPath expressions used by the XML representations. Looking up a JAXP factory
+ * or creating a parser is costly, and those objects aren't thread-safe, so each
+ * thread keeps its own instances. Parsers and transformers are acquired and
+ * released so that a reentrant use on the same thread gets a distinct
+ * instance.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+final class XmlFactories {
+    /**
+     * Immutable namespace context used by the compiled XPath expressions.
+     */
+    private static final class Namespaces implements NamespaceContext {
+        /** The map of namespace URIs by prefix. */
+        private final Map<String, String> namespaces;
+
+        /**
+         * Constructor.
+         * 
+         * @param namespaces
+         *                The map of namespace URIs by prefix to copy.
+         */
+        private Namespaces(Map<String, String> namespaces) {
+            this.namespaces = (namespaces == null) ? Collections
+                    .<String, String> emptyMap() : new HashMap<String, String>(
+                    namespaces);
+        }
+
+        public String getNamespaceURI(String prefix) {
+            return this.namespaces.get(prefix);
+        }
+
+        public String getPrefix(String namespaceURI) {
+            for (Entry<String, String> entry : this.namespaces.entrySet()) {
+                if (entry.getValue().equals(namespaceURI))
+                    return entry.getKey();
+            }
+
+            return null;
+        }
+
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            String prefix = getPrefix(namespaceURI);
+            return (prefix == null) ? Collections.<String> emptyList()
+                    .iterator() : Collections.singletonList(prefix).iterator();
+        }
+    }
+
+    /**
+     * The factories and pooled instances of a thread.
+     */
+    private static final class ThreadFactories {
+        /** The document builders, by namespace awareness. */
+        private final DocumentBuilder[] documentBuilders = new DocumentBuilder[2];
+
+        /** The document builder factories, by namespace awareness. */
+        private final DocumentBuilderFactory[] documentBuilderFactories = new DocumentBuilderFactory[2];
+
+        /** The compiled XPath expressions, least recently used first. */
+        private final Map<String, XPathExpression> expressions = new LinkedHashMap<String, XPathExpression>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Entry<String, XPathExpression> eldest) {
+                return size() > MAX_EXPRESSIONS;
+            }
+        };
+
+        /** The identity transformer. */
+        private Transformer transformer;
+
+        /** The transformer factory. */
+        private TransformerFactory transformerFactory;
+
+        /** The XPath compiler. */
+        private XPath xpath;
+    }
+
+    /** The maximum number of compiled XPath expressions kept by thread. */
+    private static final int MAX_EXPRESSIONS = 128;
+
+    /** The factories of each thread. */
+    private static final ThreadLocal<ThreadFactories> FACTORIES = new ThreadLocal<ThreadFactories>() {
+        @Override
+        protected ThreadFactories initialValue() {
+            return new ThreadFactories();
+        }
+    };
+
+    /**
+     * Acquires a non-validating document builder. It must be released after
+     * use.
+     * 
+     * @param namespaceAware
+     *                Indicates if the builder must be namespace aware.
+     * @return A document builder properly configured.
+     * @throws IOException
+     */
+    public static DocumentBuilder acquireDocumentBuilder(boolean namespaceAware)
+            throws IOException {
+        ThreadFactories factories = FACTORIES.get();
+        int index = namespaceAware ? 1 : 0;
+        DocumentBuilder result = factories.documentBuilders[index];
+
+        if (result != null) {
+            factories.documentBuilders[index] = null;
+        } else {
+            try {
+                DocumentBuilderFactory dbf = factories.documentBuilderFactories[index];
+
+                if (dbf == null) {
+                    dbf = DocumentBuilderFactory.newInstance();
+                    dbf.setNamespaceAware(namespaceAware);
+                    dbf.setValidating(false);
+                    factories.documentBuilderFactories[index] = dbf;
+                }
+
+                result = dbf.newDocumentBuilder();
+            } catch (ParserConfigurationException pce) {
+                throw new IOException("Couldn't create the document builder: "
+                        + pce.getMessage());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Acquires an identity transformer. It must be released after use.
+     * 
+     * @return An identity transformer.
+     * @throws TransformerConfigurationException
+     */
+    public static Transformer acquireTransformer()
+            throws TransformerConfigurationException {
+        ThreadFactories factories = FACTORIES.get();
+        Transformer result = factories.transformer;
+
+        if (result != null) {
+            factories.transformer = null;
+        } else {
+            result = getTransformerFactory().newTransformer();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the transformer factory of the current thread.
+     * 
+     * @return The transformer factory of the current thread.
+     */
+    public static TransformerFactory getTransformerFactory() {
+        ThreadFactories factories = FACTORIES.get();
+
+        if (factories.transformerFactory == null) {
+            factories.transformerFactory = TransformerFactory.newInstance();
+        }
+
+        return factories.transformerFactory;
+    }
+
+    /**
+     * Compiles an XPath expression against a namespace context, without
+     * caching it. The result must only be used by the current thread.
+     * 
+     * @param expression
+     *                The XPath expression to compile.
+     * @param namespaceContext
+     *                The namespace context resolving the prefixes.
+     * @return The compiled XPath expression.
+     * @throws XPathExpressionException
+     */
+    public static XPathExpression compileXPathExpression(String expression,
+            NamespaceContext namespaceContext) throws XPathExpressionException {
+        XPath xpath = getXPath();
+        xpath.setNamespaceContext(namespaceContext);
+        return xpath.compile(expression);
+    }
+
+    /**
+     * Returns the XPath compiler of the current thread.
+     * 
+     * @return The XPath compiler of the current thread.
+     */
+    private static XPath getXPath() {
+        ThreadFactories factories = FACTORIES.get();
+
+        if (factories.xpath == null) {
+            factories.xpath = XPathFactory.newInstance().newXPath();
+        }
+
+        return factories.xpath;
+    }
+
+    /**
+     * Returns a compiled XPath expression. The result must only be used by the
+     * current thread.
+     * 
+     * @param expression
+     *                The XPath expression to compile.
+     * @param namespaces
+     *                The map of namespace URIs by prefix, or null.
+     * @param namespacesKey
+     *                The key identifying the content of the namespaces map,
+     *                or null if there is no namespace.
+     * @return The compiled XPath expression.
+     * @throws XPathExpressionException
+     */
+    public static XPathExpression getXPathExpression(String expression,
+            Map<String, String> namespaces, String namespacesKey)
+            throws XPathExpressionException {
+        ThreadFactories factories = FACTORIES.get();
+        String key = (namespacesKey == null) ? expression : expression
+                + '\u0000' + namespacesKey;
+        XPathExpression result = factories.expressions.get(key);
+
+        if (result == null) {
+            result = compileXPathExpression(expression, new Namespaces(
+                    namespaces));
+            factories.expressions.put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Releases a document builder for later reuse by the current thread.
+     * 
+     * @param documentBuilder
+     *                The document builder to release.
+     * @param namespaceAware
+     *                Indicates if the builder is namespace aware.
+     */
+    public static void release(DocumentBuilder documentBuilder,
+            boolean namespaceAware) {
+        documentBuilder.reset();
+        FACTORIES.get().documentBuilders[namespaceAware ? 1 : 0] = documentBuilder;
+    }
+
+    /**
+     * Releases an identity transformer for later reuse by the current thread.
+     * 
+     * @param transformer
+     *                The transformer to release.
+     */
+    public static void release(Transformer transformer) {
+        transformer.reset();
+        FACTORIES.get().transformer = transformer;
+    }
+
+    /**
+     * Private constructor to ensure that the class acts as a true utility
+     * class i.e. it isn't instantiable and extensible.
+     */
+    private XmlFactories() {
+    }
+}
@@ -33,11 +33,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.Map.Entry;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 
 import org.restlet.data.MediaType;
 import org.restlet.util.NodeSet;
@@ -55,9 +58,21 @@ public abstract class XmlRepresentation extends OutputRepresentation implements
 	/** Internal map of namespaces. */
 	private Map<String, String> namespaces;
 
+	/**
+	 * Key identifying the content of the namespaces map when compiling XPath
+	 * expressions, or null if it must be computed again.
+	 */
+	private String namespacesKey;
+
 	/** Indicates if processing is namespace aware. */
 	private boolean namespaceAware;
 
+	/**
+	 * Indicates if a subclass overrides the namespace context methods, or null
+	 * if it must be checked.
+	 */
+	private Boolean namespaceContextOverridden;
+
 	/**
 	 * Constructor.
 	 * 
@@ -122,7 +137,7 @@ public abstract class XmlRepresentation extends OutputRepresentation implements
 	 * {@inheritDoc javax.xml.namespace.NamespaceContext#getNamespaceURI(java.lang.String}
 	 */
 	public String getNamespaceURI(String prefix) {
-		return this.namespaces.get(prefix);
+		return (this.namespaces == null) ? null : this.namespaces.get(prefix);
 	}
 
 	/**
@@ -185,6 +200,34 @@ public abstract class XmlRepresentation extends OutputRepresentation implements
 		return Collections.unmodifiableList(result).iterator();
 	}
 
+	/**
+	 * Returns a compiled XPath expression, using the namespace mappings of this
+	 * representation. The compiled expressions are cached and must only be
+	 * used by the current thread. When a subclass overrides the namespace
+	 * context methods, the expressions are compiled against this
+	 * representation and aren't cached.
+	 * 
+	 * @param expression
+	 *            The XPath expression to compile.
+	 * @return The compiled XPath expression.
+	 * @throws XPathExpressionException
+	 */
+	XPathExpression getXPathExpression(String expression)
+			throws XPathExpressionException {
+		if (isNamespaceContextOverridden()) {
+			return XmlFactories.compileXPathExpression(expression, this);
+		}
+
+		if ((this.namespacesKey == null) && (this.namespaces != null)
+				&& !this.namespaces.isEmpty()) {
+			this.namespacesKey = new TreeMap<String, String>(this.namespaces)
+					.toString();
+		}
+
+		return XmlFactories.getXPathExpression(expression, this.namespaces,
+				this.namespacesKey);
+	}
+
 	/**
 	 * Evaluates an XPath expression as a string.
 	 * 
@@ -219,6 +262,34 @@ public abstract class XmlRepresentation extends OutputRepresentation implements
 		return this.namespaceAware;
 	}
 
+	/**
+	 * Indicates if a subclass overrides the namespace context methods, in
+	 * which case the namespace map doesn't describe the prefixes resolved.
+	 * 
+	 * @return True if a namespace context method is overridden.
+	 */
+	private boolean isNamespaceContextOverridden() {
+		if (this.namespaceContextOverridden == null) {
+			boolean overridden;
+
+			try {
+				Class<?> type = getClass();
+				overridden = (type.getMethod("getNamespaceURI", String.class)
+						.getDeclaringClass() != XmlRepresentation.class)
+						|| (type.getMethod("getPrefix", String.class)
+								.getDeclaringClass() != XmlRepresentation.class)
+						|| (type.getMethod("getPrefixes", String.class)
+								.getDeclaringClass() != XmlRepresentation.class);
+			} catch (NoSuchMethodException nsme) {
+				overridden = true;
+			}
+
+			this.namespaceContextOverridden = Boolean.valueOf(overridden);
+		}
+
+		return this.namespaceContextOverridden.booleanValue();
+	}
+
 	/**
 	 * Puts a new mapping between a prefix and a namespace URI.
 	 * 
@@ -229,6 +300,7 @@ public abstract class XmlRepresentation extends OutputRepresentation implements
 	 */
 	public void putNamespace(String prefix, String namespaceURI) {
 		getNamespaces().put(prefix, namespaceURI);
+		this.namespacesKey = null;
 	}
 
 	/**
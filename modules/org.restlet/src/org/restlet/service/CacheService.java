@@ -0,0 +1,176 @@
+/**
+ * Copyright 2005-2008 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of the following open
+ * source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.gnu.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.sun.com/cddl/cddl.html
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royaltee free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine/.
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.service;
+
+import java.io.File;
+
+/**
+ * Service caching the response entities of an application. When enabled,
+ * successful responses to GET requests are kept in memory, bounded by a
+ * maximum number of bytes, and served again while fresh or after a
+ * successful revalidation with the application. The least recently used
+ * entries can optionally spill to a disk directory before being discarded.
+ * 
+ * @author Jerome Louvel (contact@noelios.com)
+ */
+public class CacheService {
+    /** Default maximum number of bytes cached on disk. */
+    public static final long DEFAULT_MAX_DISK_SIZE = 256L * 1024 * 1024;
+
+    /** Default maximum size of a cached entity. */
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 1024L * 1024;
+
+    /** Default maximum number of bytes cached in memory. */
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 16L * 1024 * 1024;
+
+    /** Indicates if the service has been enabled. */
+    private boolean enabled;
+
+    /** The maximum number of bytes cached on disk. */
+    private long maxDiskSize;
+
+    /** The maximum size of a cached entity. */
+    private long maxEntrySize;
+
+    /** The maximum number of bytes cached in memory. */
+    private long maxMemorySize;
+
+    /** The directory receiving the entries evicted from memory. */
+    private File spillDirectory;
+
+    /**
+     * Constructor.
+     * 
+     * @param enabled
+     *            True if the service has been enabled.
+     */
+    public CacheService(boolean enabled) {
+        this.enabled = enabled;
+        this.maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+        this.maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+        this.maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+        this.spillDirectory = null;
+    }
+
+    /**
+     * Returns the maximum number of bytes cached on disk.
+     * 
+     * @return The maximum number of bytes cached on disk.
+     */
+    public long getMaxDiskSize() {
+        return this.maxDiskSize;
+    }
+
+    /**
+     * Returns the maximum size of a cached entity. Larger entities are never
+     * cached.
+     * 
+     * @return The maximum size of a cached entity.
+     */
+    public long getMaxEntrySize() {
+        return this.maxEntrySize;
+    }
+
+    /**
+     * Returns the maximum number of bytes cached in memory.
+     * 
+     * @return The maximum number of bytes cached in memory.
+     */
+    public long getMaxMemorySize() {
+        return this.maxMemorySize;
+    }
+
+    /**
+     * Returns the directory receiving the entries evicted from memory.
+     * 
+     * @return The spill directory or null if evicted entries are discarded.
+     */
+    public File getSpillDirectory() {
+        return this.spillDirectory;
+    }
+
+    /**
+     * Indicates if the service should be enabled.
+     * 
+     * @return True if the service should be enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Indicates if the service should be enabled.
+     * 
+     * @param enabled
+     *            True if the service should be enabled.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the maximum number of bytes cached on disk.
+     * 
+     * @param maxDiskSize
+     *            The maximum number of bytes cached on disk.
+     */
+    public void setMaxDiskSize(long maxDiskSize) {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * Sets the maximum size of a cached entity.
+     * 
+     * @param maxEntrySize
+     *            The maximum size of a cached entity.
+     */
+    public void setMaxEntrySize(long maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Sets the maximum number of bytes cached in memory.
+     * 
+     * @param maxMemorySize
+     *            The maximum number of bytes cached in memory.
+     */
+    public void setMaxMemorySize(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * Sets the directory receiving the entries evicted from memory.
+     * 
+     * @param spillDirectory
+     *            The spill directory or null to discard evicted entries.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+}
@@ -41,9 +41,8 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.WritableByteChannel;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.restlet.data.CharacterSet;
 import org.restlet.resource.Representation;
@@ -54,6 +53,25 @@ import org.restlet.resource.Representation;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public final class ByteUtils {
+    /**
+     * Executes a task writing a representation into a pipe, using the threads
+     * shared by the engine if available.
+     * 
+     * @param writer
+     *            The writer task.
+     */
+    private static void execute(Runnable writer) {
+        Engine engine = Engine.getInstance();
+
+        if (engine != null) {
+            engine.executePump(writer);
+        } else {
+            Thread thread = new Thread(writer);
+            thread.setDaemon(false);
+            thread.start();
+        }
+    }
+
     /**
      * Returns a readable byte channel based on a given inputstream. If it is
      * supported by a file a read-only instance of FileChannel is returned.
@@ -90,24 +108,26 @@ public final class ByteUtils {
             final Representation representation) throws IOException {
         final Pipe pipe = Pipe.open();
 
-        // Creates a thread that will handle the task of continuously
+        // Creates a task that will handle the job of continuously
         // writing the representation into the input side of the pipe
-        Thread writer = new Thread() {
-        	@Override
+        Runnable writer = new Runnable() {
             public void run() {
                 try {
                     WritableByteChannel wbc = pipe.sink();
-                    representation.write(wbc);
-                    wbc.close();
+
+                    try {
+                        representation.write(wbc);
+                    } finally {
+                        wbc.close();
+                    }
                 } catch (IOException ioe) {
                     ioe.printStackTrace();
                 }
             }
         };
-        writer.setDaemon(false);
 
-        // Starts the writer thread
-        writer.start();
+        // Starts the writer task
+        execute(writer);
         return pipe.source();
     }
 
@@ -136,25 +156,27 @@ public final class ByteUtils {
         if (representation != null) {
             final PipeStream pipe = new PipeStream();
 
-            // Creates a thread that will handle the task of continuously
+            // Creates a task that will handle the job of continuously
             // writing the representation into the input side of the pipe
-            Thread writer = new Thread() {
-            	@Override
+            Runnable writer = new Runnable() {
                 public void run() {
                     try {
                         OutputStream os = pipe.getOutputStream();
-                        representation.write(os);
-                        os.write(-1);
-                        os.close();
+
+                        try {
+                            representation.write(os);
+                        } finally {
+                            // Signal the end of the content to the reader
+                            os.close();
+                        }
                     } catch (IOException ioe) {
                         ioe.printStackTrace();
                     }
                 }
             };
-        		writer.setDaemon(false);
 
-            // Starts the writer thread
-            writer.start();
+            // Starts the writer task
+            execute(writer);
             return pipe.getInputStream();
         } else {
             return null;
@@ -296,19 +318,47 @@ public final class ByteUtils {
 
     /**
      * Pipe stream that pipes output streams into input streams. Implementation
-     * based on a shared synchronized queue.
+     * based on a byte ring buffer shared by a single writer thread and a single
+     * reader thread. The positions are published with volatile fields, the
+     * threads only park when the buffer is full or empty.
      * 
      * @author Jerome Louvel (contact@noelios.com)
      */
     private final static class PipeStream {
-        private static final long QUEUE_TIMEOUT = 5;
+        /** The size of the ring buffer, as a power of two. */
+        private static final int BUFFER_SIZE = 32 * 1024;
+
+        /** The maximum time to wait for the other side, in nanoseconds. */
+        private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+        /** The ring buffer. */
+        private final byte[] buffer;
+
+        /** The total number of bytes read, only updated by the reader. */
+        private volatile long readCount;
+
+        /** The total number of bytes written, only updated by the writer. */
+        private volatile long writeCount;
 
-        /** The supporting synchronized queue. */
-        private final BlockingQueue<Integer> queue;
+        /** Indicates if the writer closed its side. */
+        private volatile boolean writerClosed;
+
+        /** Indicates if the reader closed its side. */
+        private volatile boolean readerClosed;
+
+        /** The reader thread waiting for bytes, if any. */
+        private volatile Thread waitingReader;
+
+        /** The writer thread waiting for space, if any. */
+        private volatile Thread waitingWriter;
 
         /** Constructor. */
         public PipeStream() {
-            this.queue = new ArrayBlockingQueue<Integer>(1024);
+            this.buffer = new byte[BUFFER_SIZE];
+            this.readCount = 0;
+            this.writeCount = 0;
+            this.writerClosed = false;
+            this.readerClosed = false;
         }
 
         /**
@@ -318,27 +368,64 @@ public final class ByteUtils {
          */
         public InputStream getInputStream() {
             return new InputStream() {
-                private boolean endReached = false;
+                private final byte[] single = new byte[1];
+
+                @Override
+                public int available() throws IOException {
+                    return (int) (writeCount - readCount);
+                }
 
-            	@Override
+                @Override
+                public void close() throws IOException {
+                    readerClosed = true;
+                    wakeUp(waitingWriter);
+                }
+
+                @Override
                 public int read() throws IOException {
-                    try {
-                        if (endReached)
-                            return -1;
-                            
-                        Integer value = queue.poll(QUEUE_TIMEOUT,
-                                TimeUnit.SECONDS);
-                        if (value == null) {
-                            throw new IOException(
-                                    "Timeout while reading from the queue-based input stream");
-                        }
+                    return (read(this.single, 0, 1) == -1) ? -1
+                            : (this.single[0] & 0xff);
+                }
 
-                        endReached = (value.intValue() == -1);
-                        return value;
-                    } catch (InterruptedException ie) {
-                        throw new IOException(
-                                "Interruption occurred while writing in the queue");
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
                     }
+
+                    long read = readCount;
+                    long available = writeCount - read;
+                    long deadline = System.nanoTime() + TIMEOUT;
+
+                    while (available == 0) {
+                        if (writerClosed) {
+                            // Check again as bytes may precede the closing
+                            available = writeCount - read;
+
+                            if (available == 0) {
+                                return -1;
+                            }
+                        } else {
+                            waitingReader = Thread.currentThread();
+
+                            if ((writeCount == read) && !writerClosed) {
+                                await(deadline,
+                                        "Timeout while reading from the pipe");
+                            }
+
+                            waitingReader = null;
+                            available = writeCount - read;
+                        }
+                    }
+
+                    int count = (int) Math.min(len, available);
+                    int index = (int) (read & (BUFFER_SIZE - 1));
+                    int first = Math.min(count, BUFFER_SIZE - index);
+                    System.arraycopy(buffer, index, b, off, first);
+                    System.arraycopy(buffer, 0, b, off + first, count - first);
+                    readCount = read + count;
+                    wakeUp(waitingWriter);
+                    return count;
                 }
             };
         }
@@ -350,21 +437,95 @@ public final class ByteUtils {
          */
         public OutputStream getOutputStream() {
             return new OutputStream() {
-            	@Override
-                public void write(int b) throws IOException {
-                    try {
-                        if (!queue.offer(b, QUEUE_TIMEOUT, TimeUnit.SECONDS)) {
+                private final byte[] single = new byte[1];
+
+                @Override
+                public void close() throws IOException {
+                    writerClosed = true;
+                    wakeUp(waitingReader);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    long deadline = System.nanoTime() + TIMEOUT;
+
+                    while (len > 0) {
+                        if (readerClosed) {
                             throw new IOException(
-                                    "Timeout while writing to the queue-based output stream");
+                                    "The reading side of the pipe was closed");
+                        }
+
+                        long written = writeCount;
+                        long space = BUFFER_SIZE - (written - readCount);
+
+                        if (space == 0) {
+                            waitingWriter = Thread.currentThread();
+
+                            if ((BUFFER_SIZE == writeCount - readCount)
+                                    && !readerClosed) {
+                                await(deadline,
+                                        "Timeout while writing to the pipe");
+                            }
+
+                            waitingWriter = null;
+                        } else {
+                            int count = (int) Math.min(len, space);
+                            int index = (int) (written & (BUFFER_SIZE - 1));
+                            int first = Math.min(count, BUFFER_SIZE - index);
+                            System.arraycopy(b, off, buffer, index, first);
+                            System.arraycopy(b, off + first, buffer, 0, count
+                                    - first);
+                            writeCount = written + count;
+                            wakeUp(waitingReader);
+                            off += count;
+                            len -= count;
+                            deadline = System.nanoTime() + TIMEOUT;
                         }
-                    } catch (InterruptedException ie) {
-                        throw new IOException(
-                                "Interruption occurred while writing in the queue");
                     }
                 }
+
+                @Override
+                public void write(int b) throws IOException {
+                    this.single[0] = (byte) b;
+                    write(this.single, 0, 1);
+                }
             };
         }
 
+        /**
+         * Parks the current thread until it is woken up by the other side.
+         * 
+         * @param deadline
+         *            The time after which the wait fails.
+         * @param message
+         *            The timeout message.
+         * @throws IOException
+         */
+        private void await(long deadline, String message) throws IOException {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                throw new IOException(message);
+            } else if (Thread.interrupted()) {
+                throw new IOException(
+                        "Interruption occurred while waiting for the pipe");
+            }
+
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        /**
+         * Wakes up a thread waiting on the other side of the pipe.
+         * 
+         * @param thread
+         *            The waiting thread or null.
+         */
+        private void wakeUp(Thread thread) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
     }
 
     /**
@@ -32,13 +32,16 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.WeakHashMap;
 
 /**
- * Date manipulation utilities.
+ * Date manipulation utilities. The HTTP date formats (RFC 1123, RFC 1036 and
+ * asctime) are formatted and parsed by hand when possible, falling back to
+ * {@link SimpleDateFormat} instances cached per thread otherwise.
  * 
  * @author Jerome Louvel (contact@noelios.com)
  * @author Piyush Purang (ppurang@gmail.com)
@@ -66,6 +69,66 @@ public final class DateUtils {
     /** Remember the often used GMT time zone. */
     private static final TimeZone TIMEZONE_GMT = TimeZone.getTimeZone("GMT");
 
+    /** Short names of the days of the week, starting on Sunday. */
+    private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu",
+            "Fri", "Sat" };
+
+    /** Full names of the days of the week, starting on Sunday. */
+    private static final String[] DAYS_FULL = { "Sunday", "Monday",
+            "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
+
+    /** Short names of the months. */
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr",
+            "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    /** Number of milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * First year handled by hand, later than the Gregorian calendar cutover
+     * used by {@link SimpleDateFormat}.
+     */
+    private static final int MIN_YEAR = 1583;
+
+    /** Last year handled by hand. */
+    private static final int MAX_YEAR = 9999;
+
+    /** The date formats used by each thread, by pattern. */
+    private static final ThreadLocal<Map<String, SimpleDateFormat>> FORMATS = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+        @Override
+        protected Map<String, SimpleDateFormat> initialValue() {
+            return new HashMap<String, SimpleDateFormat>();
+        }
+    };
+
+    /** The current date formatted in RFC 1123 format, renewed each second. */
+    private static volatile FormattedDate currentDate = new FormattedDate(0L,
+            null);
+
+    /**
+     * Date formatted at a precision of one second.
+     */
+    private static final class FormattedDate {
+        /** The number of seconds since the epoch. */
+        private final long seconds;
+
+        /** The formatted date. */
+        private final String value;
+
+        /**
+         * Constructor.
+         * 
+         * @param seconds
+         *            The number of seconds since the epoch.
+         * @param value
+         *            The formatted date.
+         */
+        private FormattedDate(long seconds, String value) {
+            this.seconds = seconds;
+            this.value = value;
+        }
+    }
+
     /**
      * Compares two date with a precision of one second.
      * 
@@ -126,6 +189,45 @@ public final class DateUtils {
         }
     }
 
+    /**
+     * Appends a number padded with zeros.
+     * 
+     * @param sb
+     *            The target buffer.
+     * @param value
+     *            The positive number to append.
+     * @param digits
+     *            The minimum number of digits.
+     */
+    private static void appendPadded(StringBuilder sb, int value, int digits) {
+        for (int limit = 10; (digits > 1); digits--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
+    }
+
+    /**
+     * Returns the number of days in a month.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12.
+     * @return The number of days in the month.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = ((year % 4) == 0)
+                    && (((year % 100) != 0) || ((year % 400) == 0));
+            return leap ? 29 : 28;
+        }
+
+        return ((month == 4) || (month == 6) || (month == 9) || (month == 11)) ? 30
+                : 31;
+    }
+
     /**
      * Formats a Date according to the first format in the array.
      * 
@@ -139,10 +241,95 @@ public final class DateUtils {
         if (date == null) {
             throw new IllegalArgumentException("Date is null");
         } else {
-            SimpleDateFormat formatter = new SimpleDateFormat(format, Locale.US);
-            formatter.setTimeZone(TIMEZONE_GMT);
-            return formatter.format(date);
+            String result = null;
+
+            if (FORMAT_RFC_1123.get(0).equals(format)) {
+                result = formatRfc1123(date.getTime());
+            }
+
+            if (result == null) {
+                result = getFormat(format).format(date);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Formats the current date in the preferred HTTP format (RFC 1123), as
+     * used by the "Date" header. The formatted value is shared during each
+     * second.
+     * 
+     * @return The formatted current date.
+     */
+    public static String formatCurrentDate() {
+        long now = System.currentTimeMillis();
+        long seconds = now / 1000;
+        FormattedDate result = currentDate;
+
+        if ((result.value == null) || (result.seconds != seconds)) {
+            result = new FormattedDate(seconds, format(new Date(seconds * 1000),
+                    FORMAT_RFC_1123.get(0)));
+            currentDate = result;
+        }
+
+        return result.value;
+    }
+
+    /**
+     * Formats a time in RFC 1123 format without date format instance.
+     * 
+     * @param time
+     *            The number of milliseconds since the epoch.
+     * @return The formatted date or null if the year isn't supported.
+     */
+    private static String formatRfc1123(long time) {
+        long days = time / MILLIS_PER_DAY;
+        if ((time % MILLIS_PER_DAY) < 0) {
+            days--;
+        }
+        int millisOfDay = (int) (time - (days * MILLIS_PER_DAY));
+        int[] ymd = toYearMonthDay(days);
+
+        if ((ymd[0] < MIN_YEAR) || (ymd[0] > MAX_YEAR)) {
+            return null;
+        }
+
+        int secondsOfDay = millisOfDay / 1000;
+        StringBuilder sb = new StringBuilder(29);
+        // The epoch was a Thursday
+        sb.append(DAYS[(int) (((days % 7) + 11) % 7)]).append(", ");
+        appendPadded(sb, ymd[2], 2);
+        sb.append(' ').append(MONTHS[ymd[1] - 1]).append(' ');
+        appendPadded(sb, ymd[0], 4);
+        sb.append(' ');
+        appendPadded(sb, secondsOfDay / 3600, 2);
+        sb.append(':');
+        appendPadded(sb, (secondsOfDay / 60) % 60, 2);
+        sb.append(':');
+        appendPadded(sb, secondsOfDay % 60, 2);
+        sb.append(" GMT");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the date format of the current thread for a pattern.
+     * 
+     * @param pattern
+     *            The date format pattern.
+     * @return The date format using the GMT time zone.
+     */
+    private static SimpleDateFormat getFormat(String pattern) {
+        Map<String, SimpleDateFormat> formats = FORMATS.get();
+        SimpleDateFormat result = formats.get(pattern);
+
+        if (result == null) {
+            result = new SimpleDateFormat(pattern, Locale.US);
+            result.setTimeZone(TIMEZONE_GMT);
+            formats.put(pattern, result);
         }
+
+        return result;
     }
 
     /**
@@ -164,14 +351,21 @@ public final class DateUtils {
             final int formatsSize = formats.size();
             for (int i = 0; (result == null) && (i < formatsSize); i++) {
                 format = formats.get(i);
-                SimpleDateFormat parser = new SimpleDateFormat(format,
-                        Locale.US);
-                parser.setTimeZone(TIMEZONE_GMT);
-
-                try {
-                    result = parser.parse(date);
-                } catch (ParseException e) {
-                    // Ignores error as the next format may work better
+
+                if (FORMAT_RFC_1123.get(0).equals(format)) {
+                    result = parseRfc1123(date);
+                } else if (FORMAT_RFC_1036.get(0).equals(format)) {
+                    result = parseRfc1036(date);
+                } else if (FORMAT_ASC_TIME.get(0).equals(format)) {
+                    result = parseAscTime(date);
+                }
+
+                if (result == null) {
+                    try {
+                        result = getFormat(format).parse(date);
+                    } catch (ParseException e) {
+                        // Ignores error as the next format may work better
+                    }
                 }
             }
         }
@@ -179,6 +373,264 @@ public final class DateUtils {
         return result;
     }
 
+    /**
+     * Parses a date in asctime format, such as "Sun Nov  6 08:49:37 1994".
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if the date format needs to be used.
+     */
+    private static Date parseAscTime(String date) {
+        if ((date.length() < 24) || (date.charAt(3) != ' ')
+                || (date.charAt(7) != ' ') || (date.charAt(10) != ' ')
+                || (date.charAt(13) != ':') || (date.charAt(16) != ':')
+                || (date.charAt(19) != ' ')
+                || ((date.length() > 24) && Character.isDigit(date.charAt(24)))
+                || (indexOf(DAYS, date, 0, 3) == -1)) {
+            return null;
+        }
+
+        int day = (date.charAt(8) == ' ') ? parseDigits(date, 9, 1)
+                : parseDigits(date, 8, 2);
+        return toDate(parseDigits(date, 20, 4),
+                indexOf(MONTHS, date, 4, 3) + 1, day, parseDigits(date, 11,
+                        2), parseDigits(date, 14, 2), parseDigits(date, 17,
+                        2));
+    }
+
+    /**
+     * Parses a number of digits.
+     * 
+     * @param date
+     *            The date to parse.
+     * @param start
+     *            The index of the first digit.
+     * @param count
+     *            The number of digits.
+     * @return The parsed number or -1 if a character isn't a digit.
+     */
+    private static int parseDigits(String date, int start, int count) {
+        int result = 0;
+
+        for (int i = start; i < start + count; i++) {
+            char c = date.charAt(i);
+
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+
+            result = (result * 10) + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index of a name in an array.
+     * 
+     * @param names
+     *            The names to look up.
+     * @param date
+     *            The date to parse.
+     * @param start
+     *            The index of the name.
+     * @param length
+     *            The length of the name.
+     * @return The index of the name or -1 if the name wasn't found.
+     */
+    private static int indexOf(String[] names, String date, int start,
+            int length) {
+        for (int i = 0; i < names.length; i++) {
+            if ((names[i].length() == length)
+                    && date.regionMatches(start, names[i], 0, length)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indicates if the end of a date is acceptable after the "GMT" time zone.
+     * Other characters are ignored like the date formats do, unless they could
+     * be part of the time zone.
+     * 
+     * @param date
+     *            The date to parse.
+     * @param index
+     *            The index following the time zone.
+     * @return True if the end of the date is acceptable.
+     */
+    private static boolean isZoneEnd(String date, int index) {
+        if (index >= date.length()) {
+            return true;
+        }
+
+        char c = date.charAt(index);
+        return (c == ' ') || (c == ';') || (c == ',');
+    }
+
+    /**
+     * Parses a date in RFC 1036 format, such as "Sunday, 06-Nov-94 08:49:37
+     * GMT".
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if the date format needs to be used.
+     */
+    private static Date parseRfc1036(String date) {
+        int comma = date.indexOf(',');
+        if ((comma < 3) || ((indexOf(DAYS_FULL, date, 0, comma) == -1)
+                && (indexOf(DAYS, date, 0, comma) == -1))) {
+            return null;
+        }
+
+        // Two or four digits years
+        int start = comma + 2;
+        int yearDigits = ((date.length() > start + 11) && (date
+                .charAt(start + 9) != ' ')) ? 4 : 2;
+        int end = start + 20 + yearDigits;
+        if ((date.length() < end) || (date.charAt(start - 1) != ' ')
+                || (date.charAt(start + 2) != '-')
+                || (date.charAt(start + 6) != '-')
+                || (date.charAt(start + 7 + yearDigits) != ' ')
+                || (date.charAt(start + 10 + yearDigits) != ':')
+                || (date.charAt(start + 13 + yearDigits) != ':')
+                || (date.charAt(start + 16 + yearDigits) != ' ')
+                || !date.regionMatches(start + 17 + yearDigits, "GMT", 0, 3)
+                || !isZoneEnd(date, end)) {
+            return null;
+        }
+
+        int year = parseDigits(date, start + 7, yearDigits);
+        int month = indexOf(MONTHS, date, start + 3, 3) + 1;
+        int day = parseDigits(date, start, 2);
+        int hour = parseDigits(date, start + 8 + yearDigits, 2);
+        int minute = parseDigits(date, start + 11 + yearDigits, 2);
+        int second = parseDigits(date, start + 14 + yearDigits, 2);
+
+        if ((yearDigits == 2) && (year >= 0)) {
+            // Same two digits year resolution as the date formats, within
+            // the 80 years before and the 20 years after the current date
+            long now = System.currentTimeMillis();
+            int[] ymd = toYearMonthDay(now / MILLIS_PER_DAY);
+            int centuryStartYear = ymd[0] - 80;
+            int ambiguousYear = centuryStartYear % 100;
+            year += ((centuryStartYear / 100) * 100)
+                    + ((year < ambiguousYear) ? 100 : 0);
+
+            Date result = toDate(year, month, day, hour, minute, second);
+            if ((result != null) && (year == centuryStartYear)) {
+                Date centuryStart = toDate(centuryStartYear, ymd[1], Math
+                        .min(ymd[2], daysInMonth(centuryStartYear, ymd[1])),
+                        0, 0, 0);
+                if (centuryStart == null) {
+                    return null;
+                }
+                centuryStart = new Date(centuryStart.getTime()
+                        + (now % MILLIS_PER_DAY));
+
+                if (result.before(centuryStart)) {
+                    result = toDate(year + 100, month, day, hour, minute,
+                            second);
+                }
+            }
+
+            return result;
+        }
+
+        return toDate(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * Parses a date in RFC 1123 format, such as "Sun, 06 Nov 1994 08:49:37
+     * GMT".
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if the date format needs to be used.
+     */
+    private static Date parseRfc1123(String date) {
+        if ((date.length() < 29) || (date.charAt(3) != ',')
+                || (date.charAt(4) != ' ') || (date.charAt(7) != ' ')
+                || (date.charAt(11) != ' ') || (date.charAt(16) != ' ')
+                || (date.charAt(19) != ':') || (date.charAt(22) != ':')
+                || (date.charAt(25) != ' ')
+                || !date.regionMatches(26, "GMT", 0, 3)
+                || !isZoneEnd(date, 29) || (indexOf(DAYS, date, 0, 3) == -1)) {
+            return null;
+        }
+
+        return toDate(parseDigits(date, 12, 4),
+                indexOf(MONTHS, date, 8, 3) + 1, parseDigits(date, 5, 2),
+                parseDigits(date, 17, 2), parseDigits(date, 20, 2),
+                parseDigits(date, 23, 2));
+    }
+
+    /**
+     * Converts date fields in the GMT time zone into a date.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12.
+     * @param day
+     *            The day of the month.
+     * @param hour
+     *            The hour of the day.
+     * @param minute
+     *            The minute.
+     * @param second
+     *            The second.
+     * @return The date or null if a field is invalid or not supported.
+     */
+    private static Date toDate(int year, int month, int day, int hour,
+            int minute, int second) {
+        if ((year < MIN_YEAR) || (year > MAX_YEAR) || (month < 1)
+                || (month > 12) || (day < 1)
+                || (day > daysInMonth(year, month)) || (hour < 0)
+                || (hour > 23) || (minute < 0) || (minute > 59)
+                || (second < 0) || (second > 59)) {
+            return null;
+        }
+
+        // Days since the epoch, counting years from March
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - (era * 400);
+        int dayOfYear = ((153 * ((month > 2) ? month - 3 : month + 9)) + 2)
+                / 5 + day - 1;
+        int dayOfEra = (yearOfEra * 365) + (yearOfEra / 4)
+                - (yearOfEra / 100) + dayOfYear;
+        long days = (era * 146097L) + dayOfEra - 719468L;
+
+        return new Date((days * MILLIS_PER_DAY)
+                + (((hour * 60L + minute) * 60L) + second) * 1000L);
+    }
+
+    /**
+     * Converts a number of days since the epoch into a date in the proleptic
+     * Gregorian calendar.
+     * 
+     * @param days
+     *            The number of days since the epoch.
+     * @return The year, the month (from 1 to 12) and the day of the month.
+     */
+    private static int[] toYearMonthDay(long days) {
+        long z = days + 719468L;
+        long era = ((z >= 0) ? z : z - 146096L) / 146097L;
+        int dayOfEra = (int) (z - (era * 146097L));
+        int yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524) - (dayOfEra / 146096)) / 365;
+        int dayOfYear = dayOfEra
+                - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+        int mp = ((5 * dayOfYear) + 2) / 153;
+        int day = dayOfYear - (((153 * mp) + 2) / 5) + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yearOfEra + (era * 400) + ((month <= 2) ? 1 : 0);
+
+        return new int[] { (int) year, month, day };
+    }
+
     /**
      * Helper method to help initialize this class by providing unmodifiable
      * lists based on arrays.
@@ -229,20 +681,17 @@ public final class DateUtils {
         // TODO Are we serializable?
         private static final long serialVersionUID = -5946186780670229206L;
 
-        private static final transient WeakHashMap<Date, ImmutableDate> CACHE = new WeakHashMap<Date, ImmutableDate>();
-
         /**
-         * Returns an ImmutableDate object wrapping the given date.
+         * Returns an ImmutableDate object wrapping the given date. Immutable
+         * dates are returned as is, other dates are copied.
          * 
          * @param date
          *            object to be made immutable
          * @return an immutable date object
          */
         public static ImmutableDate valueOf(Date date) {
-            if (!CACHE.containsKey(date)) {
-                CACHE.put(date, new ImmutableDate(date));
-            }
-            return CACHE.get(date);
+            return (date instanceof ImmutableDate) ? (ImmutableDate) date
+                    : new ImmutableDate(date);
         }
 
         /** Delegate being wrapped */
@@ -260,6 +260,21 @@ public abstract class Engine {
      */
     public abstract Helper createHelper(Server server);
 
+    /**
+     * Executes a task writing the content of a representation into a pipe.
+     * Used by the stream and channel adapters of {@link ByteUtils} so that the
+     * writer threads can be shared instead of created for each call. By
+     * default, the task runs on a new daemon thread.
+     *
+     * @param pump
+     *            The task writing into the pipe.
+     */
+    public void executePump(Runnable pump) {
+        Thread thread = new Thread(pump);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Returns the best variant representation for a given resource according
      * the the client preferences.<br/>A default language is provided in case
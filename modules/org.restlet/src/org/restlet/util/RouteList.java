@@ -27,9 +27,15 @@
 
 package org.restlet.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.restlet.Restlet;
 import org.restlet.Route;
@@ -43,22 +49,215 @@ import org.restlet.data.Response;
  * java.util.List, in particular all the helper methods in
  * java.util.Collections.<br/> <br/> Note that structural changes to this list
  * are thread-safe, using an underlying
- * {@link java.util.concurrent.CopyOnWriteArrayList}.
+ * {@link java.util.concurrent.CopyOnWriteArrayList}.<br/> <br/> When the
+ * list is indexed, the {@link #getFirst(Request, Response, float)} and
+ * {@link #getBest(Request, Response, float)} methods only score the routes
+ * whose template starts with literal characters that are a prefix of the
+ * remaining part of the resource reference, using a prefix tree built over
+ * these literal characters. Other routes couldn't match and would score zero
+ * anyway, so the selected route is the same as without index. The index is
+ * rebuilt lazily after each modification of the list. When the template of an
+ * indexed route or its pattern is modified, the index must be rebuilt by
+ * calling {@link #setIndexed(boolean)} again. Routes and templates of
+ * subclasses that might override the scoring are always scored. When the
+ * required score isn't positive, {@link #getFirst(Request, Response, float)}
+ * returns the first route as routes scoring zero match too.
  * 
  * @author Jerome Louvel (contact@noelios.com)
  * @see java.util.Collections
  * @see java.util.List
  */
 public final class RouteList extends WrapperList<Route> {
+    /**
+     * Immutable prefix tree of the routes, indexed by the literal prefix of
+     * their template.
+     */
+    private static final class RouteIndex {
+        /** The number of list modifications when the index was built. */
+        private final int listModifications;
+
+        /** The root node, holding the routes always scored. */
+        private final RouteNode root;
+
+        /** The indexed routes, in list order. */
+        private final Route[] routes;
+
+        /**
+         * Constructor.
+         * 
+         * @param routes
+         *                The routes to index, in list order.
+         * @param listModifications
+         *                The number of list modifications.
+         */
+        private RouteIndex(Route[] routes, int listModifications) {
+            this.routes = routes;
+            this.listModifications = listModifications;
+            this.root = new RouteNode();
+
+            for (int i = 0; i < routes.length; i++) {
+                RouteNode node = this.root;
+                String prefix = getLiteralPrefix(routes[i]);
+
+                for (int j = 0; j < prefix.length(); j++) {
+                    node = node.getChild(prefix.charAt(j));
+                }
+
+                node.add(i);
+            }
+
+            this.root.pack();
+        }
+
+        /**
+         * Returns the routes that could match a remaining part, in list order.
+         * 
+         * @param remainingPart
+         *                The remaining part of the resource reference.
+         * @return The candidate routes, in list order.
+         */
+        private Route[] getCandidates(String remainingPart) {
+            int[][] found = new int[remainingPart.length() + 1][];
+            int foundCount = 0;
+            int total = 0;
+            RouteNode node = this.root;
+
+            for (int i = 0; node != null; i++) {
+                if (node.indexes.length > 0) {
+                    found[foundCount++] = node.indexes;
+                    total += node.indexes.length;
+                }
+
+                node = (i < remainingPart.length()) ? node.children
+                        .get(remainingPart.charAt(i)) : null;
+            }
+
+            int[] indexes;
+            if (foundCount == 1) {
+                indexes = found[0];
+            } else {
+                indexes = new int[total];
+                int offset = 0;
+                for (int i = 0; i < foundCount; i++) {
+                    System.arraycopy(found[i], 0, indexes, offset,
+                            found[i].length);
+                    offset += found[i].length;
+                }
+                Arrays.sort(indexes);
+            }
+
+            Route[] result = new Route[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                result[i] = this.routes[indexes[i]];
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns the literal prefix of a route's template, or an empty string
+         * if the route must always be scored.
+         * 
+         * @param route
+         *                The route.
+         * @return The literal prefix to index.
+         */
+        private static String getLiteralPrefix(Route route) {
+            Template template = route.getTemplate();
+
+            if ((route.getClass() == Route.class) && (template != null)
+                    && (template.getClass() == Template.class)) {
+                return template.getLiteralPrefix();
+            }
+
+            return "";
+        }
+    }
+
+    /**
+     * Node of the routes prefix tree.
+     */
+    private static final class RouteNode {
+        /** The child nodes by next character. */
+        private final Map<Character, RouteNode> children;
+
+        /** The indexes of the routes ending at this node, in list order. */
+        private int[] indexes;
+
+        /** The list of indexes while building the tree. */
+        private List<Integer> indexList;
+
+        /**
+         * Constructor.
+         */
+        private RouteNode() {
+            this.children = new HashMap<Character, RouteNode>();
+            this.indexList = new ArrayList<Integer>();
+        }
+
+        /**
+         * Adds a route index to this node.
+         * 
+         * @param index
+         *                The route index.
+         */
+        private void add(int index) {
+            this.indexList.add(index);
+        }
+
+        /**
+         * Returns the child node for a character, creating it if necessary.
+         * 
+         * @param character
+         *                The next character.
+         * @return The child node.
+         */
+        private RouteNode getChild(char character) {
+            RouteNode result = this.children.get(character);
+
+            if (result == null) {
+                result = new RouteNode();
+                this.children.put(character, result);
+            }
+
+            return result;
+        }
+
+        /**
+         * Converts the index lists of this node and its children into arrays.
+         */
+        private void pack() {
+            this.indexes = new int[this.indexList.size()];
+            for (int i = 0; i < this.indexes.length; i++) {
+                this.indexes[i] = this.indexList.get(i);
+            }
+            this.indexList = null;
+
+            for (RouteNode child : this.children.values()) {
+                child.pack();
+            }
+        }
+    }
+
+    /** Indicates if the first and best lookups use a prefix tree. */
+    private volatile boolean indexed;
+
+    /** The prefix tree of the routes, possibly stale. */
+    private volatile RouteIndex index;
+
     /** The index of the last route used in the round robin mode. */
     private int lastIndex;
 
+    /** The number of modifications of the list. */
+    private final AtomicInteger modifications;
+
     /**
      * Constructor.
      */
     public RouteList() {
         super(new CopyOnWriteArrayList<Route>());
         this.lastIndex = -1;
+        this.modifications = new AtomicInteger();
     }
 
     /**
@@ -70,6 +269,40 @@ public final class RouteList extends WrapperList<Route> {
     public RouteList(List<Route> delegate) {
         super(new CopyOnWriteArrayList<Route>(delegate));
         this.lastIndex = -1;
+        this.modifications = new AtomicInteger();
+    }
+
+    @Override
+    public boolean add(Route route) {
+        boolean result = super.add(route);
+        modified();
+        return result;
+    }
+
+    @Override
+    public void add(int index, Route route) {
+        super.add(index, route);
+        modified();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Route> routes) {
+        boolean result = super.addAll(routes);
+        modified();
+        return result;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Route> routes) {
+        boolean result = super.addAll(index, routes);
+        modified();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        modified();
     }
 
     /**
@@ -87,7 +320,7 @@ public final class RouteList extends WrapperList<Route> {
         Route result = null;
         float bestScore = 0F;
         float score;
-        for (Route current : this) {
+        for (Route current : getCandidates(request)) {
             score = current.score(request, response);
 
             if ((score > bestScore) && (score >= requiredScore)) {
@@ -100,7 +333,29 @@ public final class RouteList extends WrapperList<Route> {
     }
 
     /**
-     * Returns the first route match for a given call.
+     * Returns the routes to score for a given call, in list order. Returns the
+     * whole list unless it is indexed.
+     * 
+     * @param request
+     *                The request to score.
+     * @return The routes to score.
+     */
+    private Iterable<Route> getCandidates(Request request) {
+        if (isIndexed() && (request != null)
+                && (request.getResourceRef() != null)) {
+            String remainingPart = request.getResourceRef().getRemainingPart();
+
+            if (remainingPart != null) {
+                return Arrays.asList(getIndex().getCandidates(remainingPart));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the first route match for a given call. When the required score
+     * isn't positive, all the routes are scored even if the list is indexed.
      * 
      * @param request
      *                The request to score.
@@ -112,7 +367,10 @@ public final class RouteList extends WrapperList<Route> {
      */
     public Route getFirst(Request request, Response response,
             float requiredScore) {
-        for (Route current : this) {
+        Iterable<Route> candidates = (requiredScore > 0F) ? getCandidates(
+                request) : this;
+
+        for (Route current : candidates) {
             if (current.score(request, response) >= requiredScore)
                 return current;
         }
@@ -121,6 +379,26 @@ public final class RouteList extends WrapperList<Route> {
         return null;
     }
 
+    /**
+     * Returns the prefix tree of the routes, building it again if the list was
+     * modified. No lock is taken, threads racing after a modification may
+     * build the same index concurrently.
+     * 
+     * @return The prefix tree of the routes.
+     */
+    private RouteIndex getIndex() {
+        RouteIndex result = this.index;
+        int listModifications = this.modifications.get();
+
+        if ((result == null)
+                || (result.listModifications != listModifications)) {
+            result = new RouteIndex(toArray(new Route[0]), listModifications);
+            this.index = result;
+        }
+
+        return result;
+    }
+
     /**
      * Returns the last route match for a given call.
      * 
@@ -207,6 +485,45 @@ public final class RouteList extends WrapperList<Route> {
         return null;
     }
 
+    /**
+     * Indicates if the first and best lookups only score the routes whose
+     * template literal prefix matches the request. False by default.
+     * 
+     * @return True if the first and best lookups use a prefix tree.
+     */
+    public boolean isIndexed() {
+        return this.indexed;
+    }
+
+    /**
+     * Invalidates the index after a modification of the list or of the
+     * templates of its routes.
+     */
+    private void modified() {
+        this.modifications.incrementAndGet();
+    }
+
+    @Override
+    public Route remove(int index) {
+        Route result = super.remove(index);
+        modified();
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object route) {
+        boolean result = super.remove(route);
+        modified();
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> routes) {
+        boolean result = super.removeAll(routes);
+        modified();
+        return result;
+    }
+
     /**
      * Removes all routes routing to a given target.
      * 
@@ -220,6 +537,34 @@ public final class RouteList extends WrapperList<Route> {
         }
     }
 
+    @Override
+    public boolean retainAll(Collection<?> routes) {
+        boolean result = super.retainAll(routes);
+        modified();
+        return result;
+    }
+
+    @Override
+    public Route set(int index, Route route) {
+        Route result = super.set(index, route);
+        modified();
+        return result;
+    }
+
+    /**
+     * Indicates if the first and best lookups only score the routes whose
+     * template literal prefix matches the request. The index only pays off
+     * with many routes starting with distinct literal characters. Also
+     * rebuilds the index after a modification of the templates of its routes.
+     * 
+     * @param indexed
+     *                True if the first and best lookups use a prefix tree.
+     */
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+        modified();
+    }
+
     /**
      * Returns a view of the portion of this list between the specified
      * fromIndex, inclusive, and toIndex, exclusive.
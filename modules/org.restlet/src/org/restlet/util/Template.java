@@ -27,11 +27,12 @@
 
 package org.restlet.util;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -275,6 +276,119 @@ import org.restlet.data.Response;
  * @author Jerome Louvel (contact@noelios.com)
  */
 public class Template {
+    /**
+     * Last match of a template computed by a thread, so that parsing a string
+     * just matched, like a route does after scoring, doesn't run the Regex
+     * again.
+     */
+    private static final class LastMatch {
+        /** The compiled pattern used. */
+        private RegexInfo regexInfo;
+
+        /** The matching mode used. */
+        private int matchingMode;
+
+        /** The formatted string matched. */
+        private String formattedString;
+
+        /** The match result or null if the match failed. */
+        private MatchResult result;
+    }
+
+    /**
+     * Immutable result of the compilation of the URI pattern, safely published
+     * to the matching threads.
+     */
+    private static final class RegexInfo {
+        /** The internal Regex pattern. */
+        private final Pattern pattern;
+
+        /** The Regex variable names, in the order of their groups. */
+        private final String[] variableNames;
+
+        /** The version of the template compiled. */
+        private final int version;
+
+        /**
+         * Constructor.
+         * 
+         * @param pattern
+         *                The internal Regex pattern.
+         * @param variableNames
+         *                The Regex variable names, in the order of their
+         *                groups.
+         * @param version
+         *                The version of the template compiled.
+         */
+        private RegexInfo(Pattern pattern, String[] variableNames, int version) {
+            this.pattern = pattern;
+            this.variableNames = variableNames;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Map of variable descriptors invalidating the compiled pattern when
+     * modified.
+     */
+    private final class VariableMap extends ConcurrentHashMap<String, Variable> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void clear() {
+            super.clear();
+            invalidate();
+        }
+
+        @Override
+        public Variable put(String key, Variable value) {
+            Variable result = super.put(key, value);
+            invalidate();
+            return result;
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Variable> map) {
+            super.putAll(map);
+            invalidate();
+        }
+
+        @Override
+        public Variable putIfAbsent(String key, Variable value) {
+            Variable result = super.putIfAbsent(key, value);
+            invalidate();
+            return result;
+        }
+
+        @Override
+        public Variable remove(Object key) {
+            Variable result = super.remove(key);
+            invalidate();
+            return result;
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            boolean result = super.remove(key, value);
+            invalidate();
+            return result;
+        }
+
+        @Override
+        public Variable replace(String key, Variable value) {
+            Variable result = super.replace(key, value);
+            invalidate();
+            return result;
+        }
+
+        @Override
+        public boolean replace(String key, Variable oldValue, Variable newValue) {
+            boolean result = super.replace(key, oldValue, newValue);
+            invalidate();
+            return result;
+        }
+    }
+
     public static final int MODE_STARTS_WITH = 1;
 
     public static final int MODE_EQUALS = 2;
@@ -351,11 +465,14 @@ public class Template {
     /** The map of variables associated to the route's template. */
     private final Map<String, Variable> variables;
 
-    /** The internal Regex pattern. */
-    private volatile Pattern regexPattern;
+    /** The version of the pattern and variables, updated on each change. */
+    private volatile int version;
+
+    /** The compiled pattern, possibly of a previous version, or null. */
+    private volatile RegexInfo regexInfo;
 
-    /** The sequence of Regex variable names as found in the pattern string. */
-    private final List<String> regexVariables;
+    /** The last match computed by each thread. */
+    private final ThreadLocal<LastMatch> lastMatch;
 
     /**
      * Default constructor. Each variable matches any sequence of characters by
@@ -415,9 +532,18 @@ public class Template {
         this.defaultVariable = new Variable(defaultType, defaultDefaultValue,
                 defaultRequired, defaultFixed);
         this.matchingMode = matchingMode;
-        this.variables = new ConcurrentHashMap<String, Variable>();
-        this.regexPattern = null;
-        this.regexVariables = new CopyOnWriteArrayList<String>();
+        this.variables = new VariableMap();
+        this.version = 0;
+        this.lastMatch = new ThreadLocal<LastMatch>() {
+            @Override
+            protected LastMatch initialValue() {
+                return new LastMatch();
+            }
+        };
+
+        // Compiled on the first match or parse, as many templates are only
+        // used for formatting
+        this.regexInfo = null;
     }
 
     /**
@@ -468,7 +594,7 @@ public class Template {
                     if (varBuffer.length() == 0) {
                         getLogger().warning(
                                 "Empty pattern variables are not allowed : "
-                                        + this.regexPattern);
+                                        + getPattern());
                     } else {
                         String varName = varBuffer.toString();
                         result.append(resolver.resolve(varName));
@@ -480,7 +606,7 @@ public class Template {
                 } else {
                     getLogger().warning(
                             "An invalid character was detected inside a pattern variable : "
-                                    + this.regexPattern);
+                                    + getPattern());
                 }
             } else {
                 if (next == '{') {
@@ -489,7 +615,7 @@ public class Template {
                 } else if (next == '}') {
                     getLogger().warning(
                             "An invalid character was detected inside a pattern variable : "
-                                    + this.regexPattern);
+                                    + getPattern());
                 } else {
                     result.append(next);
                 }
@@ -535,79 +661,125 @@ public class Template {
         return this.pattern;
     }
 
+    /**
+     * Returns the literal characters at the beginning of the pattern, before
+     * the first variable. Any string matched by this template starts with this
+     * prefix.
+     * 
+     * @return The literal prefix of the pattern, possibly empty.
+     */
+    String getLiteralPrefix() {
+        String uriPattern = getPattern();
+        int end = 0;
+
+        if (uriPattern != null) {
+            while ((end < uriPattern.length())
+                    && (uriPattern.charAt(end) != '{')
+                    && (uriPattern.charAt(end) != '}')) {
+                end++;
+            }
+        }
+
+        return (end == 0) ? "" : uriPattern.substring(0, end);
+    }
+
     /**
      * Compiles the URI pattern into a Regex pattern.
      * 
-     * @param uriPattern
-     *                The URI pattern.
-     * @return The Regex pattern.
+     * @param version
+     *                The version of the template compiled.
+     * @return The compiled pattern.
      */
-    private synchronized Pattern getRegexPattern() {
-        if (this.regexPattern == null) {
-            StringBuilder patternBuffer = new StringBuilder();
-            StringBuilder varBuffer = null;
-            char next;
-            boolean inVariable = false;
-            for (int i = 0; i < getPattern().length(); i++) {
-                next = getPattern().charAt(i);
-
-                if (inVariable) {
-                    if (isUnreserved(next)) {
-                        // Append to the variable name
-                        varBuffer.append(next);
-                    } else if (next == '}') {
-                        // End of variable detected
-                        if (varBuffer.length() == 0) {
-                            getLogger().warning(
-                                    "Empty pattern variables are not allowed : "
-                                            + this.regexPattern);
-                        } else {
-                            String varName = varBuffer.toString();
-                            int varIndex = getRegexVariables().indexOf(varName);
-
-                            if (varIndex != -1) {
-                                // The variable is used several times in the
-                                // pattern, ensure that this constraint is
-                                // enforced when parsing.
-                                patternBuffer.append("\\" + (varIndex + 1));
-                            } else {
-                                // New variable detected. Insert a capturing
-                                // group.
-                                getRegexVariables().add(varName);
-                                Variable var = getVariables().get(varName);
-                                if (var == null)
-                                    var = getDefaultVariable();
-                                patternBuffer.append(getVariableRegex(var));
-                            }
+    private RegexInfo compile(int version) {
+        List<String> regexVariables = new ArrayList<String>();
+        String uriPattern = getPattern();
 
-                            // Reset the variable name buffer
-                            varBuffer = new StringBuilder();
-                        }
-                        inVariable = false;
+        if (uriPattern == null) {
+            uriPattern = "";
+        }
 
-                    } else {
-                        getLogger().warning(
-                                "An invalid character was detected inside a pattern variable : "
-                                        + this.regexPattern);
-                    }
-                } else {
-                    if (next == '{') {
-                        inVariable = true;
-                        varBuffer = new StringBuilder();
-                    } else if (next == '}') {
+        StringBuilder patternBuffer = new StringBuilder();
+        StringBuilder varBuffer = null;
+        char next;
+        boolean inVariable = false;
+        for (int i = 0; i < uriPattern.length(); i++) {
+            next = uriPattern.charAt(i);
+
+            if (inVariable) {
+                if (isUnreserved(next)) {
+                    // Append to the variable name
+                    varBuffer.append(next);
+                } else if (next == '}') {
+                    // End of variable detected
+                    if (varBuffer.length() == 0) {
                         getLogger().warning(
-                                "An invalid character was detected inside a pattern variable : "
-                                        + this.regexPattern);
+                                "Empty pattern variables are not allowed : "
+                                        + uriPattern);
                     } else {
-                        patternBuffer.append(quote(next));
+                        String varName = varBuffer.toString();
+                        int varIndex = regexVariables.indexOf(varName);
+
+                        if (varIndex != -1) {
+                            // The variable is used several times in the
+                            // pattern, ensure that this constraint is
+                            // enforced when parsing.
+                            patternBuffer.append("\\" + (varIndex + 1));
+                        } else {
+                            // New variable detected. Insert a capturing
+                            // group.
+                            regexVariables.add(varName);
+                            Variable var = getVariables().get(varName);
+                            if (var == null)
+                                var = getDefaultVariable();
+                            patternBuffer.append(getVariableRegex(var));
+                        }
+
+                        // Reset the variable name buffer
+                        varBuffer = new StringBuilder();
                     }
+                    inVariable = false;
+
+                } else {
+                    getLogger().warning(
+                            "An invalid character was detected inside a pattern variable : "
+                                    + uriPattern);
+                }
+            } else {
+                if (next == '{') {
+                    inVariable = true;
+                    varBuffer = new StringBuilder();
+                } else if (next == '}') {
+                    getLogger().warning(
+                            "An invalid character was detected inside a pattern variable : "
+                                    + uriPattern);
+                } else {
+                    patternBuffer.append(quote(next));
                 }
             }
+        }
 
-            this.regexPattern = Pattern.compile(patternBuffer.toString());
+        return new RegexInfo(Pattern.compile(patternBuffer.toString()),
+                regexVariables.toArray(new String[regexVariables.size()]),
+                version);
+    }
+
+    /**
+     * Returns the compiled pattern of the current version, compiling it again
+     * if the pattern or the variables were modified. No lock is taken, threads
+     * racing after a modification may compile the same pattern concurrently.
+     * 
+     * @return The compiled pattern.
+     */
+    private RegexInfo getRegexInfo() {
+        RegexInfo result = this.regexInfo;
+        int currentVersion = this.version;
+
+        if ((result == null) || (result.version != currentVersion)) {
+            result = compile(currentVersion);
+            this.regexInfo = result;
         }
 
-        return this.regexPattern;
+        return result;
     }
 
     /**
@@ -657,17 +829,6 @@ public class Template {
         }
     }
 
-    /**
-     * Returns the sequence of Regex variable names as found in the pattern
-     * string.
-     * 
-     * @return The sequence of Regex variable names as found in the pattern
-     *         string.
-     */
-    private List<String> getRegexVariables() {
-        return this.regexVariables;
-    }
-
     /**
      * Returns the content corresponding to a reference property.
      * 
@@ -851,6 +1012,13 @@ public class Template {
         return this.variables;
     }
 
+    /**
+     * Invalidates the compiled pattern after a modification.
+     */
+    private void invalidate() {
+        this.version++;
+    }
+
     /**
      * Indicates if the current pattern matches the given formatted string.
      * 
@@ -859,23 +1027,52 @@ public class Template {
      * @return The number of matched characters or -1 if the match failed.
      */
     public int match(String formattedString) {
-        int result = -1;
-
-        try {
-            if (formattedString != null) {
-                Matcher matcher = getRegexPattern().matcher(formattedString);
+        MatchResult matchResult = matchRegex(formattedString);
+        return (matchResult == null) ? -1 : matchResult.end();
+    }
 
-                if ((getMatchingMode() == MODE_EQUALS) && matcher.matches()) {
-                    result = matcher.end();
-                } else if ((getMatchingMode() == MODE_STARTS_WITH)
-                        && matcher.lookingAt()) {
-                    result = matcher.end();
+    /**
+     * Matches the given formatted string with the compiled pattern. The last
+     * result computed by the current thread is reused when the same string is
+     * matched again with the same pattern and matching mode.
+     * 
+     * @param formattedString
+     *                The formatted string to match.
+     * @return The match result or null if the match failed.
+     */
+    private MatchResult matchRegex(String formattedString) {
+        MatchResult result = null;
+
+        if (formattedString != null) {
+            RegexInfo currentRegex = getRegexInfo();
+            int currentMode = getMatchingMode();
+            LastMatch last = this.lastMatch.get();
+
+            if ((last.regexInfo == currentRegex)
+                    && (last.matchingMode == currentMode)
+                    && formattedString.equals(last.formattedString)) {
+                result = last.result;
+            } else {
+                try {
+                    Matcher matcher = currentRegex.pattern
+                            .matcher(formattedString);
+
+                    if (((currentMode == MODE_EQUALS) && matcher.matches())
+                            || ((currentMode == MODE_STARTS_WITH) && matcher
+                                    .lookingAt())) {
+                        result = matcher;
+                    }
+                } catch (StackOverflowError soe) {
+                    getLogger().warning(
+                            "StackOverflowError exception encountered while matching this string : "
+                                    + formattedString);
                 }
+
+                last.regexInfo = currentRegex;
+                last.matchingMode = currentMode;
+                last.formattedString = formattedString;
+                last.result = result;
             }
-        } catch (StackOverflowError soe) {
-            getLogger().warning(
-                    "StackOverflowError exception encountered while matching this string : "
-                            + formattedString);
         }
 
         return result;
@@ -915,31 +1112,19 @@ public class Template {
      */
     public int parse(String formattedString, Map<String, Object> variables) {
         int result = -1;
-        try {
-
-            Matcher matcher = getRegexPattern().matcher(formattedString);
-            boolean matched = ((getMatchingMode() == MODE_EQUALS) && matcher
-                    .matches())
-                    || ((getMatchingMode() == MODE_STARTS_WITH) && matcher
-                            .lookingAt());
-
-            if (matched) {
-                // Update the number of matched characters
-                result = matcher.end();
-
-                // Update the attributes with the variables value
-                String attributeName = null;
-                String attributeValue = null;
-                for (int i = 0; i < getRegexVariables().size(); i++) {
-                    attributeName = getRegexVariables().get(i);
-                    attributeValue = matcher.group(i + 1);
-                    variables.put(attributeName, attributeValue);
-                }
+        MatchResult matchResult = matchRegex(formattedString);
+
+        if (matchResult != null) {
+            // Update the number of matched characters
+            result = matchResult.end();
+
+            // Update the attributes with the variables value, using the
+            // names of the pattern that was matched
+            String[] variableNames = this.lastMatch.get().regexInfo
+                    .variableNames;
+            for (int i = 0; i < variableNames.length; i++) {
+                variables.put(variableNames[i], matchResult.group(i + 1));
             }
-        } catch (StackOverflowError soe) {
-            getLogger().warning(
-                    "StackOverflowError exception encountered while matching this string : "
-                            + formattedString);
         }
 
         return result;
@@ -953,6 +1138,7 @@ public class Template {
      */
     public void setPattern(String pattern) {
         this.pattern = pattern;
+        invalidate();
     }
 
     /**
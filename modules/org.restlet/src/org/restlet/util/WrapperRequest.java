@@ -27,6 +27,7 @@
 
 package org.restlet.util;
 
+import java.util.List;
 import java.util.Map;
 
 import org.restlet.data.ChallengeResponse;
@@ -37,6 +38,7 @@ import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Protocol;
+import org.restlet.data.Range;
 import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.resource.DomRepresentation;
@@ -115,6 +117,16 @@ public class WrapperRequest extends Request {
 		return getWrappedRequest().getMethod();
 	}
 
+	/**
+	 * Returns the byte ranges of the entity requested.
+	 * 
+	 * @return The byte ranges of the entity requested.
+	 */
+	@Override
+	public List<Range> getRanges() {
+		return getWrappedRequest().getRanges();
+	}
+
 	/**
 	 * Returns the referrer reference if available.
 	 * 
@@ -179,6 +191,17 @@ public class WrapperRequest extends Request {
 		getWrappedRequest().setChallengeResponse(response);
 	}
 
+	/**
+	 * Sets the conditions applying to this call.
+	 * 
+	 * @param conditions
+	 *            The conditions applying to this call.
+	 */
+	@Override
+	public void setConditions(Conditions conditions) {
+		getWrappedRequest().setConditions(conditions);
+	}
+
 	/**
 	 * Indicates if the call came over a confidential channel such as an
 	 * SSL-secured connection.
@@ -202,6 +225,17 @@ public class WrapperRequest extends Request {
 		getWrappedRequest().setMethod(method);
 	}
 
+	/**
+	 * Sets the byte ranges of the entity requested.
+	 * 
+	 * @param ranges
+	 *            The byte ranges of the entity requested.
+	 */
+	@Override
+	public void setRanges(List<Range> ranges) {
+		getWrappedRequest().setRanges(ranges);
+	}
+
 	/**
 	 * Sets the referrer reference if available.
 	 * 